@@ -13,4 +13,11 @@ public interface MycatConnection extends AutoCloseable,Wrapper {
     public boolean isClosed();
 
     public RowBaseIterator executeQuery(MycatRowMetaData mycatRowMetaData, String sql);
+
+    /**
+     * 终止该连接上正在执行的查询,可以在其他线程调用,没有正在执行的查询时什么也不做
+     */
+    default void cancel() {
+
+    }
 }
\ No newline at end of file
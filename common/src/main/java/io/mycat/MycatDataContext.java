@@ -100,6 +100,13 @@ public interface MycatDataContext extends Wrapper, SessionOpt {
 
     void close();
 
+    /**
+     * 登记当前语句持有的资源,语句的响应结束时释放,事务中登记的资源在事务结束后释放
+     */
+    void addStatementResource(AutoCloseable resource);
+
+    void closeStatementResources();
+
     //need catch exception
     void block(Runnable runnable);
 
@@ -19,6 +19,9 @@ import io.mycat.beans.mysql.packet.MySQLPacket;
 
 import java.math.BigDecimal;
 import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalTime;
 
 /**
  * 文本结果集收集类
@@ -129,7 +132,7 @@ public class TextResultSetTransforCollector implements ResultSetTransfor {
       int startIndex) {
     String string = mySQLPacket.readLenencString();
     double v = Double.parseDouble(string);
-    collector.addValue(columnIndex, v, true);
+    collector.addValue(columnIndex, v, false);
   }
 
   @Override
@@ -137,7 +140,7 @@ public class TextResultSetTransforCollector implements ResultSetTransfor {
       int startIndex) {
     String string = mySQLPacket.readLenencString();
     double v = Double.parseDouble(string);
-    collector.addValue(columnIndex, v, true);
+    collector.addValue(columnIndex, v, false);
   }
 
   @Override
@@ -149,8 +152,7 @@ public class TextResultSetTransforCollector implements ResultSetTransfor {
   public void collectTimestamp(int columnIndex, ColumnDefPacket columnDef, MySQLPacket mySQLPacket,
       int startIndex) {
     String string = mySQLPacket.readLenencString();
-    Date date = Date.valueOf(string);
-    collector.addDate(columnIndex, date);
+    addDate(columnIndex, parseTimestamp(string));
   }
 
   @Override
@@ -165,41 +167,35 @@ public class TextResultSetTransforCollector implements ResultSetTransfor {
   public void collectDate(int columnIndex, ColumnDefPacket columnDef, MySQLPacket mySQLPacket,
       int startIndex) {
     String string = mySQLPacket.readLenencString();
-    Date date = Date.valueOf(string);
-    collector.addDate(columnIndex, date);
-
+    addDate(columnIndex, parseDate(string));
   }
 
   @Override
   public void collectTime(int columnIndex, ColumnDefPacket columnDef, MySQLPacket mySQLPacket,
       int startIndex) {
     String string = mySQLPacket.readLenencString();
-    Date date = Date.valueOf(string);
-    collector.addDate(columnIndex, date);
+    addDate(columnIndex, parseTime(string));
   }
 
   @Override
   public void collectDatetime(int columnIndex, ColumnDefPacket columnDef, MySQLPacket mySQLPacket,
       int startIndex) {
     String string = mySQLPacket.readLenencString();
-    Date date = Date.valueOf(string);
-    collector.addDate(columnIndex, date);
+    addDate(columnIndex, parseTimestamp(string));
   }
 
   @Override
   public void collectYear(int columnIndex, ColumnDefPacket columnDef, MySQLPacket mySQLPacket,
       int startIndex) {
     String string = mySQLPacket.readLenencString();
-    Date date = Date.valueOf(string);
-    collector.addDate(columnIndex, date);
+    collector.addValue(columnIndex, Long.parseLong(string), false);
   }
 
   @Override
   public void collectNewDate(int columnIndex, ColumnDefPacket columnDef, MySQLPacket mySQLPacket,
       int startIndex) {
     String string = mySQLPacket.readLenencString();
-    Date date = Date.valueOf(string);
-    collector.addDate(columnIndex, date);
+    addDate(columnIndex, parseDate(string));
   }
 
   @Override
@@ -394,4 +390,60 @@ public class TextResultSetTransforCollector implements ResultSetTransfor {
   public void collectColumnList(ColumnDefPacket[] packets) {
     collector.collectColumnList(packets);
   }
+
+  private void addDate(int columnIndex, java.util.Date date) {
+    if (date == null) {
+      collector.addNull(columnIndex);
+    } else {
+      collector.addDate(columnIndex, date);
+    }
+  }
+
+  /**
+   * 零值日期(0000-00-00)和JDBC的zeroDateTimeBehavior=convertToNull一样返回null
+   */
+  static Date parseDate(String text) {
+    if (text.startsWith("0000-00-00")) {
+      return null;
+    }
+    return Date.valueOf(text.length() > 10 ? text.substring(0, 10) : text);
+  }
+
+  /**
+   * yyyy-MM-dd HH:mm:ss[.ffffff],保留时间与小数秒
+   */
+  static Timestamp parseTimestamp(String text) {
+    if (text.startsWith("0000-00-00")) {
+      return null;
+    }
+    if (text.length() == 10) {
+      return Timestamp.valueOf(text + " 00:00:00");
+    }
+    return Timestamp.valueOf(text);
+  }
+
+  /**
+   * [-]HHH:mm:ss[.ffffff],小时可以超过24也可以是负数(-838:59:59到838:59:59),
+   * 结果和JDBC的Time一样以1970-01-01本地零点为基准
+   */
+  static Time parseTime(String text) {
+    boolean negative = text.startsWith("-");
+    String value = negative ? text.substring(1) : text;
+    int first = value.indexOf(':');
+    int second = value.indexOf(':', first + 1);
+    long hours = Long.parseLong(value.substring(0, first));
+    long minutes = Long.parseLong(value.substring(first + 1, second));
+    String secondText = value.substring(second + 1);
+    long nanos = 0;
+    int dot = secondText.indexOf('.');
+    if (dot >= 0) {
+      String fraction = (secondText.substring(dot + 1) + "000000000").substring(0, 9);
+      nanos = Long.parseLong(fraction);
+      secondText = secondText.substring(0, dot);
+    }
+    long seconds = Long.parseLong(secondText);
+    long millis = ((hours * 60 + minutes) * 60 + seconds) * 1000 + nanos / 1000000;
+    long midnight = Time.valueOf(LocalTime.MIDNIGHT).getTime();
+    return new Time(midnight + (negative ? -millis : millis));
+  }
 }
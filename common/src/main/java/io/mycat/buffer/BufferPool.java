@@ -41,6 +41,13 @@ public interface BufferPool  extends Dumpable {
 
     int trace();
 
+    /**
+     * 缓冲池所属的线程,实现可以为该线程使用不加锁的缓存
+     */
+    default void bindOwner(Thread owner) {
+
+    }
+
 
     public default ByteBuffer expandBuffer(ByteBuffer old, int len) {
         assert old != null;
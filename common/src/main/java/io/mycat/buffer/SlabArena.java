@@ -0,0 +1,266 @@
+/**
+ * Copyright (C) <2020>  <chen junwen>
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with this program.  If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mycat.buffer;
+
+import sun.nio.ch.DirectBuffer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多个reactor共享的堆外内存.
+ * 一整块堆外内存按pageSize分页,每页是一棵伙伴分配树,最小块为chunkSize,
+ * 块大小为chunkSize的2的幂倍;回收时按地址直接算出页与块的位置
+ *
+ * @author Junwen Chen
+ **/
+@SuppressWarnings("restriction")
+final class SlabArena {
+    private final ByteBuffer memory;
+    private final long baseAddress;
+    private final int pageSize;
+    private final int chunkSize;
+    private final int chunkShift;
+    private final int maxOrder;
+    private final Page[] pages;
+    private final AtomicInteger nextPage = new AtomicInteger();
+
+    SlabArena(int pageSize, int chunkSize, int pageCount) {
+        if (Integer.bitCount(pageSize) != 1 || Integer.bitCount(chunkSize) != 1 || chunkSize > pageSize) {
+            throw new IllegalArgumentException("pageSize and chunkSize must be power of 2 and chunkSize <= pageSize");
+        }
+        if ((long) pageSize * pageCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("pageSize * pageCount must be less than 2G");
+        }
+        this.pageSize = pageSize;
+        this.chunkSize = chunkSize;
+        this.chunkShift = Integer.numberOfTrailingZeros(chunkSize);
+        this.maxOrder = Integer.numberOfTrailingZeros(pageSize) - chunkShift;
+        this.memory = ByteBuffer.allocateDirect(pageSize * pageCount);
+        this.baseAddress = ((DirectBuffer) memory).address();
+        this.pages = new Page[pageCount];
+        for (int i = 0; i < pageCount; i++) {
+            pages[i] = new Page(maxOrder);
+        }
+    }
+
+    int getMaxOrder() {
+        return maxOrder;
+    }
+
+    int getChunkSize() {
+        return chunkSize;
+    }
+
+    long capacity() {
+        return (long) pageSize * pages.length;
+    }
+
+    int chunkCount() {
+        return (int) (capacity() >>> chunkShift);
+    }
+
+    /**
+     * 块的第一个chunk在整块内存中的序号,调用前需要确认{@link #contains(ByteBuffer)}
+     */
+    int indexOf(ByteBuffer buffer) {
+        return (int) ((((DirectBuffer) buffer).address() - baseAddress) >>> chunkShift);
+    }
+
+    /**
+     * 能容纳size的最小块的阶,超过一页时返回大于maxOrder的值
+     */
+    int orderOf(int size) {
+        if (size <= chunkSize) {
+            return 0;
+        }
+        int chunks = (size + chunkSize - 1) >>> chunkShift;
+        return 32 - Integer.numberOfLeadingZeros(chunks - 1);
+    }
+
+    /**
+     * 从上一次成功的页开始查找,所有页都没有空闲块时返回null
+     */
+    ByteBuffer allocate(int order) {
+        int start = nextPage.get();
+        for (int i = 0; i < pages.length; i++) {
+            int pageIndex = (start + i) % pages.length;
+            int chunk = pages[pageIndex].allocate(order);
+            if (chunk >= 0) {
+                if (i != 0) {
+                    nextPage.lazySet(pageIndex);
+                }
+                int offset = pageIndex * pageSize + (chunk << chunkShift);
+                ByteBuffer duplicate = memory.duplicate();
+                duplicate.limit(offset + (chunkSize << order)).position(offset);
+                return duplicate.slice();
+            }
+        }
+        return null;
+    }
+
+    boolean contains(ByteBuffer buffer) {
+        if (!buffer.isDirect()) {
+            return false;
+        }
+        long offset = ((DirectBuffer) buffer).address() - baseAddress;
+        return offset >= 0 && offset < capacity();
+    }
+
+    /**
+     * 不是该内存的块或者重复回收时返回false
+     */
+    boolean free(ByteBuffer buffer) {
+        if (!contains(buffer)) {
+            return false;
+        }
+        int offset = (int) (((DirectBuffer) buffer).address() - baseAddress);
+        int capacity = buffer.capacity();
+        int order = orderOf(capacity);
+        if ((chunkSize << order) != capacity) {
+            return false;
+        }
+        return pages[offset / pageSize].free((offset % pageSize) >>> chunkShift, order);
+    }
+
+    long freeBytes() {
+        long chunks = 0;
+        for (Page page : pages) {
+            chunks += page.getFreeChunks();
+        }
+        return chunks << chunkShift;
+    }
+
+    /**
+     * 碎片率,1减去最大空闲块占全部空闲内存的比例
+     */
+    double fragmentation() {
+        long free = 0;
+        int largest = -1;
+        for (Page page : pages) {
+            free += page.getFreeChunks();
+            largest = Math.max(largest, page.largestFreeOrder());
+        }
+        if (free == 0 || largest < 0) {
+            return 0;
+        }
+        return 1 - (double) (1L << largest) / free;
+    }
+
+    /**
+     * 一页的伙伴分配器,空闲块按阶组成双向链表,以块内最小chunk的序号表示
+     */
+    static final class Page {
+        private static final int NONE = -1;
+        private final int maxOrder;
+        private final int[] head;
+        private final int[] next;
+        private final int[] prev;
+        private final byte[] order;
+        private final boolean[] free;
+        private final boolean[] allocated;
+        private int freeChunks;
+
+        Page(int maxOrder) {
+            int chunks = 1 << maxOrder;
+            this.maxOrder = maxOrder;
+            this.head = new int[maxOrder + 1];
+            this.next = new int[chunks];
+            this.prev = new int[chunks];
+            this.order = new byte[chunks];
+            this.free = new boolean[chunks];
+            this.allocated = new boolean[chunks];
+            Arrays.fill(head, NONE);
+            push(0, maxOrder);
+            this.freeChunks = chunks;
+        }
+
+        synchronized int allocate(int order) {
+            int k = order;
+            while (k <= maxOrder && head[k] == NONE) {
+                k++;
+            }
+            if (k > maxOrder) {
+                return NONE;
+            }
+            int chunk = head[k];
+            remove(chunk, k);
+            while (k > order) {
+                k--;
+                push(chunk + (1 << k), k);
+            }
+            this.order[chunk] = (byte) order;
+            allocated[chunk] = true;
+            freeChunks -= 1 << order;
+            return chunk;
+        }
+
+        synchronized boolean free(int chunk, int order) {
+            if (!allocated[chunk] || this.order[chunk] != order) {
+                return false;
+            }
+            allocated[chunk] = false;
+            freeChunks += 1 << order;
+            while (order < maxOrder) {
+                int buddy = chunk ^ (1 << order);
+                if (!free[buddy] || this.order[buddy] != order) {
+                    break;
+                }
+                remove(buddy, order);
+                chunk = Math.min(chunk, buddy);
+                order++;
+            }
+            push(chunk, order);
+            return true;
+        }
+
+        synchronized int getFreeChunks() {
+            return freeChunks;
+        }
+
+        synchronized int largestFreeOrder() {
+            for (int k = maxOrder; k >= 0; k--) {
+                if (head[k] != NONE) {
+                    return k;
+                }
+            }
+            return NONE;
+        }
+
+        private void push(int chunk, int order) {
+            this.order[chunk] = (byte) order;
+            free[chunk] = true;
+            prev[chunk] = NONE;
+            next[chunk] = head[order];
+            if (head[order] != NONE) {
+                prev[head[order]] = chunk;
+            }
+            head[order] = chunk;
+        }
+
+        private void remove(int chunk, int order) {
+            free[chunk] = false;
+            if (prev[chunk] == NONE) {
+                head[order] = next[chunk];
+            } else {
+                next[prev[chunk]] = next[chunk];
+            }
+            if (next[chunk] != NONE) {
+                prev[next[chunk]] = prev[chunk];
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * Copyright (C) <2020>  <chen junwen>
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with this program.  If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mycat.buffer;
+
+import io.mycat.util.Dumper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 每个reactor一个实例,按块大小分级缓存回收的缓冲区,缓存只由所属线程访问,不加锁;
+ * 缓存未命中或者其他线程分配回收时使用共享的{@link SlabArena}.
+ * 超过一页或者共享内存耗尽时退回到堆内存并计数
+ *
+ * @author Junwen Chen
+ **/
+public class SlabBufferPool implements BufferPool {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SlabBufferPool.class);
+    public final static String CHUNK_SIZE = "chunkSize";
+    public final static String PAGE_SIZE = "pageSize";
+    public final static String PAGE_COUNT = "pageCount";
+    /**
+     * 最小块的缓存数量,每大一级减半
+     */
+    public final static String CACHE_SIZE = "cacheSize";
+    private static SlabArena sharedArena;
+    private static String sharedArenaKey;
+
+    private SlabArena arena;
+    private volatile Thread owner;
+    private ByteBuffer[][] caches;
+    private int[] cacheCounts;
+    /**
+     * 按块在共享内存中的序号标记已经在缓存中的块
+     */
+    private BitSet cached;
+    private final AtomicInteger trace = new AtomicInteger(0);
+    private final AtomicLong heapFallbackCount = new AtomicLong(0);
+
+    @Override
+    public void init(Map<String, String> args) {
+        int pageSize = Integer.parseInt(args.getOrDefault(PAGE_SIZE, String.valueOf(1024 * 1024)));
+        int chunkSize = Integer.parseInt(args.getOrDefault(CHUNK_SIZE, "512"));
+        int pageCount = Integer.parseInt(args.getOrDefault(PAGE_COUNT, "64"));
+        int cacheSize = Integer.parseInt(args.getOrDefault(CACHE_SIZE, "128"));
+        this.arena = getArena(pageSize, chunkSize, pageCount);
+        int maxOrder = arena.getMaxOrder();
+        this.caches = new ByteBuffer[maxOrder + 1][];
+        this.cacheCounts = new int[maxOrder + 1];
+        for (int i = 0; i <= maxOrder; i++) {
+            caches[i] = new ByteBuffer[Math.max(1, cacheSize >> i)];
+        }
+        this.cached = new BitSet(arena.chunkCount());
+    }
+
+    /**
+     * 相同参数的实例共享同一块堆外内存
+     */
+    private static synchronized SlabArena getArena(int pageSize, int chunkSize, int pageCount) {
+        String key = pageSize + "/" + chunkSize + "/" + pageCount;
+        if (sharedArena == null || !key.equals(sharedArenaKey)) {
+            sharedArena = new SlabArena(pageSize, chunkSize, pageCount);
+            sharedArenaKey = key;
+        }
+        return sharedArena;
+    }
+
+    @Override
+    public void bindOwner(Thread owner) {
+        this.owner = owner;
+    }
+
+    @Override
+    public ByteBuffer allocate() {
+        return allocate(arena.getChunkSize());
+    }
+
+    @Override
+    public ByteBuffer allocate(int size) {
+        trace.incrementAndGet();
+        int order = arena.orderOf(size);
+        if (order > arena.getMaxOrder()) {
+            return heapFallback(size);
+        }
+        if (Thread.currentThread() == owner) {
+            int count = cacheCounts[order];
+            if (count > 0) {
+                ByteBuffer[] cache = caches[order];
+                ByteBuffer buffer = cache[--count];
+                cache[count] = null;
+                cacheCounts[order] = count;
+                cached.clear(arena.indexOf(buffer));
+                return buffer;
+            }
+        }
+        ByteBuffer buffer = arena.allocate(order);
+        if (buffer == null) {
+            return heapFallback(size);
+        }
+        return buffer;
+    }
+
+    private ByteBuffer heapFallback(int size) {
+        long count = heapFallbackCount.incrementAndGet();
+        if ((count & (count - 1)) == 0) {
+            LOGGER.warn("can't allocate {} bytes from SlabBufferPool, heap fallback count:{}", size, count);
+        }
+        return ByteBuffer.allocate(size);
+    }
+
+    @Override
+    public ByteBuffer allocate(byte[] bytes) {
+        ByteBuffer buffer = allocate(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public int trace() {
+        return trace.get();
+    }
+
+    @Override
+    public void recycle(ByteBuffer theBuf) {
+        trace.decrementAndGet();
+        if (!theBuf.isDirect()) {
+            theBuf.clear();
+            return;
+        }
+        if (Thread.currentThread() == owner && arena.contains(theBuf)) {
+            int order = arena.orderOf(theBuf.capacity());
+            if (order <= arena.getMaxOrder()) {
+                //缓存中的块在共享内存里仍然是已分配状态,重复回收只能由缓存标记识别
+                int index = arena.indexOf(theBuf);
+                if (cached.get(index)) {
+                    LOGGER.warn("buffer {} is recycled twice", theBuf);
+                    return;
+                }
+                if (cacheCounts[order] < caches[order].length) {
+                    theBuf.clear();
+                    caches[order][cacheCounts[order]++] = theBuf;
+                    cached.set(index);
+                    return;
+                }
+            }
+        }
+        if (!arena.free(theBuf)) {
+            LOGGER.warn("not recycled buffer {}", theBuf);
+        }
+    }
+
+    @Override
+    public long capacity() {
+        return arena.capacity();
+    }
+
+    @Override
+    public int chunkSize() {
+        return arena.getChunkSize();
+    }
+
+    public long getHeapFallbackCount() {
+        return heapFallbackCount.get();
+    }
+
+    /**
+     * 共享内存的碎片率
+     */
+    public double getFragmentation() {
+        return arena.fragmentation();
+    }
+
+    public long getFreeBytes() {
+        return arena.freeBytes();
+    }
+
+    /**
+     * 线程内缓存的字节数,只是近似值
+     */
+    public long getCachedBytes() {
+        long bytes = 0;
+        for (int i = 0; i < cacheCounts.length; i++) {
+            bytes += (long) cacheCounts[i] * (arena.getChunkSize() << i);
+        }
+        return bytes;
+    }
+
+    @Override
+    public Dumper snapshot() {
+        return Dumper.create()
+                .addText("trace", trace.get())
+                .addText("chunkSize", chunkSize())
+                .addText("cachedBytes", getCachedBytes())
+                .addText("freeBytes", getFreeBytes())
+                .addText("fragmentation", getFragmentation())
+                .addText("heapFallback", getHeapFallbackCount());
+    }
+}
@@ -16,7 +16,10 @@ package io.mycat.router;
 
 import io.mycat.DataNode;
 import io.mycat.RangeVariable;
+import io.mycat.RangeVariableType;
 
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -37,6 +40,23 @@ public abstract class CustomRuleFunction {
 
     protected abstract void init(ShardingTableHandler tableHandler, Map<String, String> properties, Map<String, String> ranges);
 
+    /**
+     * 分片字段等值路由的类型化入口,不能确定唯一分片时返回null.
+     * 默认实现转换为RangeVariable计算,单值算法会覆盖为不产生中间对象的版本
+     */
+    public DataNode calculate(long value) {
+        return calculateEqual(value);
+    }
+
+    public DataNode calculate(Date value) {
+        return calculateEqual(value);
+    }
+
+    private DataNode calculateEqual(Object value) {
+        List<DataNode> dataNodes = calculate(Collections.singleton(new RangeVariable(columnName, false, RangeVariableType.EQUAL, value)));
+        return dataNodes.size() == 1 ? dataNodes.get(0) : null;
+    }
+
     public Map<String, String> getProperties() {
         return properties;
     }
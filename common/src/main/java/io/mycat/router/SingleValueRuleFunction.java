@@ -17,11 +17,17 @@ package io.mycat.router;
 import io.mycat.DataNode;
 import io.mycat.MycatException;
 import io.mycat.RangeVariable;
+import io.mycat.SimpleColumnInfo;
 import io.mycat.util.CollectionUtil;
 
+import java.nio.charset.StandardCharsets;
+import java.sql.JDBCType;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
@@ -31,9 +37,20 @@ import java.util.Set;
  * 路由算法接口
  */
 public abstract class SingleValueRuleFunction extends CustomRuleFunction {
+    /**
+     * 整数分片字段的范围不超过这个长度时逐个值计算分片,配置项rangeEnumerateThreshold
+     */
+    public static final int DEFAULT_RANGE_ENUMERATE_THRESHOLD = 64;
+    private int rangeEnumerateThreshold = -1;
 
     public abstract String name();
 
+    @Override
+    public synchronized void callInit(ShardingTableHandler tableHandler, String columnName, Map<String, String> properties, Map<String, String> ranges) {
+        super.callInit(tableHandler, columnName, properties, ranges);
+        this.rangeEnumerateThreshold = -1;
+    }
+
     @Override
     public List<DataNode> calculate(Set<RangeVariable> values) {
         ArrayList<DataNode> res = new ArrayList<>();
@@ -41,11 +58,17 @@ public abstract class SingleValueRuleFunction extends CustomRuleFunction {
             //匹配字段名
             if (getColumnName().equalsIgnoreCase(rangeVariable.getColumnName())) {
                 ///////////////////////////////////////////////////////////////
-                String begin = Objects.toString(rangeVariable.getBegin());
-                String end = Objects.toString(rangeVariable.getEnd());
+                Object begin = rangeVariable.getBegin();
                 switch (rangeVariable.getOperator()) {
                     case EQUAL: {
-                        DataNode dataNode = this.calculate(begin);
+                        DataNode dataNode;
+                        if (isLongValue(begin)) {
+                            dataNode = this.calculate(((Number) begin).longValue());
+                        } else if (begin instanceof Date) {
+                            dataNode = this.calculate((Date) begin);
+                        } else {
+                            dataNode = this.calculate(Objects.toString(begin));
+                        }
                         if (dataNode != null) {
                             CollectionUtil.setOpAdd(res, dataNode);
                         } else {
@@ -54,7 +77,7 @@ public abstract class SingleValueRuleFunction extends CustomRuleFunction {
                         break;
                     }
                     case RANGE: {
-                        List<DataNode> dataNodes = this.calculateRange(begin, end);
+                        List<DataNode> dataNodes = this.calculateRange(Objects.toString(begin), Objects.toString(rangeVariable.getEnd()));
                         if (dataNodes == null || dataNodes.size() == 0) {
                             return getTable().getShardingBackends();
                         }
@@ -85,6 +108,149 @@ public abstract class SingleValueRuleFunction extends CustomRuleFunction {
 
     public abstract int[] calculateIndexRange(String beginValue, String endValue);
 
+    /**
+     * 以下类型化的重载默认转为字符串计算,与字符串版本的结果一致,
+     * 数值类算法覆盖它们以避免构造与解析字符串
+     */
+    public int calculateIndex(long columnValue) {
+        return calculateIndex(Long.toString(columnValue));
+    }
+
+    public int calculateIndex(byte[] bytes, int offset, int length) {
+        return calculateIndex(new String(bytes, offset, length, StandardCharsets.UTF_8));
+    }
+
+    public int calculateIndex(Date columnValue) {
+        return calculateIndex(Objects.toString(columnValue));
+    }
+
+    protected static boolean isLongValue(Object value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+    }
+
+    /**
+     * 与{@link Long#parseLong(String)}接受的格式相同(可选的正负号加十进制数字)
+     */
+    protected static boolean isLong(byte[] bytes, int offset, int length) {
+        if (length <= 0) {
+            return false;
+        }
+        int i = offset;
+        int end = offset + length;
+        boolean negative = false;
+        if (bytes[i] == '-' || bytes[i] == '+') {
+            negative = bytes[i] == '-';
+            i++;
+            if (i == end) {
+                return false;
+            }
+        }
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multmin = limit / 10;
+        long result = 0;
+        for (; i < end; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9 || result < multmin) {
+                return false;
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                return false;
+            }
+            result -= digit;
+        }
+        return true;
+    }
+
+    /**
+     * 调用前需要用{@link #isLong(byte[], int, int)}检查
+     */
+    protected static long parseLong(byte[] bytes, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        boolean negative = bytes[i] == '-';
+        if (negative || bytes[i] == '+') {
+            i++;
+        }
+        long result = 0;
+        for (; i < end; i++) {
+            result = result * 10 - (bytes[i] - '0');
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * 与Long.toString(value).hashCode()相同,但不构造字符串
+     */
+    protected static int stringHashCode(long value) {
+        int h = 0;
+        long q = value;
+        if (q < 0) {
+            h = '-';
+        } else {
+            q = -q;
+        }
+        long divisor = 1;
+        while (q / divisor <= -10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            int digit = (int) -((q / divisor) % 10);
+            h = 31 * h + ('0' + digit);
+        }
+        return h;
+    }
+
+    /**
+     * ASCII字符的字符串hashCode与按字节计算相同,含有非ASCII字节时返回false
+     */
+    protected static boolean isAscii(byte[] bytes, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            if (bytes[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected static int asciiHashCode(byte[] bytes, int offset, int length) {
+        int h = 0;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            h = 31 * h + bytes[i];
+        }
+        return h;
+    }
+
+    private static final ThreadLocal<byte[]> ASCII_BUFFER = ThreadLocal.withInitial(() -> new byte[20]);
+
+    /**
+     * 线程内复用的20字节缓冲区,供{@link #toAsciiBytes(long, byte[])}使用,不能跨调用保存
+     */
+    protected static byte[] asciiBuffer() {
+        return ASCII_BUFFER.get();
+    }
+
+    /**
+     * 把Long.toString(value)的ASCII编码写入buffer开头,返回长度,buffer至少20字节
+     */
+    protected static int toAsciiBytes(long value, byte[] buffer) {
+        int length = 0;
+        long q = value;
+        if (q < 0) {
+            buffer[length++] = '-';
+        } else {
+            q = -q;
+        }
+        long divisor = 1;
+        while (q / divisor <= -10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            buffer[length++] = (byte) ('0' - (q / divisor) % 10);
+        }
+        return length;
+    }
+
 
     /**
      * 对于存储数据按顺序存放的字段做范围路由，可以使用这个函数
@@ -125,19 +291,49 @@ public abstract class SingleValueRuleFunction extends CustomRuleFunction {
 
     public DataNode calculate(String columnValue) {
         int i = calculateIndex(columnValue);
+        if (i != -1 && !isValidIndex(i)) {
+            throw outOfRange(i, columnValue);
+        }
+        return toDataNode(i);
+    }
+
+    /**
+     * 只在越界时装箱分片值
+     */
+    @Override
+    public DataNode calculate(long columnValue) {
+        int i = calculateIndex(columnValue);
+        if (i != -1 && !isValidIndex(i)) {
+            throw outOfRange(i, columnValue);
+        }
+        return toDataNode(i);
+    }
+
+    @Override
+    public DataNode calculate(Date columnValue) {
+        int i = calculateIndex(columnValue);
+        if (i != -1 && !isValidIndex(i)) {
+            throw outOfRange(i, columnValue);
+        }
+        return toDataNode(i);
+    }
+
+    private boolean isValidIndex(int i) {
+        return 0 <= i && i < getTable().getShardingBackends().size();
+    }
+
+    private DataNode toDataNode(int i) {
         if (i == -1) {
             return null;
         }
+        return getTable().getShardingBackends().get(i);
+    }
+
+    private MycatException outOfRange(int i, Object columnValue) {
         ShardingTableHandler table = getTable();
-        List<DataNode> shardingBackends = table.getShardingBackends();
-        int size = shardingBackends.size();
-        if (0 <= i && i < size) {
-            return shardingBackends.get(i);
-        } else {
-            String message = MessageFormat.format("{0}.{1} 分片算法越界 {3} 分片值:{4}",
-                    table.getSchemaName(), table.getTableName(), columnValue);
-            throw new MycatException(message);
-        }
+        String message = MessageFormat.format("{0}.{1} 分片算法越界 {2} 分片值:{3}",
+                table.getSchemaName(), table.getTableName(), i, columnValue);
+        return new MycatException(message);
     }
 
 
@@ -146,6 +342,9 @@ public abstract class SingleValueRuleFunction extends CustomRuleFunction {
         ShardingTableHandler table = getTable();
         List<DataNode> shardingBackends = (List) table.getShardingBackends();
         int size = shardingBackends.size();
+        if (ints == null) {
+            ints = enumerateIndexRange(beginValue, endValue, size);
+        }
         if (ints == null) {
             return shardingBackends;
         }
@@ -160,4 +359,66 @@ public abstract class SingleValueRuleFunction extends CustomRuleFunction {
         return res;
     }
 
+    /**
+     * 哈希类算法无法直接计算范围,整数字段的小范围逐个值计算分片并去重,
+     * 得到的分片集合是精确的.非整数字段的字符串范围不能枚举,返回null表示全部分片
+     */
+    protected int[] enumerateIndexRange(String beginValue, String endValue, int nodeCount) {
+        if (beginValue == null || endValue == null || !isIntegralColumn()) {
+            return null;
+        }
+        long begin;
+        long end;
+        try {
+            begin = Long.parseLong(beginValue.trim());
+            end = Long.parseLong(endValue.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (end < begin) {
+            return new int[0];
+        }
+        long threshold = getRangeEnumerateThreshold();
+        //end - begin 可能溢出
+        if (end - begin < 0 || end - begin >= threshold) {
+            return null;
+        }
+        BitSet indexes = new BitSet(nodeCount);
+        for (long value = begin; ; value++) {
+            int index = calculateIndex(value);
+            if (index < 0 || index >= nodeCount) {
+                return null;
+            }
+            indexes.set(index);
+            if (value == end || indexes.cardinality() == nodeCount) {
+                break;
+            }
+        }
+        return indexes.stream().toArray();
+    }
+
+    protected boolean isIntegralColumn() {
+        ShardingTableHandler table = getTable();
+        String columnName = getColumnName();
+        if (table == null || columnName == null) {
+            return false;
+        }
+        SimpleColumnInfo column = table.getColumnByName(columnName);
+        if (column == null) {
+            return false;
+        }
+        JDBCType jdbcType = column.getJdbcType();
+        return jdbcType == JDBCType.TINYINT || jdbcType == JDBCType.SMALLINT
+                || jdbcType == JDBCType.INTEGER || jdbcType == JDBCType.BIGINT;
+    }
+
+    public int getRangeEnumerateThreshold() {
+        int threshold = this.rangeEnumerateThreshold;
+        if (threshold < 0) {
+            String text = properties == null ? null : properties.get("rangeEnumerateThreshold");
+            threshold = text == null ? DEFAULT_RANGE_ENUMERATE_THRESHOLD : Integer.parseInt(text.trim());
+            this.rangeEnumerateThreshold = threshold;
+        }
+        return threshold;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,364 @@
+package io.mycat.sql;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 语句形状指纹:扫描原始字节,把整数字面量与单引号字符串替换为'?',
+ * 得到的模板可作为缓存的key,字面量按出现顺序保存以便回填.
+ * <p>
+ * 只替换绑定后能还原成同一语法树的字面量,注释,'?'占位符,带转义的字符串等情况直接标记为不可缓存.
+ * <p>
+ * {@link #normalize(String, int)}是用于执行统计的宽松形式.
+ *
+ * @author Junwen Chen
+ **/
+@Getter
+@ToString
+public final class SQLFingerprint {
+    private static final SQLFingerprint NOT_CACHEABLE = new SQLFingerprint(null, Collections.emptyList(), false);
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private final String template;
+    private final List<Object> literals;
+    private final boolean cacheable;
+
+    private SQLFingerprint(String template, List<Object> literals, boolean cacheable) {
+        this.template = template;
+        this.literals = literals;
+        this.cacheable = cacheable;
+    }
+
+    public static SQLFingerprint of(String sql) {
+        byte[] bytes = sql.getBytes(StandardCharsets.UTF_8);
+        return of(bytes, 0, bytes.length);
+    }
+
+    public static SQLFingerprint of(byte[] bytes, int offset, int length) {
+        final int end = offset + length;
+        byte[] template = new byte[length];
+        int pos = 0;
+        List<Object> literals = new ArrayList<>();
+        int i = offset;
+        while (i < end) {
+            byte b = bytes[i];
+            switch (b) {
+                case '?':
+                    return NOT_CACHEABLE;
+                case '#':
+                    return NOT_CACHEABLE;
+                case '-':
+                    if (i + 1 < end && bytes[i + 1] == '-') {
+                        return NOT_CACHEABLE;
+                    }
+                    break;
+                case '/':
+                    if (i + 1 < end && bytes[i + 1] == '*') {
+                        return NOT_CACHEABLE;
+                    }
+                    break;
+                case '`':
+                case '"': {
+                    int close = skipQuoted(bytes, i, end);
+                    if (close < 0) {
+                        return NOT_CACHEABLE;
+                    }
+                    System.arraycopy(bytes, i, template, pos, close - i);
+                    pos += close - i;
+                    i = close;
+                    continue;
+                }
+                case '\'': {
+                    if (i > offset && isIdentifierPart(bytes[i - 1])) {
+                        //N'abc',_utf8'abc',x'1F' 属于语句形状的一部分
+                        int close = skipQuoted(bytes, i, end);
+                        if (close < 0) {
+                            return NOT_CACHEABLE;
+                        }
+                        System.arraycopy(bytes, i, template, pos, close - i);
+                        pos += close - i;
+                        i = close;
+                        continue;
+                    }
+                    int close = readString(bytes, i, end, literals);
+                    if (close < 0) {
+                        return NOT_CACHEABLE;
+                    }
+                    template[pos++] = '?';
+                    i = close;
+                    continue;
+                }
+                default:
+                    if (isDigit(b) && (i == offset || !isNumberPrefix(bytes[i - 1]))) {
+                        int close = readNumber(bytes, i, end, literals);
+                        if (close < 0) {
+                            //小数,十六进制,科学计数法等原样保留
+                            close = skipIdentifierPart(bytes, i, end);
+                            System.arraycopy(bytes, i, template, pos, close - i);
+                            pos += close - i;
+                        } else {
+                            template[pos++] = '?';
+                        }
+                        i = close;
+                        continue;
+                    } else if (isIdentifierPart(b)) {
+                        int close = skipIdentifierPart(bytes, i, end);
+                        System.arraycopy(bytes, i, template, pos, close - i);
+                        pos += close - i;
+                        i = close;
+                        continue;
+                    }
+            }
+            template[pos++] = b;
+            i++;
+        }
+        return new SQLFingerprint(new String(template, 0, pos, StandardCharsets.UTF_8), literals, true);
+    }
+
+    public boolean hasLiterals() {
+        return !literals.isEmpty();
+    }
+
+    private static int skipQuoted(byte[] bytes, int start, int end) {
+        byte quote = bytes[start];
+        int i = start + 1;
+        while (i < end) {
+            byte b = bytes[i];
+            if (b == '\\' && quote != '`') {
+                i += 2;
+                continue;
+            }
+            if (b == quote) {
+                if (i + 1 < end && bytes[i + 1] == quote) {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    private static int readString(byte[] bytes, int start, int end, List<Object> literals) {
+        byte[] value = null;
+        int length = 0;
+        int i = start + 1;
+        while (i < end) {
+            byte b = bytes[i];
+            if (b == '\\') {
+                //转义规则由解析器决定,不在这里复刻
+                return -1;
+            }
+            if (b == '\'') {
+                if (i + 1 < end && bytes[i + 1] == '\'') {
+                    if (value == null) {
+                        value = new byte[end - start];
+                        System.arraycopy(bytes, start + 1, value, 0, i - start - 1);
+                        length = i - start - 1;
+                    }
+                    value[length++] = '\'';
+                    i += 2;
+                    continue;
+                }
+                if (value == null) {
+                    literals.add(new String(bytes, start + 1, i - start - 1, StandardCharsets.UTF_8));
+                } else {
+                    literals.add(new String(value, 0, length, StandardCharsets.UTF_8));
+                }
+                return i + 1;
+            }
+            if (value != null) {
+                value[length++] = b;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    private static int readNumber(byte[] bytes, int start, int end, List<Object> literals) {
+        int i = start;
+        long value = 0;
+        boolean overflow = false;
+        while (i < end && isDigit(bytes[i])) {
+            int digit = bytes[i] - '0';
+            if (!overflow && value > (Long.MAX_VALUE - digit) / 10) {
+                overflow = true;
+            }
+            value = value * 10 + digit;
+            i++;
+        }
+        if (i < end && (bytes[i] == '.' || isIdentifierPart(bytes[i]))) {
+            return -1;
+        }
+        if (overflow) {
+            literals.add(new BigInteger(new String(bytes, start, i - start, StandardCharsets.US_ASCII)));
+        } else {
+            literals.add(value);
+        }
+        return i;
+    }
+
+    private static int skipIdentifierPart(byte[] bytes, int start, int end) {
+        int i = start;
+        while (i < end && (isIdentifierPart(bytes[i]) || bytes[i] == '.')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isNumberPrefix(byte b) {
+        return isIdentifierPart(b) || b == '.' || b == '@';
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isIdentifierPart(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || isDigit(b) || b == '_' || b == '$' || b < 0;
+    }
+
+    /**
+     * 用于执行统计的宽松指纹:常量替换为?,去掉注释,合并空白并把ASCII字母转为小写,
+     * in列表与多行values合并为一项,超过maxLength的部分截断.
+     * 与{@link #of(String)}共用同一套字节扫描,但结果不能回填字面量,只用于归类同类sql
+     */
+    public static String normalize(String sql, int maxLength) {
+        byte[] bytes = sql.getBytes(StandardCharsets.UTF_8);
+        final int end = bytes.length;
+        byte[] out = new byte[end + 3];
+        int pos = 0;
+        int i = 0;
+        while (i < end && pos < maxLength) {
+            byte b = bytes[i];
+            if (isWhitespace(b)) {
+                pos = appendSpace(out, pos);
+                i++;
+            } else if (b == '\'' || b == '"') {
+                int close = skipQuoted(bytes, i, end);
+                i = close < 0 ? end : close;
+                pos = appendParameter(out, pos);
+            } else if (b == '`') {
+                int close = skipQuoted(bytes, i, end);
+                close = close < 0 ? end : close;
+                System.arraycopy(bytes, i, out, pos, close - i);
+                pos += close - i;
+                i = close;
+            } else if (b == '/' && i + 1 < end && bytes[i + 1] == '*') {
+                int close = indexOf(bytes, i + 2, end, '*', '/');
+                i = close < 0 ? end : close + 2;
+                pos = appendSpace(out, pos);
+            } else if (b == '#' || (b == '-' && i + 2 < end && bytes[i + 1] == '-' && isWhitespace(bytes[i + 2]))) {
+                int close = indexOf(bytes, i, end, '\n', '\n');
+                i = close < 0 ? end : close + 1;
+                pos = appendSpace(out, pos);
+            } else if (isDigit(b) && !(pos > 0 && isNumberPrefix(out[pos - 1]))) {
+                i = skipIdentifierPart(bytes, i, end);
+                pos = appendParameter(out, pos);
+            } else if (b == ')') {
+                out[pos++] = b;
+                pos = collapseGroups(out, pos);
+                i++;
+            } else if (b < 0) {
+                //多字节字符整体复制,截断时不会拆开
+                int close = i + 1;
+                while (close < end && (bytes[close] & 0xC0) == 0x80) {
+                    close++;
+                }
+                System.arraycopy(bytes, i, out, pos, close - i);
+                pos += close - i;
+                i = close;
+            } else {
+                out[pos++] = (b >= 'A' && b <= 'Z') ? (byte) (b + ('a' - 'A')) : b;
+                i++;
+            }
+        }
+        while (pos > 0 && (out[pos - 1] == ' ' || out[pos - 1] == ';')) {
+            pos--;
+        }
+        String text = new String(out, 0, pos, StandardCharsets.UTF_8);
+        return i < end ? text + "..." : text;
+    }
+
+    /**
+     * FNV-1a 64位哈希
+     */
+    public static long hash(String fingerprint) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < fingerprint.length(); i++) {
+            hash ^= fingerprint.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f' || b == 0x0B;
+    }
+
+    /**
+     * 返回first,second两个连续字节在[start,end)中首次出现的位置,没有则返回-1
+     */
+    private static int indexOf(byte[] bytes, int start, int end, char first, char second) {
+        for (int i = start; i < end; i++) {
+            if (bytes[i] == first && (first == second || (i + 1 < end && bytes[i + 1] == second))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int appendSpace(byte[] out, int pos) {
+        if (pos > 0 && out[pos - 1] != ' ') {
+            out[pos++] = ' ';
+        }
+        return pos;
+    }
+
+    /**
+     * in (?, ?, ?) 合并为 in (?)
+     */
+    private static int appendParameter(byte[] out, int pos) {
+        int end = skipSpaceBackward(out, pos);
+        if (end > 0 && out[end - 1] == ',') {
+            int begin = skipSpaceBackward(out, end - 1);
+            if (begin > 0 && out[begin - 1] == '?') {
+                return begin;
+            }
+        }
+        out[pos++] = '?';
+        return pos;
+    }
+
+    /**
+     * values (?), (?) 合并为 values (?)
+     */
+    private static int collapseGroups(byte[] out, int pos) {
+        if (pos < 8 || out[pos - 2] != '?' || out[pos - 3] != '(') {
+            return pos;
+        }
+        int end = skipSpaceBackward(out, pos - 3);
+        if (end == 0 || out[end - 1] != ',') {
+            return pos;
+        }
+        int begin = skipSpaceBackward(out, end - 1);
+        if (begin >= 3 && out[begin - 1] == ')' && out[begin - 2] == '?' && out[begin - 3] == '(') {
+            return begin;
+        }
+        return pos;
+    }
+
+    private static int skipSpaceBackward(byte[] out, int end) {
+        while (end > 0 && out[end - 1] == ' ') {
+            end--;
+        }
+        return end;
+    }
+}
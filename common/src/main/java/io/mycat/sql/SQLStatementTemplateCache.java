@@ -0,0 +1,161 @@
+package io.mycat.sql;
+
+import com.alibaba.fastsql.sql.SQLUtils;
+import com.alibaba.fastsql.sql.ast.SQLExpr;
+import com.alibaba.fastsql.sql.ast.SQLObject;
+import com.alibaba.fastsql.sql.ast.SQLReplaceable;
+import com.alibaba.fastsql.sql.ast.SQLStatement;
+import com.alibaba.fastsql.sql.ast.expr.SQLCharExpr;
+import com.alibaba.fastsql.sql.ast.expr.SQLIntegerExpr;
+import com.alibaba.fastsql.sql.ast.expr.SQLVariantRefExpr;
+import com.alibaba.fastsql.sql.dialect.mysql.visitor.MySqlASTVisitorAdapter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 以{@link SQLFingerprint}的模板为key缓存解析后的语法树模板,
+ * 同一形状的语句只需克隆模板并回填字面量,不再经过解析器.
+ * <p>
+ * 形状首次出现时仍然按原文解析,并用原文的语法树校验模板回填的结果(节点类型序列与输出的SQL都要一致),
+ * 校验失败的形状记为不可缓存,以后都走原来的解析路径.
+ *
+ * @author Junwen Chen
+ **/
+public class SQLStatementTemplateCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SQLStatementTemplateCache.class);
+    private static final List<SQLStatement> NOT_CACHEABLE = Collections.emptyList();
+    private final Cache<String, List<SQLStatement>> cache;
+    private final int maxSqlLength;
+
+    public SQLStatementTemplateCache(long maximumSize, int maxSqlLength) {
+        this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+        this.maxSqlLength = maxSqlLength;
+    }
+
+    public LinkedList<SQLStatement> parse(String sql, Function<String, List<SQLStatement>> parser) {
+        if (sql.length() > maxSqlLength) {
+            return new LinkedList<>(parser.apply(sql));
+        }
+        SQLFingerprint fingerprint = SQLFingerprint.of(sql);
+        if (!fingerprint.isCacheable()) {
+            return new LinkedList<>(parser.apply(sql));
+        }
+        String key = fingerprint.getTemplate();
+        List<SQLStatement> templates = cache.getIfPresent(key);
+        if (templates == NOT_CACHEABLE) {
+            return new LinkedList<>(parser.apply(sql));
+        }
+        if (templates != null) {
+            LinkedList<SQLStatement> statements = bind(templates, fingerprint.getLiterals());
+            if (statements != null) {
+                return statements;
+            }
+            return new LinkedList<>(parser.apply(sql));
+        }
+        List<SQLStatement> statements = parser.apply(sql);
+        cache.put(key, createTemplates(key, fingerprint.getLiterals(), statements, parser));
+        return new LinkedList<>(statements);
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    private List<SQLStatement> createTemplates(String key,
+                                               List<Object> literals,
+                                               List<SQLStatement> originals,
+                                               Function<String, List<SQLStatement>> parser) {
+        try {
+            List<SQLStatement> templates = parser.apply(key);
+            if (templates.size() != originals.size()) {
+                return NOT_CACHEABLE;
+            }
+            LinkedList<SQLStatement> bound = bind(templates, literals);
+            if (bound == null) {
+                return NOT_CACHEABLE;
+            }
+            for (int i = 0; i < originals.size(); i++) {
+                SQLStatement original = originals.get(i);
+                SQLStatement statement = bound.get(i);
+                if (!nodeClasses(original).equals(nodeClasses(statement))) {
+                    return NOT_CACHEABLE;
+                }
+                if (!SQLUtils.toMySqlString(original).equals(SQLUtils.toMySqlString(statement))) {
+                    return NOT_CACHEABLE;
+                }
+            }
+            return Collections.unmodifiableList(new ArrayList<>(templates));
+        } catch (Throwable e) {
+            LOGGER.debug("statement template is not cacheable:{}", key, e);
+            return NOT_CACHEABLE;
+        }
+    }
+
+    private static LinkedList<SQLStatement> bind(List<SQLStatement> templates, List<Object> literals) {
+        LinkedList<SQLStatement> statements = new LinkedList<>();
+        LiteralBinder binder = new LiteralBinder(literals);
+        for (SQLStatement template : templates) {
+            SQLStatement statement = template.clone();
+            statement.accept(binder);
+            if (binder.failed) {
+                return null;
+            }
+            statements.add(statement);
+        }
+        if (binder.index != literals.size()) {
+            return null;
+        }
+        return statements;
+    }
+
+    private static List<Class> nodeClasses(SQLStatement statement) {
+        List<Class> classes = new ArrayList<>();
+        statement.accept(new MySqlASTVisitorAdapter() {
+            @Override
+            public void preVisit(SQLObject x) {
+                classes.add(x.getClass());
+            }
+        });
+        return classes;
+    }
+
+    private static class LiteralBinder extends MySqlASTVisitorAdapter {
+        private final List<Object> literals;
+        private int index;
+        private boolean failed;
+
+        LiteralBinder(List<Object> literals) {
+            this.literals = literals;
+        }
+
+        @Override
+        public boolean visit(SQLVariantRefExpr x) {
+            if (!"?".equals(x.getName())) {
+                return false;
+            }
+            SQLObject parent = x.getParent();
+            if (index < literals.size() && parent instanceof SQLReplaceable) {
+                Object literal = literals.get(index++);
+                SQLExpr expr = literal instanceof String ? new SQLCharExpr((String) literal) : new SQLIntegerExpr((Number) literal);
+                expr.setParent(parent);
+                if (((SQLReplaceable) parent).replace(x, expr)) {
+                    return false;
+                }
+            }
+            failed = true;
+            return false;
+        }
+    }
+}
@@ -20,6 +20,23 @@ public class SqlRecord implements Comparable<SqlRecord> {
     double connectionQueryTime;
     double wholeTime;
 
+    public void clear() {
+        executionTime = 0;
+        statement = null;
+        startTime = 0;
+        endTime = 0;
+        sqlRows = 0;
+        netInBytes = 0;
+        netOutBytes = 0;
+        parseTime = 0;
+        compileTime = 0;
+        cboTime = 0;
+        rboTime = 0;
+        connectionPoolTime = 0;
+        connectionQueryTime = 0;
+        wholeTime = 0;
+    }
+
     @Override
     public int compareTo(@NotNull SqlRecord o) {
         return this.statement.compareTo(o.statement);
@@ -0,0 +1,12 @@
+package io.mycat.sqlrecorder;
+
+/**
+ * 一条sql记录完成(AT_END)时在记录线程上回调,实现不能阻塞
+ */
+public interface SqlRecordListener {
+    /**
+     * @param sql    完整的sql
+     * @param record 本次执行的记录,回调返回后会被复用
+     */
+    void onRecord(String sql, SqlRecord record);
+}
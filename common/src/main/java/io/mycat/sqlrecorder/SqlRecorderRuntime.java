@@ -20,6 +20,7 @@ public enum SqlRecorderRuntime implements SimpleAnalyzer {
         all.add(recordContext);
         return recordContext;
     });
+    static volatile SqlRecordListener listener;
 
 
     /**
@@ -39,6 +40,21 @@ public enum SqlRecorderRuntime implements SimpleAnalyzer {
         return sqlRecords1;
     }
 
+    public void setListener(SqlRecordListener listener) {
+        SqlRecorderRuntime.listener = listener;
+    }
+
+    /**
+     * 不经过线程内的记录槽,直接把一条完整的记录交给监听器,
+     * 用于在reactor线程上交错执行的转发请求
+     */
+    public void record(SqlRecord record) {
+        SqlRecordListener listener = SqlRecorderRuntime.listener;
+        if (listener != null) {
+            listener.onRecord(record.getStatement(), record);
+        }
+    }
+
     public void reset() {
         for (RecordContext recordContext : all) {
             recordContext.map.clear();
@@ -61,6 +77,7 @@ public enum SqlRecorderRuntime implements SimpleAnalyzer {
 
         @Override
         public void addRecord(SqlRecorderType type, String sql, long value) {
+            String fullSql = sql;
             if (sql.length()>32){//32
                 sql = sql.substring(0, 32);
             }
@@ -69,6 +86,9 @@ public enum SqlRecorderRuntime implements SimpleAnalyzer {
             c.statement = sql;
             switch (type) {
                 case AT_START:
+                    //槽位是循环复用的,清除上一次的记录
+                    c.clear();
+                    c.statement = sql;
                     c.startTime = value;
                     break;
                 case PARSE_SQL:
@@ -92,8 +112,15 @@ public enum SqlRecorderRuntime implements SimpleAnalyzer {
                 case EXECUTION_TIME:
                     c.executionTime = value;
                     break;
+                case SQL_ROWS:
+                    c.sqlRows = value;
+                    break;
                 case AT_END:
                     c.endTime = value;
+                    SqlRecordListener listener = SqlRecorderRuntime.listener;
+                    if (listener != null) {
+                        listener.onRecord(fullSql, c);
+                    }
                     break;
             }
         }
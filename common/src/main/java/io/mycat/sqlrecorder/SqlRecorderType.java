@@ -9,6 +9,7 @@ public enum  SqlRecorderType {
     GET_CONNECTION,
     CONNECTION_QUERY_RESPONSE,
     EXECUTION_TIME,
+    SQL_ROWS,
     AT_END
 
 
@@ -0,0 +1,152 @@
+package io.mycat.api.collector;
+
+import io.mycat.beans.mysql.packet.ColumnDefPacket;
+import io.mycat.beans.mysql.packet.MySQLPacket;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalTime;
+
+/**
+ * 文本协议的时间类型按列类型解析,结果和JDBC的getDate/getTime/getTimestamp一致
+ */
+public class TextResultSetTransforCollectorTest {
+
+    @Test
+    public void testDate() {
+        Assert.assertEquals(Date.valueOf("2020-01-02"), collect(c -> c.collectDate(0, null, packet("2020-01-02"), 0)));
+        Assert.assertEquals(Date.valueOf("2020-01-02"), collect(c -> c.collectNewDate(0, null, packet("2020-01-02"), 0)));
+        Assert.assertNull(collect(c -> c.collectDate(0, null, packet("0000-00-00"), 0)));
+    }
+
+    @Test
+    public void testDatetime() {
+        Assert.assertEquals(Timestamp.valueOf("2020-01-01 12:00:00"),
+                collect(c -> c.collectDatetime(0, null, packet("2020-01-01 12:00:00"), 0)));
+        Assert.assertEquals(Timestamp.valueOf("2020-01-01 12:00:00.123456"),
+                collect(c -> c.collectDatetime(0, null, packet("2020-01-01 12:00:00.123456"), 0)));
+        Assert.assertNull(collect(c -> c.collectDatetime(0, null, packet("0000-00-00 00:00:00"), 0)));
+    }
+
+    @Test
+    public void testTimestamp() {
+        Assert.assertEquals(Timestamp.valueOf("2020-01-01 23:59:59"),
+                collect(c -> c.collectTimestamp(0, null, packet("2020-01-01 23:59:59"), 0)));
+        Assert.assertEquals(Timestamp.valueOf("2020-01-01 23:59:59.5"),
+                collect(c -> c.collectTimestamp(0, null, packet("2020-01-01 23:59:59.5"), 0)));
+    }
+
+    @Test
+    public void testTime() {
+        Assert.assertEquals(Time.valueOf("12:00:00"), collect(c -> c.collectTime(0, null, packet("12:00:00"), 0)));
+        long midnight = Time.valueOf(LocalTime.MIDNIGHT).getTime();
+        Time fraction = (Time) collect(c -> c.collectTime(0, null, packet("01:02:03.250"), 0));
+        Assert.assertEquals(midnight + 3723250, fraction.getTime());
+        Time large = (Time) collect(c -> c.collectTime(0, null, packet("838:59:59"), 0));
+        Assert.assertEquals(midnight + 3020399000L, large.getTime());
+        Time negative = (Time) collect(c -> c.collectTime(0, null, packet("-01:00:00"), 0));
+        Assert.assertEquals(midnight - 3600000, negative.getTime());
+    }
+
+    @Test
+    public void testYear() {
+        Assert.assertEquals(2020L, collect(c -> c.collectYear(0, null, packet("2020"), 0)));
+    }
+
+    private static MySQLPacket packet(String text) {
+        return (MySQLPacket) Proxy.newProxyInstance(MySQLPacket.class.getClassLoader(), new Class[]{MySQLPacket.class},
+                (proxy, method, args) -> {
+                    if ("readLenencString".equals(method.getName())) {
+                        return text;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static Object collect(java.util.function.Consumer<TextResultSetTransforCollector> consumer) {
+        ValueCollector valueCollector = new ValueCollector();
+        consumer.accept(new TextResultSetTransforCollector(valueCollector));
+        Assert.assertTrue(valueCollector.collected);
+        return valueCollector.value;
+    }
+
+    private static class ValueCollector implements ResultSetCollector {
+        Object value;
+        boolean collected;
+
+        private void set(Object value) {
+            this.value = value;
+            this.collected = true;
+        }
+
+        @Override
+        public void onResultSetStart() {
+
+        }
+
+        @Override
+        public void onResultSetEnd() {
+
+        }
+
+        @Override
+        public void onRowStart() {
+
+        }
+
+        @Override
+        public void onRowEnd() {
+
+        }
+
+        @Override
+        public void addNull(int columnIndex) {
+            set(null);
+        }
+
+        @Override
+        public void addString(int columnIndex, String value) {
+            set(value);
+        }
+
+        @Override
+        public void addBlob(int columnIndex, byte[] value) {
+            set(value);
+        }
+
+        @Override
+        public void addValue(int columnIndex, long value, boolean isNUll) {
+            set(isNUll ? null : value);
+        }
+
+        @Override
+        public void addValue(int columnIndex, double value, boolean isNUll) {
+            set(isNUll ? null : value);
+        }
+
+        @Override
+        public void addValue(int columnIndex, byte value, boolean isNUll) {
+            set(isNUll ? null : value);
+        }
+
+        @Override
+        public void addDecimal(int columnIndex, BigDecimal value) {
+            set(value);
+        }
+
+        @Override
+        public void collectColumnList(ColumnDefPacket[] packets) {
+
+        }
+
+        @Override
+        public void addDate(int columnIndex, java.util.Date date) {
+            set(date);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package io.mycat.buffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 伙伴分配的拆分,合并与重复回收
+ */
+public class SlabArenaTest {
+
+    @Test
+    public void testOrderOf() {
+        SlabArena arena = new SlabArena(4096, 512, 1);
+        Assert.assertEquals(3, arena.getMaxOrder());
+        Assert.assertEquals(0, arena.orderOf(1));
+        Assert.assertEquals(0, arena.orderOf(512));
+        Assert.assertEquals(1, arena.orderOf(513));
+        Assert.assertEquals(2, arena.orderOf(2048));
+        Assert.assertEquals(3, arena.orderOf(4096));
+        Assert.assertTrue(arena.orderOf(4097) > arena.getMaxOrder());
+    }
+
+    /**
+     * 从整页拆出最小块,剩余的空闲块分别是1,2,4个chunk,全部回收后合并回整页
+     */
+    @Test
+    public void testSplitAndCoalesce() {
+        SlabArena arena = new SlabArena(4096, 512, 1);
+        ByteBuffer a = arena.allocate(0);
+        Assert.assertEquals(512, a.capacity());
+        Assert.assertEquals(4096 - 512, arena.freeBytes());
+        //最大空闲块是4个chunk,占7个空闲chunk的4/7
+        Assert.assertEquals(1 - 4.0 / 7, arena.fragmentation(), 1e-9);
+
+        ByteBuffer b = arena.allocate(0);
+        ByteBuffer c = arena.allocate(1);
+        ByteBuffer d = arena.allocate(2);
+        Assert.assertEquals(0, arena.freeBytes());
+        Assert.assertNull(arena.allocate(0));
+
+        Assert.assertTrue(arena.free(a));
+        Assert.assertTrue(arena.free(c));
+        //a与b是伙伴,b没有回收时不能合并
+        Assert.assertNull(arena.allocate(2));
+        Assert.assertTrue(arena.free(b));
+        Assert.assertTrue(arena.free(d));
+        Assert.assertEquals(4096, arena.freeBytes());
+        Assert.assertEquals(0, arena.fragmentation(), 1e-9);
+
+        ByteBuffer page = arena.allocate(3);
+        Assert.assertNotNull(page);
+        Assert.assertEquals(4096, page.capacity());
+        Assert.assertTrue(arena.free(page));
+    }
+
+    @Test
+    public void testDoubleFree() {
+        SlabArena arena = new SlabArena(4096, 512, 1);
+        ByteBuffer a = arena.allocate(1);
+        ByteBuffer b = arena.allocate(1);
+        Assert.assertTrue(arena.free(a));
+        Assert.assertFalse(arena.free(a));
+        Assert.assertEquals(4096 - 1024, arena.freeBytes());
+        Assert.assertTrue(arena.free(b));
+        Assert.assertFalse(arena.free(b));
+        Assert.assertEquals(4096, arena.freeBytes());
+    }
+
+    /**
+     * 不是该内存分配的缓冲区,以及块内的切片都不能回收
+     */
+    @Test
+    public void testFreeForeignBuffer() {
+        SlabArena arena = new SlabArena(4096, 512, 1);
+        SlabArena other = new SlabArena(4096, 512, 1);
+        ByteBuffer a = other.allocate(0);
+        Assert.assertFalse(arena.contains(a));
+        Assert.assertFalse(arena.free(a));
+        Assert.assertFalse(arena.free(ByteBuffer.allocate(512)));
+        Assert.assertFalse(arena.free(ByteBuffer.allocateDirect(512)));
+
+        ByteBuffer b = arena.allocate(1);
+        b.position(512);
+        Assert.assertFalse(arena.free(b.slice()));
+        b.clear();
+        Assert.assertTrue(arena.free(b));
+        Assert.assertEquals(4096, arena.freeBytes());
+    }
+
+    /**
+     * 所有页都没有足够大的空闲块时返回null
+     */
+    @Test
+    public void testExhausted() {
+        SlabArena arena = new SlabArena(4096, 512, 2);
+        ByteBuffer a = arena.allocate(3);
+        ByteBuffer b = arena.allocate(3);
+        Assert.assertNotNull(a);
+        Assert.assertNotNull(b);
+        Assert.assertNull(arena.allocate(0));
+        Assert.assertTrue(arena.free(b));
+        Assert.assertNotNull(arena.allocate(0));
+    }
+}
@@ -0,0 +1,156 @@
+package io.mycat.buffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 线程内缓存,共享内存耗尽与跨线程回收
+ */
+public class SlabBufferPoolTest {
+
+    /**
+     * 每个用例使用不同的页数,避免共用同一块堆外内存
+     */
+    private static SlabBufferPool create(int pageCount, int cacheSize) {
+        Map<String, String> args = new HashMap<>();
+        args.put(SlabBufferPool.PAGE_SIZE, "4096");
+        args.put(SlabBufferPool.CHUNK_SIZE, "512");
+        args.put(SlabBufferPool.PAGE_COUNT, String.valueOf(pageCount));
+        args.put(SlabBufferPool.CACHE_SIZE, String.valueOf(cacheSize));
+        SlabBufferPool pool = new SlabBufferPool();
+        pool.init(args);
+        pool.bindOwner(Thread.currentThread());
+        return pool;
+    }
+
+    @Test
+    public void testOwnerCache() {
+        SlabBufferPool pool = create(1, 4);
+        ByteBuffer a = pool.allocate(100);
+        Assert.assertTrue(a.isDirect());
+        Assert.assertEquals(512, a.capacity());
+        a.put((byte) 1);
+        pool.recycle(a);
+        Assert.assertEquals(512, pool.getCachedBytes());
+        Assert.assertEquals(4096 - 512, pool.getFreeBytes());
+        ByteBuffer b = pool.allocate(100);
+        Assert.assertSame(a, b);
+        Assert.assertEquals(0, b.position());
+        Assert.assertEquals(0, pool.getCachedBytes());
+        pool.recycle(b);
+    }
+
+    /**
+     * 所属线程重复回收同一个缓冲区时不能在缓存里出现两次
+     */
+    @Test
+    public void testDoubleRecycleByOwner() {
+        SlabBufferPool pool = create(2, 4);
+        ByteBuffer a = pool.allocate();
+        pool.recycle(a);
+        pool.recycle(a);
+        Assert.assertEquals(512, pool.getCachedBytes());
+        ByteBuffer b = pool.allocate();
+        ByteBuffer c = pool.allocate();
+        Assert.assertSame(a, b);
+        Assert.assertNotSame(b, c);
+        pool.recycle(b);
+        pool.recycle(c);
+    }
+
+    /**
+     * 缓存按块的地址标记,同一块内存的其他ByteBuffer对象也识别为重复回收
+     */
+    @Test
+    public void testDoubleRecycleDuplicate() {
+        SlabBufferPool pool = create(6, 4);
+        ByteBuffer a = pool.allocate();
+        ByteBuffer b = pool.allocate();
+        pool.recycle(a);
+        pool.recycle(a.duplicate());
+        Assert.assertEquals(512, pool.getCachedBytes());
+        pool.recycle(b);
+        Assert.assertEquals(1024, pool.getCachedBytes());
+        Assert.assertSame(b, pool.allocate());
+        Assert.assertSame(a, pool.allocate());
+        pool.recycle(a);
+        Assert.assertEquals(512, pool.getCachedBytes());
+        pool.recycle(b);
+    }
+
+    /**
+     * 缓存已满时重复回收由共享内存识别
+     */
+    @Test
+    public void testDoubleRecycleToArena() throws Exception {
+        SlabBufferPool pool = create(3, 0);
+        ByteBuffer a = pool.allocate(4096);
+        long free = pool.getFreeBytes();
+        runInOtherThread(() -> pool.recycle(a));
+        Assert.assertEquals(free + 4096, pool.getFreeBytes());
+        runInOtherThread(() -> pool.recycle(a));
+        Assert.assertEquals(free + 4096, pool.getFreeBytes());
+    }
+
+    /**
+     * 超过一页或者共享内存耗尽时退回到堆内存
+     */
+    @Test
+    public void testExhausted() {
+        SlabBufferPool pool = create(4, 0);
+        ByteBuffer[] pages = new ByteBuffer[4];
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = pool.allocate(4096);
+            Assert.assertTrue(pages[i].isDirect());
+        }
+        Assert.assertEquals(0, pool.getFreeBytes());
+        ByteBuffer heap = pool.allocate(100);
+        Assert.assertFalse(heap.isDirect());
+        Assert.assertEquals(1, pool.getHeapFallbackCount());
+        ByteBuffer large = pool.allocate(8192);
+        Assert.assertFalse(large.isDirect());
+        Assert.assertEquals(2, pool.getHeapFallbackCount());
+        pool.recycle(heap);
+        pool.recycle(large);
+        for (ByteBuffer page : pages) {
+            pool.recycle(page);
+        }
+        Assert.assertEquals(4096 * 4, pool.getFreeBytes() + pool.getCachedBytes());
+        Assert.assertTrue(pool.allocate(100).isDirect());
+    }
+
+    /**
+     * 其他线程分配的缓冲区可以由所属线程缓存,所属线程分配的缓冲区由其他线程直接还给共享内存
+     */
+    @Test
+    public void testCrossOwnerRecycle() throws Exception {
+        SlabBufferPool pool = create(5, 4);
+        AtomicReference<ByteBuffer> ref = new AtomicReference<>();
+        runInOtherThread(() -> ref.set(pool.allocate()));
+        ByteBuffer foreign = ref.get();
+        Assert.assertTrue(foreign.isDirect());
+        Assert.assertEquals(0, pool.getCachedBytes());
+        pool.recycle(foreign);
+        Assert.assertEquals(512, pool.getCachedBytes());
+        Assert.assertSame(foreign, pool.allocate());
+
+        long free = pool.getFreeBytes();
+        ByteBuffer owned = pool.allocate(1024);
+        Assert.assertEquals(free - 1024, pool.getFreeBytes());
+        runInOtherThread(() -> pool.recycle(owned));
+        Assert.assertEquals(free, pool.getFreeBytes());
+        Assert.assertEquals(0, pool.getCachedBytes());
+        pool.recycle(foreign);
+    }
+
+    private static void runInOtherThread(Runnable runnable) throws InterruptedException {
+        Thread thread = new Thread(runnable);
+        thread.start();
+        thread.join();
+    }
+}
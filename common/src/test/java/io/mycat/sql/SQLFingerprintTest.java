@@ -0,0 +1,137 @@
+package io.mycat.sql;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * 语句形状指纹的模板与字面量提取
+ */
+public class SQLFingerprintTest {
+
+    @Test
+    public void testIntegerAndString() {
+        SQLFingerprint fingerprint = SQLFingerprint.of("select * from db1.travelrecord where id = 1 and user_id = 'abc'");
+        Assert.assertTrue(fingerprint.isCacheable());
+        Assert.assertEquals("select * from db1.travelrecord where id = ? and user_id = ?", fingerprint.getTemplate());
+        Assert.assertEquals(Arrays.asList(1L, "abc"), fingerprint.getLiterals());
+    }
+
+    @Test
+    public void testSameShapeSameTemplate() {
+        SQLFingerprint a = SQLFingerprint.of("select * from t where id = 1");
+        SQLFingerprint b = SQLFingerprint.of("select * from t where id = 999999");
+        Assert.assertEquals(a.getTemplate(), b.getTemplate());
+        Assert.assertEquals(Collections.singletonList(999999L), b.getLiterals());
+    }
+
+    /**
+     * 整数与字符串可以共享模板,回填时按字面量自身的类型生成节点
+     */
+    @Test
+    public void testLiteralTypesShareTemplate() {
+        SQLFingerprint number = SQLFingerprint.of("select * from t where id = 1");
+        SQLFingerprint string = SQLFingerprint.of("select * from t where id = '1'");
+        Assert.assertEquals(number.getTemplate(), string.getTemplate());
+        Assert.assertEquals(Collections.singletonList(1L), number.getLiterals());
+        Assert.assertEquals(Collections.singletonList("1"), string.getLiterals());
+    }
+
+    /**
+     * 小数,十六进制,科学计数法与标识符中的数字属于语句形状
+     */
+    @Test
+    public void testNumbersKeptInTemplate() {
+        Assert.assertEquals("select ? from t1 where a = 1.5", SQLFingerprint.of("select 1 from t1 where a = 1.5").getTemplate());
+        Assert.assertEquals("select 0x1F, 1e5, .5, t.c2", SQLFingerprint.of("select 0x1F, 1e5, .5, t.c2").getTemplate());
+        Assert.assertNotEquals(SQLFingerprint.of("select 1.5").getTemplate(), SQLFingerprint.of("select 1.6").getTemplate());
+        Assert.assertEquals(Collections.emptyList(), SQLFingerprint.of("select @1").getLiterals());
+    }
+
+    /**
+     * 负号不并入字面量,-1与1的模板不同
+     */
+    @Test
+    public void testNegativeNumber() {
+        SQLFingerprint negative = SQLFingerprint.of("select * from t where id = -1");
+        SQLFingerprint positive = SQLFingerprint.of("select * from t where id = 1");
+        Assert.assertEquals("select * from t where id = -?", negative.getTemplate());
+        Assert.assertEquals(Collections.singletonList(1L), negative.getLiterals());
+        Assert.assertNotEquals(negative.getTemplate(), positive.getTemplate());
+        Assert.assertEquals("select a-?", SQLFingerprint.of("select a-1").getTemplate());
+    }
+
+    @Test
+    public void testBigInteger() {
+        SQLFingerprint fingerprint = SQLFingerprint.of("select 99999999999999999999");
+        Assert.assertEquals(Collections.singletonList(new BigInteger("99999999999999999999")), fingerprint.getLiterals());
+        Assert.assertEquals(Collections.singletonList(Long.MAX_VALUE), SQLFingerprint.of("select 9223372036854775807").getLiterals());
+    }
+
+    @Test
+    public void testQuoting() {
+        SQLFingerprint doubled = SQLFingerprint.of("select 'it''s'");
+        Assert.assertEquals("select ?", doubled.getTemplate());
+        Assert.assertEquals(Collections.singletonList("it's"), doubled.getLiterals());
+
+        //双引号与反引号保留原样
+        Assert.assertEquals("select \"a\" from `1`", SQLFingerprint.of("select \"a\" from `1`").getTemplate());
+        Assert.assertNotEquals(SQLFingerprint.of("select \"a\"").getTemplate(), SQLFingerprint.of("select \"b\"").getTemplate());
+        Assert.assertNotEquals(SQLFingerprint.of("select 'a'").getTemplate(), SQLFingerprint.of("select \"a\"").getTemplate());
+
+        //带前缀的字符串属于语句形状
+        Assert.assertEquals("select N'abc', _utf8'abc', x'1F'", SQLFingerprint.of("select N'abc', _utf8'abc', x'1F'").getTemplate());
+
+        SQLFingerprint utf8 = SQLFingerprint.of("select '中文', 1");
+        Assert.assertEquals("select ?, ?", utf8.getTemplate());
+        Assert.assertEquals(Arrays.asList("中文", 1L), utf8.getLiterals());
+    }
+
+    @Test
+    public void testNotCacheable() {
+        Assert.assertFalse(SQLFingerprint.of("select 'a\\'b'").isCacheable());
+        Assert.assertFalse(SQLFingerprint.of("select 'abc").isCacheable());
+        Assert.assertFalse(SQLFingerprint.of("select `abc").isCacheable());
+        Assert.assertFalse(SQLFingerprint.of("select * from t where id = ?").isCacheable());
+        Assert.assertFalse(SQLFingerprint.of("select 1 /* 2 */").isCacheable());
+        Assert.assertFalse(SQLFingerprint.of("select 1 # 2").isCacheable());
+        Assert.assertFalse(SQLFingerprint.of("select 1 -- 2").isCacheable());
+        Assert.assertFalse(SQLFingerprint.of("select 1--2").isCacheable());
+    }
+
+    /**
+     * 引号内的注释符号与问号属于字面量
+     */
+    @Test
+    public void testCommentInsideString() {
+        SQLFingerprint fingerprint = SQLFingerprint.of("select '/*?*/', \"#\", `--`");
+        Assert.assertTrue(fingerprint.isCacheable());
+        Assert.assertEquals("select ?, \"#\", `--`", fingerprint.getTemplate());
+        Assert.assertEquals(Collections.singletonList("/*?*/"), fingerprint.getLiterals());
+    }
+
+    @Test
+    public void testByteRange() {
+        byte[] bytes = "xxselect 1yy".getBytes(StandardCharsets.UTF_8);
+        SQLFingerprint fingerprint = SQLFingerprint.of(bytes, 2, bytes.length - 4);
+        Assert.assertEquals("select ?", fingerprint.getTemplate());
+        Assert.assertEquals(Collections.singletonList(1L), fingerprint.getLiterals());
+    }
+
+    /**
+     * 统计用的宽松形式与{@link SQLFingerprint#of(String)}使用同一个引号扫描
+     */
+    @Test
+    public void testNormalize() {
+        Assert.assertEquals("select * from `T``1` where a = ? and b = ?",
+                SQLFingerprint.normalize("SELECT * FROM `T``1` WHERE a = 'x\\'y' AND b = \"z\"", 1024));
+        Assert.assertEquals("select -? from t where id in (?)",
+                SQLFingerprint.normalize("select -1 from t where id in (1, 2, 3) # comment", 1024));
+        Assert.assertEquals("select 中...", SQLFingerprint.normalize("select 中文 from t", 8));
+        Assert.assertEquals("select ?", SQLFingerprint.normalize("select 'abc", 1024));
+    }
+}
@@ -0,0 +1,143 @@
+package io.mycat.sql;
+
+import com.alibaba.fastsql.DbType;
+import com.alibaba.fastsql.sql.SQLUtils;
+import com.alibaba.fastsql.sql.ast.SQLObject;
+import com.alibaba.fastsql.sql.ast.SQLStatement;
+import com.alibaba.fastsql.sql.ast.statement.SQLSelectStatement;
+import com.alibaba.fastsql.sql.dialect.mysql.visitor.MySqlASTVisitorAdapter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 模板回填的语法树必须与直接解析的结果相同
+ */
+public class SQLStatementTemplateCacheTest {
+    private final AtomicInteger parseCount = new AtomicInteger();
+    private final Function<String, List<SQLStatement>> parser = sql -> {
+        parseCount.incrementAndGet();
+        return SQLUtils.parseStatements(sql, DbType.mysql);
+    };
+
+    @Test
+    public void testHitSkipsParser() {
+        SQLStatementTemplateCache cache = new SQLStatementTemplateCache(16, 4096);
+        assertSameAsParse(cache, "select * from db1.travelrecord where id = 1 and user_id = 'a'");
+        Assert.assertEquals(1, cache.size());
+
+        parseCount.set(0);
+        List<SQLStatement> statements = cache.parse("select * from db1.travelrecord where id = 2 and user_id = 'b'", parser);
+        Assert.assertEquals(0, parseCount.get());
+        assertSameAs("select * from db1.travelrecord where id = 2 and user_id = 'b'", statements);
+    }
+
+    @Test
+    public void testShapes() {
+        SQLStatementTemplateCache cache = new SQLStatementTemplateCache(16, 4096);
+        String[] sqls = {
+                "select * from db1.travelrecord where id in (1, 2, 3)",
+                "select * from db1.travelrecord where id in (4, 5, 6)",
+                "select id, 'x' from db1.travelrecord where id between 1 and 10 limit 5",
+                "select id, 'y' from db1.travelrecord where id between 2 and 20 limit 6",
+                "insert into db1.travelrecord (id, user_id) values (1, 'it''s'), (2, '中文')",
+                "insert into db1.travelrecord (id, user_id) values (3, 'a'), (4, 'b')",
+                "update db1.travelrecord set user_id = 'a' where id = 1",
+                "update db1.travelrecord set user_id = 'b' where id = 99999999999999999999",
+                "delete from db1.travelrecord where id = 1",
+                "delete from db1.travelrecord where id = 2",
+                "select * from db1.travelrecord order by 1 limit 1, 2",
+                "select * from db1.travelrecord order by 2 limit 3, 4",
+        };
+        for (String sql : sqls) {
+            assertSameAsParse(cache, sql);
+        }
+    }
+
+    /**
+     * 整数与字符串字面量的语句共享模板,回填后仍然与各自直接解析的结果相同
+     */
+    @Test
+    public void testLiteralTypes() {
+        SQLStatementTemplateCache cache = new SQLStatementTemplateCache(16, 4096);
+        assertSameAsParse(cache, "select * from db1.travelrecord where id = 1");
+        assertSameAsParse(cache, "select * from db1.travelrecord where id = '1'");
+        assertSameAsParse(cache, "select * from db1.travelrecord where id = 2");
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testNegativeNumber() {
+        SQLStatementTemplateCache cache = new SQLStatementTemplateCache(16, 4096);
+        assertSameAsParse(cache, "select * from db1.travelrecord where id = -1");
+        assertSameAsParse(cache, "select * from db1.travelrecord where id = -2");
+        assertSameAsParse(cache, "select * from db1.travelrecord where id = 1 - 2");
+        assertSameAsParse(cache, "select * from db1.travelrecord where id = 3 - 4");
+    }
+
+    @Test
+    public void testNotCacheable() {
+        SQLStatementTemplateCache cache = new SQLStatementTemplateCache(16, 4096);
+        assertSameAsParse(cache, "select * from db1.travelrecord where id = 1 /* comment */");
+        assertSameAsParse(cache, "select * from db1.travelrecord where user_id = 'a\\'b'");
+        assertSameAsParse(cache, "select * from db1.travelrecord where id = ?");
+        Assert.assertEquals(0, cache.size());
+
+        SQLStatementTemplateCache shortCache = new SQLStatementTemplateCache(16, 8);
+        assertSameAsParse(shortCache, "select * from db1.travelrecord where id = 1");
+        Assert.assertEquals(0, shortCache.size());
+    }
+
+    /**
+     * 每次命中得到的都是模板的克隆,修改结果不影响下一次
+     */
+    @Test
+    public void testHitReturnsCopies() {
+        SQLStatementTemplateCache cache = new SQLStatementTemplateCache(16, 4096);
+        cache.parse("select id from db1.travelrecord where id = 1", parser);
+        List<SQLStatement> first = cache.parse("select id from db1.travelrecord where id = 2", parser);
+        ((SQLSelectStatement) first.get(0)).getSelect().getQueryBlock().setWhere(null);
+        assertSameAs("select id from db1.travelrecord where id = 3", cache.parse("select id from db1.travelrecord where id = 3", parser));
+    }
+
+    @Test
+    public void testMaximumSize() {
+        SQLStatementTemplateCache cache = new SQLStatementTemplateCache(2, 4096);
+        for (int i = 0; i < 10; i++) {
+            assertSameAsParse(cache, "select c" + i + " from db1.travelrecord where id = " + i);
+        }
+        Assert.assertTrue(cache.size() <= 2);
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+    }
+
+    private void assertSameAsParse(SQLStatementTemplateCache cache, String sql) {
+        assertSameAs(sql, cache.parse(sql, parser));
+        //第二次可能命中模板
+        assertSameAs(sql, cache.parse(sql, parser));
+    }
+
+    private static void assertSameAs(String sql, List<SQLStatement> statements) {
+        List<SQLStatement> expected = SQLUtils.parseStatements(sql, DbType.mysql);
+        Assert.assertEquals(sql, expected.size(), statements.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(sql, SQLUtils.toMySqlString(expected.get(i)), SQLUtils.toMySqlString(statements.get(i)));
+            Assert.assertEquals(sql, nodeClasses(expected.get(i)), nodeClasses(statements.get(i)));
+        }
+    }
+
+    private static List<Class> nodeClasses(SQLStatement statement) {
+        List<Class> classes = new ArrayList<>();
+        statement.accept(new MySqlASTVisitorAdapter() {
+            @Override
+            public void preVisit(SQLObject x) {
+                classes.add(x.getClass());
+            }
+        });
+        return classes;
+    }
+}
@@ -27,8 +27,16 @@ public interface ConfigProvider {
     void init(Class rootClass, Map<String,String> config) throws Exception;
     void fetchConfig(String path) throws Exception;
     void fetchConfig() throws Exception;
+    /**
+     * 持久化变化后的配置并作为当前配置,失败时抛出异常
+     */
     void report(MycatConfig changed);
 
+    /**
+     * 放弃fetchConfig读取但没有生效的配置,恢复为指定配置,不持久化
+     */
+    void rollback(MycatConfig config);
+
     public MycatConfig currentConfig();
 
     public Map<String, Object>  globalVariables();
@@ -28,9 +28,11 @@ import org.slf4j.LoggerFactory;
 import java.lang.reflect.Constructor;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.text.MessageFormat;
 import java.util.*;
@@ -150,15 +152,23 @@ public class FileConfigProvider implements ConfigProvider {
         fetchConfig(defaultPath);
     }
 
+    /**
+     * 先写入临时文件再替换配置文件,写入失败时配置文件与当前配置都不变
+     */
     @Override
+    @SneakyThrows
     public synchronized void report(MycatConfig changed) {
-        try {
-            backup();
-            YamlUtil.dumpToFile(defaultPath, YamlUtil.dump(changed));
-            config = changed;
-        } catch (Throwable e) {
-            logger.error("", e);
-        }
+        backup();
+        Path path = Paths.get(defaultPath);
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.write(tmp, YamlUtil.dump(changed).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        config = changed;
+    }
+
+    @Override
+    public void rollback(MycatConfig config) {
+        this.config = config;
     }
 
     private void backup() {
@@ -62,6 +62,7 @@ public class HttpConfigProvider implements ConfigProvider {
     }
 
     @Override
+    @SneakyThrows
     public void report(MycatConfig changed) {
         HashMap<String, Object> body = new HashMap<>();
         body.put("config", changed);
@@ -72,10 +73,19 @@ public class HttpConfigProvider implements ConfigProvider {
                 .post(RequestBody.create(bodyText.getBytes()))
                 .build();
         try (Response response = client.newCall(request).execute()) {
-
+            if (!response.isSuccessful()) {
+                throw new IOException("report config fail, http code:" + response.code());
+            }
         } catch (Throwable e) {
-            logger.error("reportReplica:" + bodyText, e);
+            logger.error("reportConfig:" + bodyText, e);
+            throw e;
         }
+        this.config = changed;
+    }
+
+    @Override
+    public void rollback(MycatConfig config) {
+        this.config = config;
     }
 
     @Override
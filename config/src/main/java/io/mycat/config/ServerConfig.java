@@ -61,8 +61,20 @@ public class ServerConfig {
             .taskTimeout(1)
             .build();
     private BufferPoolConfig bufferPool = new BufferPoolConfig();
+    private ReactorConfig reactor = new ReactorConfig();
+    private QueryStatConfig queryStat = new QueryStatConfig();
+    private StatementCacheConfig statementCache = new StatementCacheConfig();
+    private QueryMemoryConfig queryMemory = new QueryMemoryConfig();
+    private StatisticConfig statistic = new StatisticConfig();
     private TimerConfig timer = new TimerConfig(3, 15, TimeUnit.SECONDS.name());
     private String tempDirectory;
+    private int insertBatchSize = 1000;
+    private int updateConcurrency = 8;
+    private int metadataConcurrency = 8;
+    /**
+     * 代理端执行的查询的最长时间,毫秒,0表示不限制
+     */
+    private long queryTimeout = 0;
 
     {
         if (tempDirectory == null) {
@@ -113,6 +125,108 @@ public class ServerConfig {
         }
     }
 
+    /**
+     * reactor事件循环参数
+     */
+    @Data
+    public static class ReactorConfig {
+        /**
+         * 一轮事件循环中IO时间所占的百分比,其余时间处理任务队列,100表示每轮处理完全部任务
+         */
+        private int ioRatio = 50;
+        /**
+         * 阻塞select之前忙等的纳秒数,0表示不忙等
+         */
+        private long busySpinNanos = 0;
+        /**
+         * 任务队列达到该长度后拒绝新的连接与新的原生查询,会话的控制任务与后续任务不受限制
+         */
+        private int maxPendingJobs = 65536;
+    }
+
+    /**
+     * 按sql指纹汇总的执行统计
+     */
+    @Data
+    public static class QueryStatConfig {
+        private boolean enable = true;
+        /**
+         * 最多统计的指纹数量,取整到2的幂,超出的归入同一项
+         */
+        private int capacity = 1024;
+        /**
+         * 指纹文本最大长度
+         */
+        private int maxSqlLength = 1024;
+        /**
+         * 统计追加写入文件的周期,0表示不写入
+         */
+        private long snapshotPeriod = 60;
+        private String snapshotTimeUnit = TimeUnit.SECONDS.name();
+        /**
+         * 文件超过该大小后改名为.1再重新写入
+         */
+        private long maxFileSize = 64 * 1024 * 1024;
+    }
+
+    /**
+     * 按语句形状缓存拦截器匹配结果与语法树模板
+     */
+    @Data
+    public static class StatementCacheConfig {
+        private boolean enable = true;
+        /**
+         * 每个缓存最多保存的语句形状数量
+         */
+        private long maximumSize = 4096;
+        /**
+         * 超过该长度的sql不经过语法树模板缓存
+         */
+        private int maxSqlLength = 4096;
+    }
+
+    /**
+     * 行数与列统计的采集
+     */
+    @Data
+    public static class StatisticConfig {
+        /**
+         * 刷新周期,每个周期检查一次,没有列统计或者超过一个周期没有更新的表重新采样,
+         * 0表示只在analyze table时采样.启动时只加载statistic.json,不采样
+         */
+        private long refreshPeriod = 1;
+        private String refreshTimeUnit = TimeUnit.HOURS.name();
+        /**
+         * 统计行数时同时查询的分片数
+         */
+        private int concurrency = 8;
+        /**
+         * 行数优先使用information_schema的估算值,关闭则使用count(*)
+         */
+        private boolean useEstimate = true;
+    }
+
+    @Data
+    public static class QueryMemoryConfig {
+        private boolean enable = true;
+        /**
+         * 所有查询在代理端持有的中间结果的总预算,字节,0表示最大堆的一半
+         */
+        private long globalLimit = 0;
+        /**
+         * 单个查询的预算,字节,0表示总预算的四分之一
+         */
+        private long queryLimit = 0;
+        /**
+         * 同时持有中间结果的查询数量,超出的在队列中等待
+         */
+        private int maxHeavyQueries = Runtime.getRuntime().availableProcessors() * 2;
+        /**
+         * 等待准入或者等待总预算释放的最长时间,毫秒
+         */
+        private long admissionTimeout = 30000;
+    }
+
     @Data
     public static class BufferPoolConfig {
         String poolName;
@@ -0,0 +1,234 @@
+/**
+ * Copyright (C) <2020>  <chen junwen>
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with this program.  If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mycat.datasource.jdbc;
+
+import io.mycat.MycatException;
+import io.mycat.api.collector.UpdateRowIteratorResponse;
+import io.mycat.datasource.jdbc.datasource.DefaultConnection;
+import io.mycat.sqlrecorder.SqlRecorder;
+import io.mycat.sqlrecorder.SqlRecorderRuntime;
+import io.mycat.sqlrecorder.SqlRecorderType;
+import io.mycat.util.TimeProvider;
+import lombok.Getter;
+import lombok.SneakyThrows;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static java.sql.Connection.TRANSACTION_REPEATABLE_READ;
+
+/**
+ * 全局表的写语句并行发往所有存储节点.
+ * 每个节点在本地事务中执行,全部成功后再并行提交,任一节点执行失败则全部回滚;
+ * 提交阶段失败的节点无法补偿,记录已经提交和提交失败的节点
+ *
+ * @author Junwen Chen
+ **/
+public class BroadcastUpdate {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BroadcastUpdate.class);
+    private final List<Target> targets;
+    private final boolean needGeneratedKeys;
+    private final int concurrency;
+    private volatile boolean failed = false;
+
+    public BroadcastUpdate(Map<String, List<String>> map, boolean needGeneratedKeys, int concurrency) {
+        this.targets = new ArrayList<>(map.size());
+        for (Map.Entry<String, List<String>> entry : map.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                targets.add(new Target(entry.getKey(), entry.getValue()));
+            }
+        }
+        this.needGeneratedKeys = needGeneratedKeys;
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    @Getter
+    public static class Target {
+        private final String name;
+        private final List<String> sqls;
+        private DefaultConnection connection;
+        private long updateCount;
+        private long lastInsertId;
+        private long getConnectionTime;
+        private long executeTime;
+        private long commitTime;
+        private boolean committed;
+        private volatile Throwable error;
+
+        Target(String name, List<String> sqls) {
+            this.name = name;
+            this.sqls = sqls;
+        }
+    }
+
+    /**
+     * 全局表每个节点的数据相同,影响行数取单个节点的结果
+     */
+    public UpdateRowIteratorResponse execute(int serverStatus) {
+        if (targets.isEmpty()) {
+            return new UpdateRowIteratorResponse(0, 0, serverStatus);
+        }
+        long start = TimeProvider.INSTANCE.now();
+        try {
+            forEach(this::update);
+            if (failed) {
+                forEach(this::rollback);
+                Target target = firstError();
+                throw new MycatException("global table update failed on {}:{}", target.name, target.error.getMessage());
+            }
+            forEach(this::commit);
+            List<Target> failedTargets = targets.stream().filter(i -> !i.committed).collect(Collectors.toList());
+            if (!failedTargets.isEmpty()) {
+                List<String> committed = targets.stream().filter(i -> i.committed).map(i -> i.name).collect(Collectors.toList());
+                List<String> failedNames = failedTargets.stream().map(i -> i.name).collect(Collectors.toList());
+                LOGGER.error("global table is inconsistent,committed:{} commit failed:{} sql:{}", committed, failedNames, targets.get(0).sqls, failedTargets.get(0).error);
+                throw new MycatException("global table commit failed on {},but committed on {}", failedNames, committed);
+            }
+            Target first = targets.get(0);
+            long lastInsertId = targets.stream().mapToLong(i -> i.lastInsertId).max().orElse(0);
+            return new UpdateRowIteratorResponse(first.updateCount, lastInsertId, serverStatus);
+        } finally {
+            for (Target target : targets) {
+                if (target.connection != null) {
+                    target.connection.close();
+                }
+            }
+            record(start);
+        }
+    }
+
+    private void update(Target target) {
+        if (failed) {
+            return;
+        }
+        long start = TimeProvider.INSTANCE.now();
+        try {
+            target.connection = JdbcRuntime.INSTANCE.getConnection(target.name, false, TRANSACTION_REPEATABLE_READ, false);
+            long executeStart = TimeProvider.INSTANCE.now();
+            target.getConnectionTime = executeStart - start;
+            for (String sql : target.sqls) {
+                UpdateRowIteratorResponse response = target.connection.executeUpdate(sql, needGeneratedKeys, 0);
+                target.updateCount += response.getUpdateCount();
+                target.lastInsertId = Math.max(target.lastInsertId, response.getLastInsertId());
+            }
+            target.executeTime = TimeProvider.INSTANCE.now() - executeStart;
+        } catch (Throwable e) {
+            target.error = e;
+            failed = true;
+        }
+    }
+
+    private void rollback(Target target) {
+        if (target.connection == null) {
+            return;
+        }
+        try {
+            target.connection.getRawConnection().rollback();
+        } catch (Throwable e) {
+            LOGGER.warn("global table rollback failed on {}", target.name, e);
+        }
+    }
+
+    private void commit(Target target) {
+        long start = TimeProvider.INSTANCE.now();
+        try {
+            target.connection.getRawConnection().commit();
+            target.committed = true;
+        } catch (Throwable e) {
+            target.error = e;
+        }
+        target.commitTime = TimeProvider.INSTANCE.now() - start;
+    }
+
+    /**
+     * 最多concurrency个节点同时执行,当前线程也参与执行
+     */
+    @SneakyThrows
+    private void forEach(Consumer<Target> action) {
+        ConcurrentLinkedQueue<Target> queue = new ConcurrentLinkedQueue<>(targets);
+        Runnable drain = () -> {
+            Target target;
+            while ((target = queue.poll()) != null) {
+                action.accept(target);
+            }
+        };
+        int workers = Math.min(targets.size(), concurrency) - 1;
+        List<Future<?>> futures = new ArrayList<>(Math.max(workers, 0));
+        try {
+            for (int i = 0; i < workers; i++) {
+                futures.add(JdbcRuntime.INSTANCE.getFetchDataExecutorService().submit(drain));
+            }
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("broadcast update runs with {} workers", futures.size(), e);
+        }
+        drain.run();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+    private Target firstError() {
+        for (Target target : targets) {
+            if (target.error != null) {
+                return target;
+            }
+        }
+        throw new AssertionError();
+    }
+
+    /**
+     * 记录最慢节点的获取连接与执行时间
+     */
+    private void record(long start) {
+        String sql = targets.get(0).sqls.get(0);
+        SqlRecorder recorder = SqlRecorderRuntime.INSTANCE.getCurrentRecorder();
+        recorder.start();
+        recorder.addRecord(SqlRecorderType.AT_START, sql, start);
+        for (Target target : targets) {
+            recorder.addRecord(SqlRecorderType.GET_CONNECTION, sql, target.getConnectionTime);
+            recorder.addRecord(SqlRecorderType.CONNECTION_QUERY_RESPONSE, sql, target.executeTime + target.commitTime);
+        }
+        long end = TimeProvider.INSTANCE.now();
+        recorder.addRecord(SqlRecorderType.EXECUTION_TIME, sql, end - start);
+        recorder.addRecord(SqlRecorderType.AT_END, sql, end);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("global table update latency(ms):{} sql:{}", getLatencies(), sql);
+        }
+    }
+
+    /**
+     * 每个节点的获取连接,执行,提交耗时之和,毫秒
+     */
+    public Map<String, Long> getLatencies() {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (Target target : targets) {
+            map.put(target.name, target.getConnectionTime + target.executeTime + target.commitTime);
+        }
+        return map;
+    }
+
+    public List<Target> getTargets() {
+        return targets;
+    }
+}
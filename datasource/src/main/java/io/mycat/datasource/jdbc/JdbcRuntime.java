@@ -88,17 +88,24 @@ public enum JdbcRuntime {
         this.config = config;
         String customerDatasourceProvider = config.getDatasource().getDatasourceProviderClass();
         String defaultDatasourceProvider = Optional.ofNullable(customerDatasourceProvider).orElse(AtomikosDatasourceProvider.class.getName());
-        try {
-            this.datasourceProvider = (DatasourceProvider) Class.forName(defaultDatasourceProvider)
-                    .getDeclaredConstructor().newInstance();
-        } catch (Exception e) {
-            throw new MycatException("can not load datasourceProvider:{}", config.getDatasource().getDatasourceProviderClass());
+        //数据源提供者不变时保留连接池,只重建配置修改过的数据源
+        if (this.datasourceProvider == null || !this.datasourceProvider.getClass().getName().equals(defaultDatasourceProvider)) {
+            try {
+                this.datasourceProvider = (DatasourceProvider) Class.forName(defaultDatasourceProvider)
+                        .getDeclaredConstructor().newInstance();
+            } catch (Exception e) {
+                throw new MycatException("can not load datasourceProvider:{}", config.getDatasource().getDatasourceProviderClass());
+            }
+            connectionManager = new JdbcConnectionManager(this.datasourceProvider);
         }
-        connectionManager = new JdbcConnectionManager(this.datasourceProvider);
-
 
+        Map<String, JdbcDataSource> currentDatasourceInfo = connectionManager.getDatasourceInfo();
         for (DatasourceRootConfig.DatasourceConfig datasource : config.getDatasource().getDatasources()) {
             if (datasource.computeType().isJdbc()) {
+                JdbcDataSource jdbcDataSource = currentDatasourceInfo.get(datasource.getName());
+                if (jdbcDataSource != null && !datasource.equals(jdbcDataSource.getConfig())) {
+                    removeDatasource(datasource.getName());
+                }
                 addDatasource(datasource);
             }
         }
@@ -114,7 +121,7 @@ public enum JdbcRuntime {
 
         //移除不必要的配置
         //新配置中的数据源名字
-        Set<String> datasourceNames = config.getDatasource().getDatasources().stream().map(i -> i.getName()).collect(Collectors.toSet());
+        Set<String> datasourceNames = config.getDatasource().getDatasources().stream().filter(i -> i.computeType().isJdbc()).map(i -> i.getName()).collect(Collectors.toSet());
         Map<String, JdbcDataSource> datasourceInfo = connectionManager.getDatasourceInfo();
         new HashSet<>(datasourceInfo.keySet()).stream().filter(name->!datasourceNames.contains(name)).forEach(name->connectionManager.removeDatasource(name));
 
@@ -182,6 +189,14 @@ public enum JdbcRuntime {
 
     }
 
+    /**
+     * 分片更新同时执行的数据源数量
+     */
+    public int getUpdateConcurrency() {
+        MycatConfig config = this.config;
+        return config == null ? 8 : config.getServer().getUpdateConcurrency();
+    }
+
     public ExecutorService getFetchDataExecutorService() {
         return MycatWorkerProcessor.INSTANCE.getMycatWorker();
     }
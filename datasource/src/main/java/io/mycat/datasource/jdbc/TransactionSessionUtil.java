@@ -1,6 +1,7 @@
 package io.mycat.datasource.jdbc;
 
 import io.mycat.MycatConnection;
+import io.mycat.ThreadUsageEnum;
 import io.mycat.TransactionSession;
 import io.mycat.api.collector.UpdateRowIteratorResponse;
 import io.mycat.beans.resultset.MycatUpdateResponse;
@@ -9,9 +10,16 @@ import io.mycat.plug.loadBalance.LoadBalanceStrategy;
 import io.mycat.replica.PhysicsInstanceImpl;
 import io.mycat.replica.ReplicaSelectorRuntime;
 
+import lombok.SneakyThrows;
+
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * @author Junwen Chen
@@ -49,21 +57,109 @@ public class TransactionSessionUtil {
     }
 
     public static UpdateRowIteratorResponse executeUpdateByDatasouce(TransactionSession transactionSession, Map<String, List<String>> map, boolean needGeneratedKeys, boolean global) {
-        int lastId = 0;
-        int count = 0;
-        int serverStatus = 0;
-        int sqlCount = 0;
-        for (Map.Entry<String, List<String>> backendTableInfoStringEntry : map.entrySet()) {
-            for (String s : backendTableInfoStringEntry.getValue()) {
-                sqlCount++;
-                MycatUpdateResponse mycatUpdateResponse = executeUpdate(transactionSession, backendTableInfoStringEntry.getKey(), s, needGeneratedKeys);
-                long lastInsertId = mycatUpdateResponse.getLastInsertId();
-                long updateCount = mycatUpdateResponse.getUpdateCount();
-                lastId = Math.max((int) lastInsertId, lastId);
-                count += updateCount;
-                serverStatus = mycatUpdateResponse.serverStatus();
+        return executeUpdateByDatasouce(transactionSession, map, needGeneratedKeys, global, JdbcRuntime.INSTANCE.getUpdateConcurrency());
+    }
+
+    /**
+     * 不同数据源的语句并行执行,同一个数据源内的语句按顺序在同一个连接上执行
+     * 事务中或者会话绑定线程时,连接只能在当前线程使用,所有数据源按顺序执行
+     *
+     * @param concurrency 同时执行的数据源数量上限
+     */
+    @SneakyThrows
+    public static UpdateRowIteratorResponse executeUpdateByDatasouce(TransactionSession transactionSession,
+                                                                     Map<String, List<String>> map,
+                                                                     boolean needGeneratedKeys,
+                                                                     boolean global,
+                                                                     int concurrency) {
+        int serverStatus = transactionSession.getServerStatus();
+        //连接在当前线程获取,事务会话不保证线程安全
+        List<UpdateTarget> targets = new ArrayList<>(map.size());
+        for (Map.Entry<String, List<String>> entry : map.entrySet()) {
+            if (entry.getValue().isEmpty()) {
+                continue;
+            }
+            targets.add(new UpdateTarget(transactionSession.getConnection(entry.getKey()), entry.getValue()));
+        }
+        boolean serial = concurrency <= 1 || targets.size() <= 1
+                || transactionSession.isInTransaction()
+                || transactionSession.getThreadUsageEnum() == ThreadUsageEnum.BINDING_THREADING;
+        if (serial) {
+            for (UpdateTarget target : targets) {
+                target.execute(needGeneratedKeys, serverStatus);
+                serverStatus = target.result.serverStatus();
+            }
+        } else {
+            executeConcurrently(targets, needGeneratedKeys, serverStatus, concurrency);
+        }
+        //每个数据源的结果在全部执行完成后合并
+        long count = 0;
+        long lastInsertId = 0;
+        for (UpdateTarget target : targets) {
+            count += target.result.getUpdateCount();
+            lastInsertId = Math.max(lastInsertId, target.result.getLastInsertId());
+            serverStatus = target.result.serverStatus();
+        }
+        //全局表每个数据源插入的行数相同,语句按批拆分后条数不等于行数,只能按数据源数量折算
+        int targetCount = targets.size();
+        return new UpdateRowIteratorResponse(global && targetCount > 0 ? count / targetCount : count, lastInsertId, serverStatus);
+    }
+
+    private static void executeConcurrently(List<UpdateTarget> targets, boolean needGeneratedKeys, int serverStatus, int concurrency) throws Throwable {
+        ConcurrentLinkedQueue<UpdateTarget> queue = new ConcurrentLinkedQueue<>(targets);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Runnable drain = () -> {
+            UpdateTarget target;
+            while (error.get() == null && (target = queue.poll()) != null) {
+                try {
+                    target.execute(needGeneratedKeys, serverStatus);
+                } catch (Throwable e) {
+                    error.compareAndSet(null, e);
+                }
+            }
+        };
+        int workers = Math.min(targets.size(), concurrency) - 1;
+        List<Future<?>> futures = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            futures.add(JdbcRuntime.INSTANCE.getFetchDataExecutorService().submit(drain));
+        }
+        //当前线程也参与执行,工作线程池繁忙时也能完成
+        drain.run();
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                error.compareAndSet(null, e.getCause());
+            }
+        }
+        if (error.get() != null) {
+            throw error.get();
+        }
+    }
+
+    /**
+     * 一个数据源上的语句与它的执行结果,结果只在执行线程写入,join之后由调用线程读取
+     */
+    private static class UpdateTarget {
+        final MycatConnection connection;
+        final List<String> sqls;
+        MycatUpdateResponse result;
+
+        UpdateTarget(MycatConnection connection, List<String> sqls) {
+            this.connection = connection;
+            this.sqls = sqls;
+        }
+
+        void execute(boolean needGeneratedKeys, int serverStatus) {
+            long count = 0;
+            long lastInsertId = 0;
+            for (String sql : sqls) {
+                MycatUpdateResponse response = connection.executeUpdate(sql, needGeneratedKeys, serverStatus);
+                count += response.getUpdateCount();
+                lastInsertId = Math.max(lastInsertId, response.getLastInsertId());
+                serverStatus = response.serverStatus();
             }
+            result = new UpdateRowIteratorResponse(count, lastInsertId, serverStatus);
         }
-        return new UpdateRowIteratorResponse(global ? count / sqlCount : count, lastId, serverStatus);
     }
-}
\ No newline at end of file
+}
@@ -37,6 +37,10 @@ public class DefaultConnection implements MycatConnection {
     final Connection connection;
     private final JdbcDataSource jdbcDataSource;
     private volatile boolean isClosed = false;
+    /**
+     * 结果集关闭前都算正在执行,用于在其他线程取消
+     */
+    private volatile Statement runningStatement;
     protected final ConnectionManager connectionManager;
 
     @SneakyThrows
@@ -152,14 +156,37 @@ public class DefaultConnection implements MycatConnection {
     }
 
     public RowBaseIterator executeQuery(MycatRowMetaData mycatRowMetaData, String sql) {
+        Statement statement = null;
         try {
-            Statement statement = connection.createStatement();
-            return new JdbcRowBaseIterator(mycatRowMetaData, statement, statement.executeQuery(sql), null, sql);
+            statement = connection.createStatement();
+            runningStatement = statement;
+            Statement current = statement;
+            return new JdbcRowBaseIterator(mycatRowMetaData, statement, statement.executeQuery(sql), () -> {
+                if (runningStatement == current) {
+                    runningStatement = null;
+                }
+            }, sql);
         } catch (Exception e) {
+            if (statement != null && runningStatement == statement) {
+                runningStatement = null;
+            }
             throw new MycatException(e);
         }
     }
 
+    @Override
+    public void cancel() {
+        Statement statement = this.runningStatement;
+        if (statement == null || isClosed) {
+            return;
+        }
+        try {
+            statement.cancel();
+        } catch (Exception e) {
+            LOGGER.warn("cancel statement failed {}", connection, e);
+        }
+    }
+
     @Override
     public <T> T unwrap(Class<T> iface) throws Exception {
         if (Connection.class == iface) {
@@ -0,0 +1,131 @@
+package io.mycat.datasource.jdbc;
+
+import io.mycat.MycatConnection;
+import io.mycat.ThreadUsageEnum;
+import io.mycat.TransactionSession;
+import io.mycat.api.collector.UpdateRowIteratorResponse;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+public class TransactionSessionUtilTest {
+
+    /**
+     * 全局表1500行按500行一批拆成3条语句,写到2个数据源,应返回1500而不是按语句条数折算
+     */
+    @Test
+    public void testGlobalBatchedInsertCount() {
+        Map<String, List<String>> map = new LinkedHashMap<>();
+        map.put("ds0", Arrays.asList("insert 500", "insert 500", "insert 500"));
+        map.put("ds1", Arrays.asList("insert 500", "insert 500", "insert 500"));
+        UpdateRowIteratorResponse response = TransactionSessionUtil.executeUpdateByDatasouce(session(), map, false, true, 1);
+        Assert.assertEquals(1500, response.getUpdateCount());
+    }
+
+    @Test
+    public void testShardingInsertCount() {
+        Map<String, List<String>> map = new LinkedHashMap<>();
+        map.put("ds0", Arrays.asList("insert 500", "insert 200"));
+        map.put("ds1", Collections.singletonList("insert 300"));
+        map.put("ds2", Collections.emptyList());
+        UpdateRowIteratorResponse response = TransactionSessionUtil.executeUpdateByDatasouce(session(), map, false, false, 1);
+        Assert.assertEquals(1000, response.getUpdateCount());
+    }
+
+    /**
+     * 没有执行任何语句的数据源不计入全局表的折算
+     */
+    @Test
+    public void testGlobalInsertSkipsEmptyTarget() {
+        Map<String, List<String>> map = new LinkedHashMap<>();
+        map.put("ds0", Arrays.asList("insert 500", "insert 100"));
+        map.put("ds1", Arrays.asList("insert 500", "insert 100"));
+        map.put("ds2", Collections.emptyList());
+        UpdateRowIteratorResponse response = TransactionSessionUtil.executeUpdateByDatasouce(session(), map, false, true, 1);
+        Assert.assertEquals(600, response.getUpdateCount());
+    }
+
+    /**
+     * 事务中的连接不能交给工作线程,所有数据源在调用线程上按顺序执行,状态依次传递
+     */
+    @Test
+    public void testInTransactionRunsOnCallerThread() {
+        assertSerial(session(true, ThreadUsageEnum.MULTI_THREADING));
+    }
+
+    @Test
+    public void testBindingThreadRunsOnCallerThread() {
+        assertSerial(session(false, ThreadUsageEnum.BINDING_THREADING));
+    }
+
+    /**
+     * 事务中的全局表写入,每个节点都通过会话获取连接,加入会话的事务,不单独提交
+     */
+    @Test
+    public void testGlobalUpdateInTransactionEnlistsEveryTarget() {
+        Map<String, List<String>> map = new LinkedHashMap<>();
+        map.put("ds0", Collections.singletonList("update 2"));
+        map.put("ds1", Collections.singletonList("update 2"));
+        map.put("ds2", Collections.singletonList("update 2"));
+        EXECUTED_THREADS.clear();
+        INVOKED.clear();
+        UpdateRowIteratorResponse response = TransactionSessionUtil.executeUpdateByDatasouce(session(true, ThreadUsageEnum.THIS_THREADING), map, true, true, 4);
+        Assert.assertEquals(2, response.getUpdateCount());
+        Assert.assertEquals(Collections.nCopies(3, Thread.currentThread()), EXECUTED_THREADS);
+        Assert.assertEquals(Arrays.asList(
+                "getConnection ds0", "getConnection ds1", "getConnection ds2",
+                "executeUpdate update 2", "executeUpdate update 2", "executeUpdate update 2"), INVOKED);
+    }
+
+    private static void assertSerial(TransactionSession session) {
+        Map<String, List<String>> map = new LinkedHashMap<>();
+        map.put("ds0", Arrays.asList("insert 1", "insert 2"));
+        map.put("ds1", Collections.singletonList("insert 3"));
+        map.put("ds2", Collections.singletonList("insert 4"));
+        EXECUTED_THREADS.clear();
+        UpdateRowIteratorResponse response = TransactionSessionUtil.executeUpdateByDatasouce(session, map, false, false, 4);
+        Assert.assertEquals(10, response.getUpdateCount());
+        Assert.assertEquals(4, response.serverStatus());
+        Assert.assertEquals(Collections.nCopies(4, Thread.currentThread()), EXECUTED_THREADS);
+    }
+
+    private static final List<Thread> EXECUTED_THREADS = Collections.synchronizedList(new ArrayList<>());
+    private static final List<String> INVOKED = Collections.synchronizedList(new ArrayList<>());
+
+    private static TransactionSession session() {
+        return session(false, ThreadUsageEnum.MULTI_THREADING);
+    }
+
+    private static TransactionSession session(boolean inTransaction, ThreadUsageEnum threadUsage) {
+        MycatConnection connection = (MycatConnection) Proxy.newProxyInstance(TransactionSessionUtilTest.class.getClassLoader(),
+                new Class[]{MycatConnection.class}, (proxy, method, args) -> {
+                    if ("executeUpdate".equals(method.getName())) {
+                        String sql = (String) args[0];
+                        long count = Long.parseLong(sql.substring(sql.indexOf(' ') + 1));
+                        EXECUTED_THREADS.add(Thread.currentThread());
+                        INVOKED.add("executeUpdate " + sql);
+                        return new UpdateRowIteratorResponse(count, 0, (Integer) args[2] + 1);
+                    }
+                    INVOKED.add(method.getName());
+                    return null;
+                });
+        return (TransactionSession) Proxy.newProxyInstance(TransactionSessionUtilTest.class.getClassLoader(),
+                new Class[]{TransactionSession.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getConnection":
+                            INVOKED.add("getConnection " + args[0]);
+                            return connection;
+                        case "getServerStatus":
+                            return 0;
+                        case "isInTransaction":
+                            return inTransaction;
+                        case "getThreadUsageEnum":
+                            return threadUsage;
+                        default:
+                            return null;
+                    }
+                });
+    }
+}
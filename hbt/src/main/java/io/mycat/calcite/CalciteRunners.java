@@ -12,7 +12,13 @@ import io.mycat.hbt3.DrdsRunner;
 import io.mycat.hbt4.Executor;
 import io.mycat.hbt4.ExecutorImplementorImpl;
 import io.mycat.hbt4.MycatRel;
+import io.mycat.hbt4.NativeQueryDispatcher;
+import io.mycat.hbt4.cancel.QueryCancelContext;
+import io.mycat.hbt4.cancel.QueryCancelManager;
+import io.mycat.hbt4.executor.MycatNativeScanExecutor;
 import io.mycat.hbt4.executor.TempResultSetFactoryImpl;
+import io.mycat.hbt4.memory.QueryMemoryContext;
+import io.mycat.hbt4.memory.QueryMemoryManager;
 import io.mycat.sqlrecorder.SqlRecorder;
 import io.mycat.sqlrecorder.SqlRecorderRuntime;
 import io.mycat.sqlrecorder.SqlRecorderType;
@@ -32,11 +38,14 @@ import org.slf4j.LoggerFactory;
 
 import java.util.*;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class CalciteRunners {
     private final static Logger LOGGER = LoggerFactory.getLogger(CalciteRunners.class);
+    /**
+     * 原生扫描每个分片最多缓冲的行数,超过则暂停读取
+     */
+    private final static int NATIVE_SCAN_HIGH_WATERMARK = 4096;
 
     @SneakyThrows
     public static RelNode compile(MycatCalcitePlanner planner, String sql, SqlNode sqlNode , boolean forUpdate) {
@@ -94,27 +103,78 @@ public class CalciteRunners {
             }
         });
        MycatRel mycatRel = (MycatRel)DrdsRunner.optimizeWithCBO(relNode);
+        MycatDBContext uponDBContext = calciteDataContext.getUponDBContext();
+        QueryCancelContext cancelContext = QueryCancelManager.INSTANCE.createContext(uponDBContext.cancelFlag(), sql);
+        //先于分片连接登记,会话结束时先终止分片上的语句再归还连接
+        uponDBContext.addCloseResource(cancelContext);
         long startGetConnectionTime = TimeProvider.INSTANCE.now();
-        fork(sql, calciteDataContext, map);
+        try {
+            fork(sql, calciteDataContext, map, cancelContext);
+        } catch (Throwable e) {
+            cancelContext.close();
+            throw e;
+        }
         long cbo = TimeProvider.INSTANCE.now();
         recorder.addRecord(SqlRecorderType.GET_CONNECTION, sql, cbo - startGetConnectionTime);
-        ExecutorImplementorImpl executorImplementor = new ExecutorImplementorImpl(ImmutableList.of(),null,new TempResultSetFactoryImpl());
+        ExecutorImplementorImpl executorImplementor = new ExecutorImplementorImpl(ImmutableList.of(), null, new TempResultSetFactoryImpl(),
+                calciteDataContext.getUponDBContext());
+        QueryMemoryContext memoryContext = QueryMemoryManager.INSTANCE.createContext(sql);
+        //语句结束时无论是否正常关闭结果集都要归还内存
+        calciteDataContext.getUponDBContext().addCloseResource(memoryContext);
+        executorImplementor.setMemoryContext(memoryContext);
         Executor executor = mycatRel.implement(executorImplementor);
         long execution_start = TimeProvider.INSTANCE.now();
         recorder.addRecord(SqlRecorderType.CBO, sql, execution_start - cbo);
-        executor.open();
-        Enumerator<Object[]> enumerator = Linq4j.iterableEnumerator( ()-> executor.outputObjectIterator());
+        try {
+            executor.open();
+        } catch (Throwable e) {
+            memoryContext.close();
+            cancelContext.close();
+            throw e;
+        }
+        Enumerator<Object[]> rows = Linq4j.iterableEnumerator( ()-> executor.outputObjectIterator());
+        //被取消的分片只是提前结束,在这里转换为错误,不返回不完整的结果
+        Enumerator<Object[]> enumerator = new Enumerator<Object[]>() {
+            @Override
+            public Object[] current() {
+                return rows.current();
+            }
 
-        return new EnumeratorRowIterator(CalciteConvertors.getMycatRowMetaData(relNode.getRowType()), enumerator,
-                () -> {
-                    recorder.addRecord(SqlRecorderType.EXECUTION_TIME, sql, TimeProvider.INSTANCE.now()-execution_start);
-                    recorder.addRecord(SqlRecorderType.AT_END, sql, TimeProvider.INSTANCE.now());
-                });
+            @Override
+            public boolean moveNext() {
+                boolean hasNext = rows.moveNext();
+                cancelContext.check();
+                return hasNext;
+            }
+
+            @Override
+            public void reset() {
+                rows.reset();
+            }
+
+            @Override
+            public void close() {
+                rows.close();
+            }
+        };
+
+        return new EnumeratorRowIterator(CalciteConvertors.getMycatRowMetaData(relNode.getRowType()), enumerator) {
+            @Override
+            public void close() {
+                super.close();
+                memoryContext.close();
+                cancelContext.close();
+                recorder.addRecord(SqlRecorderType.EXECUTION_TIME, sql, TimeProvider.INSTANCE.now() - execution_start);
+                recorder.addRecord(SqlRecorderType.SQL_ROWS, sql, getRowCount());
+                recorder.addRecord(SqlRecorderType.AT_END, sql, TimeProvider.INSTANCE.now());
+            }
+        };
     }
 
-    private static void fork(String sql, MycatCalciteDataContext calciteDataContext, Map<String, List<SingeTargetSQLTable>> map) throws IllegalAccessException {
+    private static void fork(String sql, MycatCalciteDataContext calciteDataContext, Map<String, List<SingeTargetSQLTable>> map,
+                             QueryCancelContext cancelContext) throws IllegalAccessException {
         MycatDBContext uponDBContext = calciteDataContext.getUponDBContext();
-        AtomicBoolean cancelFlag = uponDBContext.cancelFlag();
+        AtomicBoolean cancelFlag = cancelContext.getCancelFlag();
         SqlRecorder recorder = SqlRecorderRuntime.INSTANCE.getCurrentRecorder();
 
         if (uponDBContext.isInTransaction()) {
@@ -126,6 +186,7 @@ public class CalciteRunners {
                     continue;
                 }
                 MycatConnection connection = uponDBContext.getConnection(datasource);
+                cancelContext.addCancelHook(connection::cancel);
                 long start = System.currentTimeMillis();
                 if (list.size() > 1) {
                     throw new IllegalAccessException("事务内该执行计划重复拉取同一个数据源的数据");
@@ -143,11 +204,55 @@ public class CalciteRunners {
                     @Override
                     @SneakyThrows
                     public Enumerator<Object[]> enumerator() {
-                        return new MyCatResultSetEnumerator(cancelFlag, submit.get(1, TimeUnit.MINUTES));
+                        return new MyCatResultSetEnumerator(cancelFlag, cancelContext.await(submit));
                     }
                 });
             }
         } else {
+            /**
+             * 支持原生协议的数据源在reactor线程上拉取数据,不占用连接池的工作线程
+             */
+            for (Map.Entry<String, List<SingeTargetSQLTable>> entry : map.entrySet()) {
+                for (SingeTargetSQLTable v : entry.getValue()) {
+                    if (v.existsEnumerable() || !NativeQueryDispatcher.Holder.INSTANCE.isSupported(v.getTargetName())) {
+                        continue;
+                    }
+                    MycatNativeScanExecutor executor = new MycatNativeScanExecutor(v.getTargetName(), v.getSql(),
+                            v.getMetaData(), cancelFlag, NATIVE_SCAN_HIGH_WATERMARK);
+                    uponDBContext.addCloseResource(executor);
+                    cancelContext.addCancelHook(executor::kill);
+                    executor.open();
+                    v.setEnumerable(new AbstractEnumerable<Object[]>() {
+                        @Override
+                        public Enumerator<Object[]> enumerator() {
+                            LOGGER.info("原生拉取数据" + v.getTargetName() + " sql:" + v.getSql());
+                            Enumerator<Object[]> enumerator = Linq4j.iterableEnumerator(() -> executor.outputObjectIterator());
+                            //提前关闭时取消分片上剩余的拉取
+                            return new Enumerator<Object[]>() {
+                                @Override
+                                public Object[] current() {
+                                    return enumerator.current();
+                                }
+
+                                @Override
+                                public boolean moveNext() {
+                                    return enumerator.moveNext();
+                                }
+
+                                @Override
+                                public void reset() {
+                                    enumerator.reset();
+                                }
+
+                                @Override
+                                public void close() {
+                                    executor.close();
+                                }
+                            };
+                        }
+                    });
+                }
+            }
             Iterator<String> iterator = map.entrySet().stream()
                     .flatMap(i -> i.getValue().stream())
                     .filter(i -> !i.existsEnumerable())
@@ -157,8 +262,12 @@ public class CalciteRunners {
             for (Map.Entry<String, List<SingeTargetSQLTable>> entry : map.entrySet()) {
                 List<SingeTargetSQLTable> value = entry.getValue();
                 for (SingeTargetSQLTable v : value) {
+                    if (v.existsEnumerable()) {
+                        continue;
+                    }
                     MycatConnection connection = nameMap.get(v.getTargetName()).remove();
                     uponDBContext.addCloseResource(connection);
+                    cancelContext.addCancelHook(connection::cancel);
                     Future<RowBaseIterator> submit = JdbcRuntime.INSTANCE.getFetchDataExecutorService()
                             .submit(() -> {
                                 try {
@@ -173,7 +282,7 @@ public class CalciteRunners {
                         @SneakyThrows
                         public Enumerator<Object[]> enumerator() {
                             LOGGER.info("拉取数据" + v.getTargetName() + " sql:" + v.getSql());
-                            return new MyCatResultSetEnumerator(cancelFlag, submit.get());
+                            return new MyCatResultSetEnumerator(cancelFlag, cancelContext.await(submit));
                         }
                     };
                     v.setEnumerable(enumerable);
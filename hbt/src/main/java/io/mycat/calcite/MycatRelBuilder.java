@@ -24,7 +24,10 @@ import org.apache.calcite.plan.RelOptCluster;
 import org.apache.calcite.plan.RelOptSchema;
 import org.apache.calcite.plan.RelOptTable;
 import org.apache.calcite.prepare.RelOptTableImpl;
+import org.apache.calcite.rel.RelCollation;
+import org.apache.calcite.rel.RelCollations;
 import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Sort;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeField;
 import org.apache.calcite.rex.RexBuilder;
@@ -62,7 +65,9 @@ public class MycatRelBuilder extends RelBuilder {
 
     public  RelNode makeTransientSQLScan(String targetName, RelNode input,boolean forUpdate) {
         RelDataType rowType = input.getRowType();
-        return makeBySql(targetName,rowType,MycatCalciteSupport.INSTANCE.convertToSql(input,MycatSqlDialect.DEFAULT,forUpdate));
+        //记录sql的order by,上层可以直接归并有序的分片结果
+        RelCollation collation = input instanceof Sort ? ((Sort) input).getCollation() : RelCollations.EMPTY;
+        return makeBySql(targetName,rowType,MycatCalciteSupport.INSTANCE.convertToSql(input,MycatSqlDialect.DEFAULT,forUpdate),collation);
     }
 
 
@@ -145,6 +150,10 @@ public class MycatRelBuilder extends RelBuilder {
      * @return
      */
     public RelNode makeBySql(String targetName,RelDataType relDataType, String sql) {
+        return makeBySql(targetName, relDataType, sql, RelCollations.EMPTY);
+    }
+
+    public RelNode makeBySql(String targetName,RelDataType relDataType, String sql, RelCollation collation) {
         MycatSQLTableScan transientTable = new MycatSQLTableScan(relDataType,targetName,sql);
         id++;
         RelOptTable relOptTable = RelOptTableImpl.create(
@@ -152,6 +161,6 @@ public class MycatRelBuilder extends RelBuilder {
                 relDataType,
                 transientTable,
                 ImmutableList.of(id +"$"+targetName, id+sql));//名称唯一
-        return new MycatTransientSQLTableScan(this.getCluster(), targetName, relOptTable, sql);
+        return new MycatTransientSQLTableScan(this.getCluster(), targetName, relOptTable, sql, collation);
     }
 }
\ No newline at end of file
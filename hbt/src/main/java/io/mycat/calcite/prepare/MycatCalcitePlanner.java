@@ -19,13 +19,21 @@ import com.google.common.collect.ImmutableSet;
 import io.mycat.calcite.MycatCalciteDataContext;
 import io.mycat.calcite.MycatCalciteSupport;
 import io.mycat.calcite.MycatRelBuilder;
+import io.mycat.calcite.rules.BatchKeyLookupJoinRule;
+import io.mycat.calcite.rules.CoLocatedJoinRule;
+import io.mycat.calcite.rules.DeepPagingRule;
+import io.mycat.calcite.rules.GroupByPartitionRule;
 import io.mycat.calcite.rules.LimitPushRemoveRule;
 import io.mycat.calcite.rules.MycatProjectTransportRule;
 import io.mycat.calcite.rules.PushDownLogicTableRule;
+import io.mycat.calcite.rules.SortPartitionedAggregateRule;
 import io.mycat.calcite.table.MycatPhysicalTable;
 import io.mycat.calcite.table.MycatSQLTableScan;
 import io.mycat.calcite.table.MycatTransientSQLTableScan;
 import io.mycat.calcite.table.SingeTargetSQLTable;
+import io.mycat.hbt4.logical.MycatBatchKeyLookupJoin;
+import io.mycat.hbt4.logical.MycatDeepPageSort;
+import io.mycat.statistic.MycatRelMetadataProvider;
 import io.mycat.upondb.MycatDBContext;
 import org.apache.calcite.adapter.enumerable.EnumerableConvention;
 import org.apache.calcite.interpreter.Bindables;
@@ -157,6 +165,14 @@ public class MycatCalcitePlanner extends PlannerImpl implements RelOptTable.View
         planner.setRoot(originExpr);
         RelNode pushRes = Objects.requireNonNull(planner.findBestExp());
 
+        //分片表展开之前,同分布的连接改为按分片连接,小表驱动的分片表连接改为按键查找
+        hepProgramBuilder = new HepProgramBuilder()
+                .addRuleInstance(CoLocatedJoinRule.INSTANCE)
+                .addRuleInstance(BatchKeyLookupJoinRule.INSTANCE);
+        planner = new HepPlanner(hepProgramBuilder.build());
+        planner.setRoot(pushRes);
+        pushRes = Objects.requireNonNull(planner.findBestExp());
+
         hepProgramBuilder = new HepProgramBuilder()
                 .addMatchLimit(FILTER.size())
                 .addRuleCollection(ImmutableList.of(
@@ -177,6 +193,7 @@ public class MycatCalcitePlanner extends PlannerImpl implements RelOptTable.View
         HepProgramBuilder hepProgramBuilder = new HepProgramBuilder();
         hepProgramBuilder.addMatchLimit(1);
         hepProgramBuilder.addMatchOrder(HepMatchOrder.TOP_DOWN);
+        hepProgramBuilder.addRuleInstance(DeepPagingRule.INSTANCE);
         hepProgramBuilder.addRuleInstance(LimitPushRemoveRule.INSTANCE);
         HepProgram build = hepProgramBuilder.build();
 
@@ -319,7 +336,9 @@ public class MycatCalcitePlanner extends PlannerImpl implements RelOptTable.View
     public RelOptCluster newCluster() {
         RelOptPlanner planner = new VolcanoPlanner();
         planner.addRelTraitDef(ConventionTraitDef.INSTANCE);
-        return RelOptCluster.create(planner, MycatCalciteSupport.INSTANCE.RexBuilder);
+        RelOptCluster cluster = RelOptCluster.create(planner, MycatCalciteSupport.INSTANCE.RexBuilder);
+        cluster.setMetadataProvider(MycatRelMetadataProvider.INSTANCE);
+        return cluster;
     }
 
     public static final EnumMap<SqlKind, Boolean> SUPPORTED_AGGREGATES = new EnumMap<>(SqlKind.class);
@@ -399,6 +418,9 @@ public class MycatCalcitePlanner extends PlannerImpl implements RelOptTable.View
             JoinUnionTransposeRule.LEFT_UNION,
             JoinUnionTransposeRule.RIGHT_UNION,
             AggregateProjectMergeRule.INSTANCE,//
+            GroupByPartitionRule.INSTANCE,//分组键包含分片键时整个聚合下推,否则分片部分聚合
+            FilterSetOpTransposeRule.INSTANCE,//下推having
+            SortPartitionedAggregateRule.INSTANCE,
             AggregateUnionTransposeRule.INSTANCE,//该实现可能有问题
             AggregateUnionAggregateRule.INSTANCE,
             AggregateProjectMergeRule.INSTANCE,
@@ -494,7 +516,8 @@ public class MycatCalcitePlanner extends PlannerImpl implements RelOptTable.View
                         cache.put(other, Boolean.TRUE);
                     }
                     //修正,不能影响上面流程
-                    if (other instanceof SetOp || other instanceof Correlate) {
+                    if (other instanceof SetOp || other instanceof Correlate || other instanceof MycatBatchKeyLookupJoin
+                            || other instanceof MycatDeepPageSort) {
                         cache.put(other, false);//没有事务并行查询->总是并行查询
                         margeList.put(other, ImmutableList.of("a", "b"));//强制使union的数据源不一致,这样就不会下推union
                         return other;
@@ -15,6 +15,7 @@ public class EnumeratorRowIterator extends AbstractObjectRowIterator {
     protected final MycatRowMetaData mycatRowMetaData;
     protected final Enumerator<Object[]> iterator;
     protected final Runnable closeRunnable;
+    protected long rowCount;
     public EnumeratorRowIterator(MycatRowMetaData mycatRowMetaData, Enumerator<Object[]> iterator){
         this(mycatRowMetaData,iterator,null);
     }
@@ -33,6 +34,7 @@ public class EnumeratorRowIterator extends AbstractObjectRowIterator {
     public boolean next() {
         if (this.iterator.moveNext()) {
             this.currentRow = this.iterator.current();
+            rowCount++;
             return true;
         } else {
             return false;
@@ -52,6 +54,13 @@ public class EnumeratorRowIterator extends AbstractObjectRowIterator {
         return (Date) o;
     }
 
+    /**
+     * 已经读取的行数
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
     @Override
     public void close() {
         iterator.close();
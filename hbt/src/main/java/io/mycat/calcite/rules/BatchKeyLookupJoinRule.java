@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) <2020>  <chen junwen>
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with this program.  If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mycat.calcite.rules;
+
+import io.mycat.DataNode;
+import io.mycat.LogicTableType;
+import io.mycat.SimpleColumnInfo;
+import io.mycat.calcite.CalciteUtls;
+import io.mycat.calcite.table.MycatLogicTable;
+import io.mycat.hbt4.logical.MycatBatchKeyLookupJoin;
+import io.mycat.router.ShardingTableHandler;
+import org.apache.calcite.interpreter.Bindables;
+import org.apache.calcite.plan.RelOptRule;
+import org.apache.calcite.plan.RelOptRuleCall;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Join;
+import org.apache.calcite.rel.core.JoinInfo;
+import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rel.logical.LogicalTableScan;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.util.ImmutableIntList;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 右边是分片表的连接,如果左表的行数远小于右表,并且等值连接键是右表的分片列,
+ * 改写为{@link MycatBatchKeyLookupJoin},按左表的键分批到对应的分片上查找右表,
+ * 避免拉取右表的所有分片.
+ * 需要在分片表展开为物理表之前执行
+ *
+ * @author Junwen Chen
+ **/
+public class BatchKeyLookupJoinRule extends RelOptRule {
+    public static final BatchKeyLookupJoinRule INSTANCE = new BatchKeyLookupJoinRule();
+    /**
+     * 右表行数至少是左表的多少倍
+     */
+    public static final int LOOKUP_RATIO = 10;
+
+    public BatchKeyLookupJoinRule() {
+        super(operand(Join.class, operand(RelNode.class, any()), operand(TableScan.class, none())), "BatchKeyLookupJoinRule");
+    }
+
+    @Override
+    public void onMatch(RelOptRuleCall call) {
+        Join join = call.rel(0);
+        RelNode left = call.rel(1);
+        TableScan scan = call.rel(2);
+        switch (join.getJoinType()) {
+            case INNER:
+            case LEFT:
+            case SEMI:
+            case ANTI:
+                break;
+            default:
+                return;
+        }
+        MycatLogicTable logicTable = scan.getTable().unwrap(MycatLogicTable.class);
+        if (logicTable == null || logicTable.logicTable().getType() != LogicTableType.SHARDING) {
+            return;
+        }
+        List<RexNode> filters;
+        ImmutableIntList projects;
+        if (scan instanceof Bindables.BindableTableScan) {
+            Bindables.BindableTableScan bindableTableScan = (Bindables.BindableTableScan) scan;
+            filters = bindableTableScan.filters;
+            projects = bindableTableScan.projects;
+        } else if (scan instanceof LogicalTableScan) {
+            filters = Collections.emptyList();
+            projects = null;
+        } else {
+            return;
+        }
+        ShardingTableHandler table = (ShardingTableHandler) logicTable.logicTable();
+        //过滤条件已经能路由到单个分片时,交给下推处理
+        List<DataNode> dataNodes = CalciteUtls.getBackendTableInfos(table, filters);
+        if (dataNodes.size() <= 1) {
+            return;
+        }
+        JoinInfo joinInfo = join.analyzeCondition();
+        int lookupKey = -1;
+        for (int i = 0; i < joinInfo.rightKeys.size(); i++) {
+            int rightKey = joinInfo.rightKeys.get(i);
+            int column = projects == null ? rightKey : projects.get(rightKey);
+            if (isShardingColumn(table, table.getColumns().get(column))) {
+                lookupKey = i;
+                break;
+            }
+        }
+        if (lookupKey < 0) {
+            return;
+        }
+        RelMetadataQuery mq = call.getMetadataQuery();
+        Double leftRowCount = mq.getRowCount(left);
+        Double rightRowCount = mq.getRowCount(scan);
+        if (leftRowCount == null || rightRowCount == null || leftRowCount * LOOKUP_RATIO > rightRowCount) {
+            return;
+        }
+        call.transformTo(new MycatBatchKeyLookupJoin(join.getCluster(),
+                join.getTraitSet(),
+                left,
+                join.getJoinType(),
+                join.getCondition(),
+                scan.getTable(),
+                filters,
+                projects,
+                scan.getRowType(),
+                joinInfo.leftKeys,
+                joinInfo.rightKeys,
+                joinInfo.nonEquiConditions,
+                lookupKey));
+    }
+
+    /**
+     * 只有一个列就能确定分片时才能按键路由
+     */
+    private static boolean isShardingColumn(ShardingTableHandler table, SimpleColumnInfo column) {
+        if (table.isNatureTable()) {
+            return table.getNatureTableColumnInfo() != null
+                    && Objects.equals(table.getNatureTableColumnInfo().getColumnInfo(), column);
+        }
+        SimpleColumnInfo.ShardingInfo[] shardingInfos = {
+                table.getReplicaColumnInfo(),
+                table.getDatabaseColumnInfo(),
+                table.getTableColumnInfo()
+        };
+        for (SimpleColumnInfo.ShardingInfo shardingInfo : shardingInfos) {
+            if (shardingInfo == null || !Objects.equals(shardingInfo.getColumnInfo(), column)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
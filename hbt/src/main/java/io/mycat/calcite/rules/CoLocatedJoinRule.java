@@ -0,0 +1,312 @@
+/**
+ * Copyright (C) <2020>  <chen junwen>
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with this program.  If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mycat.calcite.rules;
+
+import io.mycat.BackendTableInfo;
+import io.mycat.DataNode;
+import io.mycat.LogicTableType;
+import io.mycat.calcite.CalciteUtls;
+import io.mycat.calcite.table.MycatLogicTable;
+import io.mycat.metadata.GlobalTableHandler;
+import io.mycat.router.CustomRuleFunction;
+import io.mycat.router.ShardingTableHandler;
+import org.apache.calcite.interpreter.Bindables;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptRule;
+import org.apache.calcite.plan.RelOptRuleCall;
+import org.apache.calcite.plan.RelOptSchema;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Join;
+import org.apache.calcite.rel.core.JoinInfo;
+import org.apache.calcite.rel.core.JoinRelType;
+import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rel.logical.LogicalTableScan;
+import org.apache.calcite.tools.RelBuilder;
+import org.apache.calcite.util.ImmutableIntList;
+
+import java.sql.JDBCType;
+import java.util.*;
+
+/**
+ * 同分布连接.
+ * 两个分片表使用同样的分片算法与分片数量,并且连接条件含有两者分片列的等值时,
+ * 相同键的行总是在同一序号的分片上,连接改写为每个分片上的连接的union all,
+ * 每个分片的连接在同一个目标上,之后会整体下推为一条sql.
+ * 分片表与全局表的连接同样改写为分片表每个分片与同一目标上的全局表的连接.
+ * 需要在分片表展开为物理表之前执行
+ *
+ * @author Junwen Chen
+ **/
+public class CoLocatedJoinRule extends RelOptRule {
+    public static final CoLocatedJoinRule INSTANCE = new CoLocatedJoinRule();
+
+    public CoLocatedJoinRule() {
+        super(operand(Join.class, operand(TableScan.class, none()), operand(TableScan.class, none())), "CoLocatedJoinRule");
+    }
+
+    @Override
+    public void onMatch(RelOptRuleCall call) {
+        Join join = call.rel(0);
+        Bindables.BindableTableScan left = toBindableTableScan(call.rel(1));
+        Bindables.BindableTableScan right = toBindableTableScan(call.rel(2));
+        if (left == null || right == null || !join.getVariablesSet().isEmpty()) {
+            return;
+        }
+        MycatLogicTable leftTable = left.getTable().unwrap(MycatLogicTable.class);
+        MycatLogicTable rightTable = right.getTable().unwrap(MycatLogicTable.class);
+        if (leftTable == null || rightTable == null) {
+            return;
+        }
+        LogicTableType leftType = leftTable.logicTable().getType();
+        LogicTableType rightType = rightTable.logicTable().getType();
+        List<RelNode[]> pairs;
+        if (leftType == LogicTableType.SHARDING && rightType == LogicTableType.SHARDING) {
+            pairs = shardingPairs(join, left, right);
+        } else if (leftType == LogicTableType.SHARDING && rightType == LogicTableType.GLOBAL) {
+            pairs = globalPairs(join, left, right, true);
+        } else if (leftType == LogicTableType.GLOBAL && rightType == LogicTableType.SHARDING) {
+            pairs = globalPairs(join, right, left, false);
+        } else {
+            return;
+        }
+        if (pairs == null || pairs.isEmpty()) {
+            return;
+        }
+        RelBuilder builder = call.builder();
+        builder.clear();
+        for (RelNode[] pair : pairs) {
+            builder.push(join.copy(join.getTraitSet(), join.getCondition(), pair[0], pair[1],
+                    join.getJoinType(), join.isSemiJoinDone()));
+        }
+        call.transformTo(builder.union(true, pairs.size()).build());
+    }
+
+    /**
+     * 两个分片表按分片序号配对,同一序号的分片需要在同一目标上
+     */
+    private static List<RelNode[]> shardingPairs(Join join,
+                                                 Bindables.BindableTableScan left,
+                                                 Bindables.BindableTableScan right) {
+        ShardingTableHandler leftTable = (ShardingTableHandler) left.getTable().unwrap(MycatLogicTable.class).logicTable();
+        ShardingTableHandler rightTable = (ShardingTableHandler) right.getTable().unwrap(MycatLogicTable.class).logicTable();
+        if (!isCoLocated(leftTable, rightTable) || !hasShardingKeyEquality(join, left, right, leftTable, rightTable)) {
+            return null;
+        }
+        List<DataNode> leftNodes = leftTable.getShardingBackends();
+        List<DataNode> rightNodes = rightTable.getShardingBackends();
+        Set<Integer> leftIndexes = routeIndexes(leftTable, left);
+        Set<Integer> rightIndexes = routeIndexes(rightTable, right);
+        //一个键只会出现在同一序号的分片上,不保留的一侧只需要另一侧路由到的分片
+        Set<Integer> indexes = new TreeSet<>();
+        switch (join.getJoinType()) {
+            case INNER:
+                indexes.addAll(leftIndexes);
+                indexes.retainAll(rightIndexes);
+                break;
+            case LEFT:
+            case SEMI:
+            case ANTI:
+                indexes.addAll(leftIndexes);
+                break;
+            case RIGHT:
+                indexes.addAll(rightIndexes);
+                break;
+            case FULL:
+                indexes.addAll(leftIndexes);
+                indexes.addAll(rightIndexes);
+                break;
+            default:
+                return null;
+        }
+        List<RelNode[]> pairs = new ArrayList<>(indexes.size());
+        for (int index : indexes) {
+            DataNode leftNode = leftNodes.get(index);
+            DataNode rightNode = rightNodes.get(index);
+            if (!Objects.equals(leftNode.getTargetName(), rightNode.getTargetName())) {
+                return null;
+            }
+            pairs.add(new RelNode[]{toPhysical(left, leftNode), toPhysical(right, rightNode)});
+        }
+        return pairs;
+    }
+
+    /**
+     * 分片表的每个分片与同一目标上的全局表配对,全局表不能是保留的一侧
+     */
+    private static List<RelNode[]> globalPairs(Join join,
+                                               Bindables.BindableTableScan sharding,
+                                               Bindables.BindableTableScan global,
+                                               boolean shardingOnLeft) {
+        JoinRelType joinType = join.getJoinType();
+        boolean supported;
+        switch (joinType) {
+            case INNER:
+                supported = true;
+                break;
+            case LEFT:
+            case SEMI:
+            case ANTI:
+                supported = shardingOnLeft;
+                break;
+            case RIGHT:
+                supported = !shardingOnLeft;
+                break;
+            default:
+                supported = false;
+        }
+        if (!supported) {
+            return null;
+        }
+        ShardingTableHandler shardingTable = (ShardingTableHandler) sharding.getTable().unwrap(MycatLogicTable.class).logicTable();
+        GlobalTableHandler globalTable = (GlobalTableHandler) global.getTable().unwrap(MycatLogicTable.class).logicTable();
+        List<DataNode> dataNodes = CalciteUtls.getBackendTableInfos(shardingTable, sharding.filters);
+        List<RelNode[]> pairs = new ArrayList<>(dataNodes.size());
+        for (DataNode dataNode : dataNodes) {
+            BackendTableInfo globalNode = globalTable.getDataNodeMap().values().stream()
+                    .filter(i -> Objects.equals(i.getTargetName(), dataNode.getTargetName()))
+                    .findFirst().orElse(null);
+            if (globalNode == null) {
+                return null;
+            }
+            RelNode shardingInput = toPhysical(sharding, dataNode);
+            RelNode globalInput = toPhysical(global, globalNode);
+            pairs.add(shardingOnLeft ? new RelNode[]{shardingInput, globalInput} : new RelNode[]{globalInput, shardingInput});
+        }
+        return pairs;
+    }
+
+    /**
+     * 分片算法,算法参数与分片数量相同,分片列的类型计算出相同的分片,并且同一序号的分片在同一目标上
+     */
+    static boolean isCoLocated(ShardingTableHandler left, ShardingTableHandler right) {
+        if (!left.isNatureTable() || !right.isNatureTable()
+                || left.getNatureTableColumnInfo() == null || right.getNatureTableColumnInfo() == null) {
+            return false;
+        }
+        if (!isHashCompatible(left.getNatureTableColumnInfo().getColumnInfo().getJdbcType(),
+                right.getNatureTableColumnInfo().getColumnInfo().getJdbcType())) {
+            return false;
+        }
+        CustomRuleFunction leftFunction = left.getNatureTableColumnInfo().getFunction();
+        CustomRuleFunction rightFunction = right.getNatureTableColumnInfo().getFunction();
+        if (leftFunction.getClass() != rightFunction.getClass()
+                || !Objects.equals(leftFunction.name(), rightFunction.name())
+                || !Objects.equals(leftFunction.getProperties(), rightFunction.getProperties())
+                || !Objects.equals(leftFunction.getRanges(), rightFunction.getRanges())) {
+            return false;
+        }
+        List<DataNode> leftNodes = left.getShardingBackends();
+        List<DataNode> rightNodes = right.getShardingBackends();
+        if (leftNodes.size() != rightNodes.size()) {
+            return false;
+        }
+        for (int i = 0; i < leftNodes.size(); i++) {
+            if (!Objects.equals(leftNodes.get(i).getTargetName(), rightNodes.get(i).getTargetName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 整数之间,字符串之间按同样的值计算分片,其他类型要求完全相同;
+     * 例如BIGINT与VARCHAR的连接值相等时,分片算法得到的分片也可能不同
+     */
+    static boolean isHashCompatible(JDBCType left, JDBCType right) {
+        if (left == right) {
+            return true;
+        }
+        return (isIntegral(left) && isIntegral(right)) || (isCharacter(left) && isCharacter(right));
+    }
+
+    private static boolean isIntegral(JDBCType type) {
+        switch (type) {
+            case TINYINT:
+            case SMALLINT:
+            case INTEGER:
+            case BIGINT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isCharacter(JDBCType type) {
+        switch (type) {
+            case CHAR:
+            case VARCHAR:
+            case LONGVARCHAR:
+            case NCHAR:
+            case NVARCHAR:
+            case LONGNVARCHAR:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean hasShardingKeyEquality(Join join,
+                                                  Bindables.BindableTableScan left,
+                                                  Bindables.BindableTableScan right,
+                                                  ShardingTableHandler leftTable,
+                                                  ShardingTableHandler rightTable) {
+        JoinInfo joinInfo = join.analyzeCondition();
+        for (int i = 0; i < joinInfo.leftKeys.size(); i++) {
+            int leftColumn = rawColumn(left.projects, joinInfo.leftKeys.get(i));
+            int rightColumn = rawColumn(right.projects, joinInfo.rightKeys.get(i));
+            if (leftTable.getColumns().get(leftColumn).equals(leftTable.getNatureTableColumnInfo().getColumnInfo())
+                    && rightTable.getColumns().get(rightColumn).equals(rightTable.getNatureTableColumnInfo().getColumnInfo())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int rawColumn(ImmutableIntList projects, int index) {
+        return projects == null ? index : projects.get(index);
+    }
+
+    private static Set<Integer> routeIndexes(ShardingTableHandler table, Bindables.BindableTableScan scan) {
+        List<DataNode> dataNodes = table.getShardingBackends();
+        Map<String, Integer> indexMap = new HashMap<>();
+        for (int i = 0; i < dataNodes.size(); i++) {
+            indexMap.put(dataNodes.get(i).getUniqueName(), i);
+        }
+        Set<Integer> indexes = new HashSet<>();
+        for (DataNode dataNode : CalciteUtls.getBackendTableInfos(table, scan.filters)) {
+            Integer index = indexMap.get(dataNode.getUniqueName());
+            if (index != null) {
+                indexes.add(index);
+            }
+        }
+        return indexes;
+    }
+
+    private static RelNode toPhysical(Bindables.BindableTableScan scan, DataNode dataNode) {
+        RelOptCluster cluster = scan.getCluster();
+        RelOptSchema relOptSchema = scan.getTable().getRelOptSchema();
+        return PushDownLogicTableRule.getBindableTableScan(scan, cluster, relOptSchema, dataNode);
+    }
+
+    private static Bindables.BindableTableScan toBindableTableScan(TableScan scan) {
+        if (scan instanceof Bindables.BindableTableScan) {
+            return (Bindables.BindableTableScan) scan;
+        }
+        if (scan instanceof LogicalTableScan) {
+            return Bindables.BindableTableScan.create(scan.getCluster(), scan.getTable());
+        }
+        return null;
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) <2020>  <chen junwen>
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with this program.  If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mycat.calcite.rules;
+
+import io.mycat.calcite.table.MycatPhysicalTable;
+import io.mycat.hbt4.logical.MycatDeepPageSort;
+import org.apache.calcite.plan.RelOptRule;
+import org.apache.calcite.plan.RelOptRuleCall;
+import org.apache.calcite.plan.hep.HepRelVertex;
+import org.apache.calcite.rel.RelFieldCollation;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.RelVisitor;
+import org.apache.calcite.rel.core.Sort;
+import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rel.core.Union;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.sql.type.SqlTypeUtil;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 跨分片的 order by limit 偏移量很大时,改写为{@link MycatDeepPageSort},
+ * 先定位全局边界再取数据,避免每个分片都返回offset+fetch行.
+ * 只处理按单个数值列排序,并且union的每个分支都只在一个目标上
+ *
+ * @author Junwen Chen
+ **/
+public class DeepPagingRule extends RelOptRule {
+    public static final DeepPagingRule INSTANCE = new DeepPagingRule();
+    public static final long DEEP_PAGING_OFFSET = 10000;
+
+    public DeepPagingRule() {
+        super(operand(Sort.class, operand(Union.class, any())), "DeepPagingRule");
+    }
+
+    @Override
+    public void onMatch(RelOptRuleCall call) {
+        Sort sort = call.rel(0);
+        Union union = call.rel(1);
+        if (!union.all || union.getInputs().size() < 2) {
+            return;
+        }
+        Long offset = longValue(sort.offset);
+        Long fetch = longValue(sort.fetch);
+        if (offset == null || fetch == null || offset < DEEP_PAGING_OFFSET || fetch <= 0) {
+            return;
+        }
+        List<RelFieldCollation> fieldCollations = sort.getCollation().getFieldCollations();
+        if (fieldCollations.size() != 1) {
+            return;
+        }
+        int key = fieldCollations.get(0).getFieldIndex();
+        if (!SqlTypeUtil.isNumeric(sort.getRowType().getFieldList().get(key).getType())) {
+            return;
+        }
+        List<String> targets = new ArrayList<>(union.getInputs().size());
+        for (RelNode input : union.getInputs()) {
+            String target = singleTarget(input);
+            if (target == null) {
+                return;
+            }
+            targets.add(target);
+        }
+        call.transformTo(new MycatDeepPageSort(sort.getCluster(), sort.getTraitSet(), union.getInputs(),
+                targets, sort.getCollation(), offset, fetch));
+    }
+
+    private static Long longValue(RexNode node) {
+        if (node instanceof RexLiteral) {
+            Comparable value = ((RexLiteral) node).getValue();
+            if (value instanceof Number) {
+                return ((Number) value).longValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 分支只读取同一个目标上的物理表时返回该目标
+     */
+    private static String singleTarget(RelNode input) {
+        Set<String> targets = new HashSet<>();
+        boolean[] valid = {true};
+        new RelVisitor() {
+            @Override
+            public void visit(RelNode node, int ordinal, RelNode parent) {
+                if (node instanceof HepRelVertex) {
+                    node = ((HepRelVertex) node).getCurrentRel();
+                }
+                if (node instanceof TableScan) {
+                    MycatPhysicalTable table = node.getTable().unwrap(MycatPhysicalTable.class);
+                    if (table == null) {
+                        valid[0] = false;
+                    } else {
+                        targets.add(table.getTargetName());
+                    }
+                } else if (node.getInputs().isEmpty()) {
+                    valid[0] = false;
+                }
+                super.visit(node, ordinal, parent);
+            }
+        }.go(input);
+        return valid[0] && targets.size() == 1 ? targets.iterator().next() : null;
+    }
+}
@@ -1,26 +1,62 @@
+/**
+ * Copyright (C) <2020>  <chen junwen>
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with this program.  If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
 package io.mycat.calcite.rules;
 
-import com.google.common.base.Predicate;
-import io.mycat.calcite.table.MycatLogicTable;
-import io.mycat.calcite.table.MycatPhysicalTable;
-import io.mycat.metadata.ShardingTable;
-import io.mycat.TableHandler;
+import com.google.common.collect.ImmutableList;
 import io.mycat.SimpleColumnInfo;
+import io.mycat.TableHandler;
+import io.mycat.calcite.table.MycatPhysicalTable;
+import io.mycat.router.ShardingTableHandler;
 import org.apache.calcite.plan.RelOptRule;
 import org.apache.calcite.plan.RelOptRuleCall;
-import org.apache.calcite.plan.RelOptTable;
+import org.apache.calcite.plan.hep.HepRelVertex;
 import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.RelVisitor;
 import org.apache.calcite.rel.core.Aggregate;
+import org.apache.calcite.rel.core.AggregateCall;
+import org.apache.calcite.rel.core.Filter;
+import org.apache.calcite.rel.core.Project;
 import org.apache.calcite.rel.core.TableScan;
 import org.apache.calcite.rel.core.Union;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.sql.SqlAggFunction;
 import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.sql.fun.SqlStdOperatorTable;
 import org.apache.calcite.tools.RelBuilder;
 import org.apache.calcite.util.ImmutableBitSet;
 
+import java.util.ArrayList;
 import java.util.EnumMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 
+/**
+ * 分片表上的group by下推.
+ * 分组键包含分片键时,同一组只会出现在一个分片上,整个聚合下推到每个分片;
+ * 否则每个分片先做部分聚合,代理端再合并:avg拆成sum与count,
+ * 全部是同一参数的distinct聚合时,分片先按分组键与参数去重,代理端去重后再聚合
+ *
+ * @author Junwen Chen
+ **/
 public class GroupByPartitionRule extends RelOptRule {
+    public static final GroupByPartitionRule INSTANCE = new GroupByPartitionRule();
     public static final EnumMap<SqlKind, Boolean> SUPPORTED_AGGREGATES = new EnumMap<>(SqlKind.class);
 
     static {
@@ -29,61 +65,258 @@ public class GroupByPartitionRule extends RelOptRule {
         SUPPORTED_AGGREGATES.put(SqlKind.COUNT, true);
         SUPPORTED_AGGREGATES.put(SqlKind.SUM, true);
         SUPPORTED_AGGREGATES.put(SqlKind.SUM0, true);
+        SUPPORTED_AGGREGATES.put(SqlKind.AVG, true);
     }
 
     public GroupByPartitionRule() {
-        super(operandJ(Aggregate.class, null, GroupByPartitionRule::test,
-                operandJ(Union.class, null, r -> !r.isDistinct(),
-                        operandJ(TableScan.class, null, (Predicate<TableScan>) input -> {
-                            if (input != null) {
-                                RelOptTable table = input.getTable();
-                                if (table != null) {
-                                    MycatPhysicalTable table1 = table.unwrap(MycatPhysicalTable.class);
-                                    MycatLogicTable logicTable = table1.getLogicTable();
-                                    TableHandler tableHandler = logicTable.getTable();
-                                    if (tableHandler instanceof ShardingTable) {
-                                        ShardingTable handler = (ShardingTable) tableHandler;
-                                        return logicTable.getDataNodes().size() > 1;
-                                    }
-                                    return false;
-                                }
-                            }
-                            return false;
-                        }, none()))));
-    }
-
-    private static boolean test(Aggregate r) {
-        return r.getGroupCount() == 1 && r.getAggCallList().size() == 1 &&
-                SUPPORTED_AGGREGATES.containsKey(r.getAggCallList().get(0).getAggregation().kind);
+        super(operand(Aggregate.class, operand(Union.class, any())), "GroupByPartitionRule");
     }
 
     @Override
     public void onMatch(RelOptRuleCall call) {
         final Aggregate aggregate = call.rel(0);
         final Union union = call.rel(1);
-        final TableScan table = call.rel(2);
-        if (!test(aggregate)) {
+        if (!union.all || aggregate.getGroupType() != Aggregate.Group.SIMPLE) {
             return;
         }
+        List<RelNode> inputs = union.getInputs();
+        RelMetadataQuery mq = call.getMetadataQuery();
+        ImmutableBitSet groupSet = aggregate.getGroupSet();
+        //每个分支已经是聚合结果,避免重复改写
+        boolean aggregated = true;
+        for (RelNode input : inputs) {
+            RelNode rel = input instanceof HepRelVertex ? ((HepRelVertex) input).getCurrentRel() : input;
+            aggregated &= rel instanceof Aggregate;
+        }
+        if (aggregated) {
+            return;
+        }
+        //分片列在元数据里是键,不能先按唯一性跳过
+        if (isPartitioned(groupSet, inputs)) {
+            List<RelNode> newInputs = new ArrayList<>(inputs.size());
+            for (RelNode input : inputs) {
+                newInputs.add(aggregate.copy(aggregate.getTraitSet(), ImmutableList.of(input)));
+            }
+            call.transformTo(union.copy(union.getTraitSet(), newInputs, true));
+            return;
+        }
+        //每个分支在分组键上已经唯一,部分聚合不能减少行数
+        boolean allUnique = true;
+        for (RelNode input : inputs) {
+            allUnique &= Boolean.TRUE.equals(mq.areColumnsUnique(input, groupSet));
+        }
+        if (allUnique) {
+            return;
+        }
+        List<AggregateCall> aggCallList = aggregate.getAggCallList();
+        for (AggregateCall aggCall : aggCallList) {
+            if (!SUPPORTED_AGGREGATES.containsKey(aggCall.getAggregation().getKind())
+                    || aggCall.hasFilter() || aggCall.isApproximate()) {
+                return;
+            }
+        }
+        RelNode res;
+        if (aggCallList.stream().noneMatch(AggregateCall::isDistinct)) {
+            res = partialAggregate(call.builder(), aggregate, inputs);
+        } else if (aggCallList.stream().allMatch(i -> i.isDistinct() && i.getArgList().equals(aggCallList.get(0).getArgList()))) {
+            res = distinctAggregate(call.builder(), aggregate, inputs);
+        } else {
+            return;
+        }
+        call.transformTo(res);
+    }
 
+    /**
+     * 分片先聚合,代理端合并:count合并为sum0,sum,min,max不变,avg拆成sum/count
+     */
+    private static RelNode partialAggregate(RelBuilder builder, Aggregate aggregate, List<RelNode> inputs) {
         ImmutableBitSet groupSet = aggregate.getGroupSet();
-        Integer integer = groupSet.asList().get(0);
-        MycatPhysicalTable table1 = table.getTable().unwrap(MycatPhysicalTable.class);
+        int groupCount = groupSet.cardinality();
+        List<AggregateCall> aggCallList = aggregate.getAggCallList();
+        for (RelNode input : inputs) {
+            builder.push(input);
+            List<RelBuilder.AggCall> partialCalls = new ArrayList<>();
+            for (AggregateCall aggCall : aggCallList) {
+                List<RexNode> args = builder.fields(aggCall.getArgList());
+                if (aggCall.getAggregation().getKind() == SqlKind.AVG) {
+                    partialCalls.add(builder.aggregateCall(SqlStdOperatorTable.SUM, args));
+                    partialCalls.add(builder.aggregateCall(SqlStdOperatorTable.COUNT, args));
+                } else {
+                    partialCalls.add(builder.aggregateCall(aggCall.getAggregation(), args));
+                }
+            }
+            builder.aggregate(builder.groupKey(groupSet), partialCalls);
+        }
+        builder.union(true, inputs.size());
+        List<RelBuilder.AggCall> finalCalls = new ArrayList<>();
+        List<int[]> avgFields = new ArrayList<>();
+        int index = groupCount;
+        for (AggregateCall aggCall : aggCallList) {
+            SqlKind kind = aggCall.getAggregation().getKind();
+            if (kind == SqlKind.AVG) {
+                finalCalls.add(builder.aggregateCall(SqlStdOperatorTable.SUM, builder.field(index++)));
+                finalCalls.add(builder.aggregateCall(SqlStdOperatorTable.SUM0, builder.field(index++)));
+            } else {
+                SqlAggFunction function = kind == SqlKind.COUNT ? SqlStdOperatorTable.SUM0 : aggCall.getAggregation();
+                finalCalls.add(builder.aggregateCall(function, builder.field(index++)));
+            }
+        }
+        builder.aggregate(builder.groupKey(ImmutableBitSet.range(groupCount)), finalCalls);
 
-        MycatLogicTable logicTable = table1.getLogicTable();
-        TableHandler tableHandler = logicTable.getTable();
-        if (tableHandler instanceof ShardingTable) {
-            ShardingTable handler = (ShardingTable) tableHandler;
-            List<SimpleColumnInfo> columns = handler.getColumns();
-            if (integer < columns.size()) {
-                if (handler.getNatureTableColumnInfo().getColumnInfo().equals(columns.get(integer))) {
-                    RelBuilder builder = call.builder();
-                    List<RelNode> inputs = union.getInputs();
+        RexBuilder rexBuilder = builder.getRexBuilder();
+        List<RexNode> projects = new ArrayList<>(builder.fields(ImmutableBitSet.range(groupCount)));
+        index = groupCount;
+        for (AggregateCall aggCall : aggCallList) {
+            if (aggCall.getAggregation().getKind() == SqlKind.AVG) {
+                RexNode sum = builder.field(index++);
+                RexNode count = builder.field(index++);
+                RexNode avg = rexBuilder.makeCall(SqlStdOperatorTable.CASE,
+                        builder.equals(count, builder.literal(0)),
+                        rexBuilder.makeNullLiteral(aggCall.getType()),
+                        rexBuilder.makeCast(aggCall.getType(), builder.call(SqlStdOperatorTable.DIVIDE, sum, count), true));
+                projects.add(avg);
+            } else {
+                projects.add(builder.field(index++));
+            }
+        }
+        builder.project(projects);
+        return builder.convert(aggregate.getRowType(), true).build();
+    }
 
+    /**
+     * 分片按分组键与distinct参数去重,代理端再次去重后用非distinct的聚合函数计算
+     */
+    private static RelNode distinctAggregate(RelBuilder builder, Aggregate aggregate, List<RelNode> inputs) {
+        ImmutableBitSet groupSet = aggregate.getGroupSet();
+        List<Integer> argList = aggregate.getAggCallList().get(0).getArgList();
+        ImmutableBitSet distinctSet = groupSet.union(ImmutableBitSet.of(argList));
+        for (RelNode input : inputs) {
+            builder.push(input);
+            builder.aggregate(builder.groupKey(distinctSet));
+        }
+        builder.union(true, inputs.size());
+        builder.aggregate(builder.groupKey(ImmutableBitSet.range(distinctSet.cardinality())));
+
+        List<Integer> groupFields = new ArrayList<>();
+        for (Integer i : groupSet) {
+            groupFields.add(distinctSet.indexOf(i));
+        }
+        List<RexNode> args = new ArrayList<>();
+        for (Integer i : argList) {
+            args.add(builder.field(distinctSet.indexOf(i)));
+        }
+        List<RelBuilder.AggCall> finalCalls = new ArrayList<>();
+        for (AggregateCall aggCall : aggregate.getAggCallList()) {
+            finalCalls.add(builder.aggregateCall(aggCall.getAggregation(), args));
+        }
+        builder.aggregate(builder.groupKey(ImmutableBitSet.of(groupFields)), finalCalls);
+        return builder.convert(aggregate.getRowType(), true).build();
+    }
+
+    /**
+     * 所有分支都来自同一个分片表的不同分片,并且分组键包含全部分片列
+     */
+    private static boolean isPartitioned(ImmutableBitSet groupSet, List<RelNode> inputs) {
+        if (groupSet.isEmpty()) {
+            return false;
+        }
+        ShardingTableHandler shardingTable = null;
+        Set<String> dataNodes = new HashSet<>();
+        for (RelNode input : inputs) {
+            MycatPhysicalTable physicalTable = singlePhysicalTable(input);
+            if (physicalTable == null) {
+                return false;
+            }
+            TableHandler tableHandler = physicalTable.logicTable();
+            if (!(tableHandler instanceof ShardingTableHandler)
+                    || (shardingTable != null && shardingTable != tableHandler)
+                    || !dataNodes.add(physicalTable.getBackendTableInfo().getUniqueName())) {
+                return false;
+            }
+            shardingTable = (ShardingTableHandler) tableHandler;
+            Set<SimpleColumnInfo> groupColumns = new HashSet<>();
+            for (Integer key : groupSet) {
+                int column = originColumn(input, key);
+                if (column >= 0) {
+                    groupColumns.add(shardingTable.getColumns().get(column));
+                }
+            }
+            if (!containsShardingColumns(shardingTable, groupColumns)) {
+                return false;
+            }
+        }
+        return shardingTable != null;
+    }
+
+    /**
+     * 沿着投影与过滤找到字段对应的物理表列,不是直接引用时返回-1
+     */
+    private static int originColumn(RelNode input, int index) {
+        if (input instanceof HepRelVertex) {
+            input = ((HepRelVertex) input).getCurrentRel();
+        }
+        if (input instanceof TableScan) {
+            return index;
+        }
+        if (input instanceof Filter) {
+            return originColumn(((Filter) input).getInput(), index);
+        }
+        if (input instanceof Project) {
+            RexNode rexNode = ((Project) input).getProjects().get(index);
+            if (rexNode instanceof RexInputRef) {
+                return originColumn(((Project) input).getInput(), ((RexInputRef) rexNode).getIndex());
+            }
+        }
+        return -1;
+    }
 
+    private static boolean containsShardingColumns(ShardingTableHandler table, Set<SimpleColumnInfo> columns) {
+        if (table.isNatureTable()) {
+            return table.getNatureTableColumnInfo() != null
+                    && columns.contains(table.getNatureTableColumnInfo().getColumnInfo());
+        }
+        SimpleColumnInfo.ShardingInfo[] shardingInfos = {
+                table.getReplicaColumnInfo(),
+                table.getDatabaseColumnInfo(),
+                table.getTableColumnInfo()
+        };
+        boolean found = false;
+        for (SimpleColumnInfo.ShardingInfo shardingInfo : shardingInfos) {
+            if (shardingInfo != null) {
+                if (!columns.contains(shardingInfo.getColumnInfo())) {
+                    return false;
                 }
+                found = true;
             }
         }
+        return found;
+    }
 
+    /**
+     * 分支只读取一张物理表时返回该表
+     */
+    private static MycatPhysicalTable singlePhysicalTable(RelNode input) {
+        List<MycatPhysicalTable> tables = new ArrayList<>(1);
+        boolean[] valid = {true};
+        new RelVisitor() {
+            @Override
+            public void visit(RelNode node, int ordinal, RelNode parent) {
+                if (node instanceof HepRelVertex) {
+                    node = ((HepRelVertex) node).getCurrentRel();
+                }
+                if (node instanceof TableScan) {
+                    MycatPhysicalTable table = node.getTable().unwrap(MycatPhysicalTable.class);
+                    if (table == null) {
+                        valid[0] = false;
+                    } else {
+                        tables.add(table);
+                    }
+                } else if (node.getInputs().isEmpty()) {
+                    valid[0] = false;
+                }
+                super.visit(node, ordinal, parent);
+            }
+        }.go(input);
+        return valid[0] && tables.size() == 1 ? Objects.requireNonNull(tables.get(0)) : null;
     }
-}
\ No newline at end of file
+}
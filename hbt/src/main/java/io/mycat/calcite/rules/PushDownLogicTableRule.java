@@ -147,7 +147,7 @@ public class PushDownLogicTableRule extends RelOptRule {
     }
 
     @NotNull
-    private static RelNode getBindableTableScan(Bindables.BindableTableScan bindableTableScan, RelOptCluster cluster, RelOptSchema relOptSchema, DataNode backendTableInfo) {
+    public static RelNode getBindableTableScan(Bindables.BindableTableScan bindableTableScan, RelOptCluster cluster, RelOptSchema relOptSchema, DataNode backendTableInfo) {
         String uniqueName = backendTableInfo.getUniqueName();
         MycatLogicTable unwrap = bindableTableScan.getTable().unwrap(MycatLogicTable.class);
         MycatPhysicalTable mycatPhysicalTable = new MycatPhysicalTable(unwrap,backendTableInfo);
@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) <2020>  <chen junwen>
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with this program.  If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mycat.calcite.rules;
+
+import org.apache.calcite.plan.RelOptRule;
+import org.apache.calcite.plan.RelOptRuleCall;
+import org.apache.calcite.plan.hep.HepRelVertex;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Aggregate;
+import org.apache.calcite.rel.core.Filter;
+import org.apache.calcite.rel.core.Project;
+import org.apache.calcite.rel.core.Sort;
+import org.apache.calcite.rel.core.Union;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 聚合已经整个下推到分片时({@link GroupByPartitionRule}),没有limit的order by也复制到每个分片,
+ * 代理端只需归并有序的分片结果
+ *
+ * @author Junwen Chen
+ **/
+public class SortPartitionedAggregateRule extends RelOptRule {
+    public static final SortPartitionedAggregateRule INSTANCE = new SortPartitionedAggregateRule();
+
+    public SortPartitionedAggregateRule() {
+        super(operand(Sort.class, operand(Union.class, any())), "SortPartitionedAggregateRule");
+    }
+
+    @Override
+    public void onMatch(RelOptRuleCall call) {
+        Sort sort = call.rel(0);
+        Union union = call.rel(1);
+        if (!union.all || sort.offset != null || sort.fetch != null
+                || sort.getCollation().getFieldCollations().isEmpty()) {
+            return;
+        }
+        List<RelNode> newInputs = new ArrayList<>(union.getInputs().size());
+        for (RelNode input : union.getInputs()) {
+            if (!isAggregate(input)) {
+                return;
+            }
+            newInputs.add(sort.copy(sort.getTraitSet(), input, sort.getCollation(), null, null));
+        }
+        call.transformTo(sort.copy(sort.getTraitSet(), union.copy(union.getTraitSet(), newInputs, true), sort.getCollation()));
+    }
+
+    /**
+     * 分支是聚合,或者聚合上的having与投影
+     */
+    private static boolean isAggregate(RelNode input) {
+        input = unwrap(input);
+        while (input instanceof Filter || input instanceof Project) {
+            input = unwrap(input.getInput(0));
+        }
+        return input instanceof Aggregate;
+    }
+
+    private static RelNode unwrap(RelNode input) {
+        return input instanceof HepRelVertex ? ((HepRelVertex) input).getCurrentRel() : input;
+    }
+}
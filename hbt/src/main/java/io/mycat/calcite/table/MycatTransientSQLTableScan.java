@@ -7,6 +7,8 @@ import io.mycat.hbt4.MycatRel;
 import org.apache.calcite.plan.RelOptCluster;
 import org.apache.calcite.plan.RelOptTable;
 import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelCollation;
+import org.apache.calcite.rel.RelCollations;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.core.TableScan;
 
@@ -15,11 +17,20 @@ import java.util.List;
 public class MycatTransientSQLTableScan extends TableScan implements MycatRel {
     final String sql;
     final String targetName;
+    /**
+     * sql结果的顺序,没有order by时为空
+     */
+    final RelCollation collation;
 
     public MycatTransientSQLTableScan(RelOptCluster cluster, String targetName, RelOptTable relOptTable, String sql) {
+        this(cluster, targetName, relOptTable, sql, RelCollations.EMPTY);
+    }
+
+    public MycatTransientSQLTableScan(RelOptCluster cluster, String targetName, RelOptTable relOptTable, String sql, RelCollation collation) {
         super(cluster, cluster.traitSetOf(io.mycat.hbt4.MycatConvention.INSTANCE), relOptTable);
         this.sql = sql;
         this.targetName = targetName;
+        this.collation = collation;
     }
 
 
@@ -27,7 +38,7 @@ public class MycatTransientSQLTableScan extends TableScan implements MycatRel {
     public RelNode copy(RelTraitSet traitSet, List<RelNode> inputs) {
         assert inputs.isEmpty();
         return new MycatTransientSQLTableScan(
-                getCluster(), targetName, getTable(), sql);
+                getCluster(), targetName, getTable(), sql, collation);
     }
 
     public String getSql() {
@@ -38,11 +49,16 @@ public class MycatTransientSQLTableScan extends TableScan implements MycatRel {
         return targetName;
     }
 
+    public RelCollation getCollation() {
+        return collation;
+    }
+
     @Override
     public ExplainWriter explain(ExplainWriter writer) {
         return writer.name("MycatTransientSQLTableScan").into()
                 .item("target",targetName)
                 .item("sql",sql)
+                .item("collation",collation)
                 .ret();
     }
 
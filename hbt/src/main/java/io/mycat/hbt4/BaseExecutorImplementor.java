@@ -19,10 +19,12 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Ordering;
 import io.mycat.calcite.MycatCalciteSupport;
+import io.mycat.calcite.table.MycatTransientSQLTableScan;
 import io.mycat.hbt3.PartInfo;
 import io.mycat.hbt3.View;
 import io.mycat.hbt4.executor.*;
 import io.mycat.hbt4.logical.*;
+import io.mycat.hbt4.memory.QueryMemoryContext;
 import io.mycat.hbt4.physical.*;
 import io.mycat.mpp.Row;
 import lombok.SneakyThrows;
@@ -54,12 +56,20 @@ import java.util.function.Predicate;
 public abstract class BaseExecutorImplementor implements ExecutorImplementor {
     final List<Object> context;
     private TempResultSetFactory tempResultSetFactory;
+    /**
+     * 哈希连接,哈希聚合,排序持有的行按该查询的预算计数
+     */
+    protected QueryMemoryContext memoryContext = QueryMemoryContext.NONE;
 
     public BaseExecutorImplementor(List<Object> context, TempResultSetFactory tempResultSetFactory) {
         this.context = context;
         this.tempResultSetFactory = tempResultSetFactory;
     }
 
+    public void setMemoryContext(QueryMemoryContext memoryContext) {
+        this.memoryContext = memoryContext;
+    }
+
     @Override
     @SneakyThrows
     public Executor implement(MycatNestedLoopJoin mycatJoin) {
@@ -128,7 +138,7 @@ public abstract class BaseExecutorImplementor implements ExecutorImplementor {
     @Override
     public Executor implement(MycatAggregate mycatAggregate) {
         Executor input = implementInput(mycatAggregate);
-        return new MycatHashAggExecutor(input, mycatAggregate);
+        return new MycatHashAggExecutor(input, mycatAggregate, memoryContext);
     }
 
     @Override
@@ -221,18 +231,39 @@ public abstract class BaseExecutorImplementor implements ExecutorImplementor {
                 return mycatMergeSortExecutor;
             }
         } else {
-            Executor executor = implementInput((MycatRel) mycatSort);
             boolean isTopN = comparator != null && (offset != null || fetch != null);
+            if (comparator != null && isSortedUnion(mycatSort.getInput(), collation)) {
+                //每个分片的sql已经带有相同的order by,归并即可
+                Executor[] executors = implementInputs(mycatSort.getInput());
+                if (isTopN) {
+                    return new MycatTopNExecutor(comparator, offsetValue, fetchValue, executors);
+                }
+                return new MycatMergeSortExecutor(comparator, executors);
+            }
+            Executor executor = implementInput((MycatRel) mycatSort);
             if (isTopN) {
-                return new MycatTopNExecutor(comparator, offsetValue, fetchValue, executor);
+                return new MycatTopNExecutor(comparator, offsetValue, fetchValue, executor, memoryContext);
             }
             if (comparator != null) {
-                return new MycatMemSortExecutor(comparator, executor);
+                return new MycatMemSortExecutor(comparator, executor, memoryContext);
             }
             return new MycatLimitExecutor(offsetValue, fetchValue, executor);
         }
     }
 
+    private static boolean isSortedUnion(RelNode input, RelCollation collation) {
+        if (!(input instanceof MycatUnion) || !((MycatUnion) input).all) {
+            return false;
+        }
+        for (RelNode relNode : input.getInputs()) {
+            if (!(relNode instanceof MycatTransientSQLTableScan)
+                    || !((MycatTransientSQLTableScan) relNode).getCollation().satisfies(collation)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private RexNode resolveDynamicParam(RexNode node) {
         if (node == null) {
             return null;
@@ -341,7 +372,7 @@ public abstract class BaseExecutorImplementor implements ExecutorImplementor {
         ImmutableList<RexNode> nonEquiConditions = joinInfo.nonEquiConditions;//不等价条件
 
         int[] leftKeys = joinInfo.leftKeys.toIntArray();
-        int[] rightKeys = joinInfo.leftKeys.toIntArray();
+        int[] rightKeys = joinInfo.rightKeys.toIntArray();
         boolean generateNullsOnLeft = mycatHashJoin.getJoinType().generatesNullsOnLeft();
         boolean generateNullsOnRight = mycatHashJoin.getJoinType().generatesNullsOnRight();
         int leftFieldCount = mycatHashJoin.getLeft().getRowType().getFieldCount();
@@ -357,7 +388,7 @@ public abstract class BaseExecutorImplementor implements ExecutorImplementor {
                 generateNullsOnRight,
                 leftFieldCount,
                 rightFieldCount,
-                resultRelDataType, tempResultSetFactory);
+                resultRelDataType, tempResultSetFactory, memoryContext);
     }
 
 
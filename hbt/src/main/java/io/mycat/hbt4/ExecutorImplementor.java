@@ -79,5 +79,9 @@ public interface ExecutorImplementor {
 
     Executor implement(MycatHashJoin mycatHashJoin);
 
+    Executor implement(MycatBatchKeyLookupJoin batchKeyLookupJoin);
+
+    Executor implement(MycatDeepPageSort deepPageSort);
+
 //    Executor implement(BottomView bottomView);
 }
\ No newline at end of file
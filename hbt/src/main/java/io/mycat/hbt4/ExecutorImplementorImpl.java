@@ -15,53 +15,87 @@
 package io.mycat.hbt4;
 
 import com.google.common.collect.ImmutableList;
+import io.mycat.calcite.MycatCalciteSupport;
+import io.mycat.calcite.MycatSqlDialect;
+import io.mycat.calcite.table.MycatLogicTable;
 import io.mycat.calcite.table.MycatSQLTableScan;
 import io.mycat.calcite.table.MycatTransientSQLTableScan;
 import io.mycat.hbt3.MultiView;
 import io.mycat.hbt3.Part;
 import io.mycat.hbt3.PartInfo;
 import io.mycat.hbt3.View;
+import io.mycat.hbt4.executor.MycatBatchKeyLookupJoinExecutor;
+import io.mycat.hbt4.executor.MycatDeepPageSortExecutor;
 import io.mycat.hbt4.executor.MycatJdbcExecutor;
 import io.mycat.hbt4.executor.MycatUnionAllExecutor;
+import io.mycat.hbt4.executor.MycatViewExecutor;
+import io.mycat.hbt4.executor.ShardingKeyLookup;
 import io.mycat.hbt4.executor.TempResultSetFactory;
-import org.apache.calcite.rel.RelNode;
+import io.mycat.hbt4.logical.MycatBatchKeyLookupJoin;
+import io.mycat.hbt4.logical.MycatDeepPageSort;
+import io.mycat.mpp.Row;
+import io.mycat.router.ShardingTableHandler;
+import io.mycat.upondb.MycatDBContext;
+import lombok.SneakyThrows;
+import org.apache.calcite.interpreter.Context;
+import org.apache.calcite.interpreter.JaninoRexCompiler;
+import org.apache.calcite.interpreter.Scalar;
+import org.apache.calcite.linq4j.function.Function2;
+import org.apache.calcite.linq4j.function.Predicate2;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexUtil;
 import org.apache.calcite.sql.util.SqlString;
+import org.apache.calcite.util.ImmutableIntList;
 import org.jetbrains.annotations.NotNull;
+import org.objenesis.instantiator.util.UnsafeUtils;
 
 import java.util.List;
+import java.util.Objects;
 
 public class ExecutorImplementorImpl extends BaseExecutorImplementor {
     private final DatasourceFactory factory;
+    private final MycatDBContext dbContext;
 
     public ExecutorImplementorImpl(List<Object> context,
                                    DatasourceFactory factory,
                                    TempResultSetFactory tempResultSetFactory) {
+        this(context, factory, tempResultSetFactory, null);
+    }
+
+    public ExecutorImplementorImpl(List<Object> context,
+                                   DatasourceFactory factory,
+                                   TempResultSetFactory tempResultSetFactory,
+                                   MycatDBContext dbContext) {
         super(context,tempResultSetFactory);
         this.factory = factory;
+        this.dbContext = dbContext;
     }
 
     @Override
     public Executor implement(MultiView multiView) {
         PartInfo dataNode = multiView.getDataNode();
-        Part[] parts = dataNode.toPartArray();
-        Executor[] executors = new Executor[parts.length];
-        int i = 0;
-        for (Part part : parts) {
-            RelNode relNode = multiView.getRelNode();
-            SqlString sql = part.getSql(relNode);
-            Object[] objects1 = getPzarameters(sql.getDynamicParameters());
-            executors[i++] = factory.create(part.getMysqlIndex(), sql.getSql(), objects1);
-        }
-        return new MycatUnionAllExecutor(executors);
+        return new MycatViewExecutor(multiView, relNode -> {
+            Part[] parts = dataNode.toPartArray();
+            Executor[] executors = new Executor[parts.length];
+            int i = 0;
+            for (Part part : parts) {
+                SqlString sql = part.getSql(relNode);
+                Object[] objects1 = getPzarameters(sql.getDynamicParameters());
+                executors[i++] = factory.create(part.getMysqlIndex(), sql.getSql(), objects1);
+            }
+            return new MycatUnionAllExecutor(executors);
+        });
     }
 
     @Override
     public Executor implement(View view) {
         Part part = view.getDataNode().getPart(0);
-        SqlString sql = part.getSql(view.getRelNode());
-        ImmutableList<Integer> dynamicParameters = sql.getDynamicParameters();
-        Object[] objects = getPzarameters(dynamicParameters);
-        return factory.create(part.getMysqlIndex(), sql.getSql(), objects);
+        return new MycatViewExecutor(view, relNode -> {
+            SqlString sql = part.getSql(relNode);
+            ImmutableList<Integer> dynamicParameters = sql.getDynamicParameters();
+            Object[] objects = getPzarameters(dynamicParameters);
+            return factory.create(part.getMysqlIndex(), sql.getSql(), objects);
+        });
     }
 
     @Override
@@ -69,6 +103,61 @@ public class ExecutorImplementorImpl extends BaseExecutorImplementor {
         return new MycatJdbcExecutor(mycatTransientSQLTableScan.getTable().unwrap(MycatSQLTableScan.class));
     }
 
+    @Override
+    @SneakyThrows
+    public Executor implement(MycatBatchKeyLookupJoin join) {
+        Objects.requireNonNull(dbContext, "batch key lookup join requires db context");
+        Executor outer = ((MycatRel) join.getInput()).implement(this);
+        int leftFieldCount = join.getInput().getRowType().getFieldCount();
+        int rightFieldCount = join.getLookupRowType().getFieldCount();
+        Function2<Row, Row, Row> resultSelector = Row.composeJoinRow(leftFieldCount, rightFieldCount);
+        Predicate2<Row, Row> predicate = null;
+        if (!join.getNonEquiConditions().isEmpty()) {
+            RexBuilder rexBuilder = MycatCalciteSupport.INSTANCE.RexBuilder;
+            JaninoRexCompiler compiler = new JaninoRexCompiler(rexBuilder);
+            Scalar scalar = compiler.compile(ImmutableList.of(
+                    RexUtil.composeConjunction(rexBuilder, join.getNonEquiConditions())),
+                    join.getCombinedRowType());
+            Context o = (Context) UnsafeUtils.getUnsafe().allocateInstance(Context.class);
+            predicate = (v0, v1) -> {
+                o.values = resultSelector.apply(v0, v1).values;
+                return scalar.execute(o) == Boolean.TRUE;
+            };
+        }
+        int lookupKey = join.getLookupKey();
+        int rightKey = join.getRightKeys().get(lookupKey);
+        ImmutableIntList projects = join.getProjects();
+        MycatLogicTable logicTable = join.getLookupTable().unwrap(MycatLogicTable.class);
+        ShardingKeyLookup lookup = new ShardingKeyLookup(dbContext,
+                (ShardingTableHandler) logicTable.logicTable(),
+                join.getLookupTable().getRowType(),
+                join.getFilters(),
+                projects == null ? null : projects.toIntArray(),
+                projects == null ? rightKey : projects.get(rightKey));
+        return new MycatBatchKeyLookupJoinExecutor(join.getJoinType(),
+                outer,
+                lookup,
+                join.getLeftKeys().get(lookupKey),
+                join.getLeftKeys().toIntArray(),
+                join.getRightKeys().toIntArray(),
+                predicate,
+                resultSelector,
+                MycatBatchKeyLookupJoinExecutor.DEFAULT_BATCH_SIZE,
+                dbContext.isInTransaction());
+    }
+
+    @Override
+    public Executor implement(MycatDeepPageSort deepPageSort) {
+        Objects.requireNonNull(dbContext, "deep page sort requires db context");
+        return new MycatDeepPageSortExecutor(dbContext,
+                deepPageSort.getTargets(),
+                deepPageSort.getShardInputs(),
+                deepPageSort.getCollation(),
+                deepPageSort.getOffset(),
+                deepPageSort.getFetch(),
+                relNode -> MycatCalciteSupport.INSTANCE.convertToSql(relNode, MycatSqlDialect.DEFAULT, false));
+    }
+
     @NotNull
     public Object[] getPzarameters(ImmutableList<Integer> dynamicParameters) {
         Object[] objects;
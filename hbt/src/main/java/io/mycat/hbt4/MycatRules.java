@@ -189,7 +189,9 @@ public class MycatRules {
                 new MycatTableModificationRule(out, relBuilderFactory),
                 new MycatValuesRule(out, relBuilderFactory),
                 new MycatMergeJoinRule(out,relBuilderFactory),
-                new MycatSortAggRule(out,relBuilderFactory)
+                new MycatSortAggRule(out,relBuilderFactory),
+                new MycatBatchKeyLookupJoinRule(out, relBuilderFactory),
+                new MycatDeepPageSortRule(out, relBuilderFactory)
                 );
     }
 
@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) <2020>  <chen junwen>
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with this program.  If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mycat.hbt4;
+
+import io.mycat.hbt4.executor.MycatNativeScanExecutor;
+
+/**
+ * 通过原生MySQL协议(NIO)执行分片查询,结果逐行写入执行器的队列.
+ * 实现在proxy所在的模块,hbt只依赖这个接口
+ *
+ * @author Junwen Chen
+ **/
+public interface NativeQueryDispatcher {
+
+    boolean isSupported(String targetName);
+
+    /**
+     * 不阻塞调用线程,查询在reactor线程上完成
+     */
+    void query(String targetName, String sql, MycatNativeScanExecutor sink);
+
+    /**
+     * 原生扫描的全局入口,未注册实现时全部走JDBC
+     */
+    enum Holder {
+        INSTANCE;
+        private volatile NativeQueryDispatcher dispatcher;
+
+        public void register(NativeQueryDispatcher dispatcher) {
+            this.dispatcher = dispatcher;
+        }
+
+        public boolean isSupported(String targetName) {
+            NativeQueryDispatcher dispatcher = this.dispatcher;
+            return dispatcher != null && dispatcher.isSupported(targetName);
+        }
+
+        public void query(String targetName, String sql, MycatNativeScanExecutor sink) {
+            NativeQueryDispatcher dispatcher = this.dispatcher;
+            if (dispatcher == null) {
+                throw new IllegalStateException("native query dispatcher is not registered");
+            }
+            dispatcher.query(targetName, sql, sink);
+        }
+    }
+}
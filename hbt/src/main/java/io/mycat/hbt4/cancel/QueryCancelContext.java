@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) <2020>  <chen junwen>
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with this program.  If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mycat.hbt4.cancel;
+
+import io.mycat.MycatException;
+import io.mycat.beans.mysql.MySQLErrorCode;
+import lombok.SneakyThrows;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 一个查询的取消状态.
+ * KILL QUERY,会话关闭,超过查询时限都会置位{@link #getCancelFlag()},
+ * 读取分片结果的执行器逐行检查该标志,登记的回调负责终止后端正在执行的语句
+ *
+ * @author Junwen Chen
+ **/
+public class QueryCancelContext implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryCancelContext.class);
+    /**
+     * 等待分片返回时检查取消的间隔
+     */
+    private static final long POLL_INTERVAL = 100;
+
+    private final QueryCancelManager manager;
+    private final AtomicBoolean sessionFlag;
+    private final String sql;
+    private final long startTime = System.currentTimeMillis();
+    private final AtomicBoolean cancelFlag = new AtomicBoolean();
+    private final ConcurrentLinkedQueue<Runnable> cancelHooks = new ConcurrentLinkedQueue<>();
+    private volatile String reason;
+    private volatile boolean closed;
+    private volatile ScheduledFuture<?> timeoutFuture;
+
+    QueryCancelContext(QueryCancelManager manager, AtomicBoolean sessionFlag, String sql) {
+        this.manager = manager;
+        this.sessionFlag = sessionFlag;
+        this.sql = sql;
+    }
+
+    /**
+     * 查询被取消时执行,已经取消则立即执行,每个回调最多执行一次
+     */
+    public void addCancelHook(Runnable hook) {
+        cancelHooks.add(hook);
+        if (cancelFlag.get()) {
+            runCancelHooks();
+        }
+    }
+
+    public void cancel(String reason) {
+        if (cancelFlag.compareAndSet(false, true)) {
+            this.reason = reason;
+            runCancelHooks();
+        }
+    }
+
+    private void runCancelHooks() {
+        Runnable hook;
+        while ((hook = cancelHooks.poll()) != null) {
+            try {
+                hook.run();
+            } catch (Throwable e) {
+                LOGGER.warn("cancel hook failed sql:{}", sql, e);
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelFlag.get() || sessionFlag.get();
+    }
+
+    /**
+     * 已经取消则以ER_QUERY_INTERRUPTED失败
+     */
+    public void check() {
+        if (cancelFlag.get()) {
+            throw new MycatException(MySQLErrorCode.ER_QUERY_INTERRUPTED,
+                    "Query execution was interrupted, " + reason);
+        }
+        if (sessionFlag.get()) {
+            cancel("session closed");
+            throw new MycatException(MySQLErrorCode.ER_QUERY_INTERRUPTED,
+                    "Query execution was interrupted, " + reason);
+        }
+    }
+
+    /**
+     * 代替没有时限的{@link Future#get()},等待期间查询被取消则放弃等待并取消任务
+     */
+    @SneakyThrows
+    public <T> T await(Future<T> future) {
+        while (true) {
+            try {
+                check();
+            } catch (MycatException e) {
+                future.cancel(true);
+                throw e;
+            }
+            try {
+                return future.get(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ignored) {
+
+            }
+        }
+    }
+
+    void setTimeoutFuture(ScheduledFuture<?> timeoutFuture) {
+        this.timeoutFuture = timeoutFuture;
+        if (closed) {
+            timeoutFuture.cancel(false);
+        }
+    }
+
+    /**
+     * 查询结束,还在执行的后端语句一并终止,可以重复调用
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        ScheduledFuture<?> timeoutFuture = this.timeoutFuture;
+        if (timeoutFuture != null) {
+            timeoutFuture.cancel(false);
+        }
+        if (cancelFlag.compareAndSet(false, true)) {
+            this.reason = "query closed";
+            runCancelHooks();
+        }
+        manager.remove(this);
+    }
+
+    public AtomicBoolean getCancelFlag() {
+        return cancelFlag;
+    }
+
+    AtomicBoolean getSessionFlag() {
+        return sessionFlag;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+}
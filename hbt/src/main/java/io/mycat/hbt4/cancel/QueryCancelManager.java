@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) <2020>  <chen junwen>
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with this program.  If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mycat.hbt4.cancel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 正在执行的查询的取消入口.
+ * 每个会话同一时间只有一个查询,以会话的cancelFlag作为键,
+ * KILL QUERY通过会话找到查询并取消,超过查询时限由定时器取消
+ *
+ * @author Junwen Chen
+ **/
+public enum QueryCancelManager {
+    INSTANCE;
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryCancelManager.class);
+
+    private volatile long queryTimeout = 0;
+    private final ConcurrentHashMap<AtomicBoolean, QueryCancelContext> running = new ConcurrentHashMap<>();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong killCount = new AtomicLong();
+    private final ScheduledThreadPoolExecutor timer = createTimer();
+
+    /**
+     * 查询大多在时限内结束,取消的定时任务立即从队列移除,不会堆积到时限到期
+     */
+    private static ScheduledThreadPoolExecutor createTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "mycat-query-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    /**
+     * @param queryTimeout 毫秒,0表示不限制
+     */
+    public void init(long queryTimeout) {
+        this.queryTimeout = Math.max(0, queryTimeout);
+    }
+
+    /**
+     * @param sessionFlag 会话的cancelFlag,会话关闭时置位
+     */
+    public QueryCancelContext createContext(AtomicBoolean sessionFlag, String sql) {
+        if (sessionFlag == null) {
+            sessionFlag = new AtomicBoolean();
+        }
+        QueryCancelContext context = new QueryCancelContext(this, sessionFlag, sql);
+        QueryCancelContext previous = running.put(sessionFlag, context);
+        if (previous != null) {
+            //上一个查询的结果集没有关闭,不再跟踪
+            previous.close();
+        }
+        long timeout = this.queryTimeout;
+        if (timeout > 0) {
+            context.setTimeoutFuture(timer.schedule(() -> {
+                timeoutCount.incrementAndGet();
+                context.cancel("maximum statement execution time " + timeout + " ms exceeded");
+            }, timeout, TimeUnit.MILLISECONDS));
+        }
+        return context;
+    }
+
+    /**
+     * @return 会话正在执行的查询,没有时为null
+     */
+    public QueryCancelContext get(AtomicBoolean sessionFlag) {
+        if (sessionFlag == null) {
+            return null;
+        }
+        return running.get(sessionFlag);
+    }
+
+    /**
+     * @return 会话是否有正在执行的查询
+     */
+    public boolean cancel(AtomicBoolean sessionFlag, String reason) {
+        QueryCancelContext context = get(sessionFlag);
+        if (context == null) {
+            return false;
+        }
+        LOGGER.info("cancel query:{} reason:{}", context.getSql(), reason);
+        killCount.incrementAndGet();
+        context.cancel(reason);
+        return true;
+    }
+
+    void remove(QueryCancelContext context) {
+        running.remove(context.getSessionFlag(), context);
+    }
+
+    public long getQueryTimeout() {
+        return queryTimeout;
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    public long getKillCount() {
+        return killCount.get();
+    }
+
+    /**
+     * @return 还在等待到期的查询时限
+     */
+    int getPendingTimeouts() {
+        return timer.getQueue().size();
+    }
+
+    public List<QueryCancelContext> getRunning() {
+        return new ArrayList<>(running.values());
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright (C) <2020>  <chen junwen>
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with this program.  If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mycat.hbt4.executor;
+
+import io.mycat.mpp.Row;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 按一批连接键查找内表的行,用于{@link MycatBatchKeyLookupJoinExecutor}
+ *
+ * @author Junwen Chen
+ **/
+public interface KeyLookup extends AutoCloseable {
+
+    /**
+     * @param keys 去重后的非null键
+     * @return 内表中键在keys内的行,行的列与内表输出一致
+     */
+    List<Row> lookup(Collection<Object> keys);
+
+    @Override
+    default void close() {
+
+    }
+}
@@ -0,0 +1,203 @@
+/**
+ * Copyright (C) <2020>  <chen junwen>
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with this program.  If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mycat.hbt4.executor;
+
+import io.mycat.hbt4.Executor;
+import io.mycat.mpp.Row;
+import org.apache.calcite.linq4j.function.Function2;
+import org.apache.calcite.linq4j.function.Predicate2;
+import org.apache.calcite.rel.core.JoinRelType;
+
+import java.util.*;
+
+/**
+ * 批量键查找连接(BKA).
+ * 每次缓存batchSize行外表数据,对连接键去重后交给{@link KeyLookup}一次性查找内表,
+ * 再在内存里按键连接这一批外表行,内表只拉取与外表匹配的行.
+ * 支持INNER,LEFT,SEMI,ANTI
+ *
+ * @author Junwen Chen
+ **/
+public class MycatBatchKeyLookupJoinExecutor implements Executor {
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final JoinRelType joinType;
+    private final Executor outer;
+    private final KeyLookup lookup;
+    private final int lookupKey;
+    private final int[] leftKeys;
+    private final int[] rightKeys;
+    private final Predicate2<Row, Row> nonEquiPredicate;
+    private final Function2<Row, Row, Row> resultSelector;
+    private final int batchSize;
+    /**
+     * 外表与内表可能共用同一个事务连接,此时需要先读完外表
+     */
+    private final boolean materializeOuter;
+
+    private Iterator<Row> outerRows;
+    private Iterator<Row> iterator = Collections.emptyIterator();
+    private boolean end;
+
+    public MycatBatchKeyLookupJoinExecutor(JoinRelType joinType,
+                                           Executor outer,
+                                           KeyLookup lookup,
+                                           int lookupKey,
+                                           int[] leftKeys,
+                                           int[] rightKeys,
+                                           Predicate2<Row, Row> nonEquiPredicate,
+                                           Function2<Row, Row, Row> resultSelector,
+                                           int batchSize,
+                                           boolean materializeOuter) {
+        this.joinType = joinType;
+        this.outer = outer;
+        this.lookup = lookup;
+        this.lookupKey = lookupKey;
+        this.leftKeys = leftKeys;
+        this.rightKeys = rightKeys;
+        this.nonEquiPredicate = nonEquiPredicate;
+        this.resultSelector = resultSelector;
+        this.batchSize = Math.max(1, batchSize);
+        this.materializeOuter = materializeOuter;
+    }
+
+    @Override
+    public void open() {
+        outer.open();
+        this.iterator = Collections.emptyIterator();
+        this.end = false;
+        if (materializeOuter) {
+            List<Row> rows = new ArrayList<>();
+            Row row;
+            while ((row = outer.next()) != null) {
+                rows.add(row);
+            }
+            this.outerRows = rows.iterator();
+        } else {
+            this.outerRows = outer.iterator();
+        }
+    }
+
+    @Override
+    public Row next() {
+        while (true) {
+            if (iterator.hasNext()) {
+                return iterator.next();
+            }
+            if (end) {
+                return null;
+            }
+            nextBatch();
+        }
+    }
+
+    private void nextBatch() {
+        List<Row> batch = new ArrayList<>(batchSize);
+        while (batch.size() < batchSize && outerRows.hasNext()) {
+            batch.add(outerRows.next());
+        }
+        if (batch.size() < batchSize) {
+            end = true;
+        }
+        if (batch.isEmpty()) {
+            iterator = Collections.emptyIterator();
+            return;
+        }
+        Set<Object> keys = new LinkedHashSet<>();
+        for (Row row : batch) {
+            Object key = row.values[lookupKey];
+            if (key != null) {
+                keys.add(key);
+            }
+        }
+        Map<Row, List<Row>> innerMap = new HashMap<>();
+        if (!keys.isEmpty()) {
+            for (Row inner : lookup.lookup(keys)) {
+                Row key = keyOf(inner, rightKeys);
+                if (key != null) {
+                    innerMap.computeIfAbsent(key, k -> new ArrayList<>(1)).add(inner);
+                }
+            }
+        }
+        List<Row> result = new ArrayList<>(batch.size());
+        for (Row outerRow : batch) {
+            Row key = keyOf(outerRow, leftKeys);
+            List<Row> matches = key == null ? Collections.emptyList() : innerMap.getOrDefault(key, Collections.emptyList());
+            switch (joinType) {
+                case INNER:
+                case LEFT: {
+                    boolean matched = false;
+                    for (Row inner : matches) {
+                        if (test(outerRow, inner)) {
+                            result.add(resultSelector.apply(outerRow, inner));
+                            matched = true;
+                        }
+                    }
+                    if (!matched && joinType == JoinRelType.LEFT) {
+                        result.add(resultSelector.apply(outerRow, null));
+                    }
+                    break;
+                }
+                case SEMI:
+                case ANTI: {
+                    boolean matched = false;
+                    for (Row inner : matches) {
+                        if (test(outerRow, inner)) {
+                            matched = true;
+                            break;
+                        }
+                    }
+                    if (matched == (joinType == JoinRelType.SEMI)) {
+                        result.add(outerRow);
+                    }
+                    break;
+                }
+                default:
+                    throw new UnsupportedOperationException("unsupported join type " + joinType);
+            }
+        }
+        iterator = result.iterator();
+    }
+
+    private boolean test(Row outerRow, Row inner) {
+        return nonEquiPredicate == null || nonEquiPredicate.apply(outerRow, inner);
+    }
+
+    /**
+     * 键含null时不能相等
+     */
+    private static Row keyOf(Row row, int[] keys) {
+        Object[] values = new Object[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            Object value = row.values[keys[i]];
+            if (value == null) {
+                return null;
+            }
+            values[i] = value;
+        }
+        return Row.of(values);
+    }
+
+    @Override
+    public void close() {
+        outer.close();
+        lookup.close();
+    }
+
+    @Override
+    public boolean isRewindSupported() {
+        return false;
+    }
+}
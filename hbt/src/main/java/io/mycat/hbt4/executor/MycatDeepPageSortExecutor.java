@@ -0,0 +1,307 @@
+/**
+ * Copyright (C) <2020>  <chen junwen>
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with this program.  If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mycat.hbt4.executor;
+
+import io.mycat.hbt4.BaseExecutorImplementor;
+import io.mycat.hbt4.Executor;
+import io.mycat.mpp.Row;
+import io.mycat.upondb.MycatDBContext;
+import org.apache.calcite.rel.RelCollation;
+import org.apache.calcite.rel.RelFieldCollation;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.logical.LogicalFilter;
+import org.apache.calcite.rel.logical.LogicalSort;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.sql.fun.SqlStdOperatorTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * 跨分片的深分页 order by key limit offset,fetch.
+ * 第一次每个分片从offset/分片数的位置取fetch+1行,取各分片第一行中最靠前的作为边界,
+ * 第二次每个分片取边界到本分片第一次最后一行之间的行,不足offset/分片数行的分片整个取回,
+ * 由两次结果算出边界之前的全局行数,合并第二次的结果后跳过剩余的偏移量.
+ * 取到的行全部相同或合并后不足时加倍再取,代理只保存约fetch*分片数的行;
+ * 无法确定结果时退回到每个分片取offset+fetch行
+ *
+ * @author Junwen Chen
+ **/
+public class MycatDeepPageSortExecutor implements Executor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MycatDeepPageSortExecutor.class);
+    private static final List<Row> FALL_BACK = Collections.unmodifiableList(new ArrayList<>());
+    private final MycatDBContext context;
+    private final List<String> targets;
+    private final List<RelNode> inputs;
+    private final RelCollation collation;
+    private final long offset;
+    private final long fetch;
+    private final Function<RelNode, String> sqlGenerator;
+    private final Comparator<Row> comparator;
+    private List<Row> result;
+    private Iterator<Row> iterator;
+
+    public MycatDeepPageSortExecutor(MycatDBContext context,
+                                     List<String> targets,
+                                     List<RelNode> inputs,
+                                     RelCollation collation,
+                                     long offset,
+                                     long fetch,
+                                     Function<RelNode, String> sqlGenerator) {
+        this.context = context;
+        this.targets = targets;
+        this.inputs = inputs;
+        this.collation = collation;
+        this.offset = offset;
+        this.fetch = fetch;
+        this.sqlGenerator = sqlGenerator;
+        this.comparator = BaseExecutorImplementor.comparator(collation.getFieldCollations());
+    }
+
+    @Override
+    public void open() {
+        if (result == null) {
+            List<Row> rows = seek();
+            if (rows == null) {
+                LOGGER.info("deep paging can not locate offset {}, fall back to top n", offset);
+                rows = topN();
+            }
+            result = rows;
+        }
+        iterator = result.iterator();
+    }
+
+    /**
+     * 取到的行全部相同或合并后不足fetch行时把每个分片取的行数加倍再来一次,
+     * 直到与每个分片取offset+fetch行相当
+     *
+     * @return 无法确定结果时返回null
+     */
+    List<Row> seek() {
+        //多取一行,没有重复值时fetch为1也能在第一次找到与第一行不同的行
+        for (long limit = fetch + 1; limit <= offset + fetch; limit *= 2) {
+            List<Row> rows = seek(limit);
+            if (rows == FALL_BACK) {
+                return null;
+            }
+            if (rows != null) {
+                return rows;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return 需要加大limit时返回null,无法用两次查询确定结果时返回FALL_BACK
+     */
+    private List<Row> seek(long limit) {
+        int size = targets.size();
+        long seek = offset / size;
+        List<Integer> shards = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            shards.add(i);
+        }
+        List<List<Row>> firstRows = queryWindows(shards, seek, limit);
+        int[] anchors = new int[size];
+        for (int i = 0; i < size; i++) {
+            anchors[i] = anchor(firstRows.get(i), limit);
+            if (anchors[i] < 0) {
+                return null;
+            }
+        }
+        int key = collation.getFieldCollations().get(0).getFieldIndex();
+        List<Integer> located = new ArrayList<>(size);
+        List<Integer> exhausted = new ArrayList<>();
+        List<Object> lastKeys = new ArrayList<>(size);
+        Row boundary = null;
+        //未取完的分片中最靠前的最后一行,合并结果只在它之前是完整的
+        Row end = null;
+        for (int i = 0; i < size; i++) {
+            List<Row> rows = firstRows.get(i);
+            if (rows.isEmpty()) {
+                exhausted.add(i);
+                continue;
+            }
+            Row first = rows.get(0);
+            Row last = rows.get(rows.size() - 1);
+            if (first.values[key] == null || last.values[key] == null) {
+                return FALL_BACK;
+            }
+            located.add(i);
+            lastKeys.add(last.values[key]);
+            if (boundary == null || comparator.compare(first, boundary) < 0) {
+                boundary = first;
+            }
+            if (rows.size() >= limit && (end == null || comparator.compare(last, end) < 0)) {
+                end = last;
+            }
+        }
+        if (boundary == null) {
+            //每个分片都不足seek行,offset超出了总行数
+            return Collections.emptyList();
+        }
+        List<List<Row>> secondRows = queryRanges(located, boundary.values[key], lastKeys);
+        //边界之前的全局行数
+        long boundaryOffset = 0;
+        List<Row> merged = new ArrayList<>();
+        for (int k = 0; k < located.size(); k++) {
+            int i = located.get(k);
+            List<Row> rows = firstRows.get(i);
+            int anchor = anchors[i];
+            long between = 0;
+            for (Row row : secondRows.get(k)) {
+                //首列相等但后面的排序列在边界之前
+                if (comparator.compare(row, boundary) < 0) {
+                    continue;
+                }
+                if (anchor == rows.size() || comparator.compare(row, rows.get(anchor)) < 0) {
+                    between++;
+                }
+                if (end == null || comparator.compare(row, end) <= 0) {
+                    merged.add(row);
+                }
+            }
+            //排在anchor之前的行有seek+anchor行,去掉其中不在边界之前的
+            long rank = seek + anchor - between;
+            if (rank < 0) {
+                return FALL_BACK;
+            }
+            boundaryOffset += rank;
+        }
+        if (!exhausted.isEmpty() && seek > 0) {
+            //不足seek行的分片整个取回
+            for (List<Row> rows : queryWindows(exhausted, 0, seek)) {
+                for (Row row : rows) {
+                    if (comparator.compare(row, boundary) < 0) {
+                        boundaryOffset++;
+                    } else if (end == null || comparator.compare(row, end) <= 0) {
+                        merged.add(row);
+                    }
+                }
+            }
+        }
+        long skip = offset - boundaryOffset;
+        if (skip < 0) {
+            return FALL_BACK;
+        }
+        if (end != null && merged.size() < skip + fetch) {
+            return null;
+        }
+        merged.sort(comparator);
+        int from = (int) Math.min(skip, merged.size());
+        int to = (int) Math.min(skip + fetch, merged.size());
+        return new ArrayList<>(merged.subList(from, to));
+    }
+
+    /**
+     * 第一个与第一行不同的行的位置,分片之前的行都排在它前面;
+     * 分片已取完时返回行数,取到的行全部相同且还有剩余时返回-1
+     */
+    private int anchor(List<Row> rows, long limit) {
+        for (int i = 1; i < rows.size(); i++) {
+            if (comparator.compare(rows.get(i), rows.get(0)) != 0) {
+                return i;
+            }
+        }
+        return rows.size() < limit ? rows.size() : -1;
+    }
+
+    private List<Row> topN() {
+        List<Integer> shards = new ArrayList<>(targets.size());
+        for (int i = 0; i < targets.size(); i++) {
+            shards.add(i);
+        }
+        List<Row> rows = new ArrayList<>();
+        for (List<Row> list : queryWindows(shards, 0, offset + fetch)) {
+            rows.addAll(list);
+        }
+        rows.sort(comparator);
+        int from = (int) Math.min(offset, rows.size());
+        int to = (int) Math.min(offset + fetch, rows.size());
+        return new ArrayList<>(rows.subList(from, to));
+    }
+
+    /**
+     * 每个分片排序后从seek开始取limit行
+     */
+    List<List<Row>> queryWindows(List<Integer> shards, long seek, long limit) {
+        List<String> shardTargets = new ArrayList<>(shards.size());
+        List<String> sqls = new ArrayList<>(shards.size());
+        for (int i : shards) {
+            shardTargets.add(targets.get(i));
+            sqls.add(sqlGenerator.apply(sort(inputs.get(i), seek, limit)));
+        }
+        return ShardQueryRunner.query(context, shardTargets, sqls);
+    }
+
+    /**
+     * 每个分片取第一个排序列从from到对应的to之间的行,包含两端
+     */
+    List<List<Row>> queryRanges(List<Integer> shards, Object from, List<Object> to) {
+        RelFieldCollation fieldCollation = collation.getFieldCollations().get(0);
+        List<String> shardTargets = new ArrayList<>(shards.size());
+        List<String> sqls = new ArrayList<>(shards.size());
+        for (int k = 0; k < shards.size(); k++) {
+            RelNode input = inputs.get(shards.get(k));
+            RexNode condition = between(input.getCluster().getRexBuilder(), input, fieldCollation, from, to.get(k));
+            shardTargets.add(targets.get(shards.get(k)));
+            sqls.add(sqlGenerator.apply(sort(LogicalFilter.create(input, condition), null, null)));
+        }
+        return ShardQueryRunner.query(context, shardTargets, sqls);
+    }
+
+    private RelNode sort(RelNode input, Long offset, Long fetch) {
+        RexBuilder rexBuilder = input.getCluster().getRexBuilder();
+        return LogicalSort.create(input, collation,
+                offset == null ? null : rexBuilder.makeExactLiteral(BigDecimal.valueOf(offset)),
+                fetch == null ? null : rexBuilder.makeExactLiteral(BigDecimal.valueOf(fetch)));
+    }
+
+    /**
+     * 排序方向上从boundary到last之间,包含两端
+     */
+    private static RexNode between(RexBuilder rexBuilder, RelNode input, RelFieldCollation fieldCollation,
+                                   Object boundary, Object last) {
+        RexNode ref = rexBuilder.makeInputRef(input, fieldCollation.getFieldIndex());
+        RexNode from = rexBuilder.makeLiteral(boundary, ref.getType(), true);
+        RexNode to = rexBuilder.makeLiteral(last, ref.getType(), true);
+        boolean descending = fieldCollation.direction.isDescending();
+        return rexBuilder.makeCall(SqlStdOperatorTable.AND,
+                rexBuilder.makeCall(descending ? SqlStdOperatorTable.LESS_THAN_OR_EQUAL : SqlStdOperatorTable.GREATER_THAN_OR_EQUAL, ref, from),
+                rexBuilder.makeCall(descending ? SqlStdOperatorTable.GREATER_THAN_OR_EQUAL : SqlStdOperatorTable.LESS_THAN_OR_EQUAL, ref, to));
+    }
+
+    @Override
+    public Row next() {
+        if (iterator.hasNext()) {
+            return iterator.next();
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+
+    }
+
+    @Override
+    public boolean isRewindSupported() {
+        return true;
+    }
+}
@@ -16,6 +16,8 @@ package io.mycat.hbt4.executor;
 
 import com.google.common.collect.ImmutableList;
 import io.mycat.hbt4.Executor;
+import io.mycat.hbt4.memory.QueryMemoryContext;
+import io.mycat.hbt4.memory.RowMemoryTracker;
 import io.mycat.mpp.Row;
 import lombok.SneakyThrows;
 import org.apache.calcite.adapter.enumerable.*;
@@ -57,6 +59,10 @@ import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 public class MycatHashAggExecutor implements Executor {
+    /**
+     * 每个累加器的估算大小
+     */
+    private static final long ACCUMULATOR_SIZE = 32;
     private final List<Grouping> groups = new ArrayList<>();
     private final ImmutableBitSet unionGroups;
     private final int outputRowLength;
@@ -64,10 +70,16 @@ public class MycatHashAggExecutor implements Executor {
     private Executor input;
     private final Aggregate rel;
     private Iterator<Row> iter;
+    private final RowMemoryTracker memoryTracker;
 
     public MycatHashAggExecutor(Executor input, Aggregate rel) {
+        this(input, rel, QueryMemoryContext.NONE);
+    }
+
+    public MycatHashAggExecutor(Executor input, Aggregate rel, QueryMemoryContext memoryContext) {
         this.input = input;
         this.rel = rel;
+        this.memoryTracker = new RowMemoryTracker(memoryContext);
         ImmutableBitSet union = ImmutableBitSet.of();
 
         if (rel.getGroupSets() != null) {
@@ -114,6 +126,7 @@ public class MycatHashAggExecutor implements Executor {
     @Override
     public void close() {
         input.close();
+        memoryTracker.close();
     }
 
     @Override
@@ -430,6 +443,8 @@ public class MycatHashAggExecutor implements Executor {
                     list.add(factory.get());
                 }
                 accumulators.put(key, list);
+                memoryTracker.add(key);
+                memoryTracker.add(ACCUMULATOR_SIZE * list.size());
             }
 
             accumulators.get(key).send(row);
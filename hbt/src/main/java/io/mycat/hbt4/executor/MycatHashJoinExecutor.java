@@ -3,6 +3,8 @@ package io.mycat.hbt4.executor;
 import com.google.common.collect.ImmutableList;
 import io.mycat.calcite.MycatCalciteSupport;
 import io.mycat.hbt4.Executor;
+import io.mycat.hbt4.memory.QueryMemoryContext;
+import io.mycat.hbt4.memory.RowMemoryTracker;
 import io.mycat.hbt4.logical.MycatHashJoin;
 import io.mycat.mpp.Row;
 import lombok.SneakyThrows;
@@ -22,7 +24,9 @@ import org.apache.calcite.rex.RexNode;
 import org.apache.calcite.rex.RexUtil;
 import org.objenesis.instantiator.util.UnsafeUtils;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 public class MycatHashJoinExecutor implements Executor {
     private MycatHashJoin mycatHashJoin;
@@ -42,6 +46,7 @@ public class MycatHashJoinExecutor implements Executor {
     private TempResultSetFactory tempResultSetFactory;
     private Enumerable<Row> rows;
     private Iterator<Row> iterator;
+    private final RowMemoryTracker memoryTracker;
 
     public MycatHashJoinExecutor(MycatHashJoin mycatHashJoin, JoinRelType joinType,
                                  Executor outer,
@@ -54,7 +59,8 @@ public class MycatHashJoinExecutor implements Executor {
                                  int leftFieldCount,
                                  int rightFieldCount,
                                  RelDataType resultRelDataType,
-                                 TempResultSetFactory tempResultSetFactory) throws InstantiationException {
+                                 TempResultSetFactory tempResultSetFactory,
+                                 QueryMemoryContext memoryContext) throws InstantiationException {
         this.mycatHashJoin = mycatHashJoin;
         this.joinType = joinType;
         this.originOuter = this.outer = outer;
@@ -68,14 +74,34 @@ public class MycatHashJoinExecutor implements Executor {
         this.rightFieldCount = rightFieldCount;
         this.resultRelDataType = resultRelDataType;
         this.tempResultSetFactory = tempResultSetFactory;
+        this.memoryTracker = new RowMemoryTracker(memoryContext);
     }
 
     @Override
     @SneakyThrows
     public void open() {
         if (rows == null) {
-            originOuter.open();
-            originInner.open();
+            Enumerable<Row> innerEnumerate;
+            if (outer instanceof MycatViewExecutor && isOuterFilterable()) {
+                //先读取构建侧,生成运行时过滤器注入到探测侧的分片sql后再打开探测侧
+                originInner.open();
+                List<Row> innerRows = new ArrayList<>();
+                for (Row row : inner) {
+                    memoryTracker.add(row);
+                    innerRows.add(row);
+                }
+                ((MycatViewExecutor) outer).setRuntimeFilter(RuntimeFilter.create(innerRows, rightKeys, leftKeys));
+                originOuter.open();
+                innerEnumerate = Linq4j.asEnumerable(innerRows);
+            } else {
+                originOuter.open();
+                originInner.open();
+                //构建侧的行都会保存在哈希表中
+                innerEnumerate = Linq4j.asEnumerable(inner).select(row -> {
+                    memoryTracker.add(row);
+                    return row;
+                });
+            }
             Context o = (Context) UnsafeUtils.getUnsafe().allocateInstance(Context.class);
 ////////////////////////////////////check////////////////////////////////////////////////
 //            if (!outer.isRewindSupported()) {
@@ -87,7 +113,6 @@ public class MycatHashJoinExecutor implements Executor {
 //                inner.open();
 //            }
             Enumerable<Row> outerEnumerate = Linq4j.asEnumerable(outer);
-            Enumerable<Row> innerEnumerate = Linq4j.asEnumerable(inner);
             final Function1<Row, Row> outerKeySelector = a0 -> {
                 Object[] values = new Object[leftKeys.length];
                 for (int i = 0; i < values.length; i++) {
@@ -148,6 +173,13 @@ public class MycatHashJoinExecutor implements Executor {
         this.iterator = rows.iterator();
     }
 
+    /**
+     * 探测侧不匹配的行不出现在结果中时才可以过滤探测侧
+     */
+    private boolean isOuterFilterable() {
+        return leftKeys.length > 0 && !generateNullsOnRight && joinType != JoinRelType.ANTI;
+    }
+
     @Override
     public Row next() {
         if (this.iterator.hasNext()){
@@ -162,6 +194,7 @@ public class MycatHashJoinExecutor implements Executor {
         originOuter.close();
         outer.close();
         inner.close();
+        memoryTracker.close();
     }
 
     @Override
@@ -3,14 +3,13 @@ package io.mycat.hbt4.executor;
 import io.mycat.calcite.table.MycatSQLTableScan;
 import io.mycat.hbt4.Executor;
 import io.mycat.mpp.Row;
-
-import java.util.Iterator;
+import org.apache.calcite.linq4j.Enumerator;
 
 public class MycatJdbcExecutor implements Executor {
 
 
     private MycatSQLTableScan tableScan;
-    private Iterator<Object[]> iterator;
+    private Enumerator<Object[]> enumerator;
 
     public MycatJdbcExecutor(MycatSQLTableScan tableScan) {
         this.tableScan = tableScan;
@@ -18,26 +17,32 @@ public class MycatJdbcExecutor implements Executor {
 
     @Override
     public void open() {
-        this.iterator = tableScan.scan(null).iterator();
+        this.enumerator = tableScan.scan(null).enumerator();
     }
 
     @Override
     public Row next() {
-        if (iterator.hasNext()) {
-            return Row.of(iterator.next());
+        if (enumerator.moveNext()) {
+            return Row.of(enumerator.current());
         } else {
             return null;
         }
     }
 
 
+    /**
+     * 上层提前结束时(例如limit已满足)立即释放结果集
+     */
     @Override
     public void close() {
-
+        if (enumerator != null) {
+            enumerator.close();
+            enumerator = null;
+        }
     }
 
     @Override
     public boolean isRewindSupported() {
         return false;
     }
-}
\ No newline at end of file
+}
@@ -15,13 +15,15 @@
 package io.mycat.hbt4.executor;
 
 import io.mycat.hbt4.Executor;
+import io.mycat.hbt4.memory.QueryMemoryContext;
+import io.mycat.hbt4.memory.RowMemoryTracker;
 import io.mycat.mpp.Row;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 
 public class MycatMemSortExecutor implements Executor {
@@ -29,17 +31,30 @@ public class MycatMemSortExecutor implements Executor {
     private final Comparator<Row> comparator;
     private Iterator<Row> iterator;
     private List<Row> output = null;
+    private final RowMemoryTracker memoryTracker;
 
     public MycatMemSortExecutor(Comparator<Row> comparator, Executor input) {
+        this(comparator, input, QueryMemoryContext.NONE);
+    }
+
+    public MycatMemSortExecutor(Comparator<Row> comparator, Executor input, QueryMemoryContext memoryContext) {
         this.comparator = comparator;
         this.input = input;
+        this.memoryTracker = new RowMemoryTracker(memoryContext);
     }
 
     @Override
     public void open() {
         if (output == null) {
             input.open();
-            output = StreamSupport.stream( input.spliterator(),false).parallel().sorted(comparator).collect(Collectors.toList());
+            List<Row> rows = new ArrayList<>();
+            for (Row row : input) {
+                memoryTracker.add(row);
+                rows.add(row);
+            }
+            Row[] array = rows.toArray(new Row[0]);
+            Arrays.parallelSort(array, comparator);
+            output = Arrays.asList(array);
             input.close();
             this.iterator = output.iterator();
         }
@@ -57,6 +72,7 @@ public class MycatMemSortExecutor implements Executor {
     public void close() {
         input.close();
         output = null;
+        memoryTracker.close();
     }
 
     @Override
@@ -0,0 +1,288 @@
+/**
+ * Copyright (C) <2020>  <chen junwen>
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with this program.  If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mycat.hbt4.executor;
+
+import io.mycat.MycatException;
+import io.mycat.beans.mycat.MycatRowMetaData;
+import io.mycat.hbt4.Executor;
+import io.mycat.hbt4.NativeQueryDispatcher;
+import io.mycat.mpp.Row;
+import lombok.Getter;
+import lombok.SneakyThrows;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 使用原生MySQL连接扫描一个分片.
+ * 结果行由reactor线程写入队列,执行器线程读取,
+ * 队列行数超过高水位时暂停读取该连接的socket,消费到低水位以下再恢复,
+ * 所以扫描不占用工作线程,内存也只和水位有关
+ *
+ * @author Junwen Chen
+ **/
+public class MycatNativeScanExecutor implements Executor, AutoCloseable {
+    private static final Object[] END = new Object[0];
+    @Getter
+    private final String targetName;
+    @Getter
+    private final String sql;
+    private final MycatRowMetaData metaData;
+    private final AtomicBoolean cancelFlag;
+    private final int highWatermark;
+    private final int lowWatermark;
+    private final LinkedBlockingQueue<Object[]> queue = new LinkedBlockingQueue<>();
+    private final AtomicBoolean opened = new AtomicBoolean();
+    private final AtomicBoolean paused = new AtomicBoolean();
+    private volatile FlowControl flowControl;
+    private volatile Throwable error;
+    private volatile boolean closed;
+    private volatile boolean producerFinished;
+    private boolean end;
+
+    public MycatNativeScanExecutor(String targetName,
+                                   String sql,
+                                   MycatRowMetaData metaData,
+                                   AtomicBoolean cancelFlag,
+                                   int highWatermark) {
+        this.targetName = targetName;
+        this.sql = sql;
+        this.metaData = metaData;
+        this.cancelFlag = cancelFlag;
+        this.highWatermark = Math.max(2, highWatermark);
+        this.lowWatermark = this.highWatermark / 2;
+    }
+
+    /**
+     * 生产者(reactor线程)一侧的连接控制
+     */
+    public interface FlowControl {
+        void pause();
+
+        void resume();
+
+        /**
+         * 结果集未读完时放弃连接
+         */
+        void cancel();
+
+        /**
+         * 放弃连接并在后端终止正在执行的语句
+         */
+        void kill();
+    }
+
+    @Override
+    public void open() {
+        if (opened.compareAndSet(false, true)) {
+            NativeQueryDispatcher.Holder.INSTANCE.query(targetName, sql, this);
+        }
+    }
+
+    @Override
+    public Row next() {
+        Object[] row = take();
+        return row == null ? null : Row.of(row);
+    }
+
+    @SneakyThrows
+    private Object[] take() {
+        if (end) {
+            return null;
+        }
+        Object[] row;
+        do {
+            if (cancelFlag != null && cancelFlag.get()) {
+                kill();
+                end = true;
+                return null;
+            }
+            row = queue.poll(1, TimeUnit.SECONDS);
+        } while (row == null);
+        if (row == END) {
+            end = true;
+            Throwable throwable = this.error;
+            if (throwable != null) {
+                throw new MycatException("native scan {} failed:{} sql:{}", targetName, throwable.getMessage(), sql);
+            }
+            return null;
+        }
+        if (queue.size() <= lowWatermark && paused.compareAndSet(true, false)) {
+            FlowControl flowControl = this.flowControl;
+            if (flowControl != null) {
+                flowControl.resume();
+            }
+        }
+        return convert(row);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.clear();
+        FlowControl flowControl = this.flowControl;
+        if (!producerFinished && flowControl != null) {
+            flowControl.cancel();
+        }
+    }
+
+    /**
+     * 查询被取消,结果没有返回完时后端的语句也要终止,而不只是断开连接
+     */
+    public void kill() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.clear();
+        FlowControl flowControl = this.flowControl;
+        if (!producerFinished && flowControl != null) {
+            flowControl.kill();
+        }
+    }
+
+    @Override
+    public boolean isRewindSupported() {
+        return false;
+    }
+
+    ///////////////////////////////生产者,只在reactor线程调用///////////////////////////////
+
+    public void setFlowControl(FlowControl flowControl) {
+        this.flowControl = flowControl;
+        if (closed) {
+            flowControl.cancel();
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public void onRow(Object[] row) {
+        if (closed) {
+            return;
+        }
+        queue.offer(row);
+        if (queue.size() >= highWatermark && paused.compareAndSet(false, true)) {
+            FlowControl flowControl = this.flowControl;
+            if (flowControl != null) {
+                flowControl.pause();
+            }
+        }
+    }
+
+    public void onFinished() {
+        producerFinished = true;
+        queue.offer(END);
+    }
+
+    public void onError(Throwable throwable) {
+        this.error = throwable;
+        onFinished();
+    }
+
+    /**
+     * 原生协议的文本结果按照计划的列类型转换,和JDBC路径得到的对象保持一致
+     */
+    private Object[] convert(Object[] row) {
+        int columnCount = Math.min(row.length, metaData.getColumnCount());
+        for (int i = 0; i < columnCount; i++) {
+            Object value = row[i];
+            if (value == null) {
+                continue;
+            }
+            row[i] = convert(metaData.getColumnType(i + 1), value);
+        }
+        return row;
+    }
+
+    private static Object convert(int sqlType, Object value) {
+        switch (sqlType) {
+            case Types.DATE:
+                //和ResultSet.getDate一样只保留日期,YEAR列是该年的1月1日
+                if (value instanceof Number) {
+                    return java.sql.Date.valueOf(LocalDate.of(((Number) value).intValue(), 1, 1)).getTime();
+                }
+                if (value instanceof java.util.Date) {
+                    LocalDate localDate = new Timestamp(((java.util.Date) value).getTime()).toLocalDateTime().toLocalDate();
+                    return java.sql.Date.valueOf(localDate).getTime();
+                }
+                break;
+            case Types.TIME:
+                //和ResultSet.getTime一样只保留时间,DATETIME列取其中的时间
+                if (value instanceof Timestamp) {
+                    return Time.valueOf(((Timestamp) value).toLocalDateTime().toLocalTime()).getTime();
+                }
+                break;
+            case Types.TIMESTAMP:
+                if (value instanceof Number) {
+                    return Timestamp.valueOf(LocalDate.of(((Number) value).intValue(), 1, 1).atStartOfDay()).getTime();
+                }
+                break;
+            default:
+        }
+        if (value instanceof java.util.Date) {
+            return ((java.util.Date) value).getTime();
+        }
+        if (value instanceof byte[] && sqlType != Types.BINARY && sqlType != Types.VARBINARY
+                && sqlType != Types.LONGVARBINARY && sqlType != Types.BLOB) {
+            value = new String((byte[]) value, StandardCharsets.UTF_8);
+        }
+        switch (sqlType) {
+            case Types.BOOLEAN:
+            case Types.BIT:
+                if (value instanceof Number) {
+                    return ((Number) value).longValue() != 0;
+                }
+                return value;
+            case Types.TINYINT:
+                return value instanceof Number ? ((Number) value).byteValue() : value;
+            case Types.SMALLINT:
+                return value instanceof Number ? ((Number) value).shortValue() : value;
+            case Types.INTEGER:
+                return value instanceof Number ? ((Number) value).intValue() : value;
+            case Types.BIGINT:
+                return value instanceof Number ? ((Number) value).longValue() : value;
+            case Types.FLOAT:
+            case Types.REAL:
+                return value instanceof Number ? ((Number) value).floatValue() : value;
+            case Types.DOUBLE:
+                return value instanceof Number ? ((Number) value).doubleValue() : value;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                if (value instanceof BigDecimal) {
+                    return value;
+                }
+                return value instanceof Number ? new BigDecimal(value.toString()) : value;
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+                return value instanceof String ? value : value.toString();
+            default:
+                return value;
+        }
+    }
+}
@@ -1,69 +1,222 @@
 package io.mycat.hbt4.executor;
 
 import io.mycat.hbt4.Executor;
+import io.mycat.hbt4.memory.QueryMemoryContext;
+import io.mycat.hbt4.memory.RowMemoryTracker;
 import io.mycat.mpp.Row;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.PriorityQueue;
 
+/**
+ * order by limit.
+ * 输入无序时用容量为offset+fetch的大顶堆保留最小的行;
+ * 输入是多个已按同一顺序排好的分片时做k路归并,取满offset+fetch行后立即关闭所有分片
+ *
+ * @author Junwen Chen
+ **/
 public class MycatTopNExecutor implements Executor {
+    /**
+     * 堆的初始容量上限,limit很大时按需扩容
+     */
+    private static final int INITIAL_HEAP_CAPACITY = 1024;
     private final Comparator<Row> comparator;
     private final long offset;
     private final long fetch;
     private final Executor executor;
-    private final PriorityQueue<Row> queue;
-    private final int size;
+    private final Executor[] sortedInputs;
     private Iterator<Row> iterator;
+    private List<Row> output;
+    private final RowMemoryTracker memoryTracker;
+
+    private PriorityQueue<Cursor> merging;
+    /**
+     * 已打开且未关闭的分片,提前关闭和读完的分片都只关闭一次
+     */
+    private boolean[] opened;
+    private long skipped;
+    private long returned;
 
     public MycatTopNExecutor(Comparator<Row> comparator, long offset, long fetch, Executor executor) {
+        this(comparator, offset, fetch, executor, QueryMemoryContext.NONE);
+    }
+
+    public MycatTopNExecutor(Comparator<Row> comparator, long offset, long fetch, Executor executor, QueryMemoryContext memoryContext) {
         this.comparator = comparator;
         this.offset = offset;
         this.fetch = fetch;
         this.executor = executor;
-        this.size = (int) (offset + fetch);
-        this.queue = new PriorityQueue<>(this.size, comparator);
+        this.sortedInputs = null;
+        this.memoryTracker = new RowMemoryTracker(memoryContext);
+    }
+
+    /**
+     * @param sortedInputs 每个输入都已按comparator排序
+     */
+    public MycatTopNExecutor(Comparator<Row> comparator, long offset, long fetch, Executor[] sortedInputs) {
+        this.comparator = comparator;
+        this.offset = offset;
+        this.fetch = fetch;
+        this.executor = null;
+        this.sortedInputs = sortedInputs;
+        this.memoryTracker = new RowMemoryTracker(QueryMemoryContext.NONE);
     }
 
     @Override
     public void open() {
-        if (iterator == null) {
+        if (sortedInputs != null) {
+            openMerge();
+            return;
+        }
+        if (output == null) {
             executor.open();
-            Iterator<Row> iterator = executor.iterator();
-            while (iterator.hasNext()) {
-                Row row = iterator.next();
-                if (queue.size() < this.size) {
-                    queue.add(row);
-                } else {
-                    if (comparator.compare(row, queue.peek()) < 0) {
-                        queue.poll();
-                        queue.add(row);
-                    }
-                }
+            output = heapTopN();
+            executor.close();
+        }
+        this.iterator = output.iterator();
+    }
+
+    private List<Row> heapTopN() {
+        long limit = offset + fetch;
+        if (fetch <= 0) {
+            return Collections.emptyList();
+        }
+        if (limit < 0 || limit >= Integer.MAX_VALUE) {
+            //没有有效的上限,退化为全排序
+            List<Row> rows = new ArrayList<>();
+            for (Row row : executor) {
+                memoryTracker.add(row);
+                rows.add(row);
             }
-            for (int i = 0; i < offset && !queue.isEmpty(); i++) {
+            rows.sort(comparator);
+            return rows.subList((int) Math.min(offset, rows.size()), rows.size());
+        }
+        int size = (int) limit;
+        Comparator<Row> reversed = comparator.reversed();
+        PriorityQueue<Row> queue = new PriorityQueue<>(Math.min(size, INITIAL_HEAP_CAPACITY), reversed);
+        for (Row row : executor) {
+            if (queue.size() < size) {
+                memoryTracker.add(row);
+                queue.add(row);
+            } else if (comparator.compare(row, queue.peek()) < 0) {
                 queue.poll();
+                queue.add(row);
+            }
+        }
+        Row[] rows = new Row[queue.size()];
+        for (int i = rows.length - 1; i >= 0; i--) {
+            rows[i] = queue.poll();
+        }
+        return Arrays.asList(rows).subList((int) Math.min(offset, rows.length), rows.length);
+    }
+
+    private void openMerge() {
+        skipped = 0;
+        returned = 0;
+        merging = new PriorityQueue<>(Math.max(1, sortedInputs.length), (o1, o2) -> {
+            int c = comparator.compare(o1.head, o2.head);
+            return c != 0 ? c : Integer.compare(o1.index, o2.index);
+        });
+        opened = new boolean[sortedInputs.length];
+        if (fetch <= 0) {
+            return;
+        }
+        for (int i = 0; i < sortedInputs.length; i++) {
+            Executor input = sortedInputs[i];
+            input.open();
+            opened[i] = true;
+            Row head = input.next();
+            if (head == null) {
+                closeInput(i);
+            } else {
+                merging.add(new Cursor(i, head));
             }
-            executor.close();
         }
-        this.iterator = queue.iterator();
+    }
+
+    private Row nextMerged() {
+        while (!merging.isEmpty()) {
+            Cursor cursor = merging.poll();
+            Row row = cursor.head;
+            Executor input = sortedInputs[cursor.index];
+            Row head = input.next();
+            if (head == null) {
+                closeInput(cursor.index);
+            } else {
+                cursor.head = head;
+                merging.add(cursor);
+            }
+            if (skipped < offset) {
+                skipped++;
+                continue;
+            }
+            if (++returned >= fetch) {
+                //结果已经确定,不再等待剩余分片
+                closeInputs();
+            }
+            return row;
+        }
+        return null;
     }
 
     @Override
     public Row next() {
+        if (sortedInputs != null) {
+            return nextMerged();
+        }
         if (this.iterator.hasNext()) {
             return this.iterator.next();
         }
         return null;
     }
 
+    private void closeInputs() {
+        merging.clear();
+        for (int i = 0; i < sortedInputs.length; i++) {
+            closeInput(i);
+        }
+    }
+
+    private void closeInput(int index) {
+        if (opened[index]) {
+            opened[index] = false;
+            sortedInputs[index].close();
+        }
+    }
+
     @Override
     public void close() {
-        executor.close();
+        if (sortedInputs != null) {
+            if (merging != null) {
+                closeInputs();
+            }
+        } else {
+            if (output == null) {
+                //open已读完并关闭了输入
+                executor.close();
+            }
+            output = null;
+            memoryTracker.close();
+        }
     }
 
     @Override
     public boolean isRewindSupported() {
-        return true;
+        return sortedInputs == null;
+    }
+
+    private static final class Cursor {
+        final int index;
+        Row head;
+
+        Cursor(int index, Row head) {
+            this.index = index;
+            this.head = head;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) <2020>  <chen junwen>
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with this program.  If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mycat.hbt4.executor;
+
+import com.google.common.collect.ImmutableList;
+import io.mycat.hbt3.View;
+import io.mycat.hbt4.Executor;
+import io.mycat.mpp.Row;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.logical.LogicalFilter;
+import org.apache.calcite.rex.RexNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.function.Function;
+
+/**
+ * 下推到分片的视图,open时才生成sql,
+ * 使hash join可以在此之前把构建侧得到的{@link RuntimeFilter}注入到sql中
+ *
+ * @author Junwen Chen
+ **/
+public class MycatViewExecutor implements Executor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MycatViewExecutor.class);
+    private final View view;
+    private final Function<RelNode, Executor> factory;
+    private RuntimeFilter runtimeFilter;
+    private Executor executor;
+
+    public MycatViewExecutor(View view, Function<RelNode, Executor> factory) {
+        this.view = view;
+        this.factory = factory;
+    }
+
+    public void setRuntimeFilter(RuntimeFilter runtimeFilter) {
+        this.runtimeFilter = runtimeFilter;
+    }
+
+    @Override
+    public void open() {
+        if (executor != null) {
+            executor.close();
+        }
+        RelNode relNode = view.getRelNode();
+        RuntimeFilter runtimeFilter = this.runtimeFilter;
+        if (runtimeFilter == null) {
+            executor = factory.apply(relNode);
+        } else if (runtimeFilter.isEmpty()) {
+            executor = new MycatValuesExecutor(ImmutableList.of());
+        } else {
+            RexNode condition = runtimeFilter.toCondition(relNode.getCluster().getRexBuilder(), relNode.getRowType());
+            if (condition != null) {
+                relNode = LogicalFilter.create(relNode, condition);
+            }
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("{} condition:{}", runtimeFilter, condition);
+            }
+            executor = factory.apply(relNode);
+            if (condition == null || runtimeFilter.isPostFilter()) {
+                executor = new MycatFilterExecutor(runtimeFilter::test, executor);
+            }
+        }
+        executor.open();
+    }
+
+    @Override
+    public Row next() {
+        return executor.next();
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.close();
+        }
+    }
+
+    @Override
+    public boolean isRewindSupported() {
+        return false;
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright (C) <2020>  <chen junwen>
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with this program.  If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mycat.hbt4.executor;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import io.mycat.mpp.Row;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexUtil;
+import org.apache.calcite.sql.fun.SqlStdOperatorTable;
+import org.apache.calcite.sql.type.SqlTypeUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.temporal.Temporal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 由hash join构建侧的连接键生成的运行时过滤器,作用于探测侧.
+ * 不同的键不超过MAX_IN_LIST个时生成IN列表,否则生成每列的min/max范围与布隆过滤器;
+ * IN列表与范围转换为条件下推到分片sql中,布隆过滤器在取回数据后过滤.
+ * 范围只对数值与时间类型的键生成,字符串键超过IN列表上限时只在取回后过滤
+ *
+ * @author Junwen Chen
+ **/
+public class RuntimeFilter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RuntimeFilter.class);
+    public static final int MAX_IN_LIST = 512;
+    private static final double BLOOM_FPP = 0.03;
+
+    private final int[] keys;
+    private final Set<Row> inList;
+    private final Comparable[] min;
+    private final Comparable[] max;
+    private final BloomFilter<Integer> bloomFilter;
+    private final boolean empty;
+
+    private RuntimeFilter(int[] keys, Set<Row> inList, Comparable[] min, Comparable[] max,
+                          BloomFilter<Integer> bloomFilter, boolean empty) {
+        this.keys = keys;
+        this.inList = inList;
+        this.min = min;
+        this.max = max;
+        this.bloomFilter = bloomFilter;
+        this.empty = empty;
+    }
+
+    /**
+     * @param rows      构建侧的行
+     * @param buildKeys 构建侧的连接键
+     * @param probeKeys 探测侧对应的连接键
+     */
+    public static RuntimeFilter create(List<Row> rows, int[] buildKeys, int[] probeKeys) {
+        Set<Row> distinct = new HashSet<>();
+        Comparable[] min = new Comparable[buildKeys.length];
+        Comparable[] max = new Comparable[buildKeys.length];
+        boolean[] rangeable = new boolean[buildKeys.length];
+        Arrays.fill(rangeable, true);
+        BloomFilter<Integer> bloomFilter = null;
+        boolean empty = true;
+        for (Row row : rows) {
+            Object[] values = new Object[buildKeys.length];
+            boolean hasNull = false;
+            for (int i = 0; i < buildKeys.length; i++) {
+                Object value = values[i] = row.values[buildKeys[i]];
+                if (value == null) {
+                    hasNull = true;
+                    break;
+                }
+                if (rangeable[i]) {
+                    if (isOrdered(value)) {
+                        try {
+                            if (min[i] == null || ((Comparable) value).compareTo(min[i]) < 0) {
+                                min[i] = (Comparable) value;
+                            }
+                            if (max[i] == null || ((Comparable) value).compareTo(max[i]) > 0) {
+                                max[i] = (Comparable) value;
+                            }
+                        } catch (ClassCastException e) {
+                            rangeable[i] = false;
+                        }
+                    } else {
+                        rangeable[i] = false;
+                    }
+                }
+            }
+            //null不会与任何值相等
+            if (hasNull) {
+                continue;
+            }
+            empty = false;
+            Row key = Row.of(values);
+            if (distinct != null) {
+                distinct.add(key);
+                if (distinct.size() > MAX_IN_LIST) {
+                    bloomFilter = BloomFilter.create(Funnels.integerFunnel(), Math.max(rows.size(), MAX_IN_LIST), BLOOM_FPP);
+                    for (Row r : distinct) {
+                        bloomFilter.put(r.hashCode());
+                    }
+                    distinct = null;
+                }
+            } else {
+                bloomFilter.put(key.hashCode());
+            }
+        }
+        for (int i = 0; i < rangeable.length; i++) {
+            if (!rangeable[i]) {
+                min[i] = max[i] = null;
+            }
+        }
+        return new RuntimeFilter(probeKeys, distinct, min, max, bloomFilter, empty);
+    }
+
+    private static boolean isLiteral(Object value) {
+        return value instanceof Number || value instanceof String;
+    }
+
+    /**
+     * 字符串的大小由排序规则决定,与java的比较结果不一致,只有数值与时间可以生成范围
+     */
+    private static boolean isOrdered(Object value) {
+        return value instanceof Number || value instanceof Date || value instanceof Temporal;
+    }
+
+    /**
+     * 构建侧没有可以匹配的键,探测侧不需要扫描
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    public boolean test(Row row) {
+        if (empty) {
+            return false;
+        }
+        Object[] values = new Object[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            Object value = values[i] = row.values[keys[i]];
+            if (value == null) {
+                return false;
+            }
+        }
+        Row key = Row.of(values);
+        if (inList != null) {
+            return inList.contains(key);
+        }
+        if (bloomFilter != null) {
+            return bloomFilter.mightContain(key.hashCode());
+        }
+        return true;
+    }
+
+    /**
+     * 是否需要在取回数据后过滤,IN列表已经下推时不需要
+     */
+    public boolean isPostFilter() {
+        return bloomFilter != null;
+    }
+
+    /**
+     * 转换为探测侧的条件,值与探测侧的类型不兼容时返回null,只在取回后过滤
+     */
+    public RexNode toCondition(RexBuilder rexBuilder, RelDataType rowType) {
+        try {
+            List<RexNode> conditions = new ArrayList<>();
+            if (inList != null) {
+                List<RexNode> disjunctions = new ArrayList<>(inList.size());
+                for (Row row : inList) {
+                    List<RexNode> equals = new ArrayList<>(keys.length);
+                    for (int i = 0; i < keys.length; i++) {
+                        if (!isLiteral(row.values[i])) {
+                            return null;
+                        }
+                        equals.add(rexBuilder.makeCall(SqlStdOperatorTable.EQUALS,
+                                inputRef(rowType, i), literal(rexBuilder, rowType, i, row.values[i])));
+                    }
+                    disjunctions.add(RexUtil.composeConjunction(rexBuilder, equals));
+                }
+                conditions.add(RexUtil.composeDisjunction(rexBuilder, disjunctions));
+            } else {
+                for (int i = 0; i < keys.length; i++) {
+                    RelDataType type = rowType.getFieldList().get(keys[i]).getType();
+                    if (min[i] != null && max[i] != null && (SqlTypeUtil.isNumeric(type) || SqlTypeUtil.isDatetime(type))) {
+                        RexNode ref = inputRef(rowType, i);
+                        conditions.add(rexBuilder.makeCall(SqlStdOperatorTable.GREATER_THAN_OR_EQUAL,
+                                ref, literal(rexBuilder, rowType, i, min[i])));
+                        conditions.add(rexBuilder.makeCall(SqlStdOperatorTable.LESS_THAN_OR_EQUAL,
+                                ref, literal(rexBuilder, rowType, i, max[i])));
+                    }
+                }
+            }
+            return conditions.isEmpty() ? null : RexUtil.composeConjunction(rexBuilder, conditions);
+        } catch (RuntimeException e) {
+            LOGGER.warn("runtime filter can not be converted to condition", e);
+            return null;
+        }
+    }
+
+    private RexNode inputRef(RelDataType rowType, int i) {
+        return RexInputRef.of(keys[i], rowType);
+    }
+
+    private RexNode literal(RexBuilder rexBuilder, RelDataType rowType, int i, Object value) {
+        return rexBuilder.makeLiteral(value, rowType.getFieldList().get(keys[i]).getType(), true);
+    }
+
+    @Override
+    public String toString() {
+        return "RuntimeFilter{" +
+                "keys=" + Arrays.toString(keys) +
+                ", inList=" + (inList == null ? -1 : inList.size()) +
+                ", bloomFilter=" + (bloomFilter != null) +
+                ", empty=" + empty +
+                '}';
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) <2020>  <chen junwen>
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with this program.  If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mycat.hbt4.executor;
+
+import io.mycat.MycatConnection;
+import io.mycat.api.collector.RowBaseIterator;
+import io.mycat.calcite.resultset.MyCatResultSetEnumerator;
+import io.mycat.datasource.jdbc.JdbcRuntime;
+import io.mycat.hbt4.cancel.QueryCancelContext;
+import io.mycat.hbt4.cancel.QueryCancelManager;
+import io.mycat.mpp.Row;
+import io.mycat.upondb.MycatDBContext;
+import lombok.SneakyThrows;
+
+import java.util.*;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 在多个目标上执行查询并读出所有行.
+ * 同一目标的sql在同一连接上顺序执行,不同目标在拉取数据的线程池里并行,
+ * 连接在调用线程获取,查询被取消时终止各连接上正在执行的语句
+ *
+ * @author Junwen Chen
+ **/
+public class ShardQueryRunner {
+
+    /**
+     * @return 与sqls一一对应的结果
+     */
+    @SneakyThrows
+    public static List<List<Row>> query(MycatDBContext context, List<String> targets, List<String> sqls) {
+        Map<String, List<Integer>> targetIndexes = new LinkedHashMap<>();
+        for (int i = 0; i < targets.size(); i++) {
+            targetIndexes.computeIfAbsent(targets.get(i), k -> new ArrayList<>()).add(i);
+        }
+        List<List<Row>> results = new ArrayList<>(Collections.nCopies(sqls.size(), null));
+        QueryCancelContext cancelContext = QueryCancelManager.INSTANCE.get(context.cancelFlag());
+        AtomicBoolean cancelFlag = cancelContext != null ? cancelContext.getCancelFlag() : context.cancelFlag();
+        if (targetIndexes.size() == 1) {
+            Map.Entry<String, List<Integer>> entry = targetIndexes.entrySet().iterator().next();
+            MycatConnection connection = context.getConnection(entry.getKey());
+            if (cancelContext != null) {
+                cancelContext.addCancelHook(connection::cancel);
+            }
+            query(cancelFlag, connection, entry.getValue(), sqls, results);
+            checkCancel(cancelContext);
+            return results;
+        }
+        List<Future<?>> futures = new ArrayList<>(targetIndexes.size());
+        for (Map.Entry<String, List<Integer>> entry : targetIndexes.entrySet()) {
+            MycatConnection connection = context.getConnection(entry.getKey());
+            if (cancelContext != null) {
+                cancelContext.addCancelHook(connection::cancel);
+            }
+            List<Integer> indexes = entry.getValue();
+            futures.add(JdbcRuntime.INSTANCE.getFetchDataExecutorService()
+                    .submit(() -> query(cancelFlag, connection, indexes, sqls, results)));
+        }
+        for (Future<?> future : futures) {
+            if (cancelContext != null) {
+                cancelContext.await(future);
+            } else {
+                future.get();
+            }
+        }
+        checkCancel(cancelContext);
+        return results;
+    }
+
+    /**
+     * 被取消的分片只返回了部分行,不能作为结果
+     */
+    private static void checkCancel(QueryCancelContext cancelContext) {
+        if (cancelContext != null) {
+            cancelContext.check();
+        }
+    }
+
+    private static void query(AtomicBoolean cancelFlag, MycatConnection connection,
+                              List<Integer> indexes, List<String> sqls, List<List<Row>> results) {
+        for (int index : indexes) {
+            List<Row> rows = new ArrayList<>();
+            RowBaseIterator rowBaseIterator = connection.executeQuery(null, sqls.get(index));
+            MyCatResultSetEnumerator<Object[]> enumerator = new MyCatResultSetEnumerator<>(cancelFlag, rowBaseIterator);
+            try {
+                while (enumerator.moveNext()) {
+                    rows.add(Row.of(enumerator.current()));
+                }
+            } finally {
+                enumerator.close();
+            }
+            results.set(index, rows);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/**
+ * Copyright (C) <2020>  <chen junwen>
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with this program.  If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mycat.hbt4.executor;
+
+import io.mycat.DataNode;
+import io.mycat.SimpleColumnInfo;
+import io.mycat.calcite.CalciteUtls;
+import io.mycat.calcite.MycatCalciteSupport;
+import io.mycat.mpp.Row;
+import io.mycat.querycondition.DataMappingEvaluator;
+import io.mycat.router.ShardingTableHandler;
+import io.mycat.upondb.MycatDBContext;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexUtil;
+import org.apache.calcite.sql.fun.SqlStdOperatorTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.sql.JDBCType;
+import java.sql.Timestamp;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoField;
+import java.util.*;
+
+/**
+ * 在分片表上按键查找.
+ * 每个键用分片表的分片算法路由到分片,同一分片的键合并成一条 key = ? or key = ? 的sql,
+ * 由{@link ShardQueryRunner}执行
+ *
+ * @author Junwen Chen
+ **/
+public class ShardingKeyLookup implements KeyLookup {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardingKeyLookup.class);
+    private final MycatDBContext context;
+    private final ShardingTableHandler table;
+    private final RelDataType tableRowType;
+    private final List<RexNode> filters;
+    private final List<SimpleColumnInfo> projectColumns;
+    private final int keyColumn;
+    private static final DateTimeFormatter TIME_FORMATTER = new DateTimeFormatterBuilder()
+            .appendPattern("HH:mm:ss")
+            .appendFraction(ChronoField.NANO_OF_SECOND, 0, 6, true)
+            .toFormatter();
+    private static final DateTimeFormatter DATETIME_FORMATTER = new DateTimeFormatterBuilder()
+            .appendPattern("yyyy-MM-dd ")
+            .append(TIME_FORMATTER)
+            .toFormatter();
+
+    /**
+     * @param tableRowType 分片表所有列的类型,filters与keyColumn都引用该行类型
+     * @param projects     null表示所有列
+     */
+    public ShardingKeyLookup(MycatDBContext context,
+                             ShardingTableHandler table,
+                             RelDataType tableRowType,
+                             List<RexNode> filters,
+                             int[] projects,
+                             int keyColumn) {
+        this.context = context;
+        this.table = table;
+        this.tableRowType = tableRowType;
+        this.filters = filters;
+        this.projectColumns = CalciteUtls.getColumnList(table, projects);
+        this.keyColumn = keyColumn;
+    }
+
+    @Override
+    public List<Row> lookup(Collection<Object> keys) {
+        SimpleColumnInfo column = table.getColumns().get(keyColumn);
+        String columnName = column.getColumnName();
+        Map<String, DataNode> dataNodes = new HashMap<>();
+        Map<String, List<Object>> nodeKeys = new LinkedHashMap<>();
+        for (Object key : keys) {
+            if (key == null) {
+                //null与任何值都不相等
+                continue;
+            }
+            DataMappingEvaluator evaluator = new DataMappingEvaluator();
+            Object value = routeValue(column.getJdbcType(), key);
+            if (value instanceof Long) {
+                evaluator.assignment(false, columnName, (long) (Long) value);
+            } else {
+                evaluator.assignment(false, columnName, (String) value);
+            }
+            for (DataNode dataNode : evaluator.calculate(table)) {
+                dataNodes.putIfAbsent(dataNode.getUniqueName(), dataNode);
+                nodeKeys.computeIfAbsent(dataNode.getUniqueName(), k -> new ArrayList<>()).add(key);
+            }
+        }
+        List<String> targets = new ArrayList<>(nodeKeys.size());
+        List<String> sqls = new ArrayList<>(nodeKeys.size());
+        for (Map.Entry<String, List<Object>> entry : nodeKeys.entrySet()) {
+            DataNode dataNode = dataNodes.get(entry.getKey());
+            List<RexNode> where = new ArrayList<>(filters);
+            RexNode condition = keyCondition(entry.getValue());
+            if (condition != null) {
+                where.add(condition);
+            }
+            targets.add(dataNode.getTargetName());
+            sqls.add(CalciteUtls.getBackendTaskSQL(where, table.getColumns(), projectColumns, dataNode));
+        }
+        List<Row> rows = new ArrayList<>();
+        for (List<Row> result : ShardQueryRunner.query(context, targets, sqls)) {
+            rows.addAll(result);
+        }
+        return rows;
+    }
+
+    /**
+     * 连接另一侧的键是计算引擎的内部值,时间是毫秒数或者各种日期对象,
+     * 转换为插入时路由使用的形式:整数列为long,时间列为MySQL的文本格式,其他为字符串
+     */
+    static Object routeValue(JDBCType type, Object key) {
+        switch (type) {
+            case TINYINT:
+            case SMALLINT:
+            case INTEGER:
+            case BIGINT:
+                try {
+                    return new BigDecimal(key.toString()).longValueExact();
+                } catch (ArithmeticException | NumberFormatException e) {
+                    return key.toString();
+                }
+            case DATE:
+                return toLocalDateTime(key, true).map(i -> i.toLocalDate().toString()).orElseGet(key::toString);
+            case TIMESTAMP:
+            case TIMESTAMP_WITH_TIMEZONE:
+                return toLocalDateTime(key, false).map(DATETIME_FORMATTER::format).orElseGet(key::toString);
+            case TIME:
+            case TIME_WITH_TIMEZONE:
+                return toLocalDateTime(key, false).map(i -> TIME_FORMATTER.format(i.toLocalTime())).orElseGet(key::toString);
+            default:
+                return key.toString();
+        }
+    }
+
+    /**
+     * long是毫秒数,日期列的int是距1970-01-01的天数,字符串原样参与路由
+     */
+    private static Optional<LocalDateTime> toLocalDateTime(Object key, boolean date) {
+        if (key instanceof LocalDateTime) {
+            return Optional.of((LocalDateTime) key);
+        }
+        if (key instanceof LocalDate) {
+            return Optional.of(((LocalDate) key).atStartOfDay());
+        }
+        if (key instanceof LocalTime) {
+            return Optional.of(((LocalTime) key).atDate(LocalDate.of(1970, 1, 1)));
+        }
+        if (key instanceof Timestamp) {
+            return Optional.of(((Timestamp) key).toLocalDateTime());
+        }
+        if (key instanceof java.sql.Date) {
+            return Optional.of(((java.sql.Date) key).toLocalDate().atStartOfDay());
+        }
+        if (key instanceof Date) {
+            return Optional.of(LocalDateTime.ofInstant(((Date) key).toInstant(), ZoneId.systemDefault()));
+        }
+        if (date && key instanceof Integer) {
+            return Optional.of(LocalDate.ofEpochDay((Integer) key).atStartOfDay());
+        }
+        if (key instanceof Long || key instanceof Integer) {
+            return Optional.of(LocalDateTime.ofInstant(Instant.ofEpochMilli(((Number) key).longValue()), ZoneId.systemDefault()));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * 键不能转换为字面量时返回null,此时查询整个分片,由连接过滤
+     */
+    private RexNode keyCondition(List<Object> keys) {
+        RexBuilder rexBuilder = MycatCalciteSupport.INSTANCE.RexBuilder;
+        try {
+            RexNode ref = rexBuilder.makeInputRef(tableRowType, keyColumn);
+            List<RexNode> equals = new ArrayList<>(keys.size());
+            for (Object key : keys) {
+                equals.add(rexBuilder.makeCall(SqlStdOperatorTable.EQUALS, ref,
+                        rexBuilder.makeLiteral(key, ref.getType(), true)));
+            }
+            return RexUtil.composeDisjunction(rexBuilder, equals);
+        } catch (RuntimeException e) {
+            LOGGER.warn("lookup keys can not be converted to condition", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) <2020>  <chen junwen>
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with this program.  If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mycat.hbt4.logical;
+
+import com.google.common.collect.ImmutableList;
+import io.mycat.hbt4.*;
+import lombok.Getter;
+import org.apache.calcite.plan.*;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.RelWriter;
+import org.apache.calcite.rel.SingleRel;
+import org.apache.calcite.rel.core.JoinRelType;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.sql.validate.SqlValidatorUtil;
+import org.apache.calcite.util.ImmutableIntList;
+
+import java.util.List;
+
+/**
+ * 批量键查找连接,左边是输入,右边是一个分片表的扫描(带过滤与投影),
+ * 右表不作为输入而是按左表的键到分片上查找.
+ * condition引用左表的列与右表投影后的列
+ *
+ * @author Junwen Chen
+ **/
+@Getter
+public class MycatBatchKeyLookupJoin extends SingleRel implements MycatRel {
+    private final JoinRelType joinType;
+    private final RexNode condition;
+    private final RelOptTable lookupTable;
+    private final ImmutableList<RexNode> filters;
+    private final ImmutableIntList projects;
+    private final RelDataType lookupRowType;
+    /**
+     * 等值键,分别是左表列与右表投影后的列
+     */
+    private final ImmutableIntList leftKeys;
+    private final ImmutableIntList rightKeys;
+    private final ImmutableList<RexNode> nonEquiConditions;
+    /**
+     * 用于路由的等值键在leftKeys,rightKeys中的位置,对应右表的分片列
+     */
+    private final int lookupKey;
+
+    public MycatBatchKeyLookupJoin(RelOptCluster cluster,
+                                   RelTraitSet traitSet,
+                                   RelNode input,
+                                   JoinRelType joinType,
+                                   RexNode condition,
+                                   RelOptTable lookupTable,
+                                   List<RexNode> filters,
+                                   ImmutableIntList projects,
+                                   RelDataType lookupRowType,
+                                   ImmutableIntList leftKeys,
+                                   ImmutableIntList rightKeys,
+                                   List<RexNode> nonEquiConditions,
+                                   int lookupKey) {
+        super(cluster, traitSet, input);
+        this.joinType = joinType;
+        this.condition = condition;
+        this.lookupTable = lookupTable;
+        this.filters = ImmutableList.copyOf(filters);
+        this.projects = projects;
+        this.lookupRowType = lookupRowType;
+        this.leftKeys = leftKeys;
+        this.rightKeys = rightKeys;
+        this.nonEquiConditions = ImmutableList.copyOf(nonEquiConditions);
+        this.lookupKey = lookupKey;
+    }
+
+    @Override
+    protected RelDataType deriveRowType() {
+        return SqlValidatorUtil.deriveJoinRowType(input.getRowType(), lookupRowType, joinType,
+                getCluster().getTypeFactory(), null, ImmutableList.of());
+    }
+
+    /**
+     * 左表与右表拼接后的行类型,condition基于该类型
+     */
+    public RelDataType getCombinedRowType() {
+        RelDataTypeFactory.Builder builder = getCluster().getTypeFactory().builder();
+        builder.addAll(input.getRowType().getFieldList());
+        builder.addAll(lookupRowType.getFieldList());
+        return builder.build();
+    }
+
+    @Override
+    public RelNode copy(RelTraitSet traitSet, List<RelNode> inputs) {
+        return new MycatBatchKeyLookupJoin(getCluster(), traitSet, sole(inputs), joinType, condition,
+                lookupTable, filters, projects, lookupRowType, leftKeys, rightKeys, nonEquiConditions, lookupKey);
+    }
+
+    @Override
+    public RelWriter explainTerms(RelWriter pw) {
+        return super.explainTerms(pw)
+                .item("condition", condition)
+                .item("joinType", joinType.lowerName)
+                .item("table", lookupTable.getQualifiedName())
+                .itemIf("filters", filters, !filters.isEmpty())
+                .itemIf("projects", projects, projects != null);
+    }
+
+    @Override
+    public RelOptCost computeSelfCost(RelOptPlanner planner, RelMetadataQuery mq) {
+        double rowCount = mq.getRowCount(getInput());
+        return planner.getCostFactory().makeCost(rowCount, rowCount, 0);
+    }
+
+    @Override
+    public ExplainWriter explain(ExplainWriter writer) {
+        writer.name("MycatBatchKeyLookupJoin")
+                .item("joinType", joinType)
+                .item("condition", condition)
+                .item("table", String.join(".", lookupTable.getQualifiedName()))
+                .into();
+        ((MycatRel) getInput()).explain(writer);
+        return writer.ret();
+    }
+
+    @Override
+    public Executor implement(ExecutorImplementor implementor) {
+        return implementor.implement(this);
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) <2020>  <chen junwen>
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with this program.  If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mycat.hbt4.logical;
+
+import com.google.common.collect.ImmutableList;
+import io.mycat.hbt4.*;
+import lombok.Getter;
+import org.apache.calcite.plan.*;
+import org.apache.calcite.rel.AbstractRelNode;
+import org.apache.calcite.rel.RelCollation;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.RelWriter;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rel.type.RelDataType;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 跨分片深分页的排序,inputs是每个分片上的关系表达式,执行时按需生成sql,
+ * 所以inputs不作为输入参与优化
+ *
+ * @author Junwen Chen
+ **/
+@Getter
+public class MycatDeepPageSort extends AbstractRelNode implements MycatRel {
+    private final ImmutableList<RelNode> shardInputs;
+    private final ImmutableList<String> targets;
+    private final RelCollation collation;
+    private final long offset;
+    private final long fetch;
+
+    public MycatDeepPageSort(RelOptCluster cluster,
+                             RelTraitSet traitSet,
+                             List<RelNode> shardInputs,
+                             List<String> targets,
+                             RelCollation collation,
+                             long offset,
+                             long fetch) {
+        super(cluster, traitSet);
+        this.shardInputs = ImmutableList.copyOf(shardInputs);
+        this.targets = ImmutableList.copyOf(targets);
+        this.collation = collation;
+        this.offset = offset;
+        this.fetch = fetch;
+    }
+
+    @Override
+    protected RelDataType deriveRowType() {
+        return shardInputs.get(0).getRowType();
+    }
+
+    @Override
+    public RelNode copy(RelTraitSet traitSet, List<RelNode> inputs) {
+        return new MycatDeepPageSort(getCluster(), traitSet, shardInputs, targets, collation, offset, fetch);
+    }
+
+    @Override
+    public RelWriter explainTerms(RelWriter pw) {
+        return super.explainTerms(pw)
+                .item("collation", collation)
+                .item("offset", offset)
+                .item("fetch", fetch)
+                .item("targets", targets)
+                .item("inputs", shardInputs.stream().map(RelOptUtil::toString).collect(Collectors.joining(",")));
+    }
+
+    @Override
+    public double estimateRowCount(RelMetadataQuery mq) {
+        return fetch;
+    }
+
+    @Override
+    public RelOptCost computeSelfCost(RelOptPlanner planner, RelMetadataQuery mq) {
+        return planner.getCostFactory().makeCost(fetch * shardInputs.size(), 0, 0);
+    }
+
+    @Override
+    public ExplainWriter explain(ExplainWriter writer) {
+        return writer.name("MycatDeepPageSort")
+                .item("collation", collation)
+                .item("offset", offset)
+                .item("fetch", fetch)
+                .item("targets", String.join(",", targets))
+                .into().ret();
+    }
+
+    @Override
+    public Executor implement(ExecutorImplementor implementor) {
+        return implementor.implement(this);
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) <2020>  <chen junwen>
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with this program.  If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mycat.hbt4.logical.rules;
+
+
+import io.mycat.hbt4.MycatConvention;
+import io.mycat.hbt4.MycatConverterRule;
+import io.mycat.hbt4.MycatRules;
+import io.mycat.hbt4.logical.MycatDeepPageSort;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.tools.RelBuilderFactory;
+
+import java.util.Collections;
+import java.util.function.Predicate;
+
+/**
+ * Rule that converts a {@link MycatDeepPageSort} to Mycat convention.
+ */
+public class MycatDeepPageSortRule extends MycatConverterRule {
+
+    /**
+     * Creates a MycatDeepPageSortRule.
+     */
+    public MycatDeepPageSortRule(MycatConvention out,
+                                 RelBuilderFactory relBuilderFactory) {
+        super(MycatDeepPageSort.class, (Predicate<RelNode>) r -> true, MycatRules.convention, out,
+                relBuilderFactory, "MycatDeepPageSortRule");
+    }
+
+    @Override
+    public RelNode convert(RelNode rel) {
+        return rel.copy(rel.getTraitSet().replace(out), Collections.emptyList());
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright (C) <2020>  <chen junwen>
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with this program.  If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mycat.hbt4.memory;
+
+import io.mycat.MycatException;
+import io.mycat.beans.mysql.MySQLErrorCode;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个查询在代理端持有的内存,执行器可能在拉取数据的线程上预留,所以计数是原子的
+ *
+ * @author Junwen Chen
+ **/
+public class QueryMemoryContext implements AutoCloseable {
+    /**
+     * 不计数,用于没有开启内存管理或者不经过{@link QueryMemoryManager}的执行
+     */
+    public static final QueryMemoryContext NONE = new QueryMemoryContext(null, 0, null);
+
+    private final QueryMemoryManager manager;
+    private final long id;
+    private final String sql;
+    private final long startTime = System.currentTimeMillis();
+    private final AtomicLong reserved = new AtomicLong();
+    private final AtomicLong peak = new AtomicLong();
+    private final Object admissionLock = new Object();
+    private volatile Semaphore admission;
+    private volatile boolean closed;
+
+    QueryMemoryContext(QueryMemoryManager manager, long id, String sql) {
+        this.manager = manager;
+        this.id = id;
+        this.sql = sql;
+    }
+
+    public void reserve(long bytes) {
+        if (manager == null || bytes <= 0) {
+            return;
+        }
+        if (closed) {
+            throw new MycatException(MySQLErrorCode.ER_QUERY_INTERRUPTED, "query is closed");
+        }
+        if (reserved.get() + bytes > manager.getQueryLimit()) {
+            manager.onExceeded(this, bytes);
+            throw new MycatException(MySQLErrorCode.ER_OUTOFMEMORY,
+                    "query memory limit " + manager.getQueryLimit() + " bytes exceeded");
+        }
+        if (admission == null) {
+            synchronized (admissionLock) {
+                if (admission == null) {
+                    Semaphore slots = manager.admit(this);
+                    synchronized (this) {
+                        if (closed) {
+                            slots.release();
+                            throw new MycatException(MySQLErrorCode.ER_QUERY_INTERRUPTED, "query is closed");
+                        }
+                        admission = slots;
+                    }
+                }
+            }
+        }
+        manager.reserveGlobal(this, bytes);
+        long current;
+        synchronized (this) {
+            if (closed) {
+                manager.releaseGlobal(bytes);
+                throw new MycatException(MySQLErrorCode.ER_QUERY_INTERRUPTED, "query is closed");
+            }
+            current = reserved.addAndGet(bytes);
+        }
+        long max;
+        while ((max = peak.get()) < current && !peak.compareAndSet(max, current)) {
+        }
+    }
+
+    public void release(long bytes) {
+        if (manager == null || bytes <= 0) {
+            return;
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            reserved.addAndGet(-bytes);
+        }
+        manager.releaseGlobal(bytes);
+    }
+
+    /**
+     * 查询结束时归还所有预留与准入名额,可以重复调用
+     */
+    @Override
+    public synchronized void close() {
+        if (manager == null || closed) {
+            return;
+        }
+        closed = true;
+        manager.releaseGlobal(reserved.getAndSet(0));
+        Semaphore admission = this.admission;
+        if (admission != null) {
+            admission.release();
+        }
+        manager.remove(this);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getReserved() {
+        return reserved.get();
+    }
+
+    public long getPeak() {
+        return peak.get();
+    }
+
+    public boolean isAdmitted() {
+        return admission != null;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright (C) <2020>  <chen junwen>
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with this program.  If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mycat.hbt4.memory;
+
+import io.mycat.MycatException;
+import io.mycat.beans.mysql.MySQLErrorCode;
+import io.mycat.config.ServerConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 代理端执行器的内存预算.
+ * 哈希连接,哈希聚合,排序等执行器按估算的字节数向所属查询的{@link QueryMemoryContext}预留内存,
+ * 查询第一次预留时需要取得准入名额,名额用完或者总预算不足时排队等待,超时或者超出单个查询的预算时查询失败
+ *
+ * @author Junwen Chen
+ **/
+public enum QueryMemoryManager {
+    INSTANCE;
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryMemoryManager.class);
+    /**
+     * 等待准入名额时检查查询关闭的间隔,毫秒
+     */
+    private static final long ADMISSION_POLL_INTERVAL = 50;
+
+    private volatile boolean enable = true;
+    private volatile long globalLimit = Runtime.getRuntime().maxMemory() / 2;
+    private volatile long queryLimit = globalLimit / 4;
+    private volatile long admissionTimeout = 30000;
+    private volatile Semaphore heavySlots = new Semaphore(Runtime.getRuntime().availableProcessors() * 2, true);
+    private volatile int maxHeavyQueries = Runtime.getRuntime().availableProcessors() * 2;
+
+    private final AtomicLong used = new AtomicLong();
+    private final AtomicLong ids = new AtomicLong();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong admissionTimeoutCount = new AtomicLong();
+    private final AtomicLong exceededCount = new AtomicLong();
+    private final ConcurrentHashMap<Long, QueryMemoryContext> running = new ConcurrentHashMap<>();
+    private final Object lock = new Object();
+
+    public synchronized void init(ServerConfig.QueryMemoryConfig config) {
+        this.enable = config.isEnable();
+        long maxMemory = Runtime.getRuntime().maxMemory();
+        this.globalLimit = config.getGlobalLimit() > 0 ? config.getGlobalLimit() : maxMemory / 2;
+        this.queryLimit = config.getQueryLimit() > 0 ? Math.min(config.getQueryLimit(), globalLimit) : globalLimit / 4;
+        this.admissionTimeout = config.getAdmissionTimeout();
+        this.maxHeavyQueries = Math.max(1, config.getMaxHeavyQueries());
+        this.heavySlots = new Semaphore(maxHeavyQueries, true);
+    }
+
+    public QueryMemoryContext createContext(String sql) {
+        if (!enable) {
+            return QueryMemoryContext.NONE;
+        }
+        QueryMemoryContext context = new QueryMemoryContext(this, ids.incrementAndGet(), sql);
+        running.put(context.getId(), context);
+        return context;
+    }
+
+    /**
+     * 取得准入名额,名额被占满时排队,每隔{@link #ADMISSION_POLL_INTERVAL}毫秒检查查询是否已经关闭
+     */
+    Semaphore admit(QueryMemoryContext context) {
+        Semaphore slots = this.heavySlots;
+        long timeout = this.admissionTimeout;
+        long deadline = System.currentTimeMillis() + timeout;
+        waiting.incrementAndGet();
+        try {
+            while (true) {
+                long remain = deadline - System.currentTimeMillis();
+                if (slots.tryAcquire(Math.max(0, Math.min(ADMISSION_POLL_INTERVAL, remain)), TimeUnit.MILLISECONDS)) {
+                    return slots;
+                }
+                if (context.isClosed()) {
+                    throw new MycatException(MySQLErrorCode.ER_QUERY_INTERRUPTED, "query is closed");
+                }
+                if (remain <= ADMISSION_POLL_INTERVAL) {
+                    admissionTimeoutCount.incrementAndGet();
+                    throw new MycatException(MySQLErrorCode.ER_OUT_OF_RESOURCES,
+                            "too many queries are holding intermediate results, waited " + timeout + " ms");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MycatException(MySQLErrorCode.ER_QUERY_INTERRUPTED, "query interrupted while waiting for admission");
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * 从总预算预留,不足时等待其他查询释放
+     */
+    void reserveGlobal(QueryMemoryContext context, long bytes) {
+        if (tryReserveGlobal(bytes)) {
+            return;
+        }
+        long deadline = System.currentTimeMillis() + admissionTimeout;
+        waiting.incrementAndGet();
+        try {
+            synchronized (lock) {
+                while (!tryReserveGlobal(bytes)) {
+                    if (context.isClosed()) {
+                        throw new MycatException(MySQLErrorCode.ER_QUERY_INTERRUPTED, "query is closed");
+                    }
+                    long remain = deadline - System.currentTimeMillis();
+                    if (remain <= 0) {
+                        admissionTimeoutCount.incrementAndGet();
+                        LOGGER.warn("query memory exhausted, used:{} limit:{} query:{} sql:{}",
+                                used.get(), globalLimit, context.getReserved(), context.getSql());
+                        throw new MycatException(MySQLErrorCode.ER_OUT_OF_RESOURCES,
+                                "global query memory " + globalLimit + " bytes is exhausted");
+                    }
+                    lock.wait(remain);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MycatException(MySQLErrorCode.ER_QUERY_INTERRUPTED, "query interrupted while waiting for memory");
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    private boolean tryReserveGlobal(long bytes) {
+        long limit = this.globalLimit;
+        while (true) {
+            long current = used.get();
+            if (current + bytes > limit) {
+                return false;
+            }
+            if (used.compareAndSet(current, current + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 归还预留并唤醒等待的查询,bytes为0时只唤醒,等待中的查询被关闭后由此退出等待
+     */
+    void releaseGlobal(long bytes) {
+        if (bytes > 0) {
+            used.addAndGet(-bytes);
+        }
+        if (waiting.get() > 0) {
+            synchronized (lock) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    void onExceeded(QueryMemoryContext context, long bytes) {
+        exceededCount.incrementAndGet();
+        LOGGER.warn("query memory limit exceeded, reserved:{} request:{} limit:{} sql:{}",
+                context.getReserved(), bytes, queryLimit, context.getSql());
+    }
+
+    void remove(QueryMemoryContext context) {
+        running.remove(context.getId());
+    }
+
+    public long getQueryLimit() {
+        return queryLimit;
+    }
+
+    public long getGlobalLimit() {
+        return globalLimit;
+    }
+
+    public long getUsed() {
+        return used.get();
+    }
+
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    public int getMaxHeavyQueries() {
+        return maxHeavyQueries;
+    }
+
+    public int getHeavyQueries() {
+        return maxHeavyQueries - heavySlots.availablePermits();
+    }
+
+    public long getAdmissionTimeoutCount() {
+        return admissionTimeoutCount.get();
+    }
+
+    public long getExceededCount() {
+        return exceededCount.get();
+    }
+
+    public List<QueryMemoryContext> getRunning() {
+        return new ArrayList<>(running.values());
+    }
+}
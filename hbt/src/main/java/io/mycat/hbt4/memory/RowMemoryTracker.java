@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) <2020>  <chen junwen>
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with this program.  If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mycat.hbt4.memory;
+
+import io.mycat.mpp.Row;
+
+import java.math.BigDecimal;
+
+/**
+ * 执行器持有的行的内存估算.
+ * 每隔{@link #SAMPLE_INTERVAL}行抽样估算一次行大小,累计到{@link #RESERVE_CHUNK}字节再向查询预留,
+ * 避免每一行都访问共享计数
+ *
+ * @author Junwen Chen
+ **/
+public class RowMemoryTracker implements AutoCloseable {
+    static final int SAMPLE_INTERVAL = 64;
+    static final long RESERVE_CHUNK = 256 * 1024;
+    private static final int ROW_OVERHEAD = 16 + 16;
+    private static final int REFERENCE_SIZE = 8;
+
+    private final QueryMemoryContext context;
+    private long rows;
+    private long rowSize;
+    private long pending;
+    private long reserved;
+
+    public RowMemoryTracker(QueryMemoryContext context) {
+        this.context = context;
+    }
+
+    public void add(Row row) {
+        if (context == QueryMemoryContext.NONE) {
+            return;
+        }
+        if (rows++ % SAMPLE_INTERVAL == 0) {
+            rowSize = estimate(row);
+        }
+        pending += rowSize;
+        if (pending >= RESERVE_CHUNK) {
+            flush();
+        }
+    }
+
+    /**
+     * 非行数据,例如聚合的累加器
+     */
+    public void add(long bytes) {
+        if (context == QueryMemoryContext.NONE) {
+            return;
+        }
+        pending += bytes;
+        if (pending >= RESERVE_CHUNK) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        long bytes = pending;
+        pending = 0;
+        context.reserve(bytes);
+        reserved += bytes;
+    }
+
+    public long getReserved() {
+        return reserved;
+    }
+
+    /**
+     * 执行器释放数据后调用,可以重复调用
+     */
+    @Override
+    public void close() {
+        context.release(reserved);
+        reserved = 0;
+        pending = 0;
+        rows = 0;
+    }
+
+    public static long estimate(Row row) {
+        if (row == null) {
+            return 0;
+        }
+        Object[] values = row.values;
+        long size = ROW_OVERHEAD + (long) REFERENCE_SIZE * values.length;
+        for (Object value : values) {
+            size += estimate(value);
+        }
+        return size;
+    }
+
+    private static long estimate(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof String) {
+            return 40 + 2L * ((String) value).length();
+        }
+        if (value instanceof byte[]) {
+            return 16 + ((byte[]) value).length;
+        }
+        if (value instanceof BigDecimal) {
+            return 64;
+        }
+        if (value instanceof Row) {
+            return estimate((Row) value);
+        }
+        return 24;
+    }
+}
@@ -19,15 +19,18 @@ import com.alibaba.fastsql.sql.SQLUtils;
 import com.alibaba.fastsql.sql.ast.SQLExpr;
 import com.alibaba.fastsql.sql.ast.SQLStatement;
 import com.alibaba.fastsql.sql.ast.expr.*;
+import com.alibaba.fastsql.sql.ast.statement.SQLDeleteStatement;
 import com.alibaba.fastsql.sql.ast.statement.SQLExprTableSource;
 import com.alibaba.fastsql.sql.ast.statement.SQLInsertStatement;
 import com.alibaba.fastsql.sql.ast.statement.SQLTableSource;
+import com.alibaba.fastsql.sql.ast.statement.SQLUpdateStatement;
 import com.alibaba.fastsql.sql.dialect.mysql.ast.statement.MySqlCreateTableStatement;
 import com.alibaba.fastsql.sql.dialect.mysql.ast.statement.MySqlInsertStatement;
 import com.alibaba.fastsql.sql.parser.SQLParserUtils;
 import com.alibaba.fastsql.sql.parser.SQLStatementParser;
 import com.alibaba.fastsql.sql.repository.SchemaObject;
 import com.alibaba.fastsql.sql.repository.SchemaRepository;
+import com.google.common.collect.Lists;
 import io.mycat.*;
 import io.mycat.api.collector.RowBaseIterator;
 import io.mycat.beans.mycat.JdbcRowMetaData;
@@ -47,12 +50,17 @@ import lombok.SneakyThrows;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.*;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import static com.alibaba.fastsql.sql.repository.SchemaResolveVisitor.Option.*;
@@ -64,18 +72,84 @@ import static io.mycat.calcite.CalciteConvertors.getColumnInfo;
 public enum MetadataManager {
     INSTANCE;
     private static final Logger LOGGER = LoggerFactory.getLogger(MetadataManager.class);
-    final ConcurrentHashMap<String, SchemaHandler> schemaMap = new ConcurrentHashMap<>();
+    /**
+     * 元数据快照,修改时复制后整体替换,已经取得快照的查询不受影响
+     */
+    volatile ConcurrentHashMap<String, SchemaHandler> schemaMap = new ConcurrentHashMap<>();
+    /**
+     * 上一次加载的配置,重新加载时只重建与之不同的库与表
+     */
+    private ShardingQueryRootConfig loadedConfig;
+    /**
+     * 从存储节点获取的建表语句的磁盘快照
+     */
+    private volatile MetadataSnapshot snapshot = new MetadataSnapshot(null);
 
     public final SchemaRepository TABLE_REPOSITORY = new SchemaRepository(DbType.mysql);
+    /**
+     * 多行插入按分片拆分后,每条语句最多携带的行数
+     */
+    private volatile int insertBatchSize = 1000;
+    /**
+     * 每个表拒绝的写操作与正在执行的写语句数量,key为逻辑表的uniqueName
+     */
+    private final ConcurrentHashMap<String, WriteGate> writeGates = new ConcurrentHashMap<>();
+    /**
+     * 没有解析表名的透传写语句数量,设置写屏障时同样要等待它们结束
+     */
+    private final AtomicInteger untrackedWrites = new AtomicInteger();
+    /**
+     * 设置了写屏障的表数量,为0时透传写语句不需要解析表名
+     */
+    private final AtomicInteger fencedTables = new AtomicInteger();
+    /**
+     * 每个表最近一次的重新分片任务,key为逻辑表的uniqueName
+     */
+    private final ConcurrentHashMap<String, ReshardingTask> reshardingTasks = new ConcurrentHashMap<>();
+
+    public enum WriteFence {
+        DELETE,
+        ALL
+    }
+
+    private static final class WriteGate {
+        volatile WriteFence fence;
+        final AtomicInteger writing = new AtomicInteger();
+    }
+
+    /**
+     * 写语句持有的许可,关闭后不再阻止写屏障生效,可以重复关闭
+     */
+    private static final class WritePermit implements AutoCloseable {
+        private final AtomicInteger writing;
+        private final AtomicBoolean closed = new AtomicBoolean();
 
-    public void removeSchema(String schemaName) {
-        schemaMap.remove(schemaName);
+        WritePermit(AtomicInteger writing) {
+            this.writing = writing;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                writing.decrementAndGet();
+            }
+        }
     }
 
-    public void addSchema(String schemaName, String dataNode) {
-        SchemaHandlerImpl schemaHandler = new SchemaHandlerImpl(schemaName, dataNode);
-        schemaMap.computeIfAbsent(schemaName, s -> schemaHandler);
-        schemaMap.computeIfAbsent("`" + schemaName + "`", s -> schemaHandler);
+    public synchronized void removeSchema(String schemaName) {
+        ConcurrentHashMap<String, SchemaHandler> map = new ConcurrentHashMap<>(schemaMap);
+        map.remove(schemaName);
+        map.remove("`" + schemaName + "`");
+        schemaMap = map;
+    }
+
+    public synchronized void addSchema(String schemaName, String dataNode) {
+        if (schemaMap.containsKey(schemaName)) {
+            return;
+        }
+        ConcurrentHashMap<String, SchemaHandler> map = new ConcurrentHashMap<>(schemaMap);
+        putSchema(map, new SchemaHandlerImpl(schemaName, dataNode));
+        schemaMap = map;
     }
 
     public void addTable(String schemaName, String tableName, ShardingTableConfig tableConfig, List<ShardingQueryRootConfig.BackEndTableInfoConfig> backends, ShardingQueryRootConfig.PrototypeServer prototypeServer) {
@@ -83,86 +157,268 @@ public enum MetadataManager {
     }
 
     public void removeTable(String schemaName, String tableName) {
-        SchemaHandler schemaHandler = schemaMap.get(schemaName);
-        if (schemaHandler != null) {
-            Map<String, TableHandler> stringLogicTableConcurrentHashMap = schemaMap.get(schemaName).logicTables();
-            if (stringLogicTableConcurrentHashMap != null) {
-                stringLogicTableConcurrentHashMap.remove(tableName);
-            }
-        }
+        updateSchema(schemaName, tableMap -> {
+            tableMap.remove(tableName);
+            return true;
+        });
     }
 
 
-    public void load(MycatConfig mycatConfig) {
+    /**
+     * 与上一次加载的配置比较,配置相同的库与表沿用原来的对象,只重建修改过的表,
+     * 需要重建的表并行创建,新的快照构建完成后一次替换.
+     * 没有配置建表语句的表优先使用磁盘快照里的建表语句,之后在后台向存储节点校验
+     */
+    public synchronized void load(MycatConfig mycatConfig) {
+        this.insertBatchSize = Math.max(1, mycatConfig.getServer().getInsertBatchSize());
         ShardingQueryRootConfig shardingQueryRootConfig = mycatConfig.getMetadata();
         if (shardingQueryRootConfig != null) {
-            //更新新配置里面的信息
-            Map<String, ShardingQueryRootConfig.LogicSchemaConfig> schemaConfigMap = shardingQueryRootConfig.getSchemas()
-                    .stream()
-                    .collect(Collectors.toMap(k -> k.getSchemaName(), v -> v));
-            for (Map.Entry<String, ShardingQueryRootConfig.LogicSchemaConfig> entry : schemaConfigMap.entrySet()) {
-                String orignalSchemaName = entry.getKey();
-                ShardingQueryRootConfig.LogicSchemaConfig value = entry.getValue();
-                String targetName = value.getTargetName();
-                final String schemaName = orignalSchemaName;
-                addSchema(schemaName, targetName);
+            MetadataSnapshot snapshot = getSnapshot(mycatConfig.getServer().getTempDirectory());
+            ShardingQueryRootConfig oldConfig = this.loadedConfig;
+            Map<String, SchemaHandler> current = this.schemaMap;
+            ShardingQueryRootConfig.PrototypeServer prototype = shardingQueryRootConfig.getPrototype();
+            //原型库变化时,没有配置建表语句的表需要重新获取字段信息
+            boolean prototypeChanged = oldConfig == null || !Objects.equals(oldConfig.getPrototype(), prototype);
+            Map<String, ShardingQueryRootConfig.LogicSchemaConfig> oldSchemaConfigMap = oldConfig == null ? Collections.emptyMap() :
+                    oldConfig.getSchemas().stream().collect(Collectors.toMap(k -> k.getSchemaName(), v -> v));
+            ConcurrentHashMap<String, SchemaHandler> map = new ConcurrentHashMap<>();
+            List<PendingTable> pendingTables = new ArrayList<>();
+            Set<String> tableKeys = new HashSet<>();
+            int reused = 0;
+            for (ShardingQueryRootConfig.LogicSchemaConfig value : shardingQueryRootConfig.getSchemas()) {
+                final String schemaName = value.getSchemaName();
+                value.getShadingTables().keySet().forEach(t -> tableKeys.add(MetadataSnapshot.key(schemaName, t)));
+                value.getGlobalTables().keySet().forEach(t -> tableKeys.add(MetadataSnapshot.key(schemaName, t)));
+                SchemaHandler oldSchema = prototypeChanged ? null : current.get(schemaName);
+                ShardingQueryRootConfig.LogicSchemaConfig oldValue = oldSchemaConfigMap.get(schemaName);
+                if (oldSchema != null && value.equals(oldValue)) {
+                    putSchema(map, oldSchema);
+                    reused += oldSchema.logicTables().size() / 2;
+                    continue;
+                }
+                SchemaHandlerImpl schemaHandler = new SchemaHandlerImpl(schemaName, value.getTargetName());
+                Map<String, TableHandler> tableMap = schemaHandler.logicTables();
                 for (Map.Entry<String, ShardingTableConfig> e : value.getShadingTables().entrySet()) {
                     String tableName = e.getKey();
                     ShardingTableConfig tableConfigEntry = e.getValue();
-                    addShardingTable(schemaName, tableName, tableConfigEntry, shardingQueryRootConfig.getPrototype(), getBackendTableInfos(tableConfigEntry.getDataNodes()));
+                    TableHandler oldTable = getUnchangedTable(oldSchema, oldValue == null ? null : oldValue.getShadingTables().get(tableName), tableName, tableConfigEntry);
+                    if (oldTable != null) {
+                        putTable(tableMap, oldTable);
+                        reused++;
+                        continue;
+                    }
+                    List<BackendTableInfo> backends = getBackendTableInfos(tableConfigEntry.getDataNodes());
+                    pendingTables.add(new PendingTable(tableMap, schemaName, tableName, backends,
+                            () -> createShardingTable(schemaName, tableName, tableConfigEntry, prototype, backends)));
                 }
 
                 for (Map.Entry<String, GlobalTableConfig> e : value.getGlobalTables().entrySet()) {
                     String tableName = e.getKey();
                     GlobalTableConfig tableConfigEntry = e.getValue();
-                    addGlobalTable(schemaName, tableName,
-                            tableConfigEntry,
-                            shardingQueryRootConfig.getPrototype(),
-                            getBackendTableInfos(tableConfigEntry.getDataNodes()),
-                            getBackendTableInfos(tableConfigEntry.getDataNodes())
-                    );
-
+                    TableHandler oldTable = getUnchangedTable(oldSchema, oldValue == null ? null : oldValue.getGlobalTables().get(tableName), tableName, tableConfigEntry);
+                    if (oldTable != null) {
+                        putTable(tableMap, oldTable);
+                        reused++;
+                        continue;
+                    }
+                    List<BackendTableInfo> backends = getBackendTableInfos(tableConfigEntry.getDataNodes());
+                    pendingTables.add(new PendingTable(tableMap, schemaName, tableName, backends,
+                            () -> createGlobalTable(schemaName, tableName, tableConfigEntry, prototype, backends, backends)));
                 }
+                putSchema(map, schemaHandler);
+            }
+            int concurrency = Math.max(1, mycatConfig.getServer().getMetadataConcurrency());
+            forEach(pendingTables, concurrency, pendingTable -> pendingTable.table = pendingTable.factory.get());
+            for (PendingTable pendingTable : pendingTables) {
+                putTable(pendingTable.tableMap, pendingTable.table);
+                accrptDDL(pendingTable.schemaName, pendingTable.table.getCreateTableSQL());
             }
-            //去掉失效的配置
-            //Map<String, SchemaHandler> schemaMap = this.getSchemaMap();
-            //配置里面不存在的库移除
-            new ArrayList<>(schemaMap.keySet()).stream().filter(currentSchema ->
-                    !schemaConfigMap.containsKey(currentSchema) && !schemaConfigMap.containsKey("`" + currentSchema + "`")
-            ).forEach(schemaMap::remove);
-
-            //配置里面不存在的表移除
-            for (Map.Entry<String, SchemaHandler> entry : schemaMap.entrySet()) {
-                SchemaHandler schemaHandler = entry.getValue();
-                Set<String> tableNames = new HashSet<>(schemaHandler.logicTables().keySet());
-                Set<String> set = schemaConfigMap.values().stream()
-                        .flatMap(i -> Stream.concat(i.getGlobalTables().keySet().stream(),
-                                i.getShadingTables().keySet().stream())).collect(Collectors.toSet());
-                for (String tableName : tableNames) {
-                    if (!set.contains(tableName) && !set.contains("`" + tableName + "`")) {
-                        schemaHandler.logicTables().remove(tableName);
+            //配置里面不存在的库与表不会进入新的快照
+            this.schemaMap = map;
+            this.loadedConfig = shardingQueryRootConfig;
+            snapshot.retain(tableKeys);
+            snapshot.save();
+            LOGGER.info("metadata loaded, created tables:{} reused tables:{}", pendingTables.size(), reused);
+            verifySnapshot(snapshot, pendingTables.stream()
+                    .filter(i -> snapshot.takeUnverified(i.schemaName, i.tableName))
+                    .collect(Collectors.toList()), concurrency);
+        }
+    }
+
+    /**
+     * 等待创建的表
+     */
+    private static class PendingTable {
+        final Map<String, TableHandler> tableMap;
+        final String schemaName;
+        final String tableName;
+        final List<BackendTableInfo> backends;
+        final Supplier<TableHandler> factory;
+        TableHandler table;
+
+        PendingTable(Map<String, TableHandler> tableMap, String schemaName, String tableName, List<BackendTableInfo> backends, Supplier<TableHandler> factory) {
+            this.tableMap = tableMap;
+            this.schemaName = schemaName;
+            this.tableName = tableName;
+            this.backends = backends;
+            this.factory = factory;
+        }
+    }
+
+    private MetadataSnapshot getSnapshot(String directory) {
+        Path file = directory == null ? null : Paths.get(directory).resolve(MetadataSnapshot.SNAPSHOT_FILE);
+        MetadataSnapshot snapshot = this.snapshot;
+        if (!Objects.equals(file, snapshot.getFile())) {
+            snapshot = new MetadataSnapshot(file);
+            snapshot.load();
+            this.snapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    /**
+     * 在后台向存储节点获取按快照创建的表的建表语句,有变化时重建该表并替换
+     */
+    private void verifySnapshot(MetadataSnapshot snapshot, List<PendingTable> pendingTables, int concurrency) {
+        if (pendingTables.isEmpty()) {
+            return;
+        }
+        ExecutorService executor = JdbcRuntime.INSTANCE.getFetchDataExecutorService();
+        if (executor == null) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                forEach(pendingTables, concurrency, pendingTable -> {
+                    TableHandler table = pendingTable.table;
+                    String createTableSQL = getCreateTableSQLByJDBC(pendingTable.schemaName, pendingTable.tableName, pendingTable.backends);
+                    if (createTableSQL == null || createTableSQL.equals(table.getCreateTableSQL())) {
+                        return;
+                    }
+                    snapshot.put(pendingTable.schemaName, pendingTable.tableName, createTableSQL);
+                    try {
+                        TableHandler update = pendingTable.factory.get();
+                        snapshot.takeUnverified(pendingTable.schemaName, pendingTable.tableName);
+                        if (replaceTable(table, update)) {
+                            accrptDDL(pendingTable.schemaName, update.getCreateTableSQL());
+                            LOGGER.info("{}.{} is changed since metadata snapshot, reloaded", pendingTable.schemaName, pendingTable.tableName);
+                        }
+                    } catch (Throwable e) {
+                        LOGGER.error("重建表{}.{}失败", pendingTable.schemaName, pendingTable.tableName, e);
                     }
+                });
+                snapshot.save();
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("metadata snapshot is not verified", e);
+        }
+    }
+
+    /**
+     * 最多concurrency个任务同时执行,当前线程也参与执行,任一任务失败时等待其他任务结束后抛出
+     */
+    @SneakyThrows
+    private static <T> void forEach(List<T> list, int concurrency, Consumer<T> action) {
+        if (list.isEmpty()) {
+            return;
+        }
+        ConcurrentLinkedQueue<T> queue = new ConcurrentLinkedQueue<>(list);
+        Runnable drain = () -> {
+            T t;
+            while ((t = queue.poll()) != null) {
+                action.accept(t);
+            }
+        };
+        ExecutorService executor = JdbcRuntime.INSTANCE.getFetchDataExecutorService();
+        int workers = executor == null ? 0 : Math.min(list.size(), concurrency) - 1;
+        List<Future<?>> futures = new ArrayList<>(Math.max(workers, 0));
+        try {
+            for (int i = 0; i < workers; i++) {
+                futures.add(executor.submit(drain));
+            }
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("metadata load runs with {} workers", futures.size(), e);
+        }
+        Throwable error = null;
+        try {
+            drain.run();
+        } catch (Throwable e) {
+            queue.clear();
+            error = e;
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                queue.clear();
+                if (error == null) {
+                    error = e.getCause();
                 }
             }
         }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * 表配置没有变化时返回原来的表
+     */
+    private static TableHandler getUnchangedTable(SchemaHandler oldSchema, Object oldTableConfig, String tableName, Object tableConfig) {
+        if (oldSchema == null || oldTableConfig == null || !oldTableConfig.equals(tableConfig)) {
+            return null;
+        }
+        return oldSchema.logicTables().get(tableName);
+    }
+
+    private static void putSchema(Map<String, SchemaHandler> map, SchemaHandler schemaHandler) {
+        map.put(schemaHandler.getName(), schemaHandler);
+        map.put("`" + schemaHandler.getName() + "`", schemaHandler);
     }
 
-    private void addGlobalTable(String schemaName,
-                                String orignalTableName,
-                                GlobalTableConfig tableConfigEntry,
-                                ShardingQueryRootConfig.PrototypeServer prototypeServer,
-                                List<BackendTableInfo> backendTableInfos,
-                                List<BackendTableInfo> readOnly) {
+    private static void putTable(Map<String, TableHandler> tableMap, TableHandler table) {
+        tableMap.put(table.getTableName(), table);
+        tableMap.put("`" + table.getTableName() + "`", table);
+    }
+
+    /**
+     * 复制库的表集合修改后替换快照,updater返回false时不替换
+     */
+    private synchronized boolean updateSchema(String schemaName, Predicate<Map<String, TableHandler>> updater) {
+        SchemaHandler schemaHandler = schemaMap.get(schemaName);
+        if (schemaHandler == null) {
+            return false;
+        }
+        SchemaHandlerImpl copy = new SchemaHandlerImpl(schemaHandler.getName(), schemaHandler.defaultTargetName());
+        copy.logicTables().putAll(schemaHandler.logicTables());
+        if (!updater.test(copy.logicTables())) {
+            return false;
+        }
+        ConcurrentHashMap<String, SchemaHandler> map = new ConcurrentHashMap<>(schemaMap);
+        for (Map.Entry<String, SchemaHandler> entry : map.entrySet()) {
+            if (entry.getValue() == schemaHandler) {
+                entry.setValue(copy);
+            }
+        }
+        schemaMap = map;
+        return true;
+    }
+
+    private TableHandler createGlobalTable(String schemaName,
+                                           String orignalTableName,
+                                           GlobalTableConfig tableConfigEntry,
+                                           ShardingQueryRootConfig.PrototypeServer prototypeServer,
+                                           List<BackendTableInfo> backendTableInfos,
+                                           List<BackendTableInfo> readOnly) {
         //////////////////////////////////////////////
         final String tableName = orignalTableName;
-        String createTableSQL = Optional.ofNullable(tableConfigEntry.getCreateTableSQL())
-                .orElseGet(() -> getCreateTableSQLByJDBC(schemaName, orignalTableName, backendTableInfos));
+        String createTableSQL = getCreateTableSQL(schemaName, orignalTableName, tableConfigEntry.getCreateTableSQL(), backendTableInfos);
         List<SimpleColumnInfo> columns = getSimpleColumnInfos(prototypeServer, schemaName, tableName, createTableSQL, backendTableInfos);
         //////////////////////////////////////////////
 
         LoadBalanceStrategy loadBalance = PlugRuntime.INSTANCE.getLoadBalanceByBalanceName(tableConfigEntry.getBalance());
 
-        addLogicTable(LogicTable.createGlobalTable(schemaName, tableName, backendTableInfos, readOnly, loadBalance, columns, createTableSQL));
+        return LogicTable.createGlobalTable(schemaName, tableName, backendTableInfos, readOnly, loadBalance, columns, createTableSQL);
     }
 
 
@@ -187,9 +443,13 @@ public enum MetadataManager {
     }
 
     private void addShardingTable(String schemaName, String orignalTableName, ShardingTableConfig tableConfigEntry, ShardingQueryRootConfig.PrototypeServer prototypeServer, List<BackendTableInfo> backends) {
+        addLogicTable(createShardingTable(schemaName, orignalTableName, tableConfigEntry, prototypeServer, backends));
+    }
+
+    private ShardingTable createShardingTable(String schemaName, String orignalTableName, ShardingTableConfig tableConfigEntry, ShardingQueryRootConfig.PrototypeServer prototypeServer, List<BackendTableInfo> backends) {
         //////////////////////////////////////////////
         final String tableName = orignalTableName;
-        String createTableSQL = Optional.ofNullable(tableConfigEntry.getCreateTableSQL()).orElseGet(() -> getCreateTableSQLByJDBC(schemaName, orignalTableName, backends));
+        String createTableSQL = getCreateTableSQL(schemaName, orignalTableName, tableConfigEntry.getCreateTableSQL(), backends);
         List<SimpleColumnInfo> columns = getSimpleColumnInfos(prototypeServer, schemaName, tableName, createTableSQL, backends);
         //////////////////////////////////////////////
         String s = schemaName + "_" + orignalTableName;
@@ -200,22 +460,171 @@ public enum MetadataManager {
 
         LogicTable logicTable = new LogicTable(LogicTableType.SHARDING, schemaName, tableName, columns, createTableSQL);
 
-        ShardingTable shardingTable = new ShardingTable(logicTable, (List) backends, tableConfigEntry.getColumns(), sequence);
-        addLogicTable(shardingTable);
+        return new ShardingTable(logicTable, (List) backends, tableConfigEntry.getColumns(), sequence);
+    }
+
+    /**
+     * 创建把表迁移到新分片配置的任务,调用{@link ReshardingTask#run()}执行,
+     * 切换路由之前新的分片配置先写入配置提供者.
+     * 同一个表的上一个任务结束之前不能创建新的任务
+     */
+    public ReshardingTask reshard(String schemaName,
+                                  String tableName,
+                                  ShardingTableConfig newConfig,
+                                  ShardingQueryRootConfig.PrototypeServer prototypeServer,
+                                  ReshardingTask.Options options) {
+        TableHandler tableHandler = getTable(schemaName, tableName);
+        if (!(tableHandler instanceof ShardingTable)) {
+            throw new MycatException("{}.{} is not a sharding table", schemaName, tableName);
+        }
+        ShardingTable source = (ShardingTable) tableHandler;
+        if (newConfig.getCreateTableSQL() == null) {
+            newConfig.setCreateTableSQL(source.getCreateTableSQL());
+        }
+        ShardingTable target = createShardingTable(schemaName, tableName, newConfig, prototypeServer, getBackendTableInfos(newConfig.getDataNodes()));
+        ReshardingTask task = new ReshardingTask(source, target, newConfig, options);
+        ReshardingTask running = reshardingTasks.compute(source.getUniqueName(), (k, v) -> v == null || v.isDone() ? task : v);
+        if (running != task) {
+            throw new MycatException("{}.{} is resharding", schemaName, tableName);
+        }
+        return task;
+    }
+
+    /**
+     * 使用当前配置的原型库获取新表的字段信息
+     */
+    public ReshardingTask reshard(String schemaName,
+                                  String tableName,
+                                  ShardingTableConfig newConfig,
+                                  ReshardingTask.Options options) {
+        ShardingQueryRootConfig loadedConfig = this.loadedConfig;
+        return reshard(schemaName, tableName, newConfig, loadedConfig == null ? null : loadedConfig.getPrototype(), options);
+    }
+
+    public List<ReshardingTask> getReshardingTasks() {
+        return new ArrayList<>(reshardingTasks.values());
+    }
+
+    /**
+     * 当前的表仍然是expect时替换为update,两个表名各自原子替换
+     */
+    boolean replaceTable(TableHandler expect, TableHandler update) {
+        String tableName = expect.getTableName();
+        return updateSchema(expect.getSchemaName(), tableMap -> {
+            if (!tableMap.replace(tableName, expect, update)) {
+                return false;
+            }
+            tableMap.replace("`" + tableName + "`", expect, update);
+            return true;
+        });
+    }
+
+    /**
+     * 登记一条对该表的写语句,返回的许可在语句结束后关闭,
+     * 事务中的写语句在事务结束后才关闭,表拒绝该写操作时抛出异常
+     */
+    public AutoCloseable enterWrite(TableHandler table, boolean delete) {
+        return acquireWrite(table, delete);
+    }
+
+    private WritePermit acquireWrite(TableHandler table, boolean delete) {
+        WriteGate gate = writeGates.computeIfAbsent(table.getUniqueName(), k -> new WriteGate());
+        gate.writing.incrementAndGet();
+        try {
+            checkWritable(table, gate.fence, delete);
+        } catch (MycatException e) {
+            gate.writing.decrementAndGet();
+            throw e;
+        }
+        return new WritePermit(gate.writing);
+    }
+
+    /**
+     * 登记一条不经过路由直接发往数据源的写语句.
+     * 没有表在重新分片时只计数,否则解析语句中的表逐个登记,无法区分DELETE时按DELETE处理
+     */
+    public AutoCloseable enterWrite(String defaultSchema, String sql) {
+        untrackedWrites.incrementAndGet();
+        if (fencedTables.get() == 0) {
+            return new WritePermit(untrackedWrites);
+        }
+        untrackedWrites.decrementAndGet();
+        List<WritePermit> permits = new ArrayList<>(1);
+        try {
+            for (Map.Entry<String, Collection<String>> entry : TableCollector.collect(defaultSchema, sql).entrySet()) {
+                for (String tableName : entry.getValue()) {
+                    TableHandler table = getTable(entry.getKey(), tableName);
+                    if (table != null) {
+                        permits.add(acquireWrite(table, true));
+                    }
+                }
+            }
+        } catch (MycatException e) {
+            closePermits(permits);
+            throw e;
+        }
+        return () -> closePermits(permits);
+    }
+
+    private static void closePermits(List<WritePermit> permits) {
+        for (WritePermit permit : permits) {
+            permit.close();
+        }
+    }
+
+    /**
+     * 设置写屏障之后,屏障之前开始的写语句仍然可能在执行,需要调用{@link #awaitWrites}等待
+     */
+    synchronized void setWriteFence(TableHandler table, WriteFence fence) {
+        WriteGate gate = writeGates.computeIfAbsent(table.getUniqueName(), k -> new WriteGate());
+        if (gate.fence == null && fence != null) {
+            fencedTables.incrementAndGet();
+        } else if (gate.fence != null && fence == null) {
+            fencedTables.decrementAndGet();
+        }
+        gate.fence = fence;
+    }
+
+    WriteFence getWriteFence(TableHandler table) {
+        WriteGate gate = writeGates.get(table.getUniqueName());
+        return gate == null ? null : gate.fence;
+    }
+
+    /**
+     * 等待该表与透传的写语句全部结束,超时抛出异常
+     */
+    void awaitWrites(TableHandler table, long timeoutMillis) throws InterruptedException {
+        WriteGate gate = writeGates.computeIfAbsent(table.getUniqueName(), k -> new WriteGate());
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (gate.writing.get() > 0 || untrackedWrites.get() > 0) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new MycatException("{}.{} wait for {} writing statements timeout", table.getSchemaName(), table.getTableName(),
+                        gate.writing.get() + untrackedWrites.get());
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private void checkWritable(TableHandler table, boolean delete) {
+        if (table == null) {
+            return;
+        }
+        checkWritable(table, getWriteFence(table), delete);
+    }
+
+    private static void checkWritable(TableHandler table, WriteFence fence, boolean delete) {
+        if (fence == WriteFence.ALL || (fence == WriteFence.DELETE && delete)) {
+            throw new MycatException("{}.{} is resharding, write is rejected", table.getSchemaName(), table.getTableName());
+        }
     }
 
     private void addLogicTable(TableHandler logicTable) {
         String schemaName = logicTable.getSchemaName();
-        String tableName = logicTable.getTableName();
         String createTableSQL = logicTable.getCreateTableSQL();
-        Map<String, TableHandler> tableMap;
-        tableMap = schemaMap.get(schemaName).logicTables();
-        tableMap.put(tableName, logicTable);
-        tableMap.put("`" + tableName + "`", logicTable);
-
-        tableMap = schemaMap.get(schemaName).logicTables();
-        tableMap.put(tableName, logicTable);
-        tableMap.put("`" + tableName + "`", logicTable);
+        updateSchema(schemaName, tableMap -> {
+            putTable(tableMap, logicTable);
+            return true;
+        });
         accrptDDL(schemaName, createTableSQL);
     }
 
@@ -301,6 +710,25 @@ public enum MetadataManager {
         return null;
     }
 
+    /**
+     * 依次使用配置的建表语句,磁盘快照,存储节点上的建表语句
+     */
+    private String getCreateTableSQL(String schemaName, String tableName, String createTableSQL, List<BackendTableInfo> backends) {
+        if (createTableSQL != null) {
+            return createTableSQL;
+        }
+        MetadataSnapshot snapshot = this.snapshot;
+        createTableSQL = snapshot.get(schemaName, tableName);
+        if (createTableSQL != null) {
+            return createTableSQL;
+        }
+        createTableSQL = getCreateTableSQLByJDBC(schemaName, tableName, backends);
+        if (createTableSQL != null) {
+            snapshot.put(schemaName, tableName, createTableSQL);
+        }
+        return createTableSQL;
+    }
+
     private static String getCreateTableSQLByJDBC(String schemaName, String tableName, List<BackendTableInfo> backends) {
         if (backends == null || backends.isEmpty()) {
             return null;
@@ -373,10 +801,12 @@ public enum MetadataManager {
                     DataNode dataNode = entry.getKey();
                     SQLExprTableSource tableSource = statement.getTableSource();
                     tableSource.setExpr(new SQLPropertyExpr(dataNode.getSchema(), dataNode.getTable()));
-                    statement.getValuesList().clear();
-                    statement.getValuesList().addAll(entry.getValue());
                     List<String> list = map.computeIfAbsent(dataNode.getTargetName(), s12 -> new ArrayList<>());
-                    list.add(statement.toString());
+                    for (List<SQLInsertStatement.ValuesClause> batch : Lists.partition(entry.getValue(), insertBatchSize)) {
+                        statement.getValuesList().clear();
+                        statement.getValuesList().addAll(batch);
+                        list.add(statement.toString());
+                    }
                 }
                 return map;
             }
@@ -401,12 +831,14 @@ public enum MetadataManager {
         Map<DataNode, List<SQLInsertStatement.ValuesClause>> insertInfo = getInsertInfoValuesClause(currentSchemaName, statement);
         SQLExprTableSource tableSource = statement.getTableSource();
         for (Map.Entry<DataNode, List<SQLInsertStatement.ValuesClause>> backendTableInfoListEntry : insertInfo.entrySet()) {
-            statement.getValuesList().clear();
             DataNode key = backendTableInfoListEntry.getKey();
-            statement.getValuesList().addAll(backendTableInfoListEntry.getValue());
             tableSource.setExpr(new SQLPropertyExpr(key.getSchema(), key.getTable()));
             List<String> strings = res.computeIfAbsent(key.getTargetName(), s -> new ArrayList<>());
-            strings.add(statement.toString());
+            for (List<SQLInsertStatement.ValuesClause> batch : Lists.partition(backendTableInfoListEntry.getValue(), insertBatchSize)) {
+                statement.getValuesList().clear();
+                statement.getValuesList().addAll(batch);
+                strings.add(statement.toString());
+            }
         }
         return res;
     }
@@ -425,6 +857,7 @@ public enum MetadataManager {
         if (!(logicTable instanceof ShardingTableHandler)) {
             throw new AssertionError();
         }
+        checkWritable(logicTable, false);
         List<SQLExpr> columns = statement.getColumns();
         Iterable<SQLInsertStatement.ValuesClause> originValuesList = statement.getValuesList();
         Iterable<SQLInsertStatement.ValuesClause> outValuesList;
@@ -504,7 +937,7 @@ public enum MetadataManager {
         resolveMetadata(sqlStatement);
         ConditionCollector conditionCollector = new ConditionCollector();
         sqlStatement.accept(conditionCollector);
-        Rrs rrs = assignment(conditionCollector.isFailureIndeterminacy(), conditionCollector.getRootQueryDataRange(), currentSchema);
+        Rrs rrs = assignment(sqlStatement, conditionCollector.getRootQueryDataRange(), currentSchema);
         Map<String, List<String>> sqls = new HashMap<>();
         for (DataNode endTableInfo : rrs.getBackEndTableInfos()) {
             SQLExprTableSource table = rrs.getTable();
@@ -521,7 +954,7 @@ public enum MetadataManager {
 
     //////////////////////////////////////////calculate///////////////////////////////
     private Rrs assignment(
-            boolean fail,
+            SQLStatement sqlStatement,
             QueryDataRange queryDataRange, String wapperSchemaName) {
         String schemaName = wapperSchemaName;
         String tableName = null;
@@ -533,6 +966,9 @@ public enum MetadataManager {
             tableName = SQLUtils.normalize(schemaObject.getName());
         }
         TableHandler logicTable = schemaMap.get(schemaName).logicTables().get(tableName);
+        if (sqlStatement instanceof SQLUpdateStatement || sqlStatement instanceof SQLDeleteStatement) {
+            checkWritable(logicTable, sqlStatement instanceof SQLDeleteStatement);
+        }
         DataMappingEvaluator dataMappingEvaluator = new DataMappingEvaluator();
 
         for (ColumnValue equalValue : queryDataRange.getEqualValues()) {
@@ -625,8 +1061,9 @@ public enum MetadataManager {
         return schemaMap.keySet().stream().map(i -> SQLUtils.normalize(i)).distinct().sorted(Comparator.comparing(s -> s)).collect(Collectors.toList());
     }
 
-    public MetadataManager clear() {
-        this.schemaMap.clear();
+    public synchronized MetadataManager clear() {
+        this.schemaMap = new ConcurrentHashMap<>();
+        this.loadedConfig = null;
         return this;
     }
 }
\ No newline at end of file
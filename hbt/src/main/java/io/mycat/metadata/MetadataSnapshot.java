@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) <2020>  <chen junwen>
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with this program.  If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mycat.metadata;
+
+import io.mycat.util.JsonUtil;
+import lombok.Data;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 从存储节点获取的建表语句的磁盘快照,重启时先按快照建表,再在后台向存储节点校验
+ *
+ * @author Junwen Chen
+ **/
+class MetadataSnapshot {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetadataSnapshot.class);
+    static final String SNAPSHOT_FILE = "metadata.json";
+    private final Path file;
+    private final ConcurrentHashMap<String, String> createTableSQLMap = new ConcurrentHashMap<>();
+    /**
+     * 从快照取得,还没有与存储节点校验的表
+     */
+    private final Set<String> unverified = ConcurrentHashMap.newKeySet();
+    private volatile boolean changed = false;
+
+    MetadataSnapshot(Path file) {
+        this.file = file;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    static String key(String schemaName, String tableName) {
+        return schemaName + "." + tableName;
+    }
+
+    String get(String schemaName, String tableName) {
+        String key = key(schemaName, tableName);
+        String sql = createTableSQLMap.get(key);
+        if (sql != null) {
+            unverified.add(key);
+        }
+        return sql;
+    }
+
+    void put(String schemaName, String tableName, String createTableSQL) {
+        String key = key(schemaName, tableName);
+        unverified.remove(key);
+        if (!createTableSQL.equals(createTableSQLMap.put(key, createTableSQL))) {
+            changed = true;
+        }
+    }
+
+    /**
+     * 返回并清除未校验的标记,每张表只校验一次
+     */
+    boolean takeUnverified(String schemaName, String tableName) {
+        return unverified.remove(key(schemaName, tableName));
+    }
+
+    /**
+     * 只保留仍然存在的表
+     */
+    void retain(Set<String> keys) {
+        if (createTableSQLMap.keySet().retainAll(keys)) {
+            changed = true;
+        }
+    }
+
+    synchronized void load() {
+        if (file == null || !Files.exists(file)) {
+            return;
+        }
+        try {
+            String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            Entry[] entries = JsonUtil.from(text, Entry[].class);
+            if (entries != null) {
+                for (Entry entry : entries) {
+                    createTableSQLMap.put(key(entry.getSchemaName(), entry.getTableName()), entry.getCreateTableSQL());
+                }
+            }
+            LOGGER.info("metadata snapshot loaded, tables:{} file:{}", createTableSQLMap.size(), file);
+        } catch (Throwable e) {
+            LOGGER.error("读取元数据快照失败 {}", file, e);
+        }
+    }
+
+    synchronized void save() {
+        if (file == null || !changed) {
+            return;
+        }
+        changed = false;
+        try {
+            List<Entry> entries = new ArrayList<>(createTableSQLMap.size());
+            for (Map.Entry<String, String> e : createTableSQLMap.entrySet()) {
+                String key = e.getKey();
+                int index = key.indexOf('.');
+                entries.add(new Entry(key.substring(0, index), key.substring(index + 1), e.getValue()));
+            }
+            Path tmp = file.resolveSibling(SNAPSHOT_FILE + ".tmp");
+            Files.write(tmp, JsonUtil.toJson(entries).getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            changed = true;
+            LOGGER.error("保存元数据快照失败 {}", file, e);
+        }
+    }
+
+    @Data
+    public static class Entry {
+        private String schemaName;
+        private String tableName;
+        private String createTableSQL;
+
+        public Entry() {
+        }
+
+        Entry(String schemaName, String tableName, String createTableSQL) {
+            this.schemaName = schemaName;
+            this.tableName = tableName;
+            this.createTableSQL = createTableSQL;
+        }
+    }
+}
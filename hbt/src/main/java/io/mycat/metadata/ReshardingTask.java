@@ -0,0 +1,502 @@
+/**
+ * Copyright (C) <2020>  <chen junwen>
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with this program.  If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mycat.metadata;
+
+import com.alibaba.fastsql.sql.SQLUtils;
+import io.mycat.ConfigProvider;
+import io.mycat.DataNode;
+import io.mycat.MycatConfig;
+import io.mycat.MycatException;
+import io.mycat.RangeVariable;
+import io.mycat.RangeVariableType;
+import io.mycat.RootHelper;
+import io.mycat.SimpleColumnInfo;
+import io.mycat.config.ShardingQueryRootConfig;
+import io.mycat.config.ShardingTableConfig;
+import io.mycat.datasource.jdbc.JdbcRuntime;
+import io.mycat.datasource.jdbc.datasource.DefaultConnection;
+import io.mycat.replica.ReplicaSelectorRuntime;
+import io.mycat.replica.heartbeat.HeartbeatFlow;
+import io.mycat.router.CustomRuleFunction;
+import io.mycat.util.YamlUtil;
+import lombok.Data;
+import lombok.Getter;
+import lombok.SneakyThrows;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 在线重新分片.
+ * 复制阶段按主键顺序分块读取每个旧分片,用新的分片算法计算每一行的位置,
+ * 需要移动的行以REPLACE写入新分片,多个块并行执行,目标集群的从库延迟超过阈值时暂停写入.
+ * 复制期间拒绝该表的DELETE,复制完成后短暂拒绝全部写入,
+ * 按updateTimeColumn补齐复制期间插入与修改的行,然后写入新的配置并原子地切换路由,
+ * 删除旧分片上已经移走的行之后才恢复写入.
+ * 每次设置写屏障后等待屏障之前开始的写语句结束,事务中的写语句在事务结束后才算结束.
+ * 没有配置updateTimeColumn时无法识别增量,整个迁移期间拒绝写入(读不受影响)
+ *
+ * @author Junwen Chen
+ **/
+@Getter
+public class ReshardingTask implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReshardingTask.class);
+    private final ShardingTable source;
+    private final ShardingTable target;
+    private final ShardingTableConfig targetConfig;
+    private final Options options;
+    private final SimpleColumnInfo primaryKey;
+    private final List<SimpleColumnInfo> columns;
+    private final AtomicLong scannedRows = new AtomicLong();
+    private final AtomicLong movedRows = new AtomicLong();
+    private volatile State state = State.INIT;
+    private volatile boolean canceled;
+    private volatile boolean done;
+
+    public enum State {
+        INIT,
+        COPYING,
+        CATCHING_UP,
+        SWITCHED,
+        CLEANED,
+        CANCELED,
+        FAILED
+    }
+
+    @Data
+    public static class Options {
+        /**
+         * 同时复制的块数
+         */
+        private int concurrency = 4;
+        /**
+         * 每次读取与写入的行数
+         */
+        private int chunkSize = 1000;
+        /**
+         * 记录行修改时间的字段,用于复制后的增量补齐
+         */
+        private String updateTimeColumn;
+        private long lagCheckIntervalMillis = 1000;
+        /**
+         * 设置写屏障后等待正在执行的写语句结束的时限,超时则放弃迁移
+         */
+        private long fenceTimeoutMillis = 30000;
+        /**
+         * 切换路由后删除旧分片上已经移走的行,关闭后旧分片保留过期的副本,需要手动清理
+         */
+        private boolean deleteMovedRows = true;
+    }
+
+    ReshardingTask(ShardingTable source, ShardingTable target, ShardingTableConfig targetConfig, Options options) {
+        if (!source.isNatureTable() || !target.isNatureTable()) {
+            throw new MycatException("{}.{} resharding only supports nature sharding tables", source.getSchemaName(), source.getTableName());
+        }
+        List<SimpleColumnInfo> primaryKeys = source.getColumns().stream().filter(SimpleColumnInfo::isPrimaryKey).collect(Collectors.toList());
+        if (primaryKeys.size() != 1) {
+            throw new MycatException("{}.{} resharding needs a single column primary key", source.getSchemaName(), source.getTableName());
+        }
+        this.source = source;
+        this.target = target;
+        this.targetConfig = targetConfig;
+        this.options = options;
+        this.primaryKey = primaryKeys.get(0);
+        this.columns = source.getColumns();
+    }
+
+    public void cancel() {
+        this.canceled = true;
+    }
+
+    @Override
+    public void run() {
+        MetadataManager metadataManager = MetadataManager.INSTANCE;
+        boolean incremental = options.getUpdateTimeColumn() != null;
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, options.getConcurrency()));
+        try {
+            raiseWriteFence(incremental ? MetadataManager.WriteFence.DELETE : MetadataManager.WriteFence.ALL);
+            state = State.COPYING;
+            Map<String, String> copyStartTimes = incremental ? queryCopyStartTimes() : null;
+            copyRows(executor, null);
+
+            state = State.CATCHING_UP;
+            raiseWriteFence(MetadataManager.WriteFence.ALL);
+            if (incremental) {
+                copyRows(executor, copyStartTimes);
+            }
+            checkCanceled();
+            //配置写入失败时不切换路由,切换失败时恢复原来的配置
+            MycatConfig originConfig = persistConfig();
+            if (!metadataManager.replaceTable(source, target)) {
+                restoreConfig(originConfig);
+                throw new MycatException("{}.{} has been changed during resharding", source.getSchemaName(), source.getTableName());
+            }
+            state = State.SWITCHED;
+            LOGGER.info("resharding {}.{} switched, scanned rows:{} moved rows:{}",
+                    source.getSchemaName(), source.getTableName(), scannedRows.get(), movedRows.get());
+
+            //旧分片上的行删除之前一直拒绝写入,避免新旧两份数据同时被修改
+            if (options.isDeleteMovedRows()) {
+                deleteMovedRows();
+                state = State.CLEANED;
+            }
+        } catch (Throwable e) {
+            if (state != State.SWITCHED) {
+                state = canceled ? State.CANCELED : State.FAILED;
+            }
+            LOGGER.error("resharding {}.{} failed", source.getSchemaName(), source.getTableName(), e);
+            throw e instanceof MycatException ? (MycatException) e : new MycatException("resharding failed:" + e, e);
+        } finally {
+            //切换前失败时新分片上复制的行不影响路由,可以重新执行
+            metadataManager.setWriteFence(source, null);
+            executor.shutdownNow();
+            done = true;
+        }
+    }
+
+    private void raiseWriteFence(MetadataManager.WriteFence fence) throws InterruptedException {
+        MetadataManager metadataManager = MetadataManager.INSTANCE;
+        metadataManager.setWriteFence(source, fence);
+        metadataManager.awaitWrites(source, options.getFenceTimeoutMillis());
+    }
+
+    /**
+     * 把新的分片配置写入配置提供者,之后重新加载配置不会恢复旧的分片
+     *
+     * @return 写入之前的配置
+     */
+    MycatConfig persistConfig() {
+        ConfigProvider configProvider = RootHelper.INSTANCE.getConfigProvider();
+        MycatConfig originConfig = configProvider.currentConfig();
+        MycatConfig config = YamlUtil.loadText(YamlUtil.dump(originConfig), MycatConfig.class);
+        ShardingQueryRootConfig.LogicSchemaConfig schemaConfig = config.getMetadata().getSchemas().stream()
+                .filter(i -> source.getSchemaName().equals(SQLUtils.normalize(i.getSchemaName())))
+                .findFirst()
+                .orElseThrow(() -> new MycatException("{} is not in the config", source.getSchemaName()));
+        schemaConfig.getShadingTables().put(source.getTableName(), targetConfig);
+        configProvider.report(config);
+        return originConfig;
+    }
+
+    void restoreConfig(MycatConfig originConfig) {
+        try {
+            RootHelper.INSTANCE.getConfigProvider().report(originConfig);
+        } catch (Throwable e) {
+            LOGGER.error("resharding {}.{} can not restore the config", source.getSchemaName(), source.getTableName(), e);
+        }
+    }
+
+    /**
+     * 开始全量复制前记录每个旧分片的当前时间,作为增量补齐的起点
+     */
+    Map<String, String> queryCopyStartTimes() throws SQLException {
+        Map<String, String> copyStartTimes = new HashMap<>();
+        for (DataNode dataNode : source.getShardingBackends()) {
+            copyStartTimes.put(dataNode.getUniqueName(), queryNow(dataNode));
+        }
+        return copyStartTimes;
+    }
+
+    /**
+     * since为null时全量复制,否则只复制每个分片在记录的时间之后修改过的行
+     */
+    void copyRows(ExecutorService executor, Map<String, String> since) throws Exception {
+        List<Future<?>> futures = new ArrayList<>();
+        for (DataNode dataNode : source.getShardingBackends()) {
+            if (since == null) {
+                for (Object[] range : splitPrimaryKeyRange(dataNode)) {
+                    futures.add(executor.submit(() -> copy(dataNode, range[0], range[1], null)));
+                }
+            } else {
+                String time = since.get(dataNode.getUniqueName());
+                futures.add(executor.submit(() -> copy(dataNode, null, null, time)));
+            }
+        }
+        await(futures);
+    }
+
+    void deleteMovedRows() throws SQLException {
+        for (DataNode dataNode : source.getShardingBackends()) {
+            deleteMovedRows(dataNode);
+        }
+    }
+
+    /**
+     * 整数主键按最小值与最大值切分为多个区间并行复制,其他类型的主键整段顺序复制
+     */
+    private List<Object[]> splitPrimaryKeyRange(DataNode dataNode) throws SQLException {
+        List<Object[]> ranges = new ArrayList<>();
+        int concurrency = Math.max(1, options.getConcurrency());
+        if (concurrency == 1 || !isIntegral(primaryKey.getJdbcType())) {
+            ranges.add(new Object[]{null, null});
+            return ranges;
+        }
+        String pk = quote(primaryKey.getColumnName());
+        String sql = "SELECT MIN(" + pk + "),MAX(" + pk + ") FROM " + table(dataNode);
+        try (DefaultConnection connection = getConnection(dataNode);
+             Statement statement = connection.getRawConnection().createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            resultSet.next();
+            long min = resultSet.getLong(1);
+            if (resultSet.wasNull()) {
+                return ranges;
+            }
+            long max = resultSet.getLong(2);
+            for (long[] range : splitRange(min, max, concurrency)) {
+                ranges.add(new Object[]{range[0], range[1]});
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * 把[min,max]切分为最多count个连续的区间,max - min可能超出long的范围,按无符号数计算
+     */
+    static List<long[]> splitRange(long min, long max, int count) {
+        List<long[]> ranges = new ArrayList<>(count);
+        long step = Long.divideUnsigned(max - min, count) + 1;
+        long begin = min;
+        while (true) {
+            if (Long.compareUnsigned(max - begin, step) < 0) {
+                ranges.add(new long[]{begin, max});
+                return ranges;
+            }
+            long end = begin + step - 1;
+            ranges.add(new long[]{begin, end});
+            begin = end + 1;
+        }
+    }
+
+    /**
+     * 按主键顺序分块扫描,since不为null时只读取修改时间不早于since的行
+     */
+    @SneakyThrows
+    private void copy(DataNode dataNode, Object begin, Object end, String since) {
+        Object last = null;
+        boolean first = true;
+        while (true) {
+            checkCanceled();
+            List<Object[]> rows = scan(dataNode, begin, end, since, last, first);
+            first = false;
+            if (rows.isEmpty()) {
+                return;
+            }
+            last = rows.get(rows.size() - 1)[indexOf(primaryKey.getColumnName())];
+            scannedRows.addAndGet(rows.size());
+            Map<DataNode, List<Object[]>> moves = groupMovedRows(dataNode, rows);
+            for (Map.Entry<DataNode, List<Object[]>> entry : moves.entrySet()) {
+                waitForReplicas(entry.getKey().getTargetName());
+                replace(entry.getKey(), entry.getValue());
+                movedRows.addAndGet(entry.getValue().size());
+            }
+            if (rows.size() < options.getChunkSize()) {
+                return;
+            }
+        }
+    }
+
+    private List<Object[]> scan(DataNode dataNode, Object begin, Object end, String since, Object last, boolean first) throws SQLException {
+        String pk = quote(primaryKey.getColumnName());
+        StringBuilder sql = new StringBuilder("SELECT ")
+                .append(columns.stream().map(c -> quote(c.getColumnName())).collect(Collectors.joining(",")))
+                .append(" FROM ").append(table(dataNode)).append(" WHERE 1=1");
+        List<Object> params = new ArrayList<>();
+        if (!first) {
+            sql.append(" AND ").append(pk).append(" > ?");
+            params.add(last);
+        } else if (begin != null) {
+            sql.append(" AND ").append(pk).append(" >= ?");
+            params.add(begin);
+        }
+        if (end != null) {
+            sql.append(" AND ").append(pk).append(" <= ?");
+            params.add(end);
+        }
+        if (since != null) {
+            sql.append(" AND ").append(quote(options.getUpdateTimeColumn())).append(" >= ?");
+            params.add(since);
+        }
+        sql.append(" ORDER BY ").append(pk).append(" LIMIT ").append(options.getChunkSize());
+        List<Object[]> rows = new ArrayList<>();
+        try (DefaultConnection connection = getConnection(dataNode);
+             PreparedStatement statement = connection.getRawConnection().prepareStatement(sql.toString())) {
+            for (int i = 0; i < params.size(); i++) {
+                statement.setObject(i + 1, params.get(i));
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                int columnCount = columns.size();
+                while (resultSet.next()) {
+                    Object[] row = new Object[columnCount];
+                    for (int i = 0; i < columnCount; i++) {
+                        row[i] = resultSet.getObject(i + 1);
+                    }
+                    rows.add(row);
+                }
+            }
+        }
+        return rows;
+    }
+
+    private Map<DataNode, List<Object[]>> groupMovedRows(DataNode dataNode, List<Object[]> rows) {
+        SimpleColumnInfo.ShardingInfo shardingInfo = target.getNatureTableColumnInfo();
+        CustomRuleFunction function = shardingInfo.getFunction();
+        String columnName = shardingInfo.getColumnInfo().getColumnName();
+        int index = indexOf(shardingInfo.getColumnInfo().getColumnName());
+        Map<DataNode, List<Object[]>> res = new HashMap<>();
+        for (Object[] row : rows) {
+            List<DataNode> dataNodes = function.calculate(Collections.singleton(
+                    new RangeVariable(columnName, false, RangeVariableType.EQUAL, row[index])));
+            if (dataNodes.size() != 1) {
+                throw new MycatException("{}.{} can not calculate data node of {}", source.getSchemaName(), source.getTableName(), row[index]);
+            }
+            DataNode to = dataNodes.get(0);
+            if (!to.getUniqueName().equals(dataNode.getUniqueName())) {
+                res.computeIfAbsent(to, k -> new ArrayList<>()).add(row);
+            }
+        }
+        return res;
+    }
+
+    private void replace(DataNode dataNode, List<Object[]> rows) throws SQLException {
+        String sql = "REPLACE INTO " + table(dataNode) + " ("
+                + columns.stream().map(c -> quote(c.getColumnName())).collect(Collectors.joining(","))
+                + ") VALUES (" + columns.stream().map(c -> "?").collect(Collectors.joining(",")) + ")";
+        try (DefaultConnection connection = getConnection(dataNode);
+             PreparedStatement statement = connection.getRawConnection().prepareStatement(sql)) {
+            for (Object[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    statement.setObject(i + 1, row[i]);
+                }
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private void deleteMovedRows(DataNode dataNode) throws SQLException {
+        int pkIndex = indexOf(primaryKey.getColumnName());
+        String pk = quote(primaryKey.getColumnName());
+        Object last = null;
+        boolean first = true;
+        while (true) {
+            List<Object[]> rows = scan(dataNode, null, null, null, last, first);
+            first = false;
+            if (rows.isEmpty()) {
+                return;
+            }
+            last = rows.get(rows.size() - 1)[pkIndex];
+            List<Object> moved = groupMovedRows(dataNode, rows).values().stream()
+                    .flatMap(List::stream).map(row -> row[pkIndex]).collect(Collectors.toList());
+            if (!moved.isEmpty()) {
+                String sql = "DELETE FROM " + table(dataNode) + " WHERE " + pk + " IN ("
+                        + moved.stream().map(i -> "?").collect(Collectors.joining(",")) + ")";
+                try (DefaultConnection connection = getConnection(dataNode);
+                     PreparedStatement statement = connection.getRawConnection().prepareStatement(sql)) {
+                    for (int i = 0; i < moved.size(); i++) {
+                        statement.setObject(i + 1, moved.get(i));
+                    }
+                    statement.executeUpdate();
+                }
+            }
+            if (rows.size() < options.getChunkSize()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 心跳发现目标集群任意从库延迟超过slaveThreshold时等待
+     */
+    private void waitForReplicas(String replicaName) throws InterruptedException {
+        String prefix = replicaName + ".";
+        while (true) {
+            checkCanceled();
+            boolean behind = false;
+            for (Map.Entry<String, HeartbeatFlow> entry : ReplicaSelectorRuntime.INSTANCE.getHeartbeatDetectorMap().entrySet()) {
+                if (entry.getKey().startsWith(prefix) && entry.getValue().getDsStatus().isSlaveBehindMaster()) {
+                    behind = true;
+                    break;
+                }
+            }
+            if (!behind) {
+                return;
+            }
+            LOGGER.info("resharding {}.{} is throttled by replica lag of {}", source.getSchemaName(), source.getTableName(), replicaName);
+            Thread.sleep(options.getLagCheckIntervalMillis());
+        }
+    }
+
+    private String queryNow(DataNode dataNode) throws SQLException {
+        try (DefaultConnection connection = getConnection(dataNode);
+             Statement statement = connection.getRawConnection().createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT NOW()")) {
+            resultSet.next();
+            return resultSet.getString(1);
+        }
+    }
+
+    private void await(List<Future<?>> futures) throws InterruptedException, ExecutionException {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                canceled = true;
+                throw e;
+            }
+        }
+    }
+
+    private void checkCanceled() {
+        if (canceled) {
+            throw new MycatException("resharding {}.{} is canceled", source.getSchemaName(), source.getTableName());
+        }
+    }
+
+    private int indexOf(String columnName) {
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).getColumnName().equalsIgnoreCase(columnName)) {
+                return i;
+            }
+        }
+        throw new MycatException("{}.{} unknown column:{}", source.getSchemaName(), source.getTableName(), columnName);
+    }
+
+    /**
+     * 读写都使用主库,从库的数据可能落后
+     */
+    private static DefaultConnection getConnection(DataNode dataNode) {
+        String datasourceName = ReplicaSelectorRuntime.INSTANCE.getDatasourceNameByReplicaName(dataNode.getTargetName(), true, null);
+        return JdbcRuntime.INSTANCE.getConnection(datasourceName);
+    }
+
+    private static String table(DataNode dataNode) {
+        String schema = dataNode.getSchema();
+        return schema == null ? quote(dataNode.getTable()) : quote(schema) + "." + quote(dataNode.getTable());
+    }
+
+    private static String quote(String name) {
+        return "`" + name.replace("`", "``") + "`";
+    }
+
+    private static boolean isIntegral(JDBCType jdbcType) {
+        return jdbcType == JDBCType.TINYINT || jdbcType == JDBCType.SMALLINT
+                || jdbcType == JDBCType.INTEGER || jdbcType == JDBCType.BIGINT;
+    }
+}
@@ -32,6 +32,13 @@ public class DataMappingEvaluator {
         getRangeVariables(columnName).add(new RangeVariable(columnName, or, RangeVariableType.EQUAL, value));
     }
 
+    /**
+     * 整数值由分片算法的类型化重载计算,不经过字符串
+     */
+    public void assignment(boolean or, String columnName, long value) {
+        getRangeVariables(columnName).add(new RangeVariable(columnName, or, RangeVariableType.EQUAL, value));
+    }
+
     public void assignmentRange(boolean or, String columnName, String begin, String end) {
         getRangeVariables(columnName).add(new RangeVariable(columnName, or, RangeVariableType.RANGE, begin, end));
     }
@@ -0,0 +1,113 @@
+package io.mycat.statistic;
+
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * 单列统计信息,数值与时间列才有最值与等深直方图
+ *
+ * @author Junwen Chen
+ **/
+@Data
+public class ColumnStatistic {
+    private String columnName;
+    private double ndv;
+    private double nullFraction;
+    private Double minValue;
+    private Double maxValue;
+    /**
+     * 等深直方图的边界,相邻两个边界之间的行数相同
+     */
+    private double[] histogram;
+
+    public boolean hasHistogram() {
+        return histogram != null && histogram.length > 1;
+    }
+
+    /**
+     * 估计小于(或小于等于)value的行所占的比例,不含null
+     */
+    public Double lessThanFraction(double value, boolean inclusive) {
+        if (!hasHistogram()) {
+            if (minValue == null || maxValue == null) {
+                return null;
+            }
+            if (value < minValue || (!inclusive && value == minValue)) {
+                return 0d;
+            }
+            if (value > maxValue || (inclusive && value == maxValue)) {
+                return 1d;
+            }
+            if (maxValue.equals(minValue)) {
+                return inclusive ? 1d : 0d;
+            }
+            return (value - minValue) / (maxValue - minValue);
+        }
+        double[] bounds = histogram;
+        int buckets = bounds.length - 1;
+        if (value < bounds[0] || (!inclusive && value == bounds[0])) {
+            return 0d;
+        }
+        if (value > bounds[buckets] || (inclusive && value == bounds[buckets])) {
+            return 1d;
+        }
+        int index = Arrays.binarySearch(bounds, value);
+        if (index < 0) {
+            index = -index - 2;
+        } else if (!inclusive) {
+            //相同的边界可能重复出现,取第一个
+            while (index > 0 && bounds[index - 1] == value) {
+                index--;
+            }
+            return (double) index / buckets;
+        } else {
+            while (index < buckets && bounds[index + 1] == value) {
+                index++;
+            }
+            return (double) index / buckets;
+        }
+        double low = bounds[index];
+        double high = bounds[index + 1];
+        double inBucket = high > low ? (value - low) / (high - low) : 0.5;
+        return (index + inBucket) / buckets;
+    }
+
+    /**
+     * 数值与时间统一换算为double,不能换算时返回null.
+     * 时间取本地时间按UTC计算的毫秒数,与Calcite时间字面量返回的Calendar一致
+     */
+    public static Double toDouble(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof Calendar) {
+            return (double) ((Calendar) value).getTimeInMillis();
+        }
+        if (value instanceof Date) {
+            long time = ((Date) value).getTime();
+            return (double) (time + TimeZone.getDefault().getOffset(time));
+        }
+        if (value instanceof LocalDateTime) {
+            return (double) ((LocalDateTime) value).toInstant(ZoneOffset.UTC).toEpochMilli();
+        }
+        if (value instanceof LocalDate) {
+            return (double) ((LocalDate) value).toEpochDay() * 86400000L;
+        }
+        if (value instanceof LocalTime) {
+            return (double) (((LocalTime) value).toNanoOfDay() / 1000000);
+        }
+        return null;
+    }
+
+    public boolean outOfRange(double value) {
+        return minValue != null && maxValue != null && (value < minValue || value > maxValue);
+    }
+}
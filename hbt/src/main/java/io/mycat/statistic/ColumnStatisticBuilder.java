@@ -0,0 +1,99 @@
+package io.mycat.statistic;
+
+import java.util.Arrays;
+
+/**
+ * 对单个分片的采样结果做统计,多个分片的结果可以合并后再生成{@link ColumnStatistic}
+ *
+ * @author Junwen Chen
+ **/
+class ColumnStatisticBuilder {
+    static final int HISTOGRAM_BUCKETS = 32;
+    private final String columnName;
+    private final HyperLogLog hyperLogLog = new HyperLogLog();
+    private long count;
+    private long nullCount;
+    private boolean numeric = true;
+    private double[] values = new double[64];
+    private int valueCount;
+
+    ColumnStatisticBuilder(String columnName) {
+        this.columnName = columnName;
+    }
+
+    void add(Object value) {
+        count++;
+        if (value == null) {
+            nullCount++;
+            return;
+        }
+        hyperLogLog.add(value);
+        if (!numeric) {
+            return;
+        }
+        Double d = ColumnStatistic.toDouble(value);
+        if (d == null) {
+            numeric = false;
+            values = null;
+            return;
+        }
+        if (valueCount == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[valueCount++] = d;
+    }
+
+    void merge(ColumnStatisticBuilder other) {
+        count += other.count;
+        nullCount += other.nullCount;
+        hyperLogLog.merge(other.hyperLogLog);
+        if (numeric && other.numeric) {
+            if (valueCount + other.valueCount > values.length) {
+                values = Arrays.copyOf(values, valueCount + other.valueCount);
+            }
+            System.arraycopy(other.values, 0, values, valueCount, other.valueCount);
+            valueCount += other.valueCount;
+        } else {
+            numeric = false;
+            values = null;
+        }
+    }
+
+    /**
+     * @param rowCount 逻辑表总行数,未知时为null,此时认为样本即全部数据
+     */
+    ColumnStatistic build(Double rowCount) {
+        ColumnStatistic statistic = new ColumnStatistic();
+        statistic.setColumnName(columnName);
+        if (count == 0) {
+            return statistic;
+        }
+        statistic.setNullFraction((double) nullCount / count);
+        double sampleNdv = Math.min(hyperLogLog.cardinality(), count - nullCount);
+        double ndv = sampleNdv;
+        long nonNull = count - nullCount;
+        if (rowCount != null && rowCount > count && nonNull > 0 && sampleNdv > 0.1 * nonNull) {
+            //样本中重复值少,认为NDV随行数线性增长
+            ndv = Math.min(rowCount, sampleNdv * rowCount / count);
+        }
+        statistic.setNdv(Math.max(ndv, nonNull > 0 ? 1 : 0));
+        if (numeric && valueCount > 0) {
+            double[] sorted = Arrays.copyOf(values, valueCount);
+            Arrays.sort(sorted);
+            statistic.setMinValue(sorted[0]);
+            statistic.setMaxValue(sorted[sorted.length - 1]);
+            int buckets = Math.min(HISTOGRAM_BUCKETS, sorted.length);
+            double[] bounds = new double[buckets + 1];
+            for (int i = 0; i <= buckets; i++) {
+                int index = (int) Math.min(sorted.length - 1, (long) i * (sorted.length - 1) / buckets);
+                bounds[i] = sorted[index];
+            }
+            statistic.setHistogram(bounds);
+        }
+        return statistic;
+    }
+
+    long getCount() {
+        return count;
+    }
+}
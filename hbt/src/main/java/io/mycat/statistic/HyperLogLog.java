@@ -0,0 +1,125 @@
+package io.mycat.statistic;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 基数估计,寄存器可以按位取最大值合并,各个分片分别统计后再合并即为逻辑表的NDV
+ *
+ * @author Junwen Chen
+ **/
+public class HyperLogLog {
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this(12);
+    }
+
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 16) {
+            throw new IllegalArgumentException("precision must be in [4,16]:" + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    public void add(Object value) {
+        if (value == null) {
+            return;
+        }
+        long hash;
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            hash = HASH_FUNCTION.hashLong(((Number) value).longValue()).asLong();
+        } else if (value instanceof Number) {
+            hash = hashNumber((Number) value);
+        } else {
+            hash = HASH_FUNCTION.hashString(value.toString(), StandardCharsets.UTF_8).asLong();
+        }
+        addHash(hash);
+    }
+
+    /**
+     * 相等的数值不论类型都得到相同的哈希:整数值按long计算,其余按去掉末尾0的十进制文本计算,
+     * 不能截断小数部分,否则1.5与1会被当成同一个值
+     */
+    private static long hashNumber(Number value) {
+        BigDecimal decimal;
+        if (value instanceof BigDecimal) {
+            decimal = (BigDecimal) value;
+        } else if (value instanceof BigInteger) {
+            decimal = new BigDecimal((BigInteger) value);
+        } else {
+            double d = value.doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                return HASH_FUNCTION.hashString(value.toString(), StandardCharsets.UTF_8).asLong();
+            }
+            decimal = value instanceof Float ? new BigDecimal(value.toString()) : BigDecimal.valueOf(d);
+        }
+        decimal = decimal.stripTrailingZeros();
+        if (decimal.scale() <= 0) {
+            BigInteger integer = decimal.toBigInteger();
+            if (integer.bitLength() < 64) {
+                return HASH_FUNCTION.hashLong(integer.longValue()).asLong();
+            }
+        }
+        return HASH_FUNCTION.hashString(decimal.toPlainString(), StandardCharsets.UTF_8).asLong();
+    }
+
+    public void addHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        long rest = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (registers[index] < rank) {
+            registers[index] = rank;
+        }
+    }
+
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("precision mismatch");
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (registers[i] < other.registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    public double cardinality() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double alpha;
+        switch (m) {
+            case 16:
+                alpha = 0.673;
+                break;
+            case 32:
+                alpha = 0.697;
+                break;
+            case 64:
+                alpha = 0.709;
+                break;
+            default:
+                alpha = 0.7213 / (1 + 1.079 / m);
+        }
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            //小基数使用线性计数修正
+            return m * Math.log((double) m / zeros);
+        }
+        return estimate;
+    }
+}
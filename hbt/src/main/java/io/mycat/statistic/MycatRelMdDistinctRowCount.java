@@ -0,0 +1,53 @@
+package io.mycat.statistic;
+
+import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rel.metadata.*;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.util.BuiltInMethod;
+import org.apache.calcite.util.ImmutableBitSet;
+import org.apache.calcite.util.NumberUtil;
+
+/**
+ * 使用HyperLogLog估计的NDV计算逻辑表扫描的去重行数
+ *
+ * @author Junwen Chen
+ **/
+public class MycatRelMdDistinctRowCount implements MetadataHandler<BuiltInMetadata.DistinctRowCount> {
+    public static final RelMetadataProvider SOURCE =
+            ReflectiveRelMetadataProvider.reflectiveSource(
+                    BuiltInMethod.DISTINCT_ROW_COUNT.method, new MycatRelMdDistinctRowCount());
+
+    @Override
+    public MetadataDef<BuiltInMetadata.DistinctRowCount> getDef() {
+        return BuiltInMetadata.DistinctRowCount.DEF;
+    }
+
+    public Double getDistinctRowCount(TableScan rel, RelMetadataQuery mq, ImmutableBitSet groupKey, RexNode predicate) {
+        if (groupKey.isEmpty()) {
+            return 1.0;
+        }
+        TableStatistic tableStatistic = MycatRelMdSelectivity.getTableStatistic(rel);
+        if (tableStatistic != null) {
+            double ndv = 1.0;
+            boolean complete = true;
+            for (int index : groupKey) {
+                ColumnStatistic column = MycatRelMdSelectivity.getColumnStatistic(rel, tableStatistic, index);
+                if (column == null) {
+                    complete = false;
+                    break;
+                }
+                ndv *= Math.max(column.getNdv(), 1.0);
+            }
+            Double rowCount = mq.getRowCount(rel);
+            if (complete && rowCount != null) {
+                double rows = rowCount * MycatRelMdSelectivity.estimate(rel, tableStatistic, predicate);
+                return RelMdUtil.numDistinctVals(Math.min(ndv, rowCount), rows);
+            }
+        }
+        boolean uniq = RelMdUtil.areColumnsDefinitelyUnique(mq, rel, groupKey);
+        if (uniq) {
+            return NumberUtil.multiply(mq.getRowCount(rel), mq.getSelectivity(rel, predicate));
+        }
+        return null;
+    }
+}
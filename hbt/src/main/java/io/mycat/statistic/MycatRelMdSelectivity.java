@@ -0,0 +1,166 @@
+package io.mycat.statistic;
+
+import io.mycat.TableHandler;
+import io.mycat.calcite.table.MycatLogicTable;
+import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rel.metadata.*;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexUtil;
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.util.BuiltInMethod;
+
+import java.util.List;
+
+/**
+ * 使用{@link StatisticCenter}的列统计估计逻辑表扫描上谓词的选择率,没有统计信息时退回到Calcite的默认猜测
+ *
+ * @author Junwen Chen
+ **/
+public class MycatRelMdSelectivity implements MetadataHandler<BuiltInMetadata.Selectivity> {
+    public static final RelMetadataProvider SOURCE =
+            ReflectiveRelMetadataProvider.reflectiveSource(
+                    BuiltInMethod.SELECTIVITY.method, new MycatRelMdSelectivity());
+
+    @Override
+    public MetadataDef<BuiltInMetadata.Selectivity> getDef() {
+        return BuiltInMetadata.Selectivity.DEF;
+    }
+
+    public Double getSelectivity(TableScan rel, RelMetadataQuery mq, RexNode predicate) {
+        TableStatistic tableStatistic = getTableStatistic(rel);
+        if (tableStatistic == null) {
+            return RelMdUtil.guessSelectivity(predicate);
+        }
+        return estimate(rel, tableStatistic, predicate);
+    }
+
+    static TableStatistic getTableStatistic(TableScan rel) {
+        MycatLogicTable logicTable = rel.getTable().unwrap(MycatLogicTable.class);
+        if (logicTable == null) {
+            return null;
+        }
+        TableHandler table = logicTable.getTable();
+        return StatisticCenter.INSTANCE.getTableStatistic(table.getSchemaName(), table.getTableName());
+    }
+
+    static ColumnStatistic getColumnStatistic(TableScan rel, TableStatistic tableStatistic, int index) {
+        String columnName = rel.getRowType().getFieldList().get(index).getName();
+        return tableStatistic.getColumn(columnName);
+    }
+
+    static double estimate(TableScan rel, TableStatistic tableStatistic, RexNode predicate) {
+        if (predicate == null || predicate.isAlwaysTrue()) {
+            return 1.0;
+        }
+        double minSelectivity = 1.0 / Math.max(tableStatistic.getRowCount(), 1.0);
+        double selectivity;
+        switch (predicate.getKind()) {
+            case AND: {
+                selectivity = 1.0;
+                for (RexNode operand : ((RexCall) predicate).getOperands()) {
+                    selectivity *= estimate(rel, tableStatistic, operand);
+                }
+                break;
+            }
+            case OR: {
+                double none = 1.0;
+                for (RexNode operand : ((RexCall) predicate).getOperands()) {
+                    none *= 1.0 - estimate(rel, tableStatistic, operand);
+                }
+                selectivity = 1.0 - none;
+                break;
+            }
+            case NOT: {
+                selectivity = 1.0 - estimate(rel, tableStatistic, ((RexCall) predicate).getOperands().get(0));
+                break;
+            }
+            case IS_NULL:
+            case IS_NOT_NULL: {
+                RexNode operand = RexUtil.removeCast(((RexCall) predicate).getOperands().get(0));
+                ColumnStatistic column = operand instanceof RexInputRef
+                        ? getColumnStatistic(rel, tableStatistic, ((RexInputRef) operand).getIndex()) : null;
+                if (column == null) {
+                    return RelMdUtil.guessSelectivity(predicate);
+                }
+                selectivity = predicate.getKind() == SqlKind.IS_NULL ? column.getNullFraction() : 1.0 - column.getNullFraction();
+                break;
+            }
+            case EQUALS:
+            case NOT_EQUALS:
+            case LESS_THAN:
+            case LESS_THAN_OR_EQUAL:
+            case GREATER_THAN:
+            case GREATER_THAN_OR_EQUAL: {
+                Double comparison = estimateComparison(rel, tableStatistic, (RexCall) predicate);
+                if (comparison == null) {
+                    return RelMdUtil.guessSelectivity(predicate);
+                }
+                selectivity = comparison;
+                break;
+            }
+            default:
+                return RelMdUtil.guessSelectivity(predicate);
+        }
+        return Math.min(1.0, Math.max(selectivity, minSelectivity));
+    }
+
+    private static Double estimateComparison(TableScan rel, TableStatistic tableStatistic, RexCall call) {
+        List<RexNode> operands = call.getOperands();
+        RexNode left = RexUtil.removeCast(operands.get(0));
+        RexNode right = RexUtil.removeCast(operands.get(1));
+        SqlKind kind = call.getKind();
+        if (left instanceof RexLiteral && right instanceof RexInputRef) {
+            RexNode tmp = left;
+            left = right;
+            right = tmp;
+            kind = kind.reverse();
+        }
+        if (!(left instanceof RexInputRef) || !(right instanceof RexLiteral)) {
+            return null;
+        }
+        ColumnStatistic column = getColumnStatistic(rel, tableStatistic, ((RexInputRef) left).getIndex());
+        if (column == null) {
+            return null;
+        }
+        double notNull = 1.0 - column.getNullFraction();
+        //数值字面量是BigDecimal,时间字面量是Calendar
+        Double number = ColumnStatistic.toDouble(((RexLiteral) right).getValue());
+        double equals = column.getNdv() > 0 ? notNull / column.getNdv() : 0;
+        if (number != null && column.outOfRange(number)) {
+            equals = 0;
+        }
+        switch (kind) {
+            case EQUALS:
+                return equals;
+            case NOT_EQUALS:
+                return notNull - equals;
+            default:
+        }
+        if (number == null) {
+            return null;
+        }
+        Double fraction;
+        switch (kind) {
+            case LESS_THAN:
+                fraction = column.lessThanFraction(number, false);
+                break;
+            case LESS_THAN_OR_EQUAL:
+                fraction = column.lessThanFraction(number, true);
+                break;
+            case GREATER_THAN:
+                fraction = column.lessThanFraction(number, true);
+                fraction = fraction == null ? null : 1.0 - fraction;
+                break;
+            case GREATER_THAN_OR_EQUAL:
+                fraction = column.lessThanFraction(number, false);
+                fraction = fraction == null ? null : 1.0 - fraction;
+                break;
+            default:
+                return null;
+        }
+        return fraction == null ? null : fraction * notNull;
+    }
+}
@@ -0,0 +1,19 @@
+package io.mycat.statistic;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.calcite.rel.metadata.ChainedRelMetadataProvider;
+import org.apache.calcite.rel.metadata.DefaultRelMetadataProvider;
+import org.apache.calcite.rel.metadata.RelMetadataProvider;
+
+/**
+ * 列统计相关的元数据优先,其余使用Calcite默认实现
+ *
+ * @author Junwen Chen
+ **/
+public class MycatRelMetadataProvider {
+    public static final RelMetadataProvider INSTANCE = ChainedRelMetadataProvider.of(
+            ImmutableList.of(
+                    MycatRelMdSelectivity.SOURCE,
+                    MycatRelMdDistinctRowCount.SOURCE,
+                    DefaultRelMetadataProvider.INSTANCE));
+}
@@ -5,7 +5,6 @@ import com.alibaba.fastsql.sql.builder.SQLBuilderFactory;
 import com.alibaba.fastsql.sql.builder.SQLSelectBuilder;
 import io.mycat.BackendTableInfo;
 import io.mycat.DataNode;
-import io.mycat.SchemaInfo;
 import io.mycat.api.collector.RowBaseIterator;
 import io.mycat.datasource.jdbc.JdbcRuntime;
 import io.mycat.datasource.jdbc.datasource.DefaultConnection;
@@ -14,6 +13,8 @@ import io.mycat.metadata.MetadataManager;
 import io.mycat.metadata.ShardingTable;
 import io.mycat.TableHandler;
 import io.mycat.replica.ReplicaSelectorRuntime;
+import io.mycat.SimpleColumnInfo;
+import io.mycat.util.JsonUtil;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
@@ -21,14 +22,228 @@ import lombok.ToString;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Optional;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 public enum StatisticCenter {
     INSTANCE;
     private static final Logger LOGGER = LoggerFactory.getLogger(StatisticCenter.class);
     MetadataManager metadataManager;
     final ConcurrentHashMap<Key, StatisticObject> statisticMap = new ConcurrentHashMap<>();
+    final ConcurrentHashMap<Key, TableStatistic> columnStatisticMap = new ConcurrentHashMap<>();
+    /**
+     * 每个分片的采样行数
+     */
+    static final int SAMPLE_SIZE = 1000;
+    static final String STATISTIC_FILE = "statistic.json";
+    /**
+     * 一次统计最多同时查询的分片数
+     */
+    private volatile int concurrency = 8;
+    private volatile boolean useEstimate = true;
+    private Path statisticFile;
+    private ScheduledExecutorService refresher;
+
+    public void init(MetadataManager metadataManager, String directory) {
+        this.metadataManager = metadataManager;
+        if (directory != null) {
+            this.statisticFile = Paths.get(directory).resolve(STATISTIC_FILE);
+            loadColumnStatistic();
+        }
+    }
+
+    public TableStatistic getTableStatistic(String schemaName, String tableName) {
+        return columnStatisticMap.get(Key.of(schemaName, tableName));
+    }
+
+    public ColumnStatistic getColumnStatistic(String schemaName, String tableName, String columnName) {
+        TableStatistic tableStatistic = getTableStatistic(schemaName, tableName);
+        if (tableStatistic != null) {
+            return tableStatistic.getColumn(columnName);
+        }
+        return null;
+    }
+
+    /**
+     * 定期刷新过期的列统计,采样会阻塞较长时间,所以使用单独的线程而不是公共定时器
+     *
+     * @param period 0表示不刷新
+     */
+    public synchronized void scheduleRefresh(long period, TimeUnit timeUnit) {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+        if (period <= 0) {
+            return;
+        }
+        long maxAgeMillis = timeUnit.toMillis(period);
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "mycat-statistic-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                refreshColumnStatistic(maxAgeMillis);
+            } catch (Throwable e) {
+                LOGGER.error("刷新列统计失败", e);
+            }
+        }, period, period, timeUnit);
+    }
+
+    /**
+     * 只刷新没有列统计或者统计已经超过maxAgeMillis的表
+     */
+    public void refreshColumnStatistic(long maxAgeMillis) {
+        long now = System.currentTimeMillis();
+        Optional.ofNullable(metadataManager)
+                .map(i -> i.getSchemaMap())
+                .ifPresent(schemarMap -> schemarMap.entrySet().stream()
+                        .flatMap(i -> i.getValue().logicTables().entrySet().stream())
+                        .map(i -> i.getValue())
+                        .filter(tableHandler -> {
+                            TableStatistic tableStatistic = getTableStatistic(tableHandler.getSchemaName(), tableHandler.getTableName());
+                            return tableStatistic == null || now - tableStatistic.getUpdateTime() > maxAgeMillis;
+                        })
+                        .forEach(tableHandler -> computeColumnStatistic(tableHandler)));
+    }
+
+    public void computeColumnStatistic(TableHandler tableHandler) {
+        try {
+            List<DataNode> dataNodes;
+            if (tableHandler instanceof GlobalTable) {
+                dataNodes = Collections.<DataNode>singletonList(((GlobalTable) tableHandler).getDataNodeMap().values().iterator().next());
+            } else if (tableHandler instanceof ShardingTable) {
+                dataNodes = ((ShardingTable) tableHandler).getBackends();
+            } else {
+                return;
+            }
+            List<SimpleColumnInfo> columns = tableHandler.getColumns();
+            if (columns == null || columns.isEmpty()) {
+                return;
+            }
+            Semaphore semaphore = new Semaphore(concurrency);
+            List<CompletableFuture<List<ColumnStatisticBuilder>>> futures = new ArrayList<>(dataNodes.size());
+            for (DataNode dataNode : dataNodes) {
+                semaphore.acquireUninterruptibly();
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return sample(dataNode, columns);
+                    } finally {
+                        semaphore.release();
+                    }
+                }, JdbcRuntime.INSTANCE.getFetchDataExecutorService()));
+            }
+            List<ColumnStatisticBuilder> merged = null;
+            for (CompletableFuture<List<ColumnStatisticBuilder>> future : futures) {
+                List<ColumnStatisticBuilder> builders = future.join();
+                if (builders == null) {
+                    continue;
+                }
+                if (merged == null) {
+                    merged = builders;
+                } else {
+                    for (int i = 0; i < merged.size(); i++) {
+                        merged.get(i).merge(builders.get(i));
+                    }
+                }
+            }
+            if (merged == null) {
+                return;
+            }
+            Double rowCount = getLogicTableRow(tableHandler.getSchemaName(), tableHandler.getTableName());
+            TableStatistic tableStatistic = new TableStatistic();
+            tableStatistic.setSchemaName(tableHandler.getSchemaName());
+            tableStatistic.setTableName(tableHandler.getTableName());
+            tableStatistic.setSampleRows(merged.get(0).getCount());
+            tableStatistic.setRowCount(rowCount == null ? merged.get(0).getCount() : rowCount);
+            tableStatistic.setUpdateTime(System.currentTimeMillis());
+            for (ColumnStatisticBuilder builder : merged) {
+                ColumnStatistic columnStatistic = builder.build(rowCount);
+                tableStatistic.getColumns().put(columnStatistic.getColumnName(), columnStatistic);
+            }
+            columnStatisticMap.put(Key.of(tableHandler.getSchemaName(), tableHandler.getTableName()), tableStatistic);
+            LOGGER.info("列统计更新  tableName:" + tableHandler.getUniqueName() + " sampleRows:" + tableStatistic.getSampleRows());
+            saveColumnStatistic();
+        } catch (Throwable e) {
+            LOGGER.error("统计逻辑表列信息失败", e);
+        }
+    }
+
+    private List<ColumnStatisticBuilder> sample(DataNode dataNode, List<SimpleColumnInfo> columns) {
+        String targetName = dataNode.getTargetName();
+        String sql = makeSampleSql(dataNode, columns);
+        try {
+            targetName = ReplicaSelectorRuntime.INSTANCE.getReadOnlyDatasourceNameByReplicaName(targetName);
+            List<ColumnStatisticBuilder> builders = columns.stream()
+                    .map(i -> new ColumnStatisticBuilder(i.getColumnName()))
+                    .collect(Collectors.toList());
+            try (DefaultConnection connection = JdbcRuntime.INSTANCE.getConnection(targetName)) {
+                try (RowBaseIterator rowBaseIterator = connection.executeQuery(sql)) {
+                    while (rowBaseIterator.next()) {
+                        for (int i = 0; i < builders.size(); i++) {
+                            builders.get(i).add(rowBaseIterator.getObject(i + 1));
+                        }
+                    }
+                }
+            }
+            return builders;
+        } catch (Throwable e) {
+            LOGGER.error("不能获取列统计采样 " + targetName + " " + sql, e);
+            return null;
+        }
+    }
+
+    private String makeSampleSql(DataNode dataNode, List<SimpleColumnInfo> columns) {
+        SQLSelectBuilder selectSQLBuilder = SQLBuilderFactory.createSelectSQLBuilder(DbType.mysql);
+        String[] columnNames = columns.stream().map(i -> "`" + i.getColumnName() + "`").toArray(String[]::new);
+        return selectSQLBuilder.from(dataNode.getTargetSchemaTable()).select(columnNames).limit(SAMPLE_SIZE).toString();
+    }
+
+    private synchronized void saveColumnStatistic() {
+        if (statisticFile == null) {
+            return;
+        }
+        try {
+            Path tmp = statisticFile.resolveSibling(STATISTIC_FILE + ".tmp");
+            String text = JsonUtil.toJson(new ArrayList<>(columnStatisticMap.values()));
+            Files.write(tmp, text.getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, statisticFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOGGER.error("保存列统计失败 " + statisticFile, e);
+        }
+    }
+
+    private void loadColumnStatistic() {
+        if (statisticFile == null || !Files.exists(statisticFile)) {
+            return;
+        }
+        try {
+            String text = new String(Files.readAllBytes(statisticFile), StandardCharsets.UTF_8);
+            TableStatistic[] tableStatistics = JsonUtil.from(text, TableStatistic[].class);
+            if (tableStatistics != null) {
+                for (TableStatistic tableStatistic : tableStatistics) {
+                    columnStatisticMap.put(Key.of(tableStatistic.getSchemaName(), tableStatistic.getTableName()), tableStatistic);
+                }
+            }
+        } catch (Throwable e) {
+            LOGGER.error("读取列统计失败 " + statisticFile, e);
+        }
+    }
 
 
     public Double getLogicTableRow(String schemaName, String tableName) {
@@ -39,7 +254,7 @@ public enum StatisticCenter {
         return null;
     }
 
-    public Double getPhysicsTableRow(String targetName, String schemaName, String tableName) {
+    public Double getPhysicsTableRow(String schemaName, String tableName, String targetName) {
         StatisticObject statisticObject = statisticMap.get(Key.of(schemaName, tableName, targetName));
         if (statisticObject != null) {
             return statisticObject.getRowCount();
@@ -74,37 +289,49 @@ public enum StatisticCenter {
     }
 
     public void computeShardingTableRowCount(ShardingTable shardingTable) {
-        Double sum = 0d;
-        for (DataNode backendTableInfo : shardingTable.getBackends()) {
-
-            String targetName = backendTableInfo.getTargetName();
-            String sql = makeCountSql(backendTableInfo);
-            Double onePhyRowCount = fetchRowCount(targetName, sql);
-            if (onePhyRowCount == null) {
-                return;//退出
-            } else {
-                sum += onePhyRowCount;
-                //物理表
-                Key key = Key.of(backendTableInfo.getTargetName(),
-                        backendTableInfo.getTable(),
-                        backendTableInfo.getTargetName());
-                updateRowCount(key, sum);
-            }
-            //逻辑表
-            Key key = Key.of(shardingTable.getSchemaName(), shardingTable.getTableName());
-            updateRowCount(key, sum);
+        List<DataNode> backends = shardingTable.getBackends();
+        if (backends.isEmpty()) {
+            return;
+        }
+        Key logicKey = Key.of(shardingTable.getSchemaName(), shardingTable.getTableName());
+        RowCountAccumulator accumulator = new RowCountAccumulator(backends.size());
+        Semaphore semaphore = new Semaphore(concurrency);
+        List<CompletableFuture<Void>> futures = new ArrayList<>(backends.size());
+        for (DataNode backendTableInfo : backends) {
+            semaphore.acquireUninterruptibly();
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    Double onePhyRowCount = fetchRowCount(backendTableInfo);
+                    if (onePhyRowCount == null) {
+                        accumulator.fail();
+                        return;
+                    }
+                    //物理表
+                    updateRowCount(Key.of(backendTableInfo.getSchema(),
+                            backendTableInfo.getTable(),
+                            backendTableInfo.getTargetName()), onePhyRowCount);
+                    //逻辑表,按已经返回的分片外推,全部返回后即为准确的和
+                    updateRowCount(logicKey, accumulator.add(onePhyRowCount));
+                } finally {
+                    semaphore.release();
+                }
+            }, JdbcRuntime.INSTANCE.getFetchDataExecutorService()));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        Double estimate = accumulator.estimate();
+        if (estimate != null) {
+            //并发发布的中间结果可能乱序覆盖,最后再发布一次
+            updateRowCount(logicKey, estimate);
+        }
+        if (accumulator.getFailed() > 0) {
+            LOGGER.warn("行统计部分分片失败 tableName:" + logicKey + " failed:" + accumulator.getFailed() + "/" + backends.size());
         }
     }
 
     private void computeGlobalRowCount(GlobalTable globalTable) {
         BackendTableInfo backendTableInfo = globalTable.getDataNodeMap().entrySet().iterator().next().getValue();
 
-
-        String targetName = backendTableInfo.getTargetName();
-        String sql = makeCountSql(backendTableInfo);
-
-
-        Double value = fetchRowCount(targetName, sql);
+        Double value = fetchRowCount(backendTableInfo);
 
         if (value != null) {
             //逻辑表
@@ -113,8 +340,7 @@ public enum StatisticCenter {
 
             //物理表
             globalTable.getDataNodeMap().values().stream().map(tableInfo -> {
-                SchemaInfo schemaInfo1 = tableInfo.getSchemaInfo();
-                return Key.of(schemaInfo1.getTargetSchema(), schemaInfo1.getTargetTable(), tableInfo.getTargetName());
+                return Key.of(tableInfo.getSchema(), tableInfo.getTable(), tableInfo.getTargetName());
             }).forEach(key -> {
                 updateRowCount(key, value);
             });
@@ -141,22 +367,84 @@ public enum StatisticCenter {
         return selectSQLBuilder.from(schemaInfo.getTargetSchemaTable()).select("count(*)").toString();
     }
 
+    private String makeEstimateSql(DataNode schemaInfo) {
+        String schema = schemaInfo.getSchema() == null ? "DATABASE()" : "'" + escape(schemaInfo.getSchema()) + "'";
+        return "SELECT TABLE_ROWS FROM information_schema.TABLES WHERE TABLE_SCHEMA = " + schema +
+                " AND TABLE_NAME = '" + escape(schemaInfo.getTable()) + "'";
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("'", "''");
+    }
+
+    /**
+     * 优先使用information_schema的估计值,取不到时才执行count(*)
+     */
+    private Double fetchRowCount(DataNode dataNode) {
+        String targetName = ReplicaSelectorRuntime.INSTANCE.getReadOnlyDatasourceNameByReplicaName(dataNode.getTargetName());
+        if (useEstimate) {
+            Double estimate = fetchRowCount(targetName, makeEstimateSql(dataNode));
+            if (estimate != null) {
+                return estimate;
+            }
+        }
+        return fetchRowCount(targetName, makeCountSql(dataNode));
+    }
 
-    private Double fetchRowCount(String targetName, String sql) {
+    private Double fetchRowCount(String datasourceName, String sql) {
         try {
-            targetName = ReplicaSelectorRuntime.INSTANCE.getDatasourceNameByReplicaName(targetName, false, null);
-            try (DefaultConnection connection = JdbcRuntime.INSTANCE.getConnection(targetName)) {
+            try (DefaultConnection connection = JdbcRuntime.INSTANCE.getConnection(datasourceName)) {
                 try (RowBaseIterator rowBaseIterator = connection.executeQuery(sql)) {
-                    rowBaseIterator.next();
-                    return rowBaseIterator.getBigDecimal(1).doubleValue();
+                    if (!rowBaseIterator.next()) {
+                        return null;
+                    }
+                    BigDecimal value = rowBaseIterator.getBigDecimal(1);
+                    return value == null ? null : value.doubleValue();
                 }
             }
         } catch (Throwable e) {
-            LOGGER.error("不能获取行统计 " + targetName + " " + sql, e);
+            LOGGER.error("不能获取行统计 " + datasourceName + " " + sql, e);
             return null;
         }
     }
 
+    public void setConcurrency(int concurrency) {
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    public void setUseEstimate(boolean useEstimate) {
+        this.useEstimate = useEstimate;
+    }
+
+    private static class RowCountAccumulator {
+        private final int total;
+        private int finished;
+        private int failed;
+        private double sum;
+
+        RowCountAccumulator(int total) {
+            this.total = total;
+        }
+
+        synchronized double add(double rowCount) {
+            finished++;
+            sum += rowCount;
+            return sum * total / finished;
+        }
+
+        synchronized Double estimate() {
+            return finished == 0 ? null : sum * total / finished;
+        }
+
+        synchronized void fail() {
+            failed++;
+        }
+
+        synchronized int getFailed() {
+            return failed;
+        }
+    }
+
     @Getter
     @EqualsAndHashCode
     @ToString
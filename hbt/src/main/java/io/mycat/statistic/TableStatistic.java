@@ -0,0 +1,25 @@
+package io.mycat.statistic;
+
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 逻辑表的列统计信息快照
+ *
+ * @author Junwen Chen
+ **/
+@Data
+public class TableStatistic {
+    private String schemaName;
+    private String tableName;
+    private double rowCount;
+    private long sampleRows;
+    private long updateTime;
+    private Map<String, ColumnStatistic> columns = new HashMap<>();
+
+    public ColumnStatistic getColumn(String columnName) {
+        return columns.get(columnName);
+    }
+}
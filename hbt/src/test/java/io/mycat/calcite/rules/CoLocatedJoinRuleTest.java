@@ -0,0 +1,98 @@
+package io.mycat.calcite.rules;
+
+import io.mycat.SimpleColumnInfo;
+import io.mycat.config.ShardingQueryRootConfig;
+import io.mycat.config.ShardingTableConfig;
+import io.mycat.config.SharingFuntionRootConfig;
+import io.mycat.metadata.MetadataManager;
+import io.mycat.router.ShardingTableHandler;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.JDBCType;
+import java.util.*;
+
+/**
+ * 同分布连接的判断条件
+ */
+public class CoLocatedJoinRuleTest {
+    private static final String SCHEMA = "db1";
+
+    @Test
+    public void testSameTypeAndLayout() {
+        ShardingTableHandler a = table("co_bigint_a", "bigint(20)", 2, "t0", "t1");
+        ShardingTableHandler b = table("co_bigint_b", "bigint(20)", 2, "t0", "t1");
+        Assert.assertTrue(CoLocatedJoinRule.isCoLocated(a, b));
+    }
+
+    /**
+     * 整数类型之间宽度不同也按同样的值计算分片
+     */
+    @Test
+    public void testIntegralTypes() {
+        ShardingTableHandler a = table("co_int_a", "bigint(20)", 2, "t0", "t1");
+        ShardingTableHandler b = table("co_int_b", "int(11)", 2, "t0", "t1");
+        Assert.assertTrue(CoLocatedJoinRule.isCoLocated(a, b));
+    }
+
+    /**
+     * BIGINT与VARCHAR连接时值相等,分片算法得到的分片可能不同
+     */
+    @Test
+    public void testIncompatibleTypes() {
+        ShardingTableHandler a = table("co_type_a", "bigint(20)", 2, "t0", "t1");
+        ShardingTableHandler b = table("co_type_b", "varchar(20)", 2, "t0", "t1");
+        Assert.assertFalse(CoLocatedJoinRule.isCoLocated(a, b));
+        Assert.assertFalse(CoLocatedJoinRule.isCoLocated(b, a));
+    }
+
+    @Test
+    public void testDifferentPartitionCount() {
+        ShardingTableHandler a = table("co_count_a", "bigint(20)", 2, "t0", "t1");
+        ShardingTableHandler b = table("co_count_b", "bigint(20)", 4, "t0", "t1", "t0", "t1");
+        Assert.assertFalse(CoLocatedJoinRule.isCoLocated(a, b));
+    }
+
+    @Test
+    public void testDifferentTargets() {
+        ShardingTableHandler a = table("co_target_a", "bigint(20)", 2, "t0", "t1");
+        ShardingTableHandler b = table("co_target_b", "bigint(20)", 2, "t1", "t0");
+        Assert.assertFalse(CoLocatedJoinRule.isCoLocated(a, b));
+    }
+
+    @Test
+    public void testHashCompatible() {
+        Assert.assertTrue(CoLocatedJoinRule.isHashCompatible(JDBCType.DATE, JDBCType.DATE));
+        Assert.assertTrue(CoLocatedJoinRule.isHashCompatible(JDBCType.TINYINT, JDBCType.BIGINT));
+        Assert.assertTrue(CoLocatedJoinRule.isHashCompatible(JDBCType.CHAR, JDBCType.VARCHAR));
+        Assert.assertFalse(CoLocatedJoinRule.isHashCompatible(JDBCType.BIGINT, JDBCType.VARCHAR));
+        Assert.assertFalse(CoLocatedJoinRule.isHashCompatible(JDBCType.BIGINT, JDBCType.DECIMAL));
+        Assert.assertFalse(CoLocatedJoinRule.isHashCompatible(JDBCType.DATE, JDBCType.TIMESTAMP));
+    }
+
+    private static ShardingTableHandler table(String tableName, String idType, int partitionCount, String... targets) {
+        List<ShardingQueryRootConfig.BackEndTableInfoConfig> dataNodes = new ArrayList<>();
+        for (int i = 0; i < targets.length; i++) {
+            dataNodes.add(ShardingQueryRootConfig.BackEndTableInfoConfig.builder()
+                    .targetName(targets[i]).schemaName("db" + i).tableName(tableName).build());
+        }
+        Map<String, String> properties = new HashMap<>();
+        properties.put("partitionCount", String.valueOf(partitionCount));
+        properties.put("partitionLength", String.valueOf(1024 / partitionCount));
+        ShardingTableConfig config = ShardingTableConfig.builder()
+                .dataNodes(dataNodes)
+                .columns(Collections.singletonList(ShardingQueryRootConfig.Column.builder()
+                        .columnName("id").function(SharingFuntionRootConfig.ShardingFuntion.builder().name("partitionByLong")
+                                .clazz("io.mycat.router.function.PartitionByLong").properties(properties).ranges(Collections.emptyMap())
+                                .build()).shardingType(SimpleColumnInfo.ShardingType.NATURE_DATABASE_TABLE.name()).build()))
+                .createTableSQL("CREATE TABLE `" + tableName + "` (\n" +
+                        "  `id` " + idType + " NOT NULL,\n" +
+                        "  `name` varchar(100) DEFAULT NULL\n" +
+                        ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;")
+                .build();
+        MetadataManager metadataManager = MetadataManager.INSTANCE;
+        metadataManager.addSchema(SCHEMA, "defaultDs");
+        metadataManager.addTable(SCHEMA, tableName, config, dataNodes, null);
+        return (ShardingTableHandler) metadataManager.getTable(SCHEMA, tableName);
+    }
+}
@@ -0,0 +1,227 @@
+package io.mycat.calcite.rules;
+
+import com.google.common.collect.ImmutableList;
+import io.mycat.DataNode;
+import io.mycat.calcite.table.MycatLogicTable;
+import io.mycat.calcite.table.MycatPhysicalTable;
+import io.mycat.metadata.MetadataManager;
+import io.mycat.metadata.MetadataManagerBuilder;
+import io.mycat.router.ShardingTableHandler;
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptUtil;
+import org.apache.calcite.plan.hep.HepPlanner;
+import org.apache.calcite.plan.hep.HepProgram;
+import org.apache.calcite.plan.hep.HepProgramBuilder;
+import org.apache.calcite.prepare.RelOptTableImpl;
+import org.apache.calcite.rel.RelCollations;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Aggregate;
+import org.apache.calcite.rel.core.AggregateCall;
+import org.apache.calcite.rel.core.Project;
+import org.apache.calcite.rel.logical.*;
+import org.apache.calcite.rel.rules.FilterSetOpTransposeRule;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.sql.SqlAggFunction;
+import org.apache.calcite.sql.fun.SqlStdOperatorTable;
+import org.apache.calcite.util.ImmutableBitSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 分片表上group by下推后的计划形状,投影不影响在哪里计算,比较时忽略
+ */
+public class GroupByPartitionRuleTest {
+    private static final int ID = 0;
+    private static final int USER_ID = 1;
+    private static final int FEE = 3;
+    private static final int DAYS = 4;
+    private static final String SCAN = "TableScan";
+
+    private final RelDataTypeFactory typeFactory = new JavaTypeFactoryImpl();
+    private final RexBuilder rexBuilder = new RexBuilder(typeFactory);
+    private final RelOptCluster cluster = RelOptCluster.create(new HepPlanner(HepProgram.builder().build()), rexBuilder);
+
+    public GroupByPartitionRuleTest() {
+        MetadataManagerBuilder.exampleBuild(MetadataManager.INSTANCE);
+    }
+
+    /**
+     * 分组键包含分片键,整个聚合下推,distinct也可以下推
+     */
+    @Test
+    public void testWholePushDown() {
+        RelNode union = shards();
+        RelNode rel = aggregate(union, ImmutableBitSet.of(ID),
+                call(SqlStdOperatorTable.COUNT, false, union),
+                call(SqlStdOperatorTable.SUM, false, union, FEE),
+                call(SqlStdOperatorTable.COUNT, true, union, DAYS));
+        Assert.assertEquals(union("Aggregate[COUNT,SUM,COUNT DISTINCT](" + SCAN + ")"), shape(optimize(rel)));
+    }
+
+    /**
+     * 分组键不含分片键,分片部分聚合,count在代理端合并为sum0
+     */
+    @Test
+    public void testPartialPushDown() {
+        RelNode union = shards();
+        RelNode rel = aggregate(union, ImmutableBitSet.of(USER_ID),
+                call(SqlStdOperatorTable.COUNT, false, union),
+                call(SqlStdOperatorTable.SUM, false, union, FEE),
+                call(SqlStdOperatorTable.MIN, false, union, DAYS),
+                call(SqlStdOperatorTable.MAX, false, union, DAYS));
+        Assert.assertEquals("Aggregate[$SUM0,SUM,MIN,MAX](" + union("Aggregate[COUNT,SUM,MIN,MAX](" + SCAN + ")") + ")",
+                shape(optimize(rel)));
+    }
+
+    @Test
+    public void testAvgSplit() {
+        RelNode union = shards();
+        RelNode rel = aggregate(union, ImmutableBitSet.of(USER_ID),
+                call(SqlStdOperatorTable.AVG, false, union, DAYS));
+        RelNode optimized = optimize(rel);
+        Assert.assertEquals("Aggregate[SUM,$SUM0](" + union("Aggregate[SUM,COUNT](" + SCAN + ")") + ")", shape(optimized));
+        Assert.assertTrue(optimized instanceof Project);
+        String plan = RelOptUtil.toString(optimized);
+        Assert.assertTrue(plan, plan.contains("CASE(") && plan.contains("/("));
+        Assert.assertEquals(rel.getRowType(), optimized.getRowType());
+    }
+
+    /**
+     * 同一参数的distinct聚合,分片按分组键与参数去重,代理端去重后再聚合
+     */
+    @Test
+    public void testDistinct() {
+        RelNode union = shards();
+        RelNode rel = aggregate(union, ImmutableBitSet.of(USER_ID),
+                call(SqlStdOperatorTable.COUNT, true, union, DAYS),
+                call(SqlStdOperatorTable.SUM, true, union, DAYS));
+        Assert.assertEquals("Aggregate[COUNT,SUM](Aggregate[](" + union("Aggregate[](" + SCAN + ")") + "))",
+                shape(optimize(rel)));
+    }
+
+    /**
+     * distinct与非distinct混合时不改写,留给代理端聚合
+     */
+    @Test
+    public void testMixedDistinct() {
+        RelNode union = shards();
+        RelNode rel = aggregate(union, ImmutableBitSet.of(USER_ID),
+                call(SqlStdOperatorTable.COUNT, true, union, DAYS),
+                call(SqlStdOperatorTable.SUM, false, union, FEE));
+        Assert.assertEquals("Aggregate[COUNT DISTINCT,SUM](" + union(SCAN) + ")", shape(optimize(rel)));
+        rel = aggregate(union, ImmutableBitSet.of(USER_ID),
+                call(SqlStdOperatorTable.COUNT, true, union, DAYS),
+                call(SqlStdOperatorTable.COUNT, true, union, FEE));
+        Assert.assertEquals("Aggregate[COUNT DISTINCT,COUNT DISTINCT](" + union(SCAN) + ")", shape(optimize(rel)));
+    }
+
+    /**
+     * 整个聚合下推后having也下推到分片
+     */
+    @Test
+    public void testHavingTranspose() {
+        RelNode union = shards();
+        RelNode aggregate = aggregate(union, ImmutableBitSet.of(ID),
+                call(SqlStdOperatorTable.COUNT, false, union));
+        RexNode condition = rexBuilder.makeCall(SqlStdOperatorTable.GREATER_THAN,
+                rexBuilder.makeInputRef(aggregate, 1), rexBuilder.makeExactLiteral(BigDecimal.ONE));
+        RelNode rel = LogicalFilter.create(aggregate, condition);
+        Assert.assertEquals(union("Filter(Aggregate[COUNT](" + SCAN + "))"), shape(optimize(rel)));
+    }
+
+    /**
+     * 没有limit的order by复制到整个下推的聚合上,代理端归并有序结果
+     */
+    @Test
+    public void testMergeSortedShards() {
+        RelNode union = shards();
+        RelNode aggregate = aggregate(union, ImmutableBitSet.of(ID),
+                call(SqlStdOperatorTable.SUM, false, union, FEE));
+        RelNode rel = LogicalSort.create(aggregate, RelCollations.of(0), null, null);
+        Assert.assertEquals("Sort(" + union("Sort(Aggregate[SUM](" + SCAN + "))") + ")", shape(optimize(rel)));
+    }
+
+    /**
+     * 部分聚合的结果还要在代理端合并,order by不复制到分片
+     */
+    @Test
+    public void testSortOverPartialAggregate() {
+        RelNode union = shards();
+        RelNode aggregate = aggregate(union, ImmutableBitSet.of(USER_ID),
+                call(SqlStdOperatorTable.SUM, false, union, FEE));
+        RelNode rel = LogicalSort.create(aggregate, RelCollations.of(0), null, null);
+        Assert.assertEquals("Sort(Aggregate[SUM](" + union("Aggregate[SUM](" + SCAN + ")") + "))", shape(optimize(rel)));
+    }
+
+    private static RelNode optimize(RelNode rel) {
+        HepProgramBuilder builder = new HepProgramBuilder();
+        builder.addRuleCollection(ImmutableList.of(
+                GroupByPartitionRule.INSTANCE,
+                FilterSetOpTransposeRule.INSTANCE,
+                SortPartitionedAggregateRule.INSTANCE));
+        HepPlanner planner = new HepPlanner(builder.build());
+        planner.setRoot(rel);
+        return planner.findBestExp();
+    }
+
+    /**
+     * travelrecord前三个分片的union all
+     */
+    private RelNode shards() {
+        ShardingTableHandler table = (ShardingTableHandler) MetadataManager.INSTANCE.getTable("db1", "travelrecord");
+        MycatLogicTable logicTable = new MycatLogicTable(table);
+        List<RelNode> scans = new ArrayList<>();
+        for (DataNode dataNode : table.getShardingBackends().subList(0, 3)) {
+            MycatPhysicalTable physicalTable = new MycatPhysicalTable(logicTable, dataNode);
+            scans.add(LogicalTableScan.create(cluster, RelOptTableImpl.create(null,
+                    physicalTable.getRowType(typeFactory), physicalTable,
+                    ImmutableList.of(dataNode.getUniqueName())), ImmutableList.of()));
+        }
+        return LogicalUnion.create(scans, true);
+    }
+
+    private static RelNode aggregate(RelNode input, ImmutableBitSet groupSet, AggregateCall... calls) {
+        List<AggregateCall> aggCalls = new ArrayList<>();
+        for (AggregateCall call : calls) {
+            aggCalls.add(AggregateCall.create(call.getAggregation(), call.isDistinct(), false,
+                    call.getArgList(), -1, RelCollations.EMPTY, groupSet.cardinality(), input, null, null));
+        }
+        return LogicalAggregate.create(input, groupSet, null, aggCalls);
+    }
+
+    private static AggregateCall call(SqlAggFunction function, boolean distinct, RelNode input, Integer... args) {
+        List<Integer> argList = new ArrayList<>();
+        Collections.addAll(argList, args);
+        return AggregateCall.create(function, distinct, false, argList, -1, RelCollations.EMPTY, 0, input, null, null);
+    }
+
+    private static String union(String branch) {
+        return "Union(" + String.join(",", Collections.nCopies(3, branch)) + ")";
+    }
+
+    private static String shape(RelNode rel) {
+        if (rel instanceof Project) {
+            return shape(rel.getInput(0));
+        }
+        StringBuilder sb = new StringBuilder(rel.getRelTypeName().replace("Logical", ""));
+        if (rel instanceof Aggregate) {
+            sb.append(((Aggregate) rel).getAggCallList().stream()
+                    .map(i -> i.getAggregation().getName() + (i.isDistinct() ? " DISTINCT" : ""))
+                    .collect(Collectors.joining(",", "[", "]")));
+        }
+        if (!rel.getInputs().isEmpty()) {
+            sb.append(rel.getInputs().stream().map(GroupByPartitionRuleTest::shape)
+                    .collect(Collectors.joining(",", "(", ")")));
+        }
+        return sb.toString();
+    }
+}
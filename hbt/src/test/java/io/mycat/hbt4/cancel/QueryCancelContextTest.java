@@ -0,0 +1,176 @@
+package io.mycat.hbt4.cancel;
+
+import io.mycat.MycatException;
+import io.mycat.beans.mysql.MySQLErrorCode;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 取消,回调,等待,查询时限与关闭
+ */
+public class QueryCancelContextTest {
+    private final QueryCancelManager manager = QueryCancelManager.INSTANCE;
+
+    @Before
+    public void setUp() {
+        manager.init(0);
+    }
+
+    @After
+    public void tearDown() {
+        manager.init(0);
+        for (QueryCancelContext context : manager.getRunning()) {
+            context.close();
+        }
+    }
+
+    @Test
+    public void testCancelAndCheck() {
+        AtomicBoolean sessionFlag = new AtomicBoolean();
+        QueryCancelContext context = manager.createContext(sessionFlag, "select 1");
+        AtomicInteger hooks = new AtomicInteger();
+        context.addCancelHook(hooks::incrementAndGet);
+        context.check();
+        Assert.assertFalse(context.isCancelled());
+
+        Assert.assertTrue(manager.cancel(sessionFlag, "kill query"));
+        Assert.assertTrue(context.isCancelled());
+        Assert.assertEquals(1, hooks.get());
+        assertInterrupted(context::check, "kill query");
+
+        //重复取消不再执行回调,也不覆盖原因
+        context.cancel("again");
+        Assert.assertEquals(1, hooks.get());
+        Assert.assertEquals("kill query", context.getReason());
+        context.close();
+        Assert.assertFalse(manager.cancel(sessionFlag, "kill query"));
+    }
+
+    /**
+     * 取消之后登记的回调立即执行,例如取消时分片连接还没有获取
+     */
+    @Test
+    public void testLateHook() {
+        QueryCancelContext context = manager.createContext(new AtomicBoolean(), "select 1");
+        context.cancel("kill query");
+        AtomicInteger hooks = new AtomicInteger();
+        context.addCancelHook(hooks::incrementAndGet);
+        Assert.assertEquals(1, hooks.get());
+        context.addCancelHook(() -> {
+            throw new IllegalStateException();
+        });
+        context.addCancelHook(hooks::incrementAndGet);
+        Assert.assertEquals(2, hooks.get());
+        context.close();
+        Assert.assertEquals(2, hooks.get());
+    }
+
+    @Test
+    public void testSessionClosed() {
+        AtomicBoolean sessionFlag = new AtomicBoolean();
+        QueryCancelContext context = manager.createContext(sessionFlag, "select 1");
+        AtomicInteger hooks = new AtomicInteger();
+        context.addCancelHook(hooks::incrementAndGet);
+        sessionFlag.set(true);
+        Assert.assertTrue(context.isCancelled());
+        assertInterrupted(context::check, "session closed");
+        Assert.assertEquals(1, hooks.get());
+        context.close();
+    }
+
+    @Test
+    public void testAwait() throws Exception {
+        QueryCancelContext context = manager.createContext(new AtomicBoolean(), "select 1");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Assert.assertEquals("ok", context.await(executor.submit(() -> "ok")));
+
+            CountDownLatch never = new CountDownLatch(1);
+            Future<Object> blocked = executor.submit(() -> {
+                never.await();
+                return null;
+            });
+            ScheduledExecutorService killer = Executors.newSingleThreadScheduledExecutor();
+            killer.schedule(() -> context.cancel("kill query"), 50, TimeUnit.MILLISECONDS);
+            killer.shutdown();
+            long start = System.currentTimeMillis();
+            assertInterrupted(() -> context.await(blocked), "kill query");
+            Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+            Assert.assertTrue(blocked.isCancelled());
+        } finally {
+            executor.shutdownNow();
+            context.close();
+        }
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        manager.init(50);
+        long timeouts = manager.getTimeoutCount();
+        AtomicInteger hooks = new AtomicInteger();
+        QueryCancelContext context = manager.createContext(new AtomicBoolean(), "select sleep(10)");
+        context.addCancelHook(hooks::incrementAndGet);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!context.isCancelled() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertInterrupted(context::check, "maximum statement execution time 50 ms exceeded");
+        Assert.assertEquals(1, hooks.get());
+        Assert.assertEquals(timeouts + 1, manager.getTimeoutCount());
+        context.close();
+    }
+
+    /**
+     * 关闭可以重复调用,关闭时查询时限的定时任务从队列移除
+     */
+    @Test
+    public void testCloseIdempotent() {
+        manager.init(60000);
+        int pending = manager.getPendingTimeouts();
+        AtomicBoolean sessionFlag = new AtomicBoolean();
+        QueryCancelContext context = manager.createContext(sessionFlag, "select 1");
+        AtomicInteger hooks = new AtomicInteger();
+        context.addCancelHook(hooks::incrementAndGet);
+        Assert.assertEquals(pending + 1, manager.getPendingTimeouts());
+        Assert.assertSame(context, manager.get(sessionFlag));
+
+        context.close();
+        context.close();
+        Assert.assertEquals(1, hooks.get());
+        Assert.assertEquals("query closed", context.getReason());
+        Assert.assertNull(manager.get(sessionFlag));
+        Assert.assertEquals(pending, manager.getPendingTimeouts());
+    }
+
+    /**
+     * 同一会话的下一个查询开始时,上一个没有关闭的查询不再跟踪
+     */
+    @Test
+    public void testNextQueryClosesPrevious() {
+        AtomicBoolean sessionFlag = new AtomicBoolean();
+        QueryCancelContext first = manager.createContext(sessionFlag, "select 1");
+        QueryCancelContext second = manager.createContext(sessionFlag, "select 2");
+        Assert.assertTrue(first.isCancelled());
+        Assert.assertSame(second, manager.get(sessionFlag));
+        first.close();
+        Assert.assertSame(second, manager.get(sessionFlag));
+        second.close();
+        Assert.assertNull(manager.get(sessionFlag));
+    }
+
+    private static void assertInterrupted(Runnable runnable, String reason) {
+        try {
+            runnable.run();
+            Assert.fail();
+        } catch (MycatException e) {
+            Assert.assertEquals(MySQLErrorCode.ER_QUERY_INTERRUPTED, e.getErrorCode());
+            Assert.assertTrue(e.getMessage(), e.getMessage().endsWith(reason));
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package io.mycat.hbt4.executor;
+
+import io.mycat.hbt4.BaseExecutorImplementor;
+import io.mycat.mpp.Row;
+import org.apache.calcite.rel.RelCollations;
+import org.apache.calcite.rel.RelFieldCollation;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * 深分页两次查询的结果与每个分片取offset+fetch行合并的结果一致
+ */
+public class MycatDeepPageSortExecutorTest {
+    private static final RelFieldCollation ASC = new RelFieldCollation(0);
+    private static final RelFieldCollation DESC = new RelFieldCollation(0, RelFieldCollation.Direction.DESCENDING);
+
+    /**
+     * 小分片在offset/分片数的位置已经没有行,整个取回后加大其他分片取的行数
+     */
+    @Test
+    public void testSkewedShards() {
+        List<List<Row>> shards = Arrays.asList(
+                rows(0, 2000, 2),
+                rows(1, 2000, 2),
+                rows(0, 600, 10));
+        for (long offset : new long[]{300, 600, 1200, 2000}) {
+            assertSeek(shards, ASC, offset, 10);
+        }
+        //小分片的行全部排在前面时两次查询要取的行数超过offset+fetch,退回到每个分片取offset+fetch行
+        List<List<Row>> skewed = Arrays.asList(
+                rows(0, 1000, 1),
+                rows(5000, 5005, 1),
+                rows(2000, 2010, 1));
+        for (long offset : new long[]{150, 300, 507, 900, 1010}) {
+            assertPage(skewed, ASC, offset, 10);
+        }
+    }
+
+    /**
+     * 某个分片没有数据
+     */
+    @Test
+    public void testEmptyShard() {
+        List<List<Row>> shards = Arrays.asList(
+                rows(0, 300, 2),
+                Collections.emptyList(),
+                rows(1, 300, 2));
+        for (long offset : new long[]{1, 3, 100, 299}) {
+            assertSeek(shards, ASC, offset, 7);
+            assertSeek(shards, DESC, offset, 7);
+        }
+    }
+
+    /**
+     * 排序列有重复值,第一次取到的行可能全部相同
+     */
+    @Test
+    public void testTies() {
+        List<List<Row>> shards = Arrays.asList(
+                ties(0, 400, 3),
+                ties(100, 300, 5),
+                ties(0, 150, 8));
+        for (long offset : new long[]{120, 301, 450, 600}) {
+            assertSeek(shards, ASC, offset, 5);
+            assertSeek(shards, DESC, offset, 5);
+        }
+        //重复的行比offset+fetch还多
+        List<List<Row>> wide = Arrays.asList(
+                ties(0, 400, 7),
+                ties(1000, 1200, 25),
+                ties(0, 150, 50));
+        for (long offset : new long[]{30, 120, 301, 450, 600}) {
+            assertPage(wide, ASC, offset, 5);
+            assertPage(wide, DESC, offset, 5);
+        }
+    }
+
+    @Test
+    public void testFetchOne() {
+        List<List<Row>> distinct = Arrays.asList(
+                rows(0, 300, 3),
+                rows(1, 300, 3),
+                rows(2, 300, 3));
+        List<List<Row>> ties = Arrays.asList(
+                ties(0, 300, 2),
+                ties(0, 450, 3),
+                Collections.emptyList());
+        for (long offset : new long[]{3, 50, 151, 299}) {
+            assertSeek(distinct, ASC, offset, 1);
+            assertSeek(distinct, DESC, offset, 1);
+        }
+        for (long offset : new long[]{50, 151, 299, 450}) {
+            assertSeek(ties, ASC, offset, 1);
+            assertSeek(ties, DESC, offset, 1);
+        }
+    }
+
+    /**
+     * offset超出总行数
+     */
+    @Test
+    public void testOffsetOutOfRange() {
+        List<List<Row>> shards = Arrays.asList(rows(0, 10, 1), rows(0, 10, 1));
+        assertSeek(shards, ASC, 100, 10);
+    }
+
+    /**
+     * 两次查询就能确定结果,不退回
+     */
+    private static void assertSeek(List<List<Row>> shards, RelFieldCollation fieldCollation, long offset, long fetch) {
+        InMemoryDeepPageSort executor = new InMemoryDeepPageSort(sort(shards, fieldCollation), fieldCollation, offset, fetch);
+        List<Row> rows = executor.seek();
+        String message = fieldCollation + " offset " + offset + " fetch " + fetch;
+        Assert.assertNotNull(message, rows);
+        //相同排序值的行之间顺序不确定,只比较排序列
+        Assert.assertEquals(message, keys(expected(shards, fieldCollation, offset, fetch)), keys(rows));
+    }
+
+    private static void assertPage(List<List<Row>> shards, RelFieldCollation fieldCollation, long offset, long fetch) {
+        InMemoryDeepPageSort executor = new InMemoryDeepPageSort(sort(shards, fieldCollation), fieldCollation, offset, fetch);
+        executor.open();
+        List<Row> rows = new ArrayList<>();
+        Row row;
+        while ((row = executor.next()) != null) {
+            rows.add(row);
+        }
+        executor.close();
+        Assert.assertEquals(fieldCollation + " offset " + offset + " fetch " + fetch,
+                keys(expected(shards, fieldCollation, offset, fetch)), keys(rows));
+    }
+
+    private static List<List<Row>> sort(List<List<Row>> shards, RelFieldCollation fieldCollation) {
+        Comparator<Row> comparator = BaseExecutorImplementor.comparator(fieldCollation);
+        List<List<Row>> sortedShards = new ArrayList<>();
+        for (List<Row> shard : shards) {
+            List<Row> sorted = new ArrayList<>(shard);
+            sorted.sort(comparator);
+            sortedShards.add(sorted);
+        }
+        return sortedShards;
+    }
+
+    private static List<Row> expected(List<List<Row>> shards, RelFieldCollation fieldCollation, long offset, long fetch) {
+        List<Row> all = new ArrayList<>();
+        shards.forEach(all::addAll);
+        all.sort(BaseExecutorImplementor.comparator(fieldCollation));
+        return all.subList((int) Math.min(offset, all.size()), (int) Math.min(offset + fetch, all.size()));
+    }
+
+    private static List<Object> keys(List<Row> rows) {
+        return rows.stream().map(i -> i.values[0]).collect(Collectors.toList());
+    }
+
+    /**
+     * 从from开始每隔step取一个值,直到to之前
+     */
+    private static List<Row> rows(long from, long to, long step) {
+        List<Row> rows = new ArrayList<>();
+        for (long i = from; i < to; i += step) {
+            rows.add(Row.of(new Object[]{i, i}));
+        }
+        return rows;
+    }
+
+    /**
+     * 每个值重复repeat次
+     */
+    private static List<Row> ties(long from, long to, int repeat) {
+        List<Row> rows = new ArrayList<>();
+        for (long i = from; i < to; i++) {
+            rows.add(Row.of(new Object[]{from + (i - from) / repeat, i}));
+        }
+        return rows;
+    }
+
+    /**
+     * 在内存里按排序后的分片回答两种查询
+     */
+    private static class InMemoryDeepPageSort extends MycatDeepPageSortExecutor {
+        private final List<List<Row>> shards;
+        private final Comparator<Row> keyComparator;
+
+        InMemoryDeepPageSort(List<List<Row>> shards, RelFieldCollation fieldCollation, long offset, long fetch) {
+            super(null, Collections.nCopies(shards.size(), "c0"), null, RelCollations.of(fieldCollation), offset, fetch, null);
+            this.shards = shards;
+            this.keyComparator = BaseExecutorImplementor.comparator(fieldCollation);
+        }
+
+        @Override
+        List<List<Row>> queryWindows(List<Integer> shards, long seek, long limit) {
+            List<List<Row>> result = new ArrayList<>();
+            for (int i : shards) {
+                List<Row> rows = this.shards.get(i);
+                int from = (int) Math.min(seek, rows.size());
+                int to = (int) Math.min(seek + limit, rows.size());
+                result.add(new ArrayList<>(rows.subList(from, to)));
+            }
+            return result;
+        }
+
+        @Override
+        List<List<Row>> queryRanges(List<Integer> shards, Object from, List<Object> to) {
+            Row lower = Row.of(new Object[]{from, null});
+            List<List<Row>> result = new ArrayList<>();
+            for (int k = 0; k < shards.size(); k++) {
+                Row upper = Row.of(new Object[]{to.get(k), null});
+                result.add(this.shards.get(shards.get(k)).stream()
+                        .filter(row -> keyComparator.compare(row, lower) >= 0 && keyComparator.compare(row, upper) <= 0)
+                        .collect(Collectors.toList()));
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package io.mycat.hbt4.executor;
+
+import io.mycat.hbt4.BaseExecutorImplementor;
+import io.mycat.hbt4.Executor;
+import io.mycat.mpp.Row;
+import org.apache.calcite.rel.RelFieldCollation;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * 堆与k路归并两种topN
+ */
+public class MycatTopNExecutorTest {
+    private static final Comparator<Row> ASC = BaseExecutorImplementor.comparator(new RelFieldCollation(0));
+
+    @Test
+    public void testHeapTopN() {
+        List<Row> rows = rows(9, 3, 7, 1, 5, 3, 8, 2, 3, 6);
+        Assert.assertEquals(Arrays.asList(1L, 2L, 3L), keys(heap(rows, 0, 3)));
+        Assert.assertEquals(Arrays.asList(3L, 3L, 3L, 5L), keys(heap(rows, 2, 4)));
+        Assert.assertEquals(Arrays.asList(8L, 9L), keys(heap(rows, 8, 5)));
+        Assert.assertEquals(Collections.emptyList(), keys(heap(rows, 20, 5)));
+    }
+
+    /**
+     * 相同排序值跨过offset和limit的边界
+     */
+    @Test
+    public void testHeapTopNTies() {
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            rows.add(Row.of(new Object[]{(long) (i % 4), (long) i}));
+        }
+        List<Row> result = heap(rows, 20, 10);
+        Assert.assertEquals(Collections.nCopies(5, 0L), keys(result.subList(0, 5)));
+        Assert.assertEquals(Collections.nCopies(5, 1L), keys(result.subList(5, 10)));
+        Assert.assertEquals(10, result.stream().map(i -> i.values[1]).distinct().count());
+    }
+
+    @Test
+    public void testHeapTopNFetchZero() {
+        CountingExecutor input = new CountingExecutor(rows(3, 1, 2));
+        Assert.assertEquals(Collections.emptyList(), drain(new MycatTopNExecutor(ASC, 1, 0, input)));
+        Assert.assertEquals(1, input.closeCount);
+    }
+
+    /**
+     * offset+fetch超出int范围时退化为全排序
+     */
+    @Test
+    public void testHeapTopNUnbounded() {
+        List<Row> rows = rows(4, 2, 5, 1, 3);
+        Assert.assertEquals(Arrays.asList(3L, 4L, 5L), keys(heap(rows, 2, Long.MAX_VALUE)));
+        Assert.assertEquals(Arrays.asList(2L, 3L, 4L, 5L), keys(heap(rows, 1, Integer.MAX_VALUE - 1)));
+        Assert.assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), keys(heap(rows, 0, Integer.MAX_VALUE)));
+    }
+
+    /**
+     * 取满后提前关闭分片,读完的分片和之后的close都不会重复关闭
+     */
+    @Test
+    public void testMergeEarlyClose() {
+        CountingExecutor[] inputs = {
+                new CountingExecutor(rows(1, 4, 7, 10, 13)),
+                new CountingExecutor(rows(2)),
+                new CountingExecutor(rows(3, 6, 9, 12, 15))};
+        MycatTopNExecutor executor = new MycatTopNExecutor(ASC, 2, 3, inputs);
+        executor.open();
+        Assert.assertEquals(3L, executor.next().values[0]);
+        Assert.assertEquals(1, inputs[1].closeCount);
+        Assert.assertEquals(4L, executor.next().values[0]);
+        Assert.assertEquals(6L, executor.next().values[0]);
+        for (CountingExecutor input : inputs) {
+            Assert.assertEquals(1, input.closeCount);
+        }
+        Assert.assertNull(executor.next());
+        executor.close();
+        for (CountingExecutor input : inputs) {
+            Assert.assertEquals(1, input.openCount);
+            Assert.assertEquals(1, input.closeCount);
+        }
+        Assert.assertTrue(inputs[0].readCount < 5);
+        Assert.assertTrue(inputs[2].readCount < 5);
+    }
+
+    /**
+     * 没有取满时close关闭剩余的分片
+     */
+    @Test
+    public void testMergeCloseBeforeFetched() {
+        CountingExecutor[] inputs = {
+                new CountingExecutor(rows(1, 3, 5)),
+                new CountingExecutor(rows(2, 4, 6))};
+        MycatTopNExecutor executor = new MycatTopNExecutor(ASC, 0, 4, inputs);
+        executor.open();
+        Assert.assertEquals(1L, executor.next().values[0]);
+        executor.close();
+        for (CountingExecutor input : inputs) {
+            Assert.assertEquals(1, input.closeCount);
+        }
+    }
+
+    @Test
+    public void testMergeTies() {
+        CountingExecutor[] inputs = {
+                new CountingExecutor(rows(1, 2, 2, 2, 3)),
+                new CountingExecutor(rows(2, 2, 3, 3))};
+        Assert.assertEquals(Arrays.asList(2L, 2L, 2L, 3L), keys(drain(new MycatTopNExecutor(ASC, 3, 4, inputs))));
+        for (CountingExecutor input : inputs) {
+            Assert.assertEquals(1, input.closeCount);
+        }
+    }
+
+    @Test
+    public void testMergeFetchZero() {
+        CountingExecutor[] inputs = {
+                new CountingExecutor(rows(1, 2)),
+                new CountingExecutor(rows(3))};
+        Assert.assertEquals(Collections.emptyList(), drain(new MycatTopNExecutor(ASC, 0, 0, inputs)));
+        for (CountingExecutor input : inputs) {
+            Assert.assertEquals(0, input.openCount);
+            Assert.assertEquals(0, input.closeCount);
+        }
+    }
+
+    private static List<Row> heap(List<Row> rows, long offset, long fetch) {
+        CountingExecutor input = new CountingExecutor(rows);
+        List<Row> result = drain(new MycatTopNExecutor(ASC, offset, fetch, input));
+        Assert.assertEquals(1, input.closeCount);
+        return result;
+    }
+
+    private static List<Row> drain(Executor executor) {
+        executor.open();
+        List<Row> rows = new ArrayList<>();
+        Row row;
+        while ((row = executor.next()) != null) {
+            rows.add(row);
+        }
+        executor.close();
+        return rows;
+    }
+
+    private static List<Row> rows(long... keys) {
+        List<Row> rows = new ArrayList<>();
+        for (long key : keys) {
+            rows.add(Row.of(new Object[]{key}));
+        }
+        return rows;
+    }
+
+    private static List<Object> keys(List<Row> rows) {
+        return rows.stream().map(i -> i.values[0]).collect(Collectors.toList());
+    }
+
+    /**
+     * 记录打开,读取与关闭的次数
+     */
+    private static class CountingExecutor implements Executor {
+        private final List<Row> rows;
+        private Iterator<Row> iterator;
+        int openCount;
+        int closeCount;
+        int readCount;
+
+        CountingExecutor(List<Row> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public void open() {
+            openCount++;
+            iterator = rows.iterator();
+        }
+
+        @Override
+        public Row next() {
+            if (iterator.hasNext()) {
+                readCount++;
+                return iterator.next();
+            }
+            return null;
+        }
+
+        @Override
+        public void close() {
+            closeCount++;
+        }
+
+        @Override
+        public boolean isRewindSupported() {
+            return true;
+        }
+    }
+}
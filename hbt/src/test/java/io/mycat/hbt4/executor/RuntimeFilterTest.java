@@ -0,0 +1,141 @@
+package io.mycat.hbt4.executor;
+
+import io.mycat.mpp.Row;
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * IN列表,范围与布隆过滤器三种形式
+ */
+public class RuntimeFilterTest {
+    private static final int[] ID = {0};
+    private static final int[] NAME = {1};
+    private static final int[] ID_NAME = {0, 1};
+
+    private final RelDataTypeFactory typeFactory = new JavaTypeFactoryImpl();
+    private final RexBuilder rexBuilder = new RexBuilder(typeFactory);
+    private final RelDataType rowType = typeFactory.builder()
+            .add("id", SqlTypeName.BIGINT)
+            .add("name", SqlTypeName.VARCHAR, 20)
+            .build();
+
+    @Test
+    public void testInList() {
+        List<Row> rows = new ArrayList<>();
+        rows.add(row(1L, "a"));
+        rows.add(row(2L, "b"));
+        rows.add(row(2L, "c"));
+        rows.add(row(null, "d"));
+        RuntimeFilter filter = RuntimeFilter.create(rows, ID, ID);
+        Assert.assertFalse(filter.isEmpty());
+        Assert.assertFalse(filter.isPostFilter());
+        Assert.assertTrue(filter.test(row(2L, "x")));
+        Assert.assertFalse(filter.test(row(3L, "x")));
+        Assert.assertFalse(filter.test(row(null, "x")));
+
+        RexNode condition = filter.toCondition(rexBuilder, rowType);
+        Assert.assertEquals(SqlKind.OR, condition.getKind());
+        Assert.assertEquals(2, ((RexCall) condition).getOperands().size());
+    }
+
+    /**
+     * 字符串键的IN列表按等值下推,排序规则只会让分片多返回行,取回后仍由连接判断
+     */
+    @Test
+    public void testStringInList() {
+        List<Row> rows = new ArrayList<>();
+        rows.add(row(1L, "a"));
+        RuntimeFilter filter = RuntimeFilter.create(rows, NAME, NAME);
+        RexNode condition = filter.toCondition(rexBuilder, rowType);
+        Assert.assertEquals(SqlKind.EQUALS, condition.getKind());
+        Assert.assertTrue(filter.test(row(2L, "a")));
+        Assert.assertFalse(filter.test(row(1L, "A")));
+    }
+
+    @Test
+    public void testEmpty() {
+        List<Row> rows = new ArrayList<>();
+        rows.add(row(null, "a"));
+        RuntimeFilter filter = RuntimeFilter.create(rows, ID, ID);
+        Assert.assertTrue(filter.isEmpty());
+        Assert.assertFalse(filter.test(row(1L, "a")));
+    }
+
+    /**
+     * 超过IN列表上限时数值键下推min/max范围,取回后用布隆过滤器过滤
+     */
+    @Test
+    public void testNumericRangeAndBloom() {
+        List<Row> rows = new ArrayList<>();
+        for (long i = 0; i <= RuntimeFilter.MAX_IN_LIST * 2; i++) {
+            rows.add(row(i + 10, "n" + i));
+        }
+        RuntimeFilter filter = RuntimeFilter.create(rows, ID, ID);
+        Assert.assertTrue(filter.isPostFilter());
+        for (Row row : rows) {
+            Assert.assertTrue(filter.test(row));
+        }
+        RexNode condition = filter.toCondition(rexBuilder, rowType);
+        Assert.assertEquals(SqlKind.AND, condition.getKind());
+        List<RexNode> operands = ((RexCall) condition).getOperands();
+        Assert.assertEquals(2, operands.size());
+        Assert.assertEquals(SqlKind.GREATER_THAN_OR_EQUAL, operands.get(0).getKind());
+        Assert.assertEquals(10L, (long) literal(operands.get(0)).getValueAs(Long.class));
+        Assert.assertEquals(SqlKind.LESS_THAN_OR_EQUAL, operands.get(1).getKind());
+        Assert.assertEquals(10L + RuntimeFilter.MAX_IN_LIST * 2, (long) literal(operands.get(1)).getValueAs(Long.class));
+    }
+
+    /**
+     * 字符串键不生成范围,分片按排序规则比较的结果可能与java不同,只在取回后过滤
+     */
+    @Test
+    public void testStringKeyHasNoRange() {
+        List<Row> rows = new ArrayList<>();
+        for (long i = 0; i <= RuntimeFilter.MAX_IN_LIST * 2; i++) {
+            rows.add(row(i, (i % 2 == 0 ? "a" : "B") + i));
+        }
+        RuntimeFilter filter = RuntimeFilter.create(rows, NAME, NAME);
+        Assert.assertTrue(filter.isPostFilter());
+        Assert.assertNull(filter.toCondition(rexBuilder, rowType));
+        for (Row row : rows) {
+            Assert.assertTrue(filter.test(row));
+        }
+    }
+
+    /**
+     * 组合键只对其中的数值列生成范围
+     */
+    @Test
+    public void testCompositeKeyRange() {
+        List<Row> rows = new ArrayList<>();
+        for (long i = 0; i <= RuntimeFilter.MAX_IN_LIST * 2; i++) {
+            rows.add(row(i, "n" + i));
+        }
+        RuntimeFilter filter = RuntimeFilter.create(rows, ID_NAME, ID_NAME);
+        RexNode condition = filter.toCondition(rexBuilder, rowType);
+        Assert.assertEquals(SqlKind.AND, condition.getKind());
+        for (RexNode operand : ((RexCall) condition).getOperands()) {
+            Assert.assertEquals("$0", ((RexCall) operand).getOperands().get(0).toString());
+        }
+    }
+
+    private static RexLiteral literal(RexNode comparison) {
+        return (RexLiteral) ((RexCall) comparison).getOperands().get(1);
+    }
+
+    private static Row row(Long id, String name) {
+        return Row.of(new Object[]{id, name});
+    }
+}
@@ -0,0 +1,194 @@
+package io.mycat.hbt4.executor;
+
+import io.mycat.MycatConnection;
+import io.mycat.MycatException;
+import io.mycat.api.collector.RowBaseIterator;
+import io.mycat.beans.mycat.MycatRowMetaData;
+import io.mycat.beans.mysql.MySQLErrorCode;
+import io.mycat.hbt4.cancel.QueryCancelContext;
+import io.mycat.hbt4.cancel.QueryCancelManager;
+import io.mycat.mpp.Row;
+import io.mycat.upondb.MycatDBContext;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * 分片查询的结果顺序与取消
+ */
+public class ShardQueryRunnerTest {
+    private final AtomicBoolean sessionFlag = new AtomicBoolean();
+    private final List<String> cancelled = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    @Before
+    public void setUp() {
+        QueryCancelManager.INSTANCE.init(0);
+    }
+
+    @Test
+    public void testResultsInSqlOrder() {
+        List<List<Row>> results = ShardQueryRunner.query(context(),
+                Arrays.asList("ds0", "ds1", "ds0"), Arrays.asList("rows 1", "rows 2", "rows 3,4"));
+        Assert.assertEquals(Arrays.asList(
+                Collections.singletonList("1"),
+                Collections.singletonList("2"),
+                Arrays.asList("3", "4")), values(results));
+        Assert.assertTrue(cancelled.isEmpty());
+    }
+
+    /**
+     * KILL QUERY终止每个分片连接上正在执行的语句,查询以ER_QUERY_INTERRUPTED失败
+     */
+    @Test
+    public void testKillCancelsRunningShards() throws Exception {
+        QueryCancelContext cancelContext = QueryCancelManager.INSTANCE.createContext(sessionFlag, "select * from t");
+        try {
+            killAfterStarted();
+            assertInterrupted(() -> ShardQueryRunner.query(context(),
+                    Arrays.asList("ds0", "ds1"), Arrays.asList("block", "rows 1")));
+            Set<String> names = new HashSet<>(cancelled);
+            Assert.assertEquals(new HashSet<>(Arrays.asList("ds0", "ds1")), names);
+        } finally {
+            cancelContext.close();
+        }
+    }
+
+    /**
+     * 只有一个分片时在调用线程执行,被取消的分片只返回了部分行,不能作为结果
+     */
+    @Test
+    public void testKillSingleShard() throws Exception {
+        QueryCancelContext cancelContext = QueryCancelManager.INSTANCE.createContext(sessionFlag, "select * from t");
+        try {
+            killAfterStarted();
+            assertInterrupted(() -> ShardQueryRunner.query(context(),
+                    Collections.singletonList("ds0"), Collections.singletonList("block")));
+            Assert.assertEquals(Collections.singletonList("ds0"), cancelled);
+        } finally {
+            cancelContext.close();
+        }
+    }
+
+    /**
+     * 查询结束关闭取消上下文后,登记的连接不再被终止
+     */
+    @Test
+    public void testCloseAfterQuery() {
+        QueryCancelContext cancelContext = QueryCancelManager.INSTANCE.createContext(sessionFlag, "select * from t");
+        List<List<Row>> results = ShardQueryRunner.query(context(),
+                Arrays.asList("ds0", "ds1"), Arrays.asList("rows 1", "rows 2"));
+        Assert.assertEquals(Arrays.asList(Collections.singletonList("1"), Collections.singletonList("2")), values(results));
+        Assert.assertTrue(cancelled.isEmpty());
+        cancelContext.close();
+        Assert.assertNull(QueryCancelManager.INSTANCE.get(sessionFlag));
+    }
+
+    private void killAfterStarted() {
+        Thread killer = new Thread(() -> {
+            try {
+                if (started.await(5, TimeUnit.SECONDS)) {
+                    QueryCancelManager.INSTANCE.cancel(sessionFlag, "kill query");
+                }
+            } catch (InterruptedException ignored) {
+
+            }
+        });
+        killer.setDaemon(true);
+        killer.start();
+    }
+
+    private static void assertInterrupted(Runnable runnable) {
+        try {
+            runnable.run();
+            Assert.fail();
+        } catch (MycatException e) {
+            Assert.assertEquals(MySQLErrorCode.ER_QUERY_INTERRUPTED, e.getErrorCode());
+        }
+    }
+
+    private static List<List<String>> values(List<List<Row>> results) {
+        return results.stream()
+                .map(rows -> rows.stream().map(row -> (String) row.getObject(0)).collect(Collectors.toList()))
+                .collect(Collectors.toList());
+    }
+
+    private MycatDBContext context() {
+        return (MycatDBContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{MycatDBContext.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getConnection":
+                            return connection((String) args[0]);
+                        case "cancelFlag":
+                            return sessionFlag;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    /**
+     * "rows a,b"返回一列多行,"block"一直阻塞到连接被终止
+     */
+    private MycatConnection connection(String name) {
+        return (MycatConnection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{MycatConnection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "executeQuery": {
+                            String sql = (String) args[1];
+                            if ("block".equals(sql)) {
+                                started.countDown();
+                                Assert.assertTrue(released.await(5, TimeUnit.SECONDS));
+                                return iterator(Collections.singletonList("partial"));
+                            }
+                            return iterator(Arrays.asList(sql.substring("rows ".length()).split(",")));
+                        }
+                        case "cancel":
+                            cancelled.add(name);
+                            released.countDown();
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static RowBaseIterator iterator(List<String> values) {
+        MycatRowMetaData metaData = (MycatRowMetaData) Proxy.newProxyInstance(ShardQueryRunnerTest.class.getClassLoader(),
+                new Class[]{MycatRowMetaData.class}, (proxy, method, args) -> {
+                    if ("getColumnCount".equals(method.getName())) {
+                        return 1;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        Iterator<String> iterator = values.iterator();
+        String[] current = new String[1];
+        return (RowBaseIterator) Proxy.newProxyInstance(ShardQueryRunnerTest.class.getClassLoader(),
+                new Class[]{RowBaseIterator.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getMetaData":
+                            return metaData;
+                        case "next":
+                            if (!iterator.hasNext()) {
+                                return false;
+                            }
+                            current[0] = iterator.next();
+                            return true;
+                        case "getObject":
+                            return current[0];
+                        case "close":
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
@@ -0,0 +1,69 @@
+package io.mycat.hbt4.executor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.JDBCType;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.Date;
+
+/**
+ * 连接键转换为与插入路由相同的分片值
+ */
+public class ShardingKeyLookupTest {
+    private static final LocalDateTime DATETIME = LocalDateTime.of(2020, 1, 2, 3, 4, 5);
+    private static final long MILLIS = DATETIME.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+    @Test
+    public void testIntegral() {
+        Assert.assertEquals(3L, ShardingKeyLookup.routeValue(JDBCType.BIGINT, 3));
+        Assert.assertEquals(3L, ShardingKeyLookup.routeValue(JDBCType.INTEGER, 3.0d));
+        Assert.assertEquals(3L, ShardingKeyLookup.routeValue(JDBCType.BIGINT, new BigDecimal("3.00")));
+        Assert.assertEquals(3L, ShardingKeyLookup.routeValue(JDBCType.BIGINT, "3"));
+        Assert.assertEquals("3.5", ShardingKeyLookup.routeValue(JDBCType.BIGINT, 3.5d));
+        Assert.assertEquals("99999999999999999999", ShardingKeyLookup.routeValue(JDBCType.BIGINT, new BigDecimal("99999999999999999999")));
+    }
+
+    /**
+     * 时间列的键可能是毫秒数,Timestamp或者LocalDateTime,路由值都是MySQL的文本格式
+     */
+    @Test
+    public void testDatetime() {
+        String expected = "2020-01-02 03:04:05";
+        Assert.assertEquals(expected, ShardingKeyLookup.routeValue(JDBCType.TIMESTAMP, DATETIME));
+        Assert.assertEquals(expected, ShardingKeyLookup.routeValue(JDBCType.TIMESTAMP, Timestamp.valueOf(DATETIME)));
+        Assert.assertEquals(expected, ShardingKeyLookup.routeValue(JDBCType.TIMESTAMP, MILLIS));
+        Assert.assertEquals(expected, ShardingKeyLookup.routeValue(JDBCType.TIMESTAMP, new Date(MILLIS)));
+        Assert.assertEquals(expected, ShardingKeyLookup.routeValue(JDBCType.TIMESTAMP, expected));
+        Assert.assertEquals("2020-01-02 03:04:05.12", ShardingKeyLookup.routeValue(JDBCType.TIMESTAMP,
+                Timestamp.valueOf("2020-01-02 03:04:05.12")));
+        Assert.assertEquals("2020-01-02 00:00:00", ShardingKeyLookup.routeValue(JDBCType.TIMESTAMP, LocalDate.of(2020, 1, 2)));
+    }
+
+    @Test
+    public void testDate() {
+        String expected = "2020-01-02";
+        Assert.assertEquals(expected, ShardingKeyLookup.routeValue(JDBCType.DATE, java.sql.Date.valueOf(expected)));
+        Assert.assertEquals(expected, ShardingKeyLookup.routeValue(JDBCType.DATE, LocalDate.of(2020, 1, 2)));
+        Assert.assertEquals(expected, ShardingKeyLookup.routeValue(JDBCType.DATE, (int) LocalDate.of(2020, 1, 2).toEpochDay()));
+        Assert.assertEquals(expected, ShardingKeyLookup.routeValue(JDBCType.DATE, MILLIS));
+        Assert.assertEquals(expected, ShardingKeyLookup.routeValue(JDBCType.DATE, expected));
+    }
+
+    @Test
+    public void testTime() {
+        Assert.assertEquals("03:04:05", ShardingKeyLookup.routeValue(JDBCType.TIME, LocalTime.of(3, 4, 5)));
+        Assert.assertEquals("03:04:05", ShardingKeyLookup.routeValue(JDBCType.TIME, MILLIS));
+    }
+
+    @Test
+    public void testString() {
+        Assert.assertEquals("abc", ShardingKeyLookup.routeValue(JDBCType.VARCHAR, "abc"));
+        Assert.assertEquals("1.50", ShardingKeyLookup.routeValue(JDBCType.DECIMAL, new BigDecimal("1.50")));
+    }
+}
@@ -0,0 +1,195 @@
+package io.mycat.hbt4.memory;
+
+import io.mycat.MycatException;
+import io.mycat.beans.mysql.MySQLErrorCode;
+import io.mycat.config.ServerConfig;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.*;
+
+/**
+ * 单个查询的预算,准入排队与关闭时的归还
+ */
+public class QueryMemoryManagerTest {
+    private static final long TIMEOUT = 200;
+    private final QueryMemoryManager manager = QueryMemoryManager.INSTANCE;
+
+    @Before
+    public void setUp() {
+        init(1000, 100, 2, TIMEOUT);
+    }
+
+    @Test
+    public void testQueryLimitExceeded() {
+        long exceeded = manager.getExceededCount();
+        QueryMemoryContext context = manager.createContext("select 1");
+        context.reserve(60);
+        assertError(MySQLErrorCode.ER_OUTOFMEMORY, () -> context.reserve(60));
+        Assert.assertEquals(exceeded + 1, manager.getExceededCount());
+        Assert.assertEquals(60, context.getReserved());
+        Assert.assertEquals(60, manager.getUsed());
+        context.release(20);
+        context.reserve(60);
+        Assert.assertEquals(100, context.getPeak());
+        context.close();
+        Assert.assertEquals(0, manager.getUsed());
+    }
+
+    /**
+     * 准入名额被占满时等待超时
+     */
+    @Test
+    public void testAdmissionTimeout() {
+        init(1000, 100, 1, TIMEOUT);
+        long timeouts = manager.getAdmissionTimeoutCount();
+        QueryMemoryContext first = manager.createContext("select 1");
+        QueryMemoryContext second = manager.createContext("select 2");
+        first.reserve(10);
+        long start = System.currentTimeMillis();
+        assertError(MySQLErrorCode.ER_OUT_OF_RESOURCES, () -> second.reserve(10));
+        Assert.assertTrue(System.currentTimeMillis() - start >= TIMEOUT);
+        Assert.assertEquals(timeouts + 1, manager.getAdmissionTimeoutCount());
+        Assert.assertFalse(second.isAdmitted());
+        first.close();
+        second.reserve(10);
+        Assert.assertTrue(second.isAdmitted());
+        Assert.assertEquals(1, manager.getHeavyQueries());
+        second.close();
+        Assert.assertEquals(0, manager.getHeavyQueries());
+        Assert.assertEquals(0, manager.getUsed());
+    }
+
+    /**
+     * 总预算不足时等待,其他查询关闭后继续
+     */
+    @Test
+    public void testReleaseOnCloseWhileWaiting() throws Exception {
+        init(100, 100, 2, 10000);
+        QueryMemoryContext first = manager.createContext("select 1");
+        QueryMemoryContext second = manager.createContext("select 2");
+        first.reserve(80);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> future = executor.submit(() -> second.reserve(50));
+            awaitWaiting();
+            Assert.assertFalse(future.isDone());
+            first.close();
+            future.get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(50, second.getReserved());
+            Assert.assertEquals(50, manager.getUsed());
+        } finally {
+            executor.shutdownNow();
+            second.close();
+        }
+        Assert.assertEquals(0, manager.getUsed());
+    }
+
+    /**
+     * 等待中的查询被关闭时立即退出等待,不占用预算
+     */
+    @Test
+    public void testCloseWaitingQuery() throws Exception {
+        init(100, 100, 2, 10000);
+        QueryMemoryContext first = manager.createContext("select 1");
+        QueryMemoryContext second = manager.createContext("select 2");
+        first.reserve(80);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> future = executor.submit(() -> second.reserve(50));
+            awaitWaiting();
+            second.close();
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                Assert.fail();
+            } catch (ExecutionException e) {
+                Assert.assertEquals(MySQLErrorCode.ER_QUERY_INTERRUPTED, ((MycatException) e.getCause()).getErrorCode());
+            }
+            Assert.assertEquals(0, second.getReserved());
+            Assert.assertEquals(80, manager.getUsed());
+            Assert.assertEquals(1, manager.getHeavyQueries());
+        } finally {
+            executor.shutdownNow();
+            first.close();
+        }
+        Assert.assertEquals(0, manager.getUsed());
+        Assert.assertEquals(0, manager.getHeavyQueries());
+    }
+
+    /**
+     * 等待准入名额的查询被关闭时不必等到超时
+     */
+    @Test
+    public void testCloseWhileWaitingForAdmission() throws Exception {
+        init(1000, 100, 1, 10000);
+        long timeouts = manager.getAdmissionTimeoutCount();
+        QueryMemoryContext first = manager.createContext("select 1");
+        QueryMemoryContext second = manager.createContext("select 2");
+        first.reserve(10);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> future = executor.submit(() -> second.reserve(10));
+            awaitWaiting();
+            long start = System.currentTimeMillis();
+            second.close();
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                Assert.fail();
+            } catch (ExecutionException e) {
+                Assert.assertEquals(MySQLErrorCode.ER_QUERY_INTERRUPTED, ((MycatException) e.getCause()).getErrorCode());
+            }
+            Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+            Assert.assertFalse(second.isAdmitted());
+            Assert.assertEquals(timeouts, manager.getAdmissionTimeoutCount());
+            Assert.assertEquals(1, manager.getHeavyQueries());
+        } finally {
+            executor.shutdownNow();
+            first.close();
+        }
+        Assert.assertEquals(0, manager.getHeavyQueries());
+        Assert.assertEquals(0, manager.getUsed());
+    }
+
+    @Test
+    public void testReserveAfterClose() {
+        QueryMemoryContext context = manager.createContext("select 1");
+        context.reserve(30);
+        context.close();
+        Assert.assertTrue(context.isClosed());
+        Assert.assertEquals(0, manager.getUsed());
+        Assert.assertEquals(0, manager.getHeavyQueries());
+        assertError(MySQLErrorCode.ER_QUERY_INTERRUPTED, () -> context.reserve(10));
+        context.release(30);
+        context.close();
+        Assert.assertEquals(0, manager.getUsed());
+        Assert.assertEquals(0, manager.getHeavyQueries());
+        Assert.assertFalse(manager.getRunning().contains(context));
+    }
+
+    private void init(long globalLimit, long queryLimit, int maxHeavyQueries, long admissionTimeout) {
+        ServerConfig.QueryMemoryConfig config = new ServerConfig.QueryMemoryConfig();
+        config.setGlobalLimit(globalLimit);
+        config.setQueryLimit(queryLimit);
+        config.setMaxHeavyQueries(maxHeavyQueries);
+        config.setAdmissionTimeout(admissionTimeout);
+        manager.init(config);
+    }
+
+    private void awaitWaiting() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (manager.getWaiting() == 0) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static void assertError(int errorCode, Runnable runnable) {
+        try {
+            runnable.run();
+            Assert.fail();
+        } catch (MycatException e) {
+            Assert.assertEquals(errorCode, e.getErrorCode());
+        }
+    }
+}
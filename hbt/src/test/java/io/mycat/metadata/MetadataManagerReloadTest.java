@@ -0,0 +1,114 @@
+package io.mycat.metadata;
+
+import io.mycat.MycatConfig;
+import io.mycat.SimpleColumnInfo;
+import io.mycat.config.ShardingQueryRootConfig;
+import io.mycat.config.ShardingTableConfig;
+import io.mycat.config.SharingFuntionRootConfig;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+/**
+ * 重新加载配置时沿用没有修改的库与表,新的快照一次替换
+ */
+public class MetadataManagerReloadTest {
+    private static final String SCHEMA = "reload_db";
+
+    @Test
+    public void testRebuildChangedTables() {
+        MetadataManager metadataManager = MetadataManager.INSTANCE;
+        Map<String, ShardingTableConfig> tables = new HashMap<>();
+        tables.put("reload_same", config("db1", "db2"));
+        tables.put("reload_changed", config("db1", "db2"));
+        tables.put("reload_removed", config("db1", "db2"));
+        metadataManager.load(mycatConfig(null, tables));
+        Map<String, SchemaHandler> oldSchemaMap = metadataManager.getSchemaMap();
+        TableHandler same = metadataManager.getTable(SCHEMA, "reload_same");
+        TableHandler changed = metadataManager.getTable(SCHEMA, "reload_changed");
+        TableHandler removed = metadataManager.getTable(SCHEMA, "reload_removed");
+        Assert.assertNotNull(same);
+        Assert.assertNotNull(changed);
+        Assert.assertNotNull(removed);
+
+        tables = new HashMap<>();
+        tables.put("reload_same", config("db1", "db2"));
+        tables.put("reload_changed", config("db1", "db2", "db3"));
+        tables.put("reload_added", config("db1", "db2"));
+        metadataManager.load(mycatConfig(null, tables));
+        Assert.assertSame(same, metadataManager.getTable(SCHEMA, "reload_same"));
+        Assert.assertNotSame(changed, metadataManager.getTable(SCHEMA, "reload_changed"));
+        Assert.assertNotNull(metadataManager.getTable(SCHEMA, "reload_changed"));
+        Assert.assertNotNull(metadataManager.getTable(SCHEMA, "reload_added"));
+        Assert.assertNull(metadataManager.getTable(SCHEMA, "reload_removed"));
+
+        //加载之前取得的快照不受影响,正在执行的查询继续使用原来的表
+        Map<String, TableHandler> oldTables = oldSchemaMap.get(SCHEMA).logicTables();
+        Assert.assertSame(changed, oldTables.get("reload_changed"));
+        Assert.assertSame(removed, oldTables.get("reload_removed"));
+        Assert.assertNull(oldTables.get("reload_added"));
+    }
+
+    @Test
+    public void testReuseUnchangedSchema() {
+        MetadataManager metadataManager = MetadataManager.INSTANCE;
+        metadataManager.load(mycatConfig(null, Collections.singletonMap("reload_t", config("db1", "db2"))));
+        SchemaHandler schemaHandler = metadataManager.getSchemaMap().get(SCHEMA);
+        Map<String, SchemaHandler> oldSchemaMap = metadataManager.getSchemaMap();
+
+        metadataManager.load(mycatConfig(null, Collections.singletonMap("reload_t", config("db1", "db2"))));
+        Assert.assertNotSame(oldSchemaMap, metadataManager.getSchemaMap());
+        Assert.assertSame(schemaHandler, metadataManager.getSchemaMap().get(SCHEMA));
+    }
+
+    /**
+     * 原型库变化时所有表都重新创建
+     */
+    @Test
+    public void testPrototypeChanged() {
+        MetadataManager metadataManager = MetadataManager.INSTANCE;
+        metadataManager.load(mycatConfig(new ShardingQueryRootConfig.PrototypeServer("prototype1"),
+                Collections.singletonMap("reload_t", config("db1", "db2"))));
+        TableHandler table = metadataManager.getTable(SCHEMA, "reload_t");
+
+        metadataManager.load(mycatConfig(new ShardingQueryRootConfig.PrototypeServer("prototype2"),
+                Collections.singletonMap("reload_t", config("db1", "db2"))));
+        TableHandler reloaded = metadataManager.getTable(SCHEMA, "reload_t");
+        Assert.assertNotNull(reloaded);
+        Assert.assertNotSame(table, reloaded);
+    }
+
+    private static MycatConfig mycatConfig(ShardingQueryRootConfig.PrototypeServer prototype, Map<String, ShardingTableConfig> tables) {
+        ShardingQueryRootConfig.LogicSchemaConfig schemaConfig = new ShardingQueryRootConfig.LogicSchemaConfig();
+        schemaConfig.setSchemaName(SCHEMA);
+        schemaConfig.setTargetName("defaultDs");
+        schemaConfig.getShadingTables().putAll(tables);
+        MycatConfig mycatConfig = new MycatConfig();
+        mycatConfig.getMetadata().setPrototype(prototype);
+        mycatConfig.getMetadata().getSchemas().add(schemaConfig);
+        return mycatConfig;
+    }
+
+    private static ShardingTableConfig config(String... schemas) {
+        List<ShardingQueryRootConfig.BackEndTableInfoConfig> dataNodes = new ArrayList<>();
+        for (String schema : schemas) {
+            dataNodes.add(ShardingQueryRootConfig.BackEndTableInfoConfig.builder()
+                    .targetName("defaultDatasourceName").schemaName(schema).tableName("reload").build());
+        }
+        Map<String, String> properties = new HashMap<>();
+        properties.put("partitionCount", String.valueOf(schemas.length));
+        properties.put("partitionLength", String.valueOf(1024 / schemas.length));
+        return ShardingTableConfig.builder()
+                .dataNodes(dataNodes)
+                .columns(Collections.singletonList(ShardingQueryRootConfig.Column.builder()
+                        .columnName("id").function(SharingFuntionRootConfig.ShardingFuntion.builder().name("partitionByLong")
+                                .clazz("io.mycat.router.function.PartitionByLong").properties(properties).ranges(Collections.emptyMap())
+                                .build()).shardingType(SimpleColumnInfo.ShardingType.NATURE_DATABASE_TABLE.name()).build()))
+                .createTableSQL("CREATE TABLE `reload` (\n" +
+                        "  `id` bigint(20) NOT NULL PRIMARY KEY,\n" +
+                        "  `user_id` varchar(100) DEFAULT NULL\n" +
+                        ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;")
+                .build();
+    }
+}
@@ -0,0 +1,294 @@
+package io.mycat.metadata;
+
+import io.mycat.MycatConfig;
+import io.mycat.MycatException;
+import io.mycat.SimpleColumnInfo;
+import io.mycat.config.ShardingQueryRootConfig;
+import io.mycat.config.ShardingTableConfig;
+import io.mycat.config.SharingFuntionRootConfig;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+
+public class ReshardingTaskTest {
+    private static final String SCHEMA = "db1";
+
+    /**
+     * 全量复制期间拒绝全部写入,切换路由后删除旧分片上的行,删除完成才恢复写入
+     */
+    @Test
+    public void testCopyFenceSwitch() {
+        RecordingTask task = create("reshard_full", new ReshardingTask.Options());
+        task.run();
+        Assert.assertEquals(Arrays.asList(
+                "copy ALL source",
+                "persist ALL source",
+                "delete ALL target"), task.events);
+        Assert.assertEquals(ReshardingTask.State.CLEANED, task.getState());
+        Assert.assertSame(task.getTarget(), MetadataManager.INSTANCE.getTable(SCHEMA, "reshard_full"));
+        Assert.assertNull(MetadataManager.INSTANCE.getWriteFence(task.getSource()));
+        Assert.assertTrue(task.isDone());
+    }
+
+    /**
+     * 有修改时间字段时全量复制只拒绝DELETE,补齐增量时拒绝全部写入
+     */
+    @Test
+    public void testIncrementalCopyFenceSwitch() {
+        ReshardingTask.Options options = new ReshardingTask.Options();
+        options.setUpdateTimeColumn("update_time");
+        RecordingTask task = create("reshard_incremental", options);
+        task.run();
+        Assert.assertEquals(Arrays.asList(
+                "start DELETE source",
+                "copy DELETE source",
+                "catch up ALL source",
+                "persist ALL source",
+                "delete ALL target"), task.events);
+        Assert.assertEquals(ReshardingTask.State.CLEANED, task.getState());
+        Assert.assertNull(MetadataManager.INSTANCE.getWriteFence(task.getSource()));
+    }
+
+    @Test
+    public void testKeepMovedRows() {
+        ReshardingTask.Options options = new ReshardingTask.Options();
+        options.setDeleteMovedRows(false);
+        RecordingTask task = create("reshard_keep", options);
+        task.run();
+        Assert.assertEquals(Arrays.asList("copy ALL source", "persist ALL source"), task.events);
+        Assert.assertEquals(ReshardingTask.State.SWITCHED, task.getState());
+        Assert.assertSame(task.getTarget(), MetadataManager.INSTANCE.getTable(SCHEMA, "reshard_keep"));
+    }
+
+    /**
+     * 复制失败时不切换路由,恢复写入
+     */
+    @Test
+    public void testCopyFailed() {
+        RecordingTask task = create("reshard_failed", new ReshardingTask.Options());
+        task.failOnCopy = true;
+        try {
+            task.run();
+            Assert.fail();
+        } catch (MycatException ignored) {
+        }
+        Assert.assertEquals(ReshardingTask.State.FAILED, task.getState());
+        Assert.assertSame(task.getSource(), MetadataManager.INSTANCE.getTable(SCHEMA, "reshard_failed"));
+        Assert.assertNull(MetadataManager.INSTANCE.getWriteFence(task.getSource()));
+    }
+
+    @Test
+    public void testCanceledBeforeSwitch() {
+        RecordingTask task = create("reshard_canceled", new ReshardingTask.Options());
+        task.cancel();
+        try {
+            task.run();
+            Assert.fail();
+        } catch (MycatException ignored) {
+        }
+        Assert.assertEquals(ReshardingTask.State.CANCELED, task.getState());
+        Assert.assertSame(task.getSource(), MetadataManager.INSTANCE.getTable(SCHEMA, "reshard_canceled"));
+    }
+
+    /**
+     * 配置写入失败时不切换路由
+     */
+    @Test
+    public void testPersistFailed() {
+        RecordingTask task = create("reshard_persist_failed", new ReshardingTask.Options());
+        task.failOnPersist = true;
+        try {
+            task.run();
+            Assert.fail();
+        } catch (MycatException ignored) {
+        }
+        Assert.assertEquals(ReshardingTask.State.FAILED, task.getState());
+        Assert.assertSame(task.getSource(), MetadataManager.INSTANCE.getTable(SCHEMA, "reshard_persist_failed"));
+        Assert.assertNull(MetadataManager.INSTANCE.getWriteFence(task.getSource()));
+    }
+
+    /**
+     * 设置写屏障后等待屏障之前开始的写语句结束,超时则放弃迁移
+     */
+    @Test
+    public void testFenceWaitsForWritingStatements() throws Exception {
+        ReshardingTask.Options options = new ReshardingTask.Options();
+        options.setFenceTimeoutMillis(50);
+        RecordingTask timeout = create("reshard_writing", options);
+        AutoCloseable permit = MetadataManager.INSTANCE.enterWrite(timeout.getSource(), false);
+        try {
+            timeout.run();
+            Assert.fail();
+        } catch (MycatException ignored) {
+        }
+        Assert.assertEquals(ReshardingTask.State.FAILED, timeout.getState());
+        Assert.assertTrue(timeout.events.isEmpty());
+        Assert.assertNull(MetadataManager.INSTANCE.getWriteFence(timeout.getSource()));
+
+        options.setFenceTimeoutMillis(10000);
+        RecordingTask task = create("reshard_writing", options);
+        Thread thread = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+                permit.close();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        thread.start();
+        task.run();
+        thread.join();
+        Assert.assertEquals(ReshardingTask.State.CLEANED, task.getState());
+        Assert.assertEquals("copy ALL source", task.events.get(0));
+        permit.close();
+    }
+
+    @Test
+    public void testEnterWrite() throws Exception {
+        RecordingTask task = create("reshard_enter", new ReshardingTask.Options());
+        MetadataManager metadataManager = MetadataManager.INSTANCE;
+        metadataManager.setWriteFence(task.getSource(), MetadataManager.WriteFence.DELETE);
+        try {
+            metadataManager.enterWrite(task.getSource(), false).close();
+            try {
+                metadataManager.enterWrite(task.getSource(), true);
+                Assert.fail();
+            } catch (MycatException ignored) {
+            }
+            //透传语句在有写屏障时解析表名
+            try {
+                metadataManager.enterWrite(SCHEMA, "delete from reshard_enter where id = 1");
+                Assert.fail();
+            } catch (MycatException ignored) {
+            }
+            metadataManager.enterWrite(SCHEMA, "delete from other_table where id = 1").close();
+        } finally {
+            metadataManager.setWriteFence(task.getSource(), null);
+        }
+        metadataManager.enterWrite(task.getSource(), true).close();
+        metadataManager.awaitWrites(task.getSource(), 0);
+    }
+
+    /**
+     * 主键的最小值与最大值相差超过long的范围时仍然得到连续的区间
+     */
+    @Test
+    public void testSplitRange() {
+        assertRanges(ReshardingTask.splitRange(Long.MIN_VALUE, Long.MAX_VALUE, 4), Long.MIN_VALUE, Long.MAX_VALUE, 4);
+        assertRanges(ReshardingTask.splitRange(-10, Long.MAX_VALUE, 3), -10, Long.MAX_VALUE, 3);
+        assertRanges(ReshardingTask.splitRange(1, 10, 4), 1, 10, 4);
+        assertRanges(ReshardingTask.splitRange(5, 5, 4), 5, 5, 1);
+    }
+
+    private static void assertRanges(List<long[]> ranges, long min, long max, int count) {
+        Assert.assertEquals(count, ranges.size());
+        Assert.assertEquals(min, ranges.get(0)[0]);
+        Assert.assertEquals(max, ranges.get(ranges.size() - 1)[1]);
+        for (int i = 0; i < ranges.size(); i++) {
+            Assert.assertTrue(ranges.get(i)[0] <= ranges.get(i)[1]);
+            if (i > 0) {
+                Assert.assertEquals(ranges.get(i - 1)[1] + 1, ranges.get(i)[0]);
+            }
+        }
+    }
+
+    /**
+     * 上一个任务结束之前不能创建同一个表的任务
+     */
+    @Test
+    public void testRejectConcurrentReshard() {
+        create("reshard_concurrent", new ReshardingTask.Options());
+        try {
+            MetadataManager.INSTANCE.reshard(SCHEMA, "reshard_concurrent", config("db3", "db4"), null, new ReshardingTask.Options());
+            Assert.fail();
+        } catch (MycatException ignored) {
+        }
+    }
+
+    private static RecordingTask create(String tableName, ReshardingTask.Options options) {
+        MetadataManager metadataManager = MetadataManager.INSTANCE;
+        metadataManager.addSchema(SCHEMA, "defaultDs");
+        metadataManager.addTable(SCHEMA, tableName, config("db1", "db2"), config("db1", "db2").getDataNodes(), null);
+        ShardingTable source = (ShardingTable) metadataManager.getTable(SCHEMA, tableName);
+        ReshardingTask task = metadataManager.reshard(SCHEMA, tableName, config("db1", "db2", "db3", "db4"), null, options);
+        return new RecordingTask(source, task.getTarget(), task.getTargetConfig(), options);
+    }
+
+    private static ShardingTableConfig config(String... schemas) {
+        List<ShardingQueryRootConfig.BackEndTableInfoConfig> dataNodes = new ArrayList<>();
+        for (String schema : schemas) {
+            dataNodes.add(ShardingQueryRootConfig.BackEndTableInfoConfig.builder()
+                    .targetName("defaultDatasourceName").schemaName(schema).tableName("reshard").build());
+        }
+        Map<String, String> properties = new HashMap<>();
+        properties.put("partitionCount", String.valueOf(schemas.length));
+        properties.put("partitionLength", String.valueOf(1024 / schemas.length));
+        return ShardingTableConfig.builder()
+                .dataNodes(dataNodes)
+                .columns(Collections.singletonList(ShardingQueryRootConfig.Column.builder()
+                        .columnName("id").function(SharingFuntionRootConfig.ShardingFuntion.builder().name("partitionByLong")
+                                .clazz("io.mycat.router.function.PartitionByLong").properties(properties).ranges(Collections.emptyMap())
+                                .build()).shardingType(SimpleColumnInfo.ShardingType.NATURE_DATABASE_TABLE.name()).build()))
+                .createTableSQL("CREATE TABLE `reshard` (\n" +
+                        "  `id` bigint(20) NOT NULL PRIMARY KEY,\n" +
+                        "  `user_id` varchar(100) DEFAULT NULL,\n" +
+                        "  `update_time` datetime DEFAULT NULL\n" +
+                        ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;")
+                .build();
+    }
+
+    /**
+     * 不访问存储节点,记录每一步执行时的写入限制与路由
+     */
+    private static class RecordingTask extends ReshardingTask {
+        final List<String> events = new ArrayList<>();
+        boolean failOnCopy;
+        boolean failOnPersist;
+
+        RecordingTask(ShardingTable source, ShardingTable target, ShardingTableConfig targetConfig, Options options) {
+            super(source, target, targetConfig, options);
+        }
+
+        @Override
+        Map<String, String> queryCopyStartTimes() {
+            record("start");
+            return Collections.emptyMap();
+        }
+
+        @Override
+        void copyRows(ExecutorService executor, Map<String, String> since) {
+            if (failOnCopy) {
+                throw new IllegalStateException("copy failed");
+            }
+            record(since == null ? "copy" : "catch up");
+        }
+
+        @Override
+        MycatConfig persistConfig() {
+            if (failOnPersist) {
+                throw new IllegalStateException("persist failed");
+            }
+            record("persist");
+            return null;
+        }
+
+        @Override
+        void restoreConfig(MycatConfig originConfig) {
+            record("restore");
+        }
+
+        @Override
+        void deleteMovedRows() {
+            record("delete");
+        }
+
+        private void record(String step) {
+            MetadataManager metadataManager = MetadataManager.INSTANCE;
+            TableHandler current = metadataManager.getTable(getSource().getSchemaName(), getSource().getTableName());
+            events.add(step + " " + metadataManager.getWriteFence(getSource())
+                    + " " + (current == getSource() ? "source" : current == getTarget() ? "target" : "other"));
+        }
+    }
+}
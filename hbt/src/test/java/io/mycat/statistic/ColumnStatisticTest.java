@@ -0,0 +1,134 @@
+package io.mycat.statistic;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * 采样生成的直方图与基于直方图的范围比例估计
+ */
+public class ColumnStatisticTest {
+
+    @Test
+    public void testUniformHistogram() {
+        ColumnStatisticBuilder builder = new ColumnStatisticBuilder("id");
+        for (int i = 0; i < 1000; i++) {
+            builder.add(i);
+        }
+        ColumnStatistic statistic = builder.build(null);
+        Assert.assertTrue(statistic.hasHistogram());
+        Assert.assertEquals(ColumnStatisticBuilder.HISTOGRAM_BUCKETS + 1, statistic.getHistogram().length);
+        Assert.assertEquals(0, statistic.getMinValue(), 0);
+        Assert.assertEquals(999, statistic.getMaxValue(), 0);
+        Assert.assertEquals(0.5, statistic.lessThanFraction(500, false), 0.01);
+        Assert.assertEquals(0.1, statistic.lessThanFraction(100, true), 0.01);
+        Assert.assertEquals(0, statistic.lessThanFraction(0, false), 0);
+        Assert.assertEquals(0, statistic.lessThanFraction(-1, true), 0);
+        Assert.assertEquals(1, statistic.lessThanFraction(999, true), 0);
+        Assert.assertEquals(1, statistic.lessThanFraction(5000, false), 0);
+        Assert.assertTrue(statistic.outOfRange(1000));
+        Assert.assertFalse(statistic.outOfRange(10));
+    }
+
+    /**
+     * 倾斜数据的直方图按行数等分,大部分行落在同一个值上
+     */
+    @Test
+    public void testSkewedHistogram() {
+        ColumnStatisticBuilder builder = new ColumnStatisticBuilder("status");
+        for (int i = 0; i < 900; i++) {
+            builder.add(1);
+        }
+        for (int i = 0; i < 100; i++) {
+            builder.add(100 + i);
+        }
+        ColumnStatistic statistic = builder.build(null);
+        Assert.assertEquals(0, statistic.lessThanFraction(1, false), 0);
+        Assert.assertEquals(0.9, statistic.lessThanFraction(1, true), 0.05);
+        Assert.assertEquals(0.95, statistic.lessThanFraction(150, true), 0.05);
+        Assert.assertEquals(101, statistic.getNdv(), 101 * 0.05);
+    }
+
+    @Test
+    public void testNullAndNdvScaling() {
+        ColumnStatisticBuilder builder = new ColumnStatisticBuilder("id");
+        for (int i = 0; i < 1000; i++) {
+            builder.add(i % 4 == 0 ? null : i);
+        }
+        ColumnStatistic sample = builder.build(null);
+        Assert.assertEquals(0.25, sample.getNullFraction(), 0);
+        Assert.assertEquals(750, sample.getNdv(), 750 * 0.05);
+        //样本几乎没有重复值时,NDV按表行数放大
+        ColumnStatistic scaled = builder.build(10000d);
+        Assert.assertEquals(7500, scaled.getNdv(), 7500 * 0.05);
+    }
+
+    @Test
+    public void testMerge() {
+        ColumnStatisticBuilder left = new ColumnStatisticBuilder("id");
+        ColumnStatisticBuilder right = new ColumnStatisticBuilder("id");
+        for (int i = 0; i < 500; i++) {
+            left.add(i);
+            right.add(500 + i);
+        }
+        left.merge(right);
+        ColumnStatistic statistic = left.build(null);
+        Assert.assertEquals(1000, left.getCount());
+        Assert.assertEquals(999, statistic.getMaxValue(), 0);
+        Assert.assertEquals(0.5, statistic.lessThanFraction(500, false), 0.01);
+    }
+
+    @Test
+    public void testStringColumn() {
+        ColumnStatisticBuilder builder = new ColumnStatisticBuilder("name");
+        builder.add(1);
+        builder.add("a");
+        builder.add("b");
+        ColumnStatistic statistic = builder.build(null);
+        Assert.assertFalse(statistic.hasHistogram());
+        Assert.assertNull(statistic.getMinValue());
+        Assert.assertNull(statistic.lessThanFraction(1, true));
+        Assert.assertEquals(3, statistic.getNdv(), 0.5);
+    }
+
+    /**
+     * 时间列的样本与Calcite时间字面量的Calendar换算到同一个坐标上
+     */
+    @Test
+    public void testTemporalHistogram() {
+        ColumnStatisticBuilder builder = new ColumnStatisticBuilder("create_time");
+        LocalDate start = LocalDate.of(2020, 1, 1);
+        for (int i = 0; i < 366; i++) {
+            LocalDateTime time = start.plusDays(i).atStartOfDay();
+            builder.add(i % 2 == 0 ? time : Timestamp.valueOf(time));
+        }
+        ColumnStatistic statistic = builder.build(null);
+        Assert.assertTrue(statistic.hasHistogram());
+
+        Calendar literal = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+        literal.clear();
+        literal.set(2020, Calendar.JULY, 1);
+        double value = ColumnStatistic.toDouble(literal);
+        Assert.assertEquals(ColumnStatistic.toDouble(LocalDate.of(2020, 7, 1)), value, 0);
+        Assert.assertEquals(182.0 / 366, statistic.lessThanFraction(value, false), 0.01);
+        Assert.assertFalse(statistic.outOfRange(value));
+
+        literal.set(2021, Calendar.JULY, 1);
+        Assert.assertTrue(statistic.outOfRange(ColumnStatistic.toDouble(literal)));
+    }
+
+    @Test
+    public void testToDouble() {
+        LocalDateTime time = LocalDateTime.of(2020, 5, 6, 7, 8, 9);
+        Assert.assertEquals(ColumnStatistic.toDouble(time), ColumnStatistic.toDouble(Timestamp.valueOf(time)));
+        Assert.assertEquals(1.5, ColumnStatistic.toDouble(new java.math.BigDecimal("1.5")), 0);
+        Assert.assertNull(ColumnStatistic.toDouble("2020-05-06"));
+        Assert.assertNull(ColumnStatistic.toDouble(null));
+    }
+}
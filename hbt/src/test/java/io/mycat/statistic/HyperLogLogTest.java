@@ -0,0 +1,93 @@
+package io.mycat.statistic;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * 基数估计的误差,合并与数值类型的处理
+ */
+public class HyperLogLogTest {
+
+    @Test
+    public void testCardinality() {
+        HyperLogLog hyperLogLog = new HyperLogLog();
+        for (long i = 0; i < 100000; i++) {
+            hyperLogLog.add(i);
+        }
+        Assert.assertEquals(100000, hyperLogLog.cardinality(), 100000 * 0.05);
+    }
+
+    @Test
+    public void testSmallCardinality() {
+        HyperLogLog hyperLogLog = new HyperLogLog();
+        for (int n = 0; n < 3; n++) {
+            for (int i = 0; i < 10; i++) {
+                hyperLogLog.add("v" + i);
+            }
+        }
+        hyperLogLog.add(null);
+        Assert.assertEquals(10, hyperLogLog.cardinality(), 0.5);
+    }
+
+    @Test
+    public void testMerge() {
+        HyperLogLog left = new HyperLogLog();
+        HyperLogLog right = new HyperLogLog();
+        for (long i = 0; i < 60000; i++) {
+            left.add(i);
+        }
+        for (long i = 40000; i < 100000; i++) {
+            right.add(i);
+        }
+        left.merge(right);
+        Assert.assertEquals(100000, left.cardinality(), 100000 * 0.05);
+    }
+
+    /**
+     * 小数不能截断为整数,否则NDV被低估
+     */
+    @Test
+    public void testFractionalValues() {
+        HyperLogLog decimals = new HyperLogLog();
+        HyperLogLog doubles = new HyperLogLog();
+        for (int i = 0; i < 1000; i++) {
+            decimals.add(BigDecimal.valueOf(i, 2));
+            doubles.add(i / 100.0);
+        }
+        Assert.assertEquals(1000, decimals.cardinality(), 1000 * 0.05);
+        Assert.assertEquals(1000, doubles.cardinality(), 1000 * 0.05);
+    }
+
+    /**
+     * 相等的数值不论来自哪种类型都只计一次
+     */
+    @Test
+    public void testEqualNumbers() {
+        HyperLogLog hyperLogLog = new HyperLogLog();
+        hyperLogLog.add(1L);
+        hyperLogLog.add(1);
+        hyperLogLog.add((short) 1);
+        hyperLogLog.add(new BigDecimal("1.00"));
+        hyperLogLog.add(BigInteger.ONE);
+        hyperLogLog.add(1.0d);
+        hyperLogLog.add(1.0f);
+        Assert.assertEquals(1, hyperLogLog.cardinality(), 0.5);
+
+        hyperLogLog.add(new BigDecimal("1.50"));
+        hyperLogLog.add(1.5d);
+        hyperLogLog.add(1.5f);
+        Assert.assertEquals(2, hyperLogLog.cardinality(), 0.5);
+
+        hyperLogLog.add(new BigInteger("99999999999999999999"));
+        hyperLogLog.add(new BigDecimal("99999999999999999999.0"));
+        Assert.assertEquals(3, hyperLogLog.cardinality(), 0.5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergePrecisionMismatch() {
+        new HyperLogLog(10).merge(new HyperLogLog(12));
+    }
+}
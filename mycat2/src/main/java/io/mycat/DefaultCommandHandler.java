@@ -237,6 +237,7 @@ public class DefaultCommandHandler extends AbstractCommandHandler {
                 ReceiverImpl receiver = new ReceiverImpl(session);
                 receiver.sendBinaryResultSet(() -> baseIterator);
             } else {
+                dataContext.addStatementResource(MetadataManager.INSTANCE.enterWrite(dataContext.getDefaultSchema(), sql));
                 RowBaseIterator baseIterator = client.query(sql);
                 baseIterator.next();//触发计算
                 ReceiverImpl receiver = new ReceiverImpl(session);
@@ -33,6 +33,8 @@ import io.mycat.proxy.session.MySQLClientSession;
 import io.mycat.proxy.session.MySQLSessionManager;
 import io.mycat.proxy.session.MycatSession;
 import io.mycat.proxy.session.SessionManager.PartialType;
+import io.mycat.sqlrecorder.SqlRecord;
+import io.mycat.util.TimeProvider;
 import lombok.ToString;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,8 +57,14 @@ public class MySQLTaskUtil {
                                                     TransactionSyncType transaction,
                                                     MySQLIsolation isolation) {
         //todo fix the log
+        byte[] packetData = MySQLPacketUtil.generateComQueryPacket(sql);
+        SqlRecord record = new SqlRecord();
+        record.setStatement(sql);
+        record.setStartTime(TimeProvider.INSTANCE.now());
+        record.setNetInBytes(packetData.length);
+        mycat.setProxyRecord(record);
         proxyBackendByDataSource(mycat,
-                MySQLPacketUtil.generateComQueryPacket(sql),
+                packetData,
                 datasourceName,
                 DEFAULT_BACKEND_SESSION_REQUEST_FAILED_CALLBACK,
                 transaction, isolation);
@@ -27,6 +27,7 @@ import io.mycat.buffer.BufferPool;
 import io.mycat.buffer.HeapBufferPool;
 import io.mycat.client.InterceptorRuntime;
 import io.mycat.command.CommandDispatcher;
+import io.mycat.commands.MycatdbCommand;
 import io.mycat.config.*;
 import io.mycat.datasource.jdbc.DatasourceProvider;
 import io.mycat.datasource.jdbc.JdbcRuntime;
@@ -34,6 +35,9 @@ import io.mycat.datasource.jdbc.datasource.DefaultConnection;
 import io.mycat.datasource.jdbc.datasourceprovider.AtomikosDatasourceProvider;
 import io.mycat.datasource.jdbc.transactionsession.JTATransactionSession;
 import io.mycat.ext.MySQLAPIImpl;
+import io.mycat.hbt4.NativeQueryDispatcher;
+import io.mycat.hbt4.cancel.QueryCancelManager;
+import io.mycat.hbt4.memory.QueryMemoryManager;
 import io.mycat.manager.ManagerCommandDispatcher;
 import io.mycat.metadata.MetadataManager;
 import io.mycat.plug.PlugRuntime;
@@ -44,10 +48,12 @@ import io.mycat.proxy.session.AuthenticatorImpl;
 import io.mycat.proxy.session.MySQLClientSession;
 import io.mycat.proxy.session.MycatSession;
 import io.mycat.proxy.session.MycatSessionManager;
+import io.mycat.querystat.QueryStatStore;
 import io.mycat.replica.ReplicaSelectorRuntime;
 import io.mycat.runtime.LocalTransactionSession;
 import io.mycat.runtime.MycatDataContextSupport;
 import io.mycat.runtime.ProxyTransactionSession;
+import io.mycat.statistic.StatisticCenter;
 import io.mycat.util.ApplicationContext;
 import io.mycat.util.CharsetUtil;
 import lombok.Getter;
@@ -95,6 +101,15 @@ public enum MycatCore {
         InterceptorRuntime.INSTANCE.load(mycatConfig);
 
         MetadataManager.INSTANCE.load(mycatConfig);
+        StatisticCenter.INSTANCE.init(MetadataManager.INSTANCE, mycatConfig.getServer().getTempDirectory());
+        ServerConfig.StatisticConfig statisticConfig = mycatConfig.getServer().getStatistic();
+        StatisticCenter.INSTANCE.setConcurrency(statisticConfig.getConcurrency());
+        StatisticCenter.INSTANCE.setUseEstimate(statisticConfig.isUseEstimate());
+        StatisticCenter.INSTANCE.scheduleRefresh(statisticConfig.getRefreshPeriod(), TimeUnit.valueOf(statisticConfig.getRefreshTimeUnit()));
+        QueryStatStore.INSTANCE.init(mycatConfig.getServer().getQueryStat(), mycatConfig.getServer().getTempDirectory());
+        MycatdbCommand.INSTANCE.init(mycatConfig.getServer().getStatementCache());
+        QueryMemoryManager.INSTANCE.init(mycatConfig.getServer().getQueryMemory());
+        QueryCancelManager.INSTANCE.init(mycatConfig.getServer().getQueryTimeout());
 
         CharsetUtil.init(null);
         //context.scanner("io.mycat.sqlHandler").inject();
@@ -164,11 +179,18 @@ public enum MycatCore {
             };
             Map<String, UserConfig> userConfigMap = mycatConfig.getInterceptors().stream().map(u -> u.getUser()).collect((Collectors.toMap(k -> k.getUsername(), v -> v)));
             MycatReactorThread thread = new MycatReactorThread(new ProxyBufferPoolMonitor(bufferPool), new MycatSessionManager(function, new AuthenticatorImpl(userConfigMap)));
+            ServerConfig.ReactorConfig reactorConfig = serverConfig.getReactor();
+            if (reactorConfig != null) {
+                thread.setIoRatio(reactorConfig.getIoRatio());
+                thread.setBusySpinNanos(reactorConfig.getBusySpinNanos());
+                thread.setMaxPendingJobs(reactorConfig.getMaxPendingJobs());
+            }
             thread.start();
             list.add(thread);
         }
 
         this.reactorManager = new ReactorThreadManager(list);
+        NativeQueryDispatcher.Holder.INSTANCE.register(new NativeQueryDispatcherImpl());
         idleConnectCheck(mycatConfig, reactorManager);
         heartbeat(mycatConfig, reactorManager);
 
@@ -351,7 +373,14 @@ public enum MycatCore {
 
     //动态更新仅更新这两部分
     public void flash(MycatConfig config){
-        datasourceMap.clear();
+        //配置没有变化的数据源保留
+        Map<String, DatasourceRootConfig.DatasourceConfig> datasourceConfigMap = config.getDatasource().getDatasources().stream()
+                .collect(Collectors.toMap(k -> k.getName(), v -> v));
+        for (MySQLDatasource datasource : new ArrayList<>(datasourceMap.values())) {
+            if (!datasource.getDatasourceConfig().equals(datasourceConfigMap.get(datasource.getName()))) {
+                datasourceMap.remove(datasource.getName());
+            }
+        }
         heartbeat(config, reactorManager);
     }
 
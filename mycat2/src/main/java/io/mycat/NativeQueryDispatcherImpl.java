@@ -0,0 +1,338 @@
+/**
+ * Copyright (C) <2020>  <chen junwen>
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with this program.  If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mycat;
+
+import io.mycat.api.collector.ResultSetCollector;
+import io.mycat.api.collector.TextResultSetTransforCollector;
+import io.mycat.beans.MySQLDatasource;
+import io.mycat.beans.mysql.MySQLCommandType;
+import io.mycat.beans.mysql.packet.ColumnDefPacket;
+import io.mycat.beans.mysql.packet.ErrorPacketImpl;
+import io.mycat.hbt4.NativeQueryDispatcher;
+import io.mycat.hbt4.executor.MycatNativeScanExecutor;
+import io.mycat.proxy.MySQLPacketUtil;
+import io.mycat.proxy.callback.ResultSetCallBack;
+import io.mycat.proxy.callback.SessionCallBack;
+import io.mycat.proxy.handler.backend.ResultSetHandler;
+import io.mycat.proxy.handler.backend.TextResultSetHandler;
+import io.mycat.proxy.reactor.MycatReactorThread;
+import io.mycat.proxy.reactor.NIOJob;
+import io.mycat.proxy.reactor.ReactorEnvThread;
+import io.mycat.proxy.session.MySQLClientSession;
+import io.mycat.proxy.session.MySQLSessionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * 在reactor线程上使用原生MySQL连接执行分片查询,
+ * 一个reactor线程可以同时驱动任意数量的分片扫描
+ *
+ * @author Junwen Chen
+ **/
+public class NativeQueryDispatcherImpl implements NativeQueryDispatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(NativeQueryDispatcherImpl.class);
+
+    @Override
+    public boolean isSupported(String targetName) {
+        return MycatCore.INSTANCE.getReactorManager() != null && MycatCore.INSTANCE.getDatasource(targetName) != null;
+    }
+
+    @Override
+    public void query(String targetName, String sql, MycatNativeScanExecutor sink) {
+        MycatReactorThread reactor = MycatCore.INSTANCE.getReactorManager().getLeastLoadedReactor();
+        //新的查询在reactor繁忙时直接失败,已经开始的查询的后续任务不受队列上限限制
+        boolean added = reactor.tryAddNIOJob(new NIOJob() {
+            @Override
+            public void run(ReactorEnvThread reactorEnvThread) throws Exception {
+                if (sink.isClosed()) {
+                    sink.onFinished();
+                    return;
+                }
+                MySQLDatasource datasource = MycatCore.INSTANCE.getDatasource(targetName);
+                reactor.getMySQLSessionManager().getIdleSessionsOfKey(datasource, new SessionCallBack<MySQLClientSession>() {
+                    @Override
+                    public void onSession(MySQLClientSession session, Object sender, Object attr) {
+                        request(session, sql, sink);
+                    }
+
+                    @Override
+                    public void onException(Exception exception, Object sender, Object attr) {
+                        sink.onError(exception);
+                    }
+                });
+            }
+
+            @Override
+            public void stop(ReactorEnvThread reactor, Exception reason) {
+                sink.onError(reason);
+            }
+
+            @Override
+            public String message() {
+                return "native scan " + targetName;
+            }
+        });
+        if (!added) {
+            sink.onError(new MycatException("reactor {} pending jobs exceed {}", reactor.getName(), reactor.getMaxPendingJobs()));
+        }
+    }
+
+    private static void request(MySQLClientSession session, String sql, MycatNativeScanExecutor sink) {
+        sink.setFlowControl(new SessionFlowControl(session));
+        TextResultSetHandler handler = new TextResultSetHandler(new TextResultSetTransforCollector(new RowCollector(sink)));
+        handler.request(session, MySQLPacketUtil.generateComQueryPacket(sql), new ResultSetCallBack<MySQLClientSession>() {
+            @Override
+            public void onFinishedSendException(Exception exception, Object sender, Object attr) {
+                sink.onError(exception);
+            }
+
+            @Override
+            public void onFinishedException(Exception exception, Object sender, Object attr) {
+                sink.onError(exception);
+            }
+
+            @Override
+            public void onFinished(boolean monopolize, MySQLClientSession mysql, Object sender, Object attr) {
+                mysql.getSessionManager().addIdleSession(mysql);
+                sink.onFinished();
+            }
+
+            @Override
+            public void onErrorPacket(ErrorPacketImpl errorPacket, boolean monopolize, MySQLClientSession mysql, Object sender, Object attr) {
+                mysql.getSessionManager().addIdleSession(mysql);
+                sink.onError(new MycatException(errorPacket.getErrorMessageString()));
+            }
+        });
+    }
+
+    /**
+     * pause在reactor线程内调用,resume与cancel来自执行器线程,需要转交给reactor
+     */
+    private static class SessionFlowControl implements MycatNativeScanExecutor.FlowControl {
+        private final MySQLClientSession session;
+
+        SessionFlowControl(MySQLClientSession session) {
+            this.session = session;
+        }
+
+        @Override
+        public void pause() {
+            if (!session.hasClosed()) {
+                session.clearReadWriteOpts();
+            }
+        }
+
+        @Override
+        public void resume() {
+            session.getIOThread().addNIOJob(new NIOJob() {
+                @Override
+                public void run(ReactorEnvThread reactor) throws Exception {
+                    if (!session.hasClosed()) {
+                        session.change2ReadOpts();
+                    }
+                }
+
+                @Override
+                public void stop(ReactorEnvThread reactor, Exception reason) {
+
+                }
+
+                @Override
+                public String message() {
+                    return "resume native scan";
+                }
+            });
+        }
+
+        @Override
+        public void cancel() {
+            session.getIOThread().addNIOJob(new NIOJob() {
+                @Override
+                public void run(ReactorEnvThread reactor) throws Exception {
+                    //结果集没有读完,连接无法复用
+                    if (!session.hasClosed()) {
+                        session.close(false, "native scan canceled");
+                    }
+                }
+
+                @Override
+                public void stop(ReactorEnvThread reactor, Exception reason) {
+
+                }
+
+                @Override
+                public String message() {
+                    return "cancel native scan";
+                }
+            });
+        }
+
+        @Override
+        public void kill() {
+            session.getIOThread().addNIOJob(new NIOJob() {
+                @Override
+                public void run(ReactorEnvThread reactor) throws Exception {
+                    if (session.hasClosed()) {
+                        return;
+                    }
+                    long threadId = session.getBackendThreadId();
+                    session.close(false, "native scan killed");
+                    //断开连接不会打断后端正在执行的语句
+                    killQuery(session.getSessionManager(), session.getDatasource(), threadId);
+                }
+
+                @Override
+                public void stop(ReactorEnvThread reactor, Exception reason) {
+
+                }
+
+                @Override
+                public String message() {
+                    return "kill native scan";
+                }
+            });
+        }
+    }
+
+    /**
+     * 使用同一数据源的另一个连接发送KILL QUERY,在reactor线程调用
+     */
+    private static void killQuery(MySQLSessionManager sessionManager, MySQLDatasource datasource, long threadId) {
+        if (threadId <= 0) {
+            return;
+        }
+        sessionManager.getIdleSessionsOfKey(datasource, new SessionCallBack<MySQLClientSession>() {
+            @Override
+            public void onSession(MySQLClientSession session, Object sender, Object attr) {
+                ResultSetHandler.DEFAULT.request(session, MySQLCommandType.COM_QUERY, ("KILL QUERY " + threadId).getBytes(),
+                        new ResultSetCallBack<MySQLClientSession>() {
+                            @Override
+                            public void onFinishedSendException(Exception exception, Object sender, Object attr) {
+                                LOGGER.warn("kill query {} on {} failed", threadId, datasource.getName(), exception);
+                            }
+
+                            @Override
+                            public void onFinishedException(Exception exception, Object sender, Object attr) {
+                                LOGGER.warn("kill query {} on {} failed", threadId, datasource.getName(), exception);
+                            }
+
+                            @Override
+                            public void onFinished(boolean monopolize, MySQLClientSession mysql, Object sender, Object attr) {
+                                if (monopolize) {
+                                    mysql.close(false, "mysql session is monopolized");
+                                } else {
+                                    mysql.getSessionManager().addIdleSession(mysql);
+                                }
+                            }
+
+                            @Override
+                            public void onErrorPacket(ErrorPacketImpl errorPacket, boolean monopolize, MySQLClientSession mysql, Object sender, Object attr) {
+                                //语句已经结束时后端返回Unknown thread id
+                                LOGGER.info("kill query {} on {}:{}", threadId, datasource.getName(), errorPacket.getErrorMessageString());
+                                mysql.getSessionManager().addIdleSession(mysql);
+                            }
+                        });
+            }
+
+            @Override
+            public void onException(Exception exception, Object sender, Object attr) {
+                LOGGER.warn("kill query {} on {} failed", threadId, datasource.getName(), exception);
+            }
+        });
+    }
+
+    /**
+     * 把文本结果集的列值组装成行
+     */
+    private static class RowCollector implements ResultSetCollector {
+        private final MycatNativeScanExecutor sink;
+        private int columnCount;
+        private Object[] row;
+
+        RowCollector(MycatNativeScanExecutor sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void onResultSetStart() {
+
+        }
+
+        @Override
+        public void onResultSetEnd() {
+
+        }
+
+        @Override
+        public void onRowStart() {
+            row = new Object[columnCount];
+        }
+
+        @Override
+        public void onRowEnd() {
+            sink.onRow(row);
+            row = null;
+        }
+
+        @Override
+        public void addNull(int columnIndex) {
+            row[columnIndex] = null;
+        }
+
+        @Override
+        public void addString(int columnIndex, String value) {
+            row[columnIndex] = value;
+        }
+
+        @Override
+        public void addBlob(int columnIndex, byte[] value) {
+            row[columnIndex] = value;
+        }
+
+        @Override
+        public void addValue(int columnIndex, long value, boolean isNUll) {
+            row[columnIndex] = isNUll ? null : value;
+        }
+
+        @Override
+        public void addValue(int columnIndex, double value, boolean isNUll) {
+            row[columnIndex] = isNUll ? null : value;
+        }
+
+        @Override
+        public void addValue(int columnIndex, byte value, boolean isNUll) {
+            row[columnIndex] = isNUll ? null : value;
+        }
+
+        @Override
+        public void addDecimal(int columnIndex, BigDecimal value) {
+            row[columnIndex] = value;
+        }
+
+        @Override
+        public void collectColumnList(ColumnDefPacket[] packets) {
+            columnCount = packets.length;
+            LOGGER.debug("native scan column count:{}", columnCount);
+        }
+
+        @Override
+        public void addDate(int columnIndex, Date date) {
+            row[columnIndex] = date;
+        }
+    }
+}
@@ -8,6 +8,7 @@ import io.mycat.beans.mysql.MySQLFieldsType;
 import io.mycat.beans.resultset.MycatResponse;
 import io.mycat.beans.resultset.MycatResultSet;
 import io.mycat.commands.ExecuteCommand;
+import io.mycat.datasource.jdbc.BroadcastUpdate;
 import io.mycat.datasource.jdbc.JdbcRuntime;
 import io.mycat.datasource.jdbc.TransactionSessionUtil;
 import io.mycat.datasource.jdbc.datasource.DefaultConnection;
@@ -240,16 +241,18 @@ public class ReceiverImpl implements Response {
         TransactionSession transactionSession = dataContext.getTransactionSession();
         switch (transactionType) {
             case PROXY_TRANSACTION_TYPE:
-                transactionSession.rollback();
-                if (session.isBindMySQLSession()) {
-                    MySQLTaskUtil.proxyBackend(session, "ROLLBACK");
-                    LOGGER.debug("session id:{} action: rollback from binding session", session.sessionId());
-                    return;
-                } else {
-                    session.writeOkEndPacket();
-                    LOGGER.debug("session id:{} action: rollback from unbinding session", session.sessionId());
-                    return;
-                }
+                //事务中的jdbc连接在工作线程回滚
+                block(mycat -> {
+                    transactionSession.rollback();
+                    if (mycat.isBindMySQLSession()) {
+                        MySQLTaskUtil.proxyBackend(mycat, "ROLLBACK");
+                        LOGGER.debug("session id:{} action: rollback from binding session", mycat.sessionId());
+                    } else {
+                        mycat.writeOkEndPacket();
+                        LOGGER.debug("session id:{} action: rollback from unbinding session", mycat.sessionId());
+                    }
+                });
+                return;
             case JDBC_TRANSACTION_TYPE:
                 block(mycat -> {
                     transactionSession.rollback();
@@ -294,16 +297,18 @@ public class ReceiverImpl implements Response {
         TransactionSession transactionSession = dataContext.getTransactionSession();
         switch (transactionType) {
             case PROXY_TRANSACTION_TYPE:
-                transactionSession.commit();
-                if (!session.isBindMySQLSession()) {
-                    LOGGER.debug("session id:{} action: commit from unbinding session", session.sessionId());
-                    session.writeOkEndPacket();
-                    return;
-                } else {
-                    MySQLTaskUtil.proxyBackend(session, "COMMIT");
-                    LOGGER.debug("session id:{} action: commit from binding session", session.sessionId());
-                    return;
-                }
+                //事务中的jdbc连接在工作线程提交,失败时不再提交后端会话
+                block(mycat -> {
+                    transactionSession.commit();
+                    if (!mycat.isBindMySQLSession()) {
+                        LOGGER.debug("session id:{} action: commit from unbinding session", mycat.sessionId());
+                        mycat.writeOkEndPacket();
+                    } else {
+                        MySQLTaskUtil.proxyBackend(mycat, "COMMIT");
+                        LOGGER.debug("session id:{} action: commit from binding session", mycat.sessionId());
+                    }
+                });
+                return;
             case JDBC_TRANSACTION_TYPE:
                 block(mycat -> {
                     transactionSession.commit();
@@ -403,42 +408,19 @@ public class ReceiverImpl implements Response {
             if (targets.isEmpty()) {
                 throw new AssertionError();
             }
-            int count = targets.size();
-            String targetName = null;
-            String sql = null;
-            for (Map.Entry<String, List<String>> stringListEntry : targets.entrySet()) {
-                if (count == 1) {
-                    targetName = stringListEntry.getKey();
-                    List<String> value = stringListEntry.getValue();
-                    if (value.size() > 1) {
-                        List<String> strings = value.subList(1, value.size());
-                        try (DefaultConnection connection = JdbcRuntime.INSTANCE.getConnection(stringListEntry.getKey())) {
-                            for (String s : strings) {
-                                connection.executeUpdate(s, true, 0);
-                            }
-                        }
-                    }
-                    sql = value.get(0);
-                    break;
-                } else {
-                    try (DefaultConnection connection = JdbcRuntime.INSTANCE.getConnection(stringListEntry.getKey())) {
-                        for (String s : stringListEntry.getValue()) {
-                            connection.executeUpdate(s, true, 0);
-                        }
-                    }
-                    count--;
-                }
-            }
-            if (MycatDatasourceUtil.isProxyDatasource(targetName)) {
-                MySQLTaskUtil.proxyBackendByDatasourceName(session, targetName, sql,
-                        MySQLTaskUtil.TransactionSyncType.create(session.isAutocommit(), session.isInTransaction()),
-                        session.getIsolation());
-                return;
-            }
-            try (DefaultConnection connection = JdbcRuntime.INSTANCE.getConnection(targetName)) {
-                UpdateRowIteratorResponse updateRowIteratorResponse = connection.executeUpdate(sql, true, 0);
+            int concurrency = JdbcRuntime.INSTANCE.getUpdateConcurrency();
+            int serverStatus = session.getDataContext().getTransactionSession().getServerStatus();
+            if (!session.isInTransaction() && session.isAutocommit()) {
+                //自动提交,所有节点并行执行,全部成功后一起提交
+                UpdateRowIteratorResponse updateRowIteratorResponse = new BroadcastUpdate(targets, true, concurrency).execute(serverStatus);
                 writeToMycatSession(session, updateRowIteratorResponse);
+                return;
             }
+            //事务中,所有节点的连接都加入会话的事务,随客户端的commit/rollback一起提交或者回滚
+            TransactionSession transactionSession = session.getDataContext().getTransactionSession();
+            UpdateRowIteratorResponse updateRowIteratorResponse = TransactionSessionUtil.executeUpdateByDatasouce(transactionSession, targets, true, true);
+            session.getDataContext().setLastInsertId(updateRowIteratorResponse.getLastInsertId());
+            writeToMycatSession(session, updateRowIteratorResponse);
         }));
     }
 
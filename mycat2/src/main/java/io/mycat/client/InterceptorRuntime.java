@@ -21,10 +21,12 @@ import io.mycat.beans.mycat.TransactionType;
 import io.mycat.booster.CacheConfig;
 import io.mycat.commands.*;
 import io.mycat.config.PatternRootConfig;
+import io.mycat.config.ServerConfig;
 import io.mycat.config.UserConfig;
 import io.mycat.matcher.Matcher;
 import io.mycat.matcher.StringEqualsFactory;
 import io.mycat.plug.command.MycatCommandLoader;
+import io.mycat.sql.SQLFingerprint;
 import io.mycat.util.Pair;
 import io.mycat.util.StringUtil;
 import lombok.SneakyThrows;
@@ -80,6 +82,8 @@ public enum InterceptorRuntime {
         addCommand(UseStatementCommand.INSTANCE);
         addCommand(BoostMycatdbCommand.INSTANCE);
 
+        ServerConfig.StatementCacheConfig statementCache = this.mycatConfig.getServer().getStatementCache();
+        long matchCacheSize = statementCache.isEnable() ? statementCache.getMaximumSize() : 0;
         //config
         for (PatternRootConfig interceptor : Objects.requireNonNull(this.mycatConfig).getInterceptors()) {
             UserConfig user = Objects.requireNonNull(interceptor.getUser());
@@ -122,10 +126,27 @@ public enum InterceptorRuntime {
             }
             final Matcher apply = factory.create(allItems, Pair.of(null, defaultHanlder));
             TransactionType transactionType = TransactionType.parse(interceptor.getTransactionType());
-            this.spaceMap.put(username, new UserSpace(username, transactionType, apply, cacheTasks));
+            this.spaceMap.put(username, new UserSpace(username, transactionType, apply, cacheTasks, isLiteralFree(sqls) ? matchCacheSize : 0));
         }
     }
 
+    /**
+     * 匹配规则里没有字面量时,只有字面量不同的语句匹配结果相同,可以按语句形状缓存匹配结果
+     */
+    private static boolean isLiteralFree(List<Map<String, Object>> sqls) {
+        for (Map<String, Object> sql : sqls) {
+            Object pattern = sql.get("sql");
+            if (pattern == null) {
+                continue;
+            }
+            SQLFingerprint fingerprint = SQLFingerprint.of(pattern.toString());
+            if (!fingerprint.isCacheable() || fingerprint.hasLiterals()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private void addCommand(MycatCommand instance) {
         MycatCommandLoader.INSTANCE.registerIfAbsent(instance.getName(), instance);
     }
@@ -1,5 +1,7 @@
 package io.mycat.client;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import io.mycat.*;
 import io.mycat.api.collector.RowBaseIterator;
 import io.mycat.beans.mycat.TransactionType;
@@ -17,6 +19,7 @@ import io.mycat.proxy.session.MycatSession;
 import io.mycat.proxy.session.SimpleTransactionSessionRunner;
 import io.mycat.resultset.TextResultSetResponse;
 import io.mycat.runtime.MycatDataContextImpl;
+import io.mycat.sql.SQLFingerprint;
 import io.mycat.upondb.MycatDBClientMediator;
 import io.mycat.upondb.MycatDBs;
 import io.mycat.util.Response;
@@ -43,11 +46,24 @@ public class UserSpace {
     private final TransactionType defaultTransactionType;
     private final Matcher<Map<String, Object>> matcher;
     private final Map<String, Task> cacheMap = new ConcurrentHashMap<>();
+    /**
+     * key是语句形状指纹,只有在所有匹配规则都不含字面量时才启用,
+     * 此时同一形状的语句匹配结果一定相同
+     */
+    private final Cache<String, List<Map<String, Object>>> matchCache;
 
     public UserSpace(String userName, TransactionType defaultTransactionType, Matcher matcher, List<CacheTask> cacheTaskList) {
+        this(userName, defaultTransactionType, matcher, cacheTaskList, 0);
+    }
+
+    /**
+     * @param matchCacheSize 匹配结果缓存的语句形状数量,0表示不缓存
+     */
+    public UserSpace(String userName, TransactionType defaultTransactionType, Matcher matcher, List<CacheTask> cacheTaskList, long matchCacheSize) {
         this.userName = Objects.requireNonNull(userName);
         this.defaultTransactionType = Objects.requireNonNull(defaultTransactionType);
         this.matcher = matcher;
+        this.matchCache = matchCacheSize > 0 ? CacheBuilder.newBuilder().maximumSize(matchCacheSize).build() : null;
         ScheduledExecutorService timer = ScheduleUtil.getTimer();
         cacheTaskList.forEach(cacheTask -> {
             MycatDataContext context = new MycatDataContextImpl(new SimpleTransactionSessionRunner());
@@ -64,11 +80,24 @@ public class UserSpace {
 
 
     public void execute(final ByteBuffer buffer, final MycatSession session, Response response) {
+        SQLFingerprint fingerprint = null;
+        if (matchCache != null && buffer.hasArray()) {
+            fingerprint = SQLFingerprint.of(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
         final CharBuffer charBuffer = StandardCharsets.UTF_8.decode(buffer);
         final Map<String, Object> extractor = new HashMap<>();
-        List<Map<String, Object>> matchList = matcher.match(charBuffer, extractor);
+        List<Map<String, Object>> matchList = null;
+        if (fingerprint != null && fingerprint.isCacheable()) {
+            matchList = matchCache.getIfPresent(fingerprint.getTemplate());
+        }
         if (matchList == null) {
-            matchList = Collections.emptyList();
+            matchList = matcher.match(charBuffer, extractor);
+            if (matchList == null) {
+                matchList = Collections.emptyList();
+            }
+            if (fingerprint != null && fingerprint.isCacheable() && extractor.isEmpty()) {
+                matchCache.put(fingerprint.getTemplate(), matchList);
+            }
         }
         MycatDataContext dataContext = session.getDataContext();
         int sessionId = session.sessionId();
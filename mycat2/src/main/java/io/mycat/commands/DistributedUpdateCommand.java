@@ -4,6 +4,7 @@ import io.mycat.ExecuteType;
 import io.mycat.ExplainDetail;
 import io.mycat.MycatDataContext;
 import io.mycat.client.MycatRequest;
+import io.mycat.metadata.MetadataManager;
 import io.mycat.util.Response;
 
 import static io.mycat.commands.ExecuteCommand.getDetails;
@@ -15,6 +16,7 @@ public enum DistributedUpdateCommand implements MycatCommand{
     INSTANCE;
     @Override
     public boolean run(MycatRequest request, MycatDataContext context, Response response) {
+        context.addStatementResource(MetadataManager.INSTANCE.enterWrite(context.getDefaultSchema(), request.getText()));
         ExplainDetail details = getDetails(request,context, ExecuteType.UPDATE);
         response.execute(details);
         return true;
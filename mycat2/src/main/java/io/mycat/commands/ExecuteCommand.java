@@ -3,6 +3,7 @@ package io.mycat.commands;
 import io.mycat.*;
 import io.mycat.calcite.prepare.MycatTextUpdatePrepareObject;
 import io.mycat.client.MycatRequest;
+import io.mycat.metadata.MetadataManager;
 import io.mycat.replica.ReplicaSelectorRuntime;
 import io.mycat.upondb.MycatDBClientMediator;
 import io.mycat.upondb.MycatDBs;
@@ -36,6 +37,10 @@ public enum ExecuteCommand implements MycatCommand {
         boolean forceProxy = Boolean.TRUE.toString().equalsIgnoreCase(tags.getOrDefault("forceProxy", Boolean.FALSE.toString()));
         boolean metaData = Boolean.TRUE.toString().equalsIgnoreCase(tags.getOrDefault("metaData", Boolean.FALSE.toString()));
         ExecuteType executeType = ExecuteType.valueOf(tags.getOrDefault("executeType", ExecuteType.DEFAULT.name()));
+        if (executeType != ExecuteType.QUERY) {
+            //透传的语句同样要让重新分片的写屏障等待它结束
+            context.addStatementResource(MetadataManager.INSTANCE.enterWrite(context.getDefaultSchema(), request.getText()));
+        }
         ExplainDetail detail = getDetails(metaData, targetsConfig, context, balanceConfig, request.getText(), executeType, forceProxy,needTransaction);
         response.execute(detail);
         return true;
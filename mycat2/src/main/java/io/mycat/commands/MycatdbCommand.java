@@ -9,6 +9,8 @@ import com.alibaba.fastsql.sql.parser.SQLStatementParser;
 import io.mycat.MycatDataContext;
 import io.mycat.MycatException;
 import io.mycat.client.MycatRequest;
+import io.mycat.config.ServerConfig;
+import io.mycat.sql.SQLStatementTemplateCache;
 import io.mycat.sqlhandler.ExecuteCode;
 import io.mycat.sqlhandler.SQLHandler;
 import io.mycat.sqlhandler.SQLRequest;
@@ -28,6 +30,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 /**
  * @author Junwen Chen
  **/
@@ -35,6 +38,7 @@ public enum MycatdbCommand implements MycatCommand {
     INSTANCE;
     final static Logger logger = LoggerFactory.getLogger(MycatdbCommand.class);
     final Collection<SQLHandler> sqlHandlers = new ArrayList<>();
+    volatile SQLStatementTemplateCache templateCache = new SQLStatementTemplateCache(4096, 4096);
 
     MycatdbCommand() {
         sqlHandlers.add(new SelectSQLHandler());
@@ -92,6 +96,10 @@ public enum MycatdbCommand implements MycatCommand {
         sqlHandlers.add(new AnalyzeHanlder());
     }
 
+    public void init(ServerConfig.StatementCacheConfig config) {
+        this.templateCache = config.isEnable() ? new SQLStatementTemplateCache(config.getMaximumSize(), config.getMaxSqlLength()) : null;
+    }
+
     @Override
     public boolean run(MycatRequest request, MycatDataContext context, Response response) {
         executeQuery(request, context, response);
@@ -219,10 +227,19 @@ public enum MycatdbCommand implements MycatCommand {
                 }
             };
         }
+        SQLStatementTemplateCache templateCache = this.templateCache;
+        if (templateCache == null) {
+            return parseStatementList(text).iterator();
+        }
+        return templateCache.parse(text, MycatdbCommand::parseStatementList).iterator();
+    }
+
+    @NotNull
+    private static List<SQLStatement> parseStatementList(String text) {
         SQLStatementParser parser = SQLParserUtils.createSQLStatementParser(text, DbType.mysql, false);
         LinkedList<SQLStatement> statementList = new LinkedList<SQLStatement>();
         parser.parseStatementList(statementList, -1, null);
-        return statementList.iterator();
+        return statementList;
     }
 
 }
\ No newline at end of file
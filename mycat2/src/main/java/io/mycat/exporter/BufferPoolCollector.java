@@ -3,8 +3,11 @@ package io.mycat.exporter;
 import com.google.common.collect.ImmutableList;
 import io.mycat.MycatCore;
 import io.mycat.buffer.BufferPool;
+import io.mycat.buffer.SlabBufferPool;
+import io.mycat.proxy.buffer.ProxyBufferPoolMonitor;
 import io.mycat.proxy.reactor.MycatReactorThread;
 import io.prometheus.client.Collector;
+import io.prometheus.client.CounterMetricFamily;
 import io.prometheus.client.GaugeMetricFamily;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,6 +25,11 @@ public class BufferPoolCollector extends Collector {
             GaugeMetricFamily gaugeMetricFamily = new GaugeMetricFamily("buffer_pool_counter",
                     "buffer_pool",
                     ImmutableList.of("name",  "chunkSize","capacity"));
+            List<String> labels = ImmutableList.of("name", "reactor");
+            CounterMetricFamily heapFallback = new CounterMetricFamily("buffer_pool_heap_fallback_total", "buffer_pool_heap_fallback_total", labels);
+            GaugeMetricFamily fragmentation = new GaugeMetricFamily("buffer_pool_fragmentation", "buffer_pool_fragmentation", labels);
+            GaugeMetricFamily freeBytes = new GaugeMetricFamily("buffer_pool_free_bytes", "buffer_pool_free_bytes", labels);
+            GaugeMetricFamily cachedBytes = new GaugeMetricFamily("buffer_pool_cached_bytes", "buffer_pool_cached_bytes", labels);
             for (MycatReactorThread mycatReactorThread : Optional.ofNullable(MycatCore.INSTANCE.getReactorManager())
                     .map(i -> i.getList()).orElse(Collections.emptyList())) {
                 BufferPool bufPool = mycatReactorThread.getBufPool();
@@ -35,10 +43,21 @@ public class BufferPoolCollector extends Collector {
                             String.valueOf(chunkSize),
                             String.valueOf(capacity)),
                             trace);
+                    if (bufPool instanceof ProxyBufferPoolMonitor) {
+                        bufPool = ((ProxyBufferPoolMonitor) bufPool).getBufferPool();
+                    }
+                    if (bufPool instanceof SlabBufferPool) {
+                        SlabBufferPool slabBufferPool = (SlabBufferPool) bufPool;
+                        List<String> label = ImmutableList.of(String.valueOf(name), mycatReactorThread.getName());
+                        heapFallback.addMetric(label, slabBufferPool.getHeapFallbackCount());
+                        fragmentation.addMetric(label, slabBufferPool.getFragmentation());
+                        freeBytes.addMetric(label, slabBufferPool.getFreeBytes());
+                        cachedBytes.addMetric(label, slabBufferPool.getCachedBytes());
+                    }
                 }
             }
 
-            return ImmutableList.of(gaugeMetricFamily);
+            return ImmutableList.of(gaugeMetricFamily, heapFallback, fragmentation, freeBytes, cachedBytes);
         } catch (Throwable e) {
             LOGGER.error("", e);
             throw e;
@@ -31,6 +31,9 @@ public class HeartbeatCollector  extends Collector {
             GaugeMetricFamily gaugeMetricFamily = new GaugeMetricFamily("heartbeat_stat",
                     "heartbeat_stat",
                     columnList);
+            GaugeMetricFamily rttMetricFamily = new GaugeMetricFamily("heartbeat_rtt",
+                    "heartbeat round trip time in milliseconds",
+                    columnList);
             for (Map<String, Object> stringObjectMap : resultSetMap) {
                 Date LAST_SEND_QUERY_TIME= (Date)stringObjectMap.get("LAST_SEND_QUERY_TIME");
                 Date LAST_RECEIVED_QUERY_TIME = (Date)stringObjectMap.get("LAST_RECEIVED_QUERY_TIME");
@@ -42,8 +45,9 @@ public class HeartbeatCollector  extends Collector {
                 gaugeMetricFamily.addMetric(
                         collect,
                         l);
+                rttMetricFamily.addMetric(collect, ((Number) stringObjectMap.get("RTT")).doubleValue());
             }
-            return ImmutableList.of(gaugeMetricFamily);
+            return ImmutableList.of(gaugeMetricFamily, rttMetricFamily);
         } catch (Throwable e) {
             LOGGER.error("", e);
             throw e;
@@ -37,7 +37,10 @@ public class PrometheusExporter implements Runnable {
                                 new ReplicaCollector(),
                                 new ThreadPoolCollector(),
                                 new InstanceCollector(),
-                                new CPULoadCollector()
+                                new CPULoadCollector(),
+                                new ReactorCollector(),
+                                new QueryStatCollector(),
+                                new QueryMemoryCollector()
                         );
                         collectorList.register();
                         HTTPServer server = new io.mycat.exporter.HTTPServer(port);
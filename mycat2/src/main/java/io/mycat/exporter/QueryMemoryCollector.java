@@ -0,0 +1,36 @@
+package io.mycat.exporter;
+
+import com.google.common.collect.ImmutableList;
+import io.mycat.hbt4.memory.QueryMemoryManager;
+import io.prometheus.client.Collector;
+import io.prometheus.client.CounterMetricFamily;
+import io.prometheus.client.GaugeMetricFamily;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * 查询内存预算的使用量,等待内存与准入的查询数量
+ */
+public class QueryMemoryCollector extends Collector {
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryMemoryCollector.class);
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        try {
+            QueryMemoryManager manager = QueryMemoryManager.INSTANCE;
+            return ImmutableList.of(
+                    new GaugeMetricFamily("query_memory_used_bytes", "query_memory_used_bytes", manager.getUsed()),
+                    new GaugeMetricFamily("query_memory_limit_bytes", "query_memory_limit_bytes", manager.getGlobalLimit()),
+                    new GaugeMetricFamily("query_memory_waiting", "query_memory_waiting", manager.getWaiting()),
+                    new GaugeMetricFamily("query_memory_heavy_queries", "query_memory_heavy_queries", manager.getHeavyQueries()),
+                    new GaugeMetricFamily("query_memory_max_heavy_queries", "query_memory_max_heavy_queries", manager.getMaxHeavyQueries()),
+                    new CounterMetricFamily("query_memory_admission_timeout_total", "query_memory_admission_timeout_total", manager.getAdmissionTimeoutCount()),
+                    new CounterMetricFamily("query_memory_exceeded_total", "query_memory_exceeded_total", manager.getExceededCount()));
+        } catch (Throwable e) {
+            LOGGER.error("", e);
+            throw e;
+        }
+    }
+}
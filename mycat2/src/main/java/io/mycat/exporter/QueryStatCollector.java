@@ -0,0 +1,45 @@
+package io.mycat.exporter;
+
+import com.google.common.collect.ImmutableList;
+import io.mycat.querystat.QueryStat;
+import io.mycat.querystat.QueryStatStore;
+import io.prometheus.client.Collector;
+import io.prometheus.client.CounterMetricFamily;
+import io.prometheus.client.GaugeMetricFamily;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * 按sql指纹汇总的执行次数,耗时与延迟分位数,指纹数量受统计容量限制
+ */
+public class QueryStatCollector extends Collector {
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryStatCollector.class);
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        try {
+            List<String> labels = ImmutableList.of("digest", "fingerprint");
+            CounterMetricFamily count = new CounterMetricFamily("query_stat_total", "query_stat_total", labels);
+            CounterMetricFamily time = new CounterMetricFamily("query_stat_seconds_total", "query_stat_seconds_total", labels);
+            CounterMetricFamily rows = new CounterMetricFamily("query_stat_rows_total", "query_stat_rows_total", labels);
+            GaugeMetricFamily latency = new GaugeMetricFamily("query_stat_latency_seconds", "query_stat_latency_seconds",
+                    ImmutableList.of("digest", "fingerprint", "quantile"));
+            for (QueryStat stat : QueryStatStore.INSTANCE.getStats()) {
+                List<String> name = ImmutableList.of(stat.getDigest(), stat.getFingerprint());
+                count.addMetric(name, stat.getCount());
+                time.addMetric(name, stat.getTotalTime() / MILLISECONDS_PER_SECOND);
+                rows.addMetric(name, stat.getRows());
+                latency.addMetric(ImmutableList.of(stat.getDigest(), stat.getFingerprint(), "0.5"), stat.getP50() / MILLISECONDS_PER_SECOND);
+                latency.addMetric(ImmutableList.of(stat.getDigest(), stat.getFingerprint(), "0.95"), stat.getP95() / MILLISECONDS_PER_SECOND);
+                latency.addMetric(ImmutableList.of(stat.getDigest(), stat.getFingerprint(), "0.99"), stat.getP99() / MILLISECONDS_PER_SECOND);
+                latency.addMetric(ImmutableList.of(stat.getDigest(), stat.getFingerprint(), "1"), stat.getMaxTime() / MILLISECONDS_PER_SECOND);
+            }
+            return ImmutableList.of(count, time, rows, latency);
+        } catch (Throwable e) {
+            LOGGER.error("", e);
+            throw e;
+        }
+    }
+}
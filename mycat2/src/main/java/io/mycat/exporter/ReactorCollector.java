@@ -0,0 +1,46 @@
+package io.mycat.exporter;
+
+import com.google.common.collect.ImmutableList;
+import io.mycat.MycatCore;
+import io.mycat.proxy.reactor.MycatReactorThread;
+import io.prometheus.client.Collector;
+import io.prometheus.client.CounterMetricFamily;
+import io.prometheus.client.GaugeMetricFamily;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * reactor事件循环的select,IO,任务处理耗时
+ */
+public class ReactorCollector extends Collector {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReactorCollector.class);
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        try {
+            List<String> labels = ImmutableList.of("name");
+            CounterMetricFamily loop = new CounterMetricFamily("reactor_loop_total", "reactor_loop_total", labels);
+            CounterMetricFamily select = new CounterMetricFamily("reactor_select_seconds_total", "reactor_select_seconds_total", labels);
+            CounterMetricFamily io = new CounterMetricFamily("reactor_io_seconds_total", "reactor_io_seconds_total", labels);
+            CounterMetricFamily job = new CounterMetricFamily("reactor_job_seconds_total", "reactor_job_seconds_total", labels);
+            GaugeMetricFamily pending = new GaugeMetricFamily("reactor_pending_job", "reactor_pending_job", labels);
+            for (MycatReactorThread mycatReactorThread : Optional.ofNullable(MycatCore.INSTANCE.getReactorManager())
+                    .map(i -> i.getList()).orElse(Collections.emptyList())) {
+                List<String> name = ImmutableList.of(mycatReactorThread.getName());
+                loop.addMetric(name, mycatReactorThread.getLoopCount());
+                select.addMetric(name, mycatReactorThread.getSelectNanos() / NANOSECONDS_PER_SECOND);
+                io.addMetric(name, mycatReactorThread.getIoNanos() / NANOSECONDS_PER_SECOND);
+                job.addMetric(name, mycatReactorThread.getJobNanos() / NANOSECONDS_PER_SECOND);
+                pending.addMetric(name, mycatReactorThread.getPendingJobCount());
+            }
+            return ImmutableList.of(loop, select, io, job, pending);
+        } catch (Throwable e) {
+            LOGGER.error("", e);
+            throw e;
+        }
+    }
+}
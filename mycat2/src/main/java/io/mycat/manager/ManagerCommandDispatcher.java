@@ -32,10 +32,15 @@ public class ManagerCommandDispatcher extends DefaultCommandHandler {
             new SwitchInstanceCommand(),
             new SwitchReplicaCommand(),
             new ShowStatCommand(),
+            new ShowQueryStatCommand(),
+            new ShowQueryMemoryCommand(),
             new ReloadConfigCommand(),
             new SwitchHeatbeatCommand(),
             new ShowHeatbeatRunningCommand(),
             new ResetStatCommand(),
+            new ReshardCommand(),
+            new ShowReshardCommand(),
+            new CancelReshardCommand(),
             new ShowServerCommand()
     );
 
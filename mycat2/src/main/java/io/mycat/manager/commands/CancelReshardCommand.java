@@ -0,0 +1,50 @@
+package io.mycat.manager.commands;
+
+import io.mycat.MycatDataContext;
+import io.mycat.client.MycatRequest;
+import io.mycat.metadata.MetadataManager;
+import io.mycat.metadata.ReshardingTask;
+import io.mycat.util.JsonUtil;
+import io.mycat.util.Response;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 切换路由之前取消重新分片,已经复制到新分片的行保留,不影响路由
+ */
+public class CancelReshardCommand implements ManageCommand {
+    @Override
+    public String statement() {
+        return "cancel @@reshard = {schemaName:'xxx',tableName:'xxx'}";
+    }
+
+    @Override
+    public String description() {
+        return statement();
+    }
+
+    @Override
+    public boolean run(MycatRequest request, MycatDataContext context, Response response) {
+        if (request.getText().toLowerCase().startsWith("cancel @@reshard")) {
+            handle(request, context, response);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void handle(MycatRequest request, MycatDataContext context, Response response) {
+        String text = request.getText();
+        Map from = JsonUtil.from(text.substring(text.indexOf('=') + 1), Map.class);
+        String schemaName = Objects.requireNonNull((String) from.get("schemaName"), "schemaName required");
+        String tableName = Objects.requireNonNull((String) from.get("tableName"), "tableName required");
+        for (ReshardingTask task : MetadataManager.INSTANCE.getReshardingTasks()) {
+            if (schemaName.equalsIgnoreCase(task.getSource().getSchemaName())
+                    && tableName.equalsIgnoreCase(task.getSource().getTableName())) {
+                task.cancel();
+            }
+        }
+        response.sendOk();
+    }
+}
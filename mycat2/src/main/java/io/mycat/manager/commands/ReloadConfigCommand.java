@@ -4,6 +4,7 @@ import io.mycat.*;
 import io.mycat.booster.BoosterRuntime;
 import io.mycat.client.InterceptorRuntime;
 import io.mycat.client.MycatRequest;
+import io.mycat.commands.MycatdbCommand;
 import io.mycat.datasource.jdbc.JdbcRuntime;
 import io.mycat.metadata.MetadataManager;
 import io.mycat.plug.PlugRuntime;
@@ -14,6 +15,7 @@ import io.mycat.runtime.ProxySwitch;
 import io.mycat.upondb.MycatDBSharedServerImpl;
 import io.mycat.util.Response;
 
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
 
@@ -31,20 +33,35 @@ public class ReloadConfigCommand implements ManageCommand {
         return statement();
     }
 
+    /**
+     * 读取的新配置只有在切换成功后才保留,否则配置提供者恢复为原配置
+     */
     @Override
-    public void handle(MycatRequest request, MycatDataContext context, Response response) {
+    public synchronized void handle(MycatRequest request, MycatDataContext context, Response response) {
+        ConfigProvider configProvider = RootHelper.INSTANCE.getConfigProvider();
+        MycatConfig oldConfig = configProvider.currentConfig();
+        boolean switched = false;
         try {
+            configProvider.fetchConfig();
+            MycatConfig mycatConfig = configProvider.currentConfig();
+            if (Objects.equals(oldConfig.getDatasource(), mycatConfig.getDatasource())
+                    && Objects.equals(oldConfig.getCluster(), mycatConfig.getCluster())) {
+                //数据源与集群没有变化,元数据快照替换后新的查询即可看到,不需要暂停服务
+                switchConfig(mycatConfig);
+                switched = true;
+                response.sendOk();
+                return;
+            }
             if (ProxySwitch.INSTANCE.stopRunning()) {
                 try {
-                    boolean inTransaction = waitNoTranscation();
-                    if (!inTransaction) {
-                        switchConfig();
-                        response.sendOk();
-                        return;
-                    } else {
+                    if (waitNoTranscation()) {
                         response.sendError(new MycatException("sessions are still in Transaction"));
                         return;
                     }
+                    switchConfig(mycatConfig);
+                    switched = true;
+                    response.sendOk();
+                    return;
                 } finally {
                     ProxySwitch.INSTANCE.continueRunning();
                 }
@@ -55,44 +72,46 @@ public class ReloadConfigCommand implements ManageCommand {
         } catch (Exception e) {
             e.printStackTrace();
             response.sendError(e);
+        } finally {
+            if (!switched) {
+                configProvider.rollback(oldConfig);
+            }
         }
     }
 
-    private boolean waitNoTranscation() {
-        boolean inTransaction = false;
+    /**
+     * 等待所有会话结束事务,超时仍有事务返回true
+     */
+    private boolean waitNoTranscation() throws InterruptedException {
         long endTime = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
-        while (true) {
-            for (MycatReactorThread mycatReactorThread : MycatCore.INSTANCE.getReactorManager().getList()) {
-                for (MycatSession allSession : mycatReactorThread.getFrontManager().getAllSessions()) {
-                    inTransaction = inTransaction || allSession.isInTransaction();
-                    if (inTransaction) {
-                        break;
-                    }
-                }
-            }
-            if (!inTransaction) {
-                break;//都没有事务则结束
-            }
-            if (endTime - System.currentTimeMillis() < 0) {
-                break;//超时结束
-            } else {
-                continue;//继续循环
+        while (hasTransaction()) {
+            if (System.currentTimeMillis() >= endTime) {
+                return true;//超时结束
             }
+            TimeUnit.MILLISECONDS.sleep(10);
         }
-        return inTransaction;
+        return false;
     }
 
-    private void switchConfig() throws Exception {
-        MycatConfig oldConfig = RootHelper.INSTANCE.getConfigProvider().currentConfig();
-        RootHelper.INSTANCE.getConfigProvider().fetchConfig();
-        MycatConfig mycatConfig = RootHelper.INSTANCE.getConfigProvider().currentConfig();
+    private boolean hasTransaction() {
+        for (MycatReactorThread mycatReactorThread : MycatCore.INSTANCE.getReactorManager().getList()) {
+            for (MycatSession allSession : mycatReactorThread.getFrontManager().getAllSessions()) {
+                if (allSession.isInTransaction()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
 
+    private void switchConfig(MycatConfig mycatConfig) throws Exception {
         PlugRuntime.INSTANCE.load(mycatConfig);
         MycatWorkerProcessor.INSTANCE.init(mycatConfig.getServer().getWorkerPool(), mycatConfig.getServer().getTimeWorkerPool());
         ReplicaSelectorRuntime.INSTANCE.load(mycatConfig);
         JdbcRuntime.INSTANCE.load(mycatConfig);
         BoosterRuntime.INSTANCE.load(mycatConfig);
         InterceptorRuntime.INSTANCE.load(mycatConfig);
+        MycatdbCommand.INSTANCE.init(mycatConfig.getServer().getStatementCache());
         MetadataManager.INSTANCE.load(mycatConfig);
         MycatCore.INSTANCE.flash(mycatConfig);
         MycatDBSharedServerImpl.singletons.clear();//todo need  refactor
@@ -2,6 +2,7 @@ package io.mycat.manager.commands;
 
 import io.mycat.MycatDataContext;
 import io.mycat.client.MycatRequest;
+import io.mycat.querystat.QueryStatStore;
 import io.mycat.sqlrecorder.SqlRecorderRuntime;
 import io.mycat.util.Response;
 
@@ -19,6 +20,7 @@ public class ResetStatCommand implements ManageCommand {
     @Override
     public void handle(MycatRequest request, MycatDataContext context, Response response) {
         SqlRecorderRuntime.INSTANCE.reset();
+        QueryStatStore.INSTANCE.reset();
         response.sendOk();
     }
 }
\ No newline at end of file
@@ -0,0 +1,59 @@
+package io.mycat.manager.commands;
+
+import io.mycat.MycatDataContext;
+import io.mycat.client.MycatRequest;
+import io.mycat.config.ShardingTableConfig;
+import io.mycat.metadata.MetadataManager;
+import io.mycat.metadata.ReshardingTask;
+import io.mycat.util.JsonUtil;
+import io.mycat.util.Response;
+import lombok.Data;
+
+import java.util.Objects;
+
+/**
+ * 在后台把表迁移到新的分片配置,进度使用show @@reshard查看
+ */
+public class ReshardCommand implements ManageCommand {
+    @Override
+    public String statement() {
+        return "reshard @@table = {schemaName:'xxx',tableName:'xxx',config:{dataNodes:[],columns:[]},options:{}}";
+    }
+
+    @Override
+    public String description() {
+        return statement();
+    }
+
+    @Override
+    public boolean run(MycatRequest request, MycatDataContext context, Response response) {
+        if (request.getText().toLowerCase().startsWith("reshard @@table")) {
+            handle(request, context, response);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void handle(MycatRequest request, MycatDataContext context, Response response) {
+        String text = request.getText();
+        ReshardRequest reshardRequest = JsonUtil.from(text.substring(text.indexOf('=') + 1), ReshardRequest.class);
+        String schemaName = Objects.requireNonNull(reshardRequest.getSchemaName(), "schemaName required");
+        String tableName = Objects.requireNonNull(reshardRequest.getTableName(), "tableName required");
+        ShardingTableConfig config = Objects.requireNonNull(reshardRequest.getConfig(), "config required");
+        ReshardingTask.Options options = reshardRequest.getOptions() == null ? new ReshardingTask.Options() : reshardRequest.getOptions();
+        ReshardingTask task = MetadataManager.INSTANCE.reshard(schemaName, tableName, config, options);
+        Thread thread = new Thread(task, "mycat-reshard-" + schemaName + "." + tableName);
+        thread.setDaemon(true);
+        thread.start();
+        response.sendOk();
+    }
+
+    @Data
+    public static class ReshardRequest {
+        private String schemaName;
+        private String tableName;
+        private ShardingTableConfig config;
+        private ReshardingTask.Options options;
+    }
+}
@@ -67,6 +67,7 @@ public class ShowHeartbeatCommand implements ManageCommand {
         resultSetBuilder.addColumnInfo("IS_SLAVE_BEHIND_MASTER", JDBCType.BOOLEAN);
         resultSetBuilder.addColumnInfo("LAST_SEND_QUERY_TIME", JDBCType.DATE);
         resultSetBuilder.addColumnInfo("LAST_RECEIVED_QUERY_TIME", JDBCType.DATE);
+        resultSetBuilder.addColumnInfo("RTT", JDBCType.BIGINT);
 
 
         for (HeartbeatFlow heartbeatFlow : ReplicaSelectorRuntime.INSTANCE.getHeartbeatDetectorMap().values()) {
@@ -96,6 +97,7 @@ public class ShowHeartbeatCommand implements ManageCommand {
             boolean IS_SLAVE_BEHIND_MASTER = DS_STATUS_OBJECT.isSlaveBehindMaster();
             Date LAST_SEND_QUERY_TIME = new Date(heartbeatFlow.getLastSendQryTime());
             Date LAST_RECEIVED_QUERY_TIME = new Date(heartbeatFlow.getLastReceivedQryTime());
+            long RTT = heartbeatFlow.getRtt();
 
             Optional<DatasourceRootConfig.DatasourceConfig> e = Optional.ofNullable(dataSourceConfig.get(NAME));
 
@@ -125,7 +127,8 @@ public class ShowHeartbeatCommand implements ManageCommand {
                             HB_DS_STATUS,
                             IS_SLAVE_BEHIND_MASTER,
                             LAST_SEND_QUERY_TIME,
-                            LAST_RECEIVED_QUERY_TIME
+                            LAST_RECEIVED_QUERY_TIME,
+                            RTT
                     ));
         }
         return resultSetBuilder;
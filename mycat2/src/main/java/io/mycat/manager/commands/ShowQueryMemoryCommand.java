@@ -0,0 +1,57 @@
+package io.mycat.manager.commands;
+
+import io.mycat.MycatDataContext;
+import io.mycat.beans.mycat.ResultSetBuilder;
+import io.mycat.client.MycatRequest;
+import io.mycat.hbt4.memory.QueryMemoryContext;
+import io.mycat.hbt4.memory.QueryMemoryManager;
+import io.mycat.util.Response;
+
+import java.sql.JDBCType;
+import java.sql.Timestamp;
+import java.util.Arrays;
+
+/**
+ * 正在执行的查询预留的内存,单位为字节
+ */
+public class ShowQueryMemoryCommand implements ManageCommand {
+    @Override
+    public String statement() {
+        return "show @@memory.query";
+    }
+
+    @Override
+    public String description() {
+        return statement();
+    }
+
+    @Override
+    public void handle(MycatRequest request, MycatDataContext context, Response response) {
+        ResultSetBuilder resultSetBuilder = getResultSet();
+        response.sendResultSet(() -> resultSetBuilder.build());
+    }
+
+    public static ResultSetBuilder getResultSet() {
+        ResultSetBuilder builder = ResultSetBuilder.create();
+        builder.addColumnInfo("ID", JDBCType.BIGINT)
+                .addColumnInfo("SQL", JDBCType.VARCHAR)
+                .addColumnInfo("RESERVED", JDBCType.BIGINT)
+                .addColumnInfo("PEAK", JDBCType.BIGINT)
+                .addColumnInfo("QUERY_LIMIT", JDBCType.BIGINT)
+                .addColumnInfo("ADMITTED", JDBCType.BOOLEAN)
+                .addColumnInfo("START_TIME", JDBCType.TIMESTAMP);
+        long queryLimit = QueryMemoryManager.INSTANCE.getQueryLimit();
+        for (QueryMemoryContext memoryContext : QueryMemoryManager.INSTANCE.getRunning()) {
+            builder.addObjectRowPayload(Arrays.asList(
+                    memoryContext.getId(),
+                    memoryContext.getSql(),
+                    memoryContext.getReserved(),
+                    memoryContext.getPeak(),
+                    queryLimit,
+                    memoryContext.isAdmitted(),
+                    new Timestamp(memoryContext.getStartTime())
+            ));
+        }
+        return builder;
+    }
+}
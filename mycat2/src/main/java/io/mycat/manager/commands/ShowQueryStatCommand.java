@@ -0,0 +1,84 @@
+package io.mycat.manager.commands;
+
+import io.mycat.MycatDataContext;
+import io.mycat.beans.mycat.ResultSetBuilder;
+import io.mycat.client.MycatRequest;
+import io.mycat.querystat.QueryStat;
+import io.mycat.querystat.QueryStatStore;
+import io.mycat.util.Response;
+
+import java.sql.JDBCType;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 按sql指纹汇总的执行统计,按累计耗时降序,时间单位为毫秒.
+ * NET_IN_BYTES与NET_OUT_BYTES只统计直接转发到后端的sql,经过计算引擎执行的sql为0
+ */
+public class ShowQueryStatCommand implements ManageCommand {
+    @Override
+    public String statement() {
+        return "show @@stat.query";
+    }
+
+    @Override
+    public String description() {
+        return statement();
+    }
+
+    @Override
+    public void handle(MycatRequest request, MycatDataContext context, Response response) {
+        ResultSetBuilder resultSetBuilder = getResultSet();
+        response.sendResultSet(() -> resultSetBuilder.build());
+    }
+
+    public static ResultSetBuilder getResultSet() {
+        ResultSetBuilder builder = ResultSetBuilder.create();
+        builder.addColumnInfo("DIGEST", JDBCType.VARCHAR)
+                .addColumnInfo("FINGERPRINT", JDBCType.VARCHAR)
+                .addColumnInfo("COUNT", JDBCType.BIGINT)
+                .addColumnInfo("TOTAL_TIME", JDBCType.BIGINT)
+                .addColumnInfo("AVG_TIME", JDBCType.DOUBLE)
+                .addColumnInfo("MAX_TIME", JDBCType.BIGINT)
+                .addColumnInfo("P50_TIME", JDBCType.BIGINT)
+                .addColumnInfo("P95_TIME", JDBCType.BIGINT)
+                .addColumnInfo("P99_TIME", JDBCType.BIGINT)
+                .addColumnInfo("SQL_ROWS", JDBCType.BIGINT)
+                .addColumnInfo("NET_IN_BYTES", JDBCType.BIGINT)
+                .addColumnInfo("NET_OUT_BYTES", JDBCType.BIGINT)
+                .addColumnInfo("COMPILE_TIME", JDBCType.BIGINT)
+                .addColumnInfo("RBO_TIME", JDBCType.BIGINT)
+                .addColumnInfo("CBO_TIME", JDBCType.BIGINT)
+                .addColumnInfo("CONNECTION_POOL_TIME", JDBCType.BIGINT)
+                .addColumnInfo("CONNECTION_QUERY_TIME", JDBCType.BIGINT)
+                .addColumnInfo("EXECUTION_TIME", JDBCType.BIGINT)
+                .addColumnInfo("LAST_TIME", JDBCType.TIMESTAMP);
+        List<QueryStat> stats = QueryStatStore.INSTANCE.top(Integer.MAX_VALUE, Comparator.comparingLong(QueryStat::getTotalTime).reversed());
+        for (QueryStat stat : stats) {
+            builder.addObjectRowPayload(Arrays.asList(
+                    stat.getDigest(),
+                    stat.getFingerprint(),
+                    stat.getCount(),
+                    stat.getTotalTime(),
+                    stat.getAvgTime(),
+                    stat.getMaxTime(),
+                    stat.getP50(),
+                    stat.getP95(),
+                    stat.getP99(),
+                    stat.getRows(),
+                    stat.getNetInBytes(),
+                    stat.getNetOutBytes(),
+                    stat.getCompileTime(),
+                    stat.getRboTime(),
+                    stat.getCboTime(),
+                    stat.getConnectionPoolTime(),
+                    stat.getConnectionQueryTime(),
+                    stat.getExecutionTime(),
+                    new Timestamp(stat.getLastTime())
+            ));
+        }
+        return builder;
+    }
+}
@@ -14,6 +14,7 @@ import java.sql.JDBCType;
 import java.sql.Timestamp;
 import java.util.Arrays;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 public class ShowReactorCommand implements ManageCommand {
     @Override
@@ -28,13 +29,23 @@ public class ShowReactorCommand implements ManageCommand {
 
     @Override
     public void handle(MycatRequest request, MycatDataContext context, Response response) {
+        ResultSetBuilder resultSetBuilder = getResultSet();
+        response.sendResultSet(()->resultSetBuilder.build());
+    }
+
+    public static ResultSetBuilder getResultSet() {
         ResultSetBuilder resultSetBuilder = ResultSetBuilder.create();
         resultSetBuilder.addColumnInfo("THREAD_NAME", JDBCType.VARCHAR)
                 .addColumnInfo("THREAD_ID",JDBCType.BIGINT)
                 .addColumnInfo("CUR_SESSION_ID",JDBCType.BIGINT)
                 .addColumnInfo("PREPARE_STOP",JDBCType.BOOLEAN)
                 .addColumnInfo("BUFFER_POOL_SNAPSHOT",JDBCType.VARCHAR)
-                .addColumnInfo("LAST_ACTIVE_TIME",JDBCType.TIMESTAMP);
+                .addColumnInfo("LAST_ACTIVE_TIME",JDBCType.TIMESTAMP)
+                .addColumnInfo("PENDING_JOB_COUNT",JDBCType.BIGINT)
+                .addColumnInfo("LOOP_COUNT",JDBCType.BIGINT)
+                .addColumnInfo("SELECT_TIME_MS",JDBCType.BIGINT)
+                .addColumnInfo("IO_TIME_MS",JDBCType.BIGINT)
+                .addColumnInfo("JOB_TIME_MS",JDBCType.BIGINT);
         for (MycatReactorThread mycatReactorThread : MycatCore.INSTANCE.getReactorManager().getList()) {
             String THREAD_NAME = mycatReactorThread.getName();
             long THREAD_ID = mycatReactorThread.getId();
@@ -42,15 +53,25 @@ public class ShowReactorCommand implements ManageCommand {
             boolean PREPARE_STOP = mycatReactorThread.isPrepareStop();
             String BUFFER_POOL_SNAPSHOT= Optional.ofNullable(mycatReactorThread.getBufPool()).map(i -> i.snapshot().toString("|")).orElse("");
             Timestamp LAST_ACTIVE_TIME  = new Timestamp( mycatReactorThread.getLastActiveTime());
+            int PENDING_JOB_COUNT = mycatReactorThread.getPendingJobCount();
+            long LOOP_COUNT = mycatReactorThread.getLoopCount();
+            long SELECT_TIME_MS = TimeUnit.NANOSECONDS.toMillis(mycatReactorThread.getSelectNanos());
+            long IO_TIME_MS = TimeUnit.NANOSECONDS.toMillis(mycatReactorThread.getIoNanos());
+            long JOB_TIME_MS = TimeUnit.NANOSECONDS.toMillis(mycatReactorThread.getJobNanos());
             resultSetBuilder.addObjectRowPayload(Arrays.asList(
                     THREAD_NAME,
                     THREAD_ID,
                     CUR_SESSION_ID,
                     PREPARE_STOP,
                     BUFFER_POOL_SNAPSHOT,
-                    LAST_ACTIVE_TIME
+                    LAST_ACTIVE_TIME,
+                    PENDING_JOB_COUNT,
+                    LOOP_COUNT,
+                    SELECT_TIME_MS,
+                    IO_TIME_MS,
+                    JOB_TIME_MS
             ));
         }
-        response.sendResultSet(()->resultSetBuilder.build());
+        return resultSetBuilder;
     }
 }
\ No newline at end of file
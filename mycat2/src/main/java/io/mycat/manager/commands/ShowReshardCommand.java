@@ -0,0 +1,50 @@
+package io.mycat.manager.commands;
+
+import io.mycat.MycatDataContext;
+import io.mycat.beans.mycat.ResultSetBuilder;
+import io.mycat.client.MycatRequest;
+import io.mycat.metadata.MetadataManager;
+import io.mycat.metadata.ReshardingTask;
+import io.mycat.util.Response;
+
+import java.sql.JDBCType;
+import java.util.Arrays;
+
+public class ShowReshardCommand implements ManageCommand {
+    @Override
+    public String statement() {
+        return "show @@reshard";
+    }
+
+    @Override
+    public String description() {
+        return statement();
+    }
+
+    @Override
+    public void handle(MycatRequest request, MycatDataContext context, Response response) {
+        ResultSetBuilder resultSetBuilder = getResultSet();
+        response.sendResultSet(() -> resultSetBuilder.build());
+    }
+
+    public static ResultSetBuilder getResultSet() {
+        ResultSetBuilder builder = ResultSetBuilder.create();
+        builder.addColumnInfo("SCHEMA_NAME", JDBCType.VARCHAR)
+                .addColumnInfo("TABLE_NAME", JDBCType.VARCHAR)
+                .addColumnInfo("STATE", JDBCType.VARCHAR)
+                .addColumnInfo("SCANNED_ROWS", JDBCType.BIGINT)
+                .addColumnInfo("MOVED_ROWS", JDBCType.BIGINT)
+                .addColumnInfo("DONE", JDBCType.BOOLEAN);
+        for (ReshardingTask task : MetadataManager.INSTANCE.getReshardingTasks()) {
+            builder.addObjectRowPayload(Arrays.asList(
+                    task.getSource().getSchemaName(),
+                    task.getSource().getTableName(),
+                    task.getState().name(),
+                    task.getScannedRows().get(),
+                    task.getMovedRows().get(),
+                    task.isDone()
+            ));
+        }
+        return builder;
+    }
+}
@@ -1,20 +1,114 @@
 package io.mycat.sqlhandler.dcl;
 
+import com.alibaba.fastsql.sql.ast.SQLExpr;
 import com.alibaba.fastsql.sql.dialect.mysql.ast.statement.MySqlKillStatement;
+import io.mycat.MycatCore;
 import io.mycat.MycatDataContext;
+import io.mycat.MycatException;
+import io.mycat.MycatUser;
+import io.mycat.RootHelper;
+import io.mycat.beans.mysql.MySQLErrorCode;
+import io.mycat.config.ManagerConfig;
+import io.mycat.config.UserConfig;
+import io.mycat.hbt4.cancel.QueryCancelManager;
+import io.mycat.proxy.reactor.MycatReactorThread;
+import io.mycat.proxy.reactor.NIOJob;
+import io.mycat.proxy.reactor.ReactorEnvThread;
+import io.mycat.proxy.session.MycatSession;
 import io.mycat.sqlhandler.AbstractSQLHandler;
 import io.mycat.sqlhandler.ExecuteCode;
 import io.mycat.sqlhandler.SQLRequest;
 import io.mycat.util.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.stream.Collectors;
 
 
-
+/**
+ * KILL QUERY id终止该连接正在执行的查询,连接保留;
+ * KILL [CONNECTION] id终止查询后关闭连接
+ * 只能kill同一用户的连接,管理端用户可以kill任意连接
+ */
 public class KillSQLHandler extends AbstractSQLHandler<MySqlKillStatement> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(KillSQLHandler.class);
 
     @Override
     protected ExecuteCode onExecute(SQLRequest<MySqlKillStatement> request, MycatDataContext dataContext, Response response) {
+        MySqlKillStatement statement = request.getAst();
+        boolean killQuery = statement.getType() == MySqlKillStatement.Type.QUERY;
+        for (SQLExpr threadId : statement.getThreadIds()) {
+            long id = Long.parseLong(threadId.toString());
+            MycatSession target = findSession(id);
+            if (target == null) {
+                response.sendError(new MycatException(MySQLErrorCode.ER_NO_SUCH_THREAD, "Unknown thread id: " + id));
+                return ExecuteCode.PERFORMED;
+            }
+            if (!canKill(dataContext.getUser(), target.getUser(), getAdminUsers())) {
+                response.sendError(new MycatException(MySQLErrorCode.ER_KILL_DENIED_ERROR, "You are not owner of thread " + id));
+                return ExecuteCode.PERFORMED;
+            }
+            kill(target, killQuery, request.getAst().toString());
+        }
         response.sendOk();
         return ExecuteCode.PERFORMED;
     }
+
+    /**
+     * 同一用户或者调用者是管理端用户才允许kill
+     */
+    static boolean canKill(MycatUser caller, MycatUser target, Collection<String> adminUsers) {
+        if (caller == null) {
+            return false;
+        }
+        if (adminUsers.contains(caller.getUserName())) {
+            return true;
+        }
+        return target != null && Objects.equals(caller.getUserName(), target.getUserName());
+    }
+
+    private static Collection<String> getAdminUsers() {
+        ManagerConfig manager = RootHelper.INSTANCE.getConfigProvider().currentConfig().getManager();
+        if (manager == null) {
+            return Collections.emptySet();
+        }
+        return manager.getUsers().stream().map(UserConfig::getUsername).collect(Collectors.toSet());
+    }
+
+    private static MycatSession findSession(long id) {
+        for (MycatReactorThread mycatReactorThread : MycatCore.INSTANCE.getReactorManager().getList()) {
+            MycatSession mycatSession = mycatReactorThread.getFrontManager().getAllSessions().stream()
+                    .filter(i -> i.sessionId() == id).findFirst().orElse(null);
+            if (mycatSession != null) {
+                return mycatSession;
+            }
+        }
+        return null;
+    }
+
+    private static void kill(MycatSession mycatSession, boolean killQuery, String text) {
+        LOGGER.info("prepare kill " + mycatSession.sessionId());
+        QueryCancelManager.INSTANCE.cancel(mycatSession.getDataContext().getCancelFlag(), "killed by " + text);
+        if (!killQuery) {
+            mycatSession.getIOThread().addNIOJob(new NIOJob() {
+                @Override
+                public void run(ReactorEnvThread reactor) throws Exception {
+                    mycatSession.close(false, text);
+                }
+
+                @Override
+                public void stop(ReactorEnvThread reactor, Exception reason) {
+
+                }
+
+                @Override
+                public String message() {
+                    return text;
+                }
+            });
+        }
+    }
 }
@@ -3,9 +3,13 @@ package io.mycat.sqlhandler.dml;
 import com.alibaba.fastsql.sql.SQLUtils;
 import com.alibaba.fastsql.sql.ast.SQLStatement;
 import com.alibaba.fastsql.sql.ast.statement.SQLExprTableSource;
+import com.alibaba.fastsql.sql.ast.statement.SQLInsertStatement;
+import com.alibaba.fastsql.sql.ast.statement.SQLReplaceStatement;
+import com.alibaba.fastsql.sql.ast.statement.SQLUpdateStatement;
 import com.alibaba.fastsql.sql.dialect.mysql.ast.statement.MySqlInsertStatement;
 import com.alibaba.fastsql.sql.dialect.mysql.ast.statement.MySqlUpdateStatement;
 import io.mycat.*;
+import io.mycat.metadata.MetadataManager;
 import io.mycat.metadata.SchemaHandler;
 import io.mycat.sqlhandler.AbstractSQLHandler;
 import io.mycat.sqlhandler.ExecuteCode;
@@ -71,6 +75,9 @@ public class UpdateSQLHandler extends AbstractSQLHandler<MySqlUpdateStatement> {
             receiver.proxyUpdate(defaultTargetName, sql.toString());
             return;
         }
+        //重新分片设置写屏障时等待已经开始的写语句结束
+        boolean delete = !(sql instanceof SQLInsertStatement || sql instanceof SQLUpdateStatement || sql instanceof SQLReplaceStatement);
+        dataContext.addStatementResource(MetadataManager.INSTANCE.enterWrite(tableHandler, delete));
         String string = sql.toString();
         if (sql instanceof MySqlInsertStatement) {
             switch (tableHandler.getType()) {
@@ -53,6 +53,7 @@ public class AnalyzeHanlder extends AbstractSQLHandler<MySqlAnalyzeStatement> {
                     return ExecuteCode.PERFORMED;
                 }
                 StatisticCenter.INSTANCE.computeTableRowCount(tableHandler);
+                StatisticCenter.INSTANCE.computeColumnStatistic(tableHandler);
             }
             response.sendResultSet(()->resultSetBuilder.build(),()->{throw new UnsupportedOperationException();});
             return ExecuteCode.PERFORMED;
@@ -0,0 +1,42 @@
+package io.mycat.sqlhandler.dcl;
+
+import io.mycat.MycatUser;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Set;
+
+public class KillSQLHandlerTest {
+    private static final Set<String> ADMINS = Collections.singleton("admin");
+
+    @Test
+    public void testSameUser() {
+        Assert.assertTrue(KillSQLHandler.canKill(user("root"), user("root"), ADMINS));
+    }
+
+    @Test
+    public void testOtherUserDenied() {
+        Assert.assertFalse(KillSQLHandler.canKill(user("test"), user("root"), ADMINS));
+    }
+
+    @Test
+    public void testAdminKillsOtherUser() {
+        Assert.assertTrue(KillSQLHandler.canKill(user("admin"), user("root"), ADMINS));
+    }
+
+    @Test
+    public void testNoAdminConfigured() {
+        Assert.assertFalse(KillSQLHandler.canKill(user("admin"), user("root"), Collections.emptySet()));
+    }
+
+    @Test
+    public void testUnauthenticatedTarget() {
+        Assert.assertFalse(KillSQLHandler.canKill(user("root"), null, ADMINS));
+        Assert.assertFalse(KillSQLHandler.canKill(null, user("root"), ADMINS));
+    }
+
+    private static MycatUser user(String name) {
+        return new MycatUser(name, null, null, "127.0.0.1");
+    }
+}
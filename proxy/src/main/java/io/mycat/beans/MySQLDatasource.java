@@ -53,6 +53,10 @@ public abstract class MySQLDatasource implements MycatDataSource {
         this.datasourceConfig = datasourceConfig;
     }
 
+    public DatasourceRootConfig.DatasourceConfig getDatasourceConfig() {
+        return datasourceConfig;
+    }
+
     public int getSessionLimitCount() {
         return datasourceConfig.getMaxCon();
     }
@@ -18,6 +18,7 @@ import io.mycat.MycatException;
 import io.mycat.beans.mysql.packet.MySQLPacket;
 import io.mycat.beans.mysql.packet.ProxyBuffer;
 import io.mycat.buffer.BufferPool;
+import io.mycat.proxy.reactor.ProxyReactorThread;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -193,6 +194,7 @@ public final class ProxyBufferImpl implements ProxyBuffer, MySQLPacket<ProxyBuff
         throw new MycatException("readed zero bytes ,Maybe a bug ,please fix it !!!!");
       }
       this.channelReadEndIndex(buffer.position());
+      ProxyReactorThread.recordIOBytes(readed);
       return readed > 0;
   }
 
@@ -205,9 +207,11 @@ public final class ProxyBufferImpl implements ProxyBuffer, MySQLPacket<ProxyBuff
   public void writeToChannel(SocketChannel channel) throws IOException {
     applyChannelWritingIndex();
     int oldIndex = channelWriteStartIndex();
-    if (channel.write(buffer) == -1) {
+    int writed = channel.write(buffer);
+    if (writed == -1) {
       throw new ClosedChannelException();
     }
+    ProxyReactorThread.recordIOBytes(writed);
     channelWriteStartIndex(buffer.position());
   }
 
@@ -39,6 +39,15 @@ public final class ProxyBufferPoolMonitor implements BufferPool {
 
     }
 
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    @Override
+    public void bindOwner(Thread owner) {
+        bufferPool.bindOwner(owner);
+    }
+
     @Override
     public ByteBuffer allocate() {
         return bufferPool.allocate();
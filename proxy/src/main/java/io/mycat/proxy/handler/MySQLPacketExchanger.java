@@ -26,6 +26,9 @@ import io.mycat.proxy.packet.MySQLPacketResolver;
 import io.mycat.proxy.packet.MySQLPayloadType;
 import io.mycat.proxy.session.MySQLClientSession;
 import io.mycat.proxy.session.MycatSession;
+import io.mycat.sqlrecorder.SqlRecord;
+import io.mycat.sqlrecorder.SqlRecorderRuntime;
+import io.mycat.util.TimeProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -73,6 +76,13 @@ public enum MySQLPacketExchanger {
     }
 
     private static void onClearInNormalResponse(MycatSession mycatSession, MySQLClientSession mysql) {
+        SqlRecord record = mycatSession.getProxyRecord();
+        if (record != null) {
+            long now = TimeProvider.INSTANCE.now();
+            record.setEndTime(now);
+            record.setExecutionTime(now - record.getStartTime());
+            SqlRecorderRuntime.INSTANCE.record(record);
+        }
         mycatSession.resetPacket();
         mysql.resetPacket();
 
@@ -109,11 +119,18 @@ public enum MySQLPacketExchanger {
             endPos = packetResolver.getEndPos();
             mySQLPacket.packetReadStartIndex(endPos);
         }
+        SqlRecord record = mycatSession.getProxyRecord();
         if (packetResolver.getMySQLPayloadType()==FIRST_OK){
             int okLastInsertId = packetResolver.getOkLastInsertId();
             int okAffectedRows = packetResolver.getOkAffectedRows();
             mycatSession.setLastInsertId(okLastInsertId);
             mycatSession.setAffectedRows(okAffectedRows);
+            if (record != null) {
+                record.setSqlRows(okAffectedRows);
+            }
+        }
+        if (record != null) {
+            record.setNetOutBytes(record.getNetOutBytes() + endPos - startIndex);
         }
         proxyBuffer.channelWriteStartIndex(startIndex);
         proxyBuffer.channelWriteEndIndex(endPos);
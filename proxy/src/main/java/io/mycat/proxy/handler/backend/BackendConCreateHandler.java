@@ -220,6 +220,7 @@ public final class BackendConCreateHandler implements BackendNIOHandler<MySQLCli
         hs.readPayload(mysql.currentProxyPayload());
         mysql.resetCurrentProxyPayload();
         this.mysqlVersion = hs.getServerVersion();
+        mysql.setBackendThreadId(hs.getConnectionId());
         this.charsetIndex = hs.getCharacterSet() == -1 ? CharsetUtil.getIndex("UTF-8") : hs.getCharacterSet();
         AuthPacket packet = new AuthPacket();
         packet.setCapabilities(serverCapabilities);
@@ -18,6 +18,7 @@ import io.mycat.beans.mysql.packet.MySQLPacket;
 import io.mycat.beans.mysql.packet.MySQLPacketSplitter;
 import io.mycat.buffer.BufferPool;
 import io.mycat.proxy.buffer.ProxyBufferImpl;
+import io.mycat.proxy.reactor.ProxyReactorThread;
 import io.mycat.proxy.session.MycatSession;
 
 import java.io.IOException;
@@ -63,9 +64,11 @@ public class FrontMySQLPacketResolver {
         return false;
       }
     }
-    if(-1==socketChannel.read(payload)){
+    int readed = socketChannel.read(payload);
+    if (-1 == readed) {
       throw new ClosedChannelException();
     }
+    ProxyReactorThread.recordIOBytes(readed);
     if (payload.hasRemaining()) {
       return false;
     } else {
@@ -58,13 +58,17 @@ public final class NIOAcceptor extends ProxyReactorThread<Session> {
     private void accept(SocketChannel socketChannel) throws IOException {
         // 找到一个可用的NIO Reactor Thread，交付托管
         for (; ; ) {
-            MycatReactorThread nioReactor = mycatReactorThreads.getRandomReactor();
+            MycatReactorThread nioReactor = mycatReactorThreads.getLeastLoadedReactor();
             if (nioReactor == null) {
                 socketChannel.close();
                 return;
             }
             if (!nioReactor.isPrepareStop()) {
-                nioReactor.acceptNewSocketChannel(null, socketChannel);
+                if (!nioReactor.acceptNewSocketChannel(null, socketChannel)) {
+                    //最空闲的reactor任务队列也满了,拒绝连接
+                    LOGGER.warn("reactor {} pending jobs exceed {}, close {}", nioReactor.getName(), nioReactor.getMaxPendingJobs(), socketChannel);
+                    socketChannel.close();
+                }
                 return;
             }
 
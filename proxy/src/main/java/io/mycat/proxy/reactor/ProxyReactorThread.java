@@ -31,6 +31,7 @@ import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Reactor 任务调度,内存资源单位 无论是本线程内还是其他的线程,提交任务只能通过pendingQueue
@@ -43,6 +44,8 @@ public abstract class ProxyReactorThread<T extends Session> extends ReactorEnvTh
      * 定时唤醒selector的时间 1.防止写入事件得不到处理 2.处理pending队列
      */
     protected final static long SELECTOR_TIMEOUT = 500L;
+    private final static long SELECTOR_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(SELECTOR_TIMEOUT);
+    public final static int DEFAULT_IO_RATIO = 50;
     private static final Logger LOGGER = LoggerFactory.getLogger(ProxyReactorThread.class);
     protected final FrontSessionManager<T> frontManager;
     protected Selector selector;
@@ -51,9 +54,35 @@ public abstract class ProxyReactorThread<T extends Session> extends ReactorEnvTh
     protected volatile boolean prepareStop = false;
 
     private static long activeTime = System.currentTimeMillis();
+    /**
+     * 负载统计中每秒这么多字节的IO相当于一个会话
+     */
+    private static final long LOAD_BYTES_PER_SESSION = 64 * 1024;
+    /**
+     * 只在本线程写入
+     */
+    private long ioBytes = 0;
+    private long lastDecayTime = System.currentTimeMillis();
+    /**
+     * 每秒衰减一半的IO字节数,近似最近的流量
+     */
+    private volatile long recentIOBytes = 0;
 
-    long ioTimes = 0;
-    boolean pendingJobsEmpty = true;
+    /**
+     * 一轮事件循环中IO时间所占的百分比,其余时间处理pending队列,100表示每轮处理完全部任务
+     */
+    private int ioRatio = DEFAULT_IO_RATIO;
+    /**
+     * 阻塞select之前忙等的纳秒数,0表示不忙等,对延迟敏感的部署用CPU换取唤醒延迟
+     */
+    private long busySpinNanos = 0;
+    /**
+     * 事件循环统计,只在本线程写入
+     */
+    private volatile long loopCount = 0;
+    private volatile long selectNanos = 0;
+    private volatile long ioNanos = 0;
+    private volatile long jobNanos = 0;
     ///////////////////////
     int invalidSelectCount = 0;
     /////////////////////////
@@ -62,6 +91,9 @@ public abstract class ProxyReactorThread<T extends Session> extends ReactorEnvTh
     public ProxyReactorThread(BufferPool bufPool, FrontSessionManager<T> sessionMan)
             throws IOException {
         this.bufPool = bufPool;
+        if (bufPool != null) {
+            bufPool.bindOwner(this);
+        }
         this.selector = Selector.open();
         this.frontManager = sessionMan;
     }
@@ -82,7 +114,7 @@ public abstract class ProxyReactorThread<T extends Session> extends ReactorEnvTh
         if (prepareStop){
             return false;
         }
-        boolean offered = pendingJobs.offer(new NIOJob() {
+        return tryAddNIOJob(new NIOJob() {
             @Override
             public void run(ReactorEnvThread reactor) {
                 try {
@@ -104,7 +136,6 @@ public abstract class ProxyReactorThread<T extends Session> extends ReactorEnvTh
                 return "acceptNewSocketChannel";
             }
         });
-        return offered;
     }
 
     public BufferPool getBufPool() {
@@ -158,70 +189,25 @@ public abstract class ProxyReactorThread<T extends Session> extends ReactorEnvTh
     public void run() {
         while (!this.isInterrupted()) {
             try {
-                pendingJobsEmpty = pendingJobs.isEmpty();
                 long startTime = System.nanoTime();
-                if (pendingJobsEmpty) {
-                    ///////////////epoll///////////////////
-                    int numOfKeys = selector.select(SELECTOR_TIMEOUT);
-                    //////////////////////////////////
-                    if (numOfKeys == 0) {
-                        long dis = System.nanoTime() - startTime;
-                        if (dis < (SELECTOR_TIMEOUT / 2)) {
-                            invalidSelectCount++;
-                        }
-                    }
-                    ////////epoll///////////
-                } else {
-                    selector.selectNow();
-                }
-                updateLastActiveTime();
+                select();
+                long selectEndTime = System.nanoTime();
+                decayIOBytes(updateLastActiveTime());
                 final Set<SelectionKey> keys = selector.selectedKeys();
-                if (keys.isEmpty()) {
-                    if (!pendingJobsEmpty) {
-                        ioTimes = 0;
-                        this.processNIOJob();
-                    }
-                    continue;
-                } else if ((ioTimes > 5) & !pendingJobsEmpty) {
-                    ioTimes = 0;
-                    this.processNIOJob();
+                if (!keys.isEmpty()) {
+                    processSelectedKeys(keys);
                 }
-                ioTimes++;
-                for (final SelectionKey key : keys) {
-                    try {
-                        if (!key.isValid() || !key.channel().isOpen()) {
-                            continue;
-                        }
-                        int readdyOps = key.readyOps();
-                        setCurSession(null);
-                        // 如果当前收到连接请求
-                        if ((readdyOps & SelectionKey.OP_ACCEPT) != 0) {
-                            processAcceptKey(key);
-                        }
-                        // 如果当前连接事件
-                        else if ((readdyOps & SelectionKey.OP_CONNECT) != 0) {
-                            this.processConnectKey(key);
-                        } else if ((readdyOps & SelectionKey.OP_READ) != 0) {
-                            this.processReadKey(key);
-
-                        } else if ((readdyOps & SelectionKey.OP_WRITE) != 0) {
-                            this.processWriteKey(key);
-                        }
-                    } catch (Exception e) {//如果设置为IOException方便调试,避免吞没其他类型异常
-                        LOGGER.error("{}", e);
-                        Session curSession = getCurSession();
-                        if (curSession != null) {
-                            NIOHandler curNIOHandler = curSession.getCurNIOHandler();
-                            if (curNIOHandler != null) {
-                                curNIOHandler.onException(curSession, e);
-                            } else {
-                                curSession.close(false, curSession.setLastMessage(e));
-                            }
-                            setCurSession(null);
-                        }
-                    }
+                long ioEndTime = System.nanoTime();
+                long ioTime = ioEndTime - selectEndTime;
+                if (!pendingJobs.isEmpty()) {
+                    //任务的时间预算按照IO时间的比例分配,没有IO时至少处理一批任务后回到select
+                    this.processNIOJob(ioRatio >= 100 ? Long.MAX_VALUE : ioTime * (100 - ioRatio) / ioRatio);
                 }
-                keys.clear();
+                long endTime = System.nanoTime();
+                loopCount++;
+                selectNanos += selectEndTime - startTime;
+                ioNanos += ioTime;
+                jobNanos += endTime - ioEndTime;
                 /////////epoll //////////
                 if (invalidSelectCount > 512) {
                     Selector newSelector = SelectorUtil.rebuildSelector(this.selector);
@@ -240,6 +226,151 @@ public abstract class ProxyReactorThread<T extends Session> extends ReactorEnvTh
         }
     }
 
+    /**
+     * 有待处理任务时不阻塞,否则先忙等busySpinNanos,再阻塞到有IO事件,被唤醒或者超时
+     */
+    private void select() throws IOException {
+        if (!pendingJobs.isEmpty()) {
+            selector.selectNow();
+            return;
+        }
+        if (busySpinNanos > 0 && spinSelect()) {
+            return;
+        }
+        wakeupPending.set(false);
+        try {
+            //置为false之前提交的任务在这里可见,之后提交的任务会唤醒selector
+            if (!pendingJobs.isEmpty()) {
+                selector.selectNow();
+                return;
+            }
+            long startTime = System.nanoTime();
+            ///////////////epoll///////////////////
+            int numOfKeys = selector.select(SELECTOR_TIMEOUT);
+            //////////////////////////////////
+            if (numOfKeys > 0) {
+                invalidSelectCount = 0;
+            } else if (pendingJobs.isEmpty() && System.nanoTime() - startTime < SELECTOR_TIMEOUT_NANOS / 2) {
+                invalidSelectCount++;
+            }
+        } finally {
+            //线程已经醒来,在下一次阻塞之前其他线程提交任务不需要再唤醒selector
+            wakeupPending.set(true);
+        }
+    }
+
+    /**
+     * 忙等期间会检查pending队列,其他线程提交任务不需要唤醒selector
+     */
+    private boolean spinSelect() throws IOException {
+        long deadline = System.nanoTime() + busySpinNanos;
+        do {
+            if (selector.selectNow() > 0 || !pendingJobs.isEmpty()) {
+                return true;
+            }
+        } while (System.nanoTime() - deadline < 0);
+        return false;
+    }
+
+    private void processSelectedKeys(Set<SelectionKey> keys) {
+        for (final SelectionKey key : keys) {
+            try {
+                if (!key.isValid() || !key.channel().isOpen()) {
+                    continue;
+                }
+                int readdyOps = key.readyOps();
+                setCurSession(null);
+                // 如果当前收到连接请求
+                if ((readdyOps & SelectionKey.OP_ACCEPT) != 0) {
+                    processAcceptKey(key);
+                }
+                // 如果当前连接事件
+                else if ((readdyOps & SelectionKey.OP_CONNECT) != 0) {
+                    this.processConnectKey(key);
+                } else if ((readdyOps & SelectionKey.OP_READ) != 0) {
+                    this.processReadKey(key);
+
+                } else if ((readdyOps & SelectionKey.OP_WRITE) != 0) {
+                    this.processWriteKey(key);
+                }
+            } catch (Exception e) {//如果设置为IOException方便调试,避免吞没其他类型异常
+                LOGGER.error("{}", e);
+                Session curSession = getCurSession();
+                if (curSession != null) {
+                    NIOHandler curNIOHandler = curSession.getCurNIOHandler();
+                    if (curNIOHandler != null) {
+                        curNIOHandler.onException(curSession, e);
+                    } else {
+                        curSession.close(false, curSession.setLastMessage(e));
+                    }
+                    setCurSession(null);
+                }
+            }
+        }
+        keys.clear();
+    }
+
+    /**
+     * 在reactor线程上记录socket读写的字节数,其他线程调用时忽略
+     */
+    public static void recordIOBytes(long bytes) {
+        Thread thread = Thread.currentThread();
+        if (bytes > 0 && thread instanceof ProxyReactorThread) {
+            ((ProxyReactorThread) thread).ioBytes += bytes;
+        }
+    }
+
+    private void decayIOBytes(long now) {
+        if (now - lastDecayTime >= 1000) {
+            lastDecayTime = now;
+            recentIOBytes = recentIOBytes / 2 + ioBytes;
+            ioBytes = 0;
+        }
+    }
+
+    public long getLoopCount() {
+        return loopCount;
+    }
+
+    public long getSelectNanos() {
+        return selectNanos;
+    }
+
+    public long getIoNanos() {
+        return ioNanos;
+    }
+
+    public long getJobNanos() {
+        return jobNanos;
+    }
+
+    public int getIoRatio() {
+        return ioRatio;
+    }
+
+    public void setIoRatio(int ioRatio) {
+        this.ioRatio = ioRatio > 0 && ioRatio <= 100 ? ioRatio : DEFAULT_IO_RATIO;
+    }
+
+    public long getBusySpinNanos() {
+        return busySpinNanos;
+    }
+
+    public void setBusySpinNanos(long busySpinNanos) {
+        this.busySpinNanos = Math.max(0, busySpinNanos);
+    }
+
+    public long getRecentIOBytes() {
+        return recentIOBytes;
+    }
+
+    /**
+     * 用于分配新连接,前端会话数,待处理任务数与近期流量折算后相加
+     */
+    public long getLoad() {
+        return frontManager.currentSessionCount() + getPendingJobCount() + recentIOBytes / LOAD_BYTES_PER_SESSION;
+    }
+
     /**
      * 获取该session,最近活跃的时间
      */
@@ -291,8 +422,13 @@ public abstract class ProxyReactorThread<T extends Session> extends ReactorEnvTh
         this.prepareStop = prepareStop;
     }
 
+    /**
+     * 本线程内不需要唤醒,线程醒着的时候多次提交只唤醒一次
+     */
     @Override
     public void wakeup() {
-        selector.wakeup();
+        if (Thread.currentThread() != this && wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
     }
 }
@@ -19,6 +19,8 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Objects;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  *
@@ -27,7 +29,25 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 public abstract class ReactorEnvThread extends Thread implements SessionThread {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(ReactorEnvThread.class);
+  public static final int DEFAULT_MAX_PENDING_JOBS = 65536;
+  /**
+   * 每处理这么多任务检查一次时间预算
+   */
+  private static final int JOB_BUDGET_CHECK_INTERVAL = 64;
+  /**
+   * 多生产者单消费者,只有本线程poll
+   */
   protected final ConcurrentLinkedQueue<NIOJob> pendingJobs = new ConcurrentLinkedQueue<>();
+  /**
+   * ConcurrentLinkedQueue.size()需要遍历,负载统计与队列上限使用单独的计数
+   */
+  protected final AtomicInteger pendingJobCount = new AtomicInteger();
+  /**
+   * 合并唤醒,本线程阻塞前置为false,
+   * 其他线程只有把它从false改为true时才需要唤醒selector
+   */
+  protected final AtomicBoolean wakeupPending = new AtomicBoolean();
+  protected volatile int maxPendingJobs = DEFAULT_MAX_PENDING_JOBS;
 
 
   public ReactorEnvThread() {
@@ -43,25 +63,70 @@ public abstract class ReactorEnvThread extends Thread implements SessionThread {
 
 
   /**
-   * 向pending队列添加任务
+   * 向pending队列添加任务.
+   * 会话的控制任务与正在处理的流程的后续任务丢弃后会话无法恢复,也不能在其他线程代替执行,所以不受队列上限限制
    */
   public void addNIOJob(NIOJob job) {
+    pendingJobCount.incrementAndGet();
     pendingJobs.offer(job);
     wakeup();
   }
+
+  /**
+   * 提交开始新工作的任务,其他线程提交且队列已满时不添加并返回false,由调用者拒绝这项工作.
+   * 本线程提交的任务是正在处理的流程的后续,不拒绝
+   */
+  public boolean tryAddNIOJob(NIOJob job) {
+    if (pendingJobCount.incrementAndGet() > maxPendingJobs && Thread.currentThread() != this) {
+      pendingJobCount.decrementAndGet();
+      return false;
+    }
+    pendingJobs.offer(job);
+    wakeup();
+    return true;
+  }
+
+  public int getPendingJobCount() {
+    return pendingJobCount.get();
+  }
+
+  public int getMaxPendingJobs() {
+    return maxPendingJobs;
+  }
+
+  public void setMaxPendingJobs(int maxPendingJobs) {
+    this.maxPendingJobs = maxPendingJobs > 0 ? maxPendingJobs : DEFAULT_MAX_PENDING_JOBS;
+  }
+
  public abstract void wakeup();
 
   protected void processNIOJob() {
+    processNIOJob(Long.MAX_VALUE);
+  }
+
+  /**
+   * 处理pending队列直到为空或者超出时间预算,至少处理JOB_BUDGET_CHECK_INTERVAL个任务
+   *
+   * @return 处理的任务数
+   */
+  protected int processNIOJob(long budgetNanos) {
     NIOJob nioJob = null;
     ReactorEnvThread reactor = this;
+    long startTime = System.nanoTime();
+    int count = 0;
     while ((nioJob = pendingJobs.poll()) != null) {
+      pendingJobCount.decrementAndGet();
       try {
         nioJob.run(reactor);
       } catch (Exception e) {
         LOGGER.error("Run nio job err:{}", e);
         nioJob.stop(reactor, e);
       }
+      if (++count % JOB_BUDGET_CHECK_INTERVAL == 0 && System.nanoTime() - startTime >= budgetNanos) {
+        break;
+      }
     }
+    return count;
   }
 
 
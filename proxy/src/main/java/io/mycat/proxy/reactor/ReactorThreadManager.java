@@ -25,6 +25,10 @@ import java.util.concurrent.ThreadLocalRandom;
  **/
 public class ReactorThreadManager {
     final CopyOnWriteArrayList<MycatReactorThread> list;
+    /**
+     * list的快照,读取时不需要加锁
+     */
+    private volatile MycatReactorThread[] reactors;
 
 
     public List<MycatReactorThread> getList() {
@@ -33,17 +37,44 @@ public class ReactorThreadManager {
 
     public ReactorThreadManager(List<MycatReactorThread> list) {
         this.list = new CopyOnWriteArrayList<>(list);
+        this.reactors = this.list.toArray(new MycatReactorThread[0]);
     }
 
-    public synchronized MycatReactorThread getRandomReactor() {
-        return list.get(ThreadLocalRandom.current().nextInt(0, list.size() ));
+    public MycatReactorThread getRandomReactor() {
+        MycatReactorThread[] reactors = this.reactors;
+        return reactors[ThreadLocalRandom.current().nextInt(0, reactors.length)];
+    }
+
+    /**
+     * 选择负载最低的reactor,从随机位置开始比较,负载相同时不会总是选中第一个
+     */
+    public MycatReactorThread getLeastLoadedReactor() {
+        MycatReactorThread[] reactors = this.reactors;
+        int length = reactors.length;
+        int start = ThreadLocalRandom.current().nextInt(0, length);
+        MycatReactorThread res = null;
+        long minLoad = Long.MAX_VALUE;
+        for (int i = 0; i < length; i++) {
+            MycatReactorThread reactor = reactors[(start + i) % length];
+            if (reactor.isPrepareStop()) {
+                continue;
+            }
+            long load = reactor.getLoad();
+            if (load < minLoad) {
+                minLoad = load;
+                res = reactor;
+            }
+        }
+        return res == null ? reactors[start] : res;
     }
 
     public synchronized void add(MycatReactorThread thread) {
         list.add(thread);
+        this.reactors = list.toArray(new MycatReactorThread[0]);
     }
     public synchronized void remove(MycatReactorThread thread) {
         list.remove(thread);
+        this.reactors = list.toArray(new MycatReactorThread[0]);
     }
 
 }
\ No newline at end of file
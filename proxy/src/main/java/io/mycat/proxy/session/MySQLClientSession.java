@@ -83,6 +83,10 @@ public class MySQLClientSession extends
    */
   private MySQLSessionMonopolizeType monopolizeType = MySQLSessionMonopolizeType.NONE;
   private ResponseType responseType;
+  /**
+   * 握手包里的连接id,用于KILL QUERY
+   */
+  private long backendThreadId;
 
   /**
    * 构造函数
@@ -484,6 +488,14 @@ public class MySQLClientSession extends
     return datasource;
   }
 
+  public long getBackendThreadId() {
+    return backendThreadId;
+  }
+
+  public void setBackendThreadId(long backendThreadId) {
+    this.backendThreadId = backendThreadId;
+  }
+
   public long getCursorStatementId() {
     return cursorStatementId;
   }
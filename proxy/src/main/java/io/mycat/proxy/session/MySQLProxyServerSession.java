@@ -10,6 +10,7 @@ import io.mycat.proxy.handler.MycatSessionWriteHandler;
 import io.mycat.proxy.monitor.MycatMonitor;
 import io.mycat.proxy.reactor.MycatReactorThread;
 import io.mycat.proxy.reactor.NIOJob;
+import io.mycat.proxy.reactor.ProxyReactorThread;
 import io.mycat.proxy.reactor.ReactorEnvThread;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -258,6 +259,7 @@ public interface MySQLProxyServerSession<T extends Session<T>> extends MySQLServ
                 assert packetContainer[0] != null;
                 assert packetContainer[1] != null;
                 writed = session.channel().write(packetContainer);
+                ProxyReactorThread.recordIOBytes(writed);
                 if (first.hasRemaining()) {
                     return true;
                 } else {
@@ -267,12 +269,14 @@ public interface MySQLProxyServerSession<T extends Session<T>> extends MySQLServ
                 assert packetContainer[0] != null;
                 assert packetContainer[1] != null;
                 writed = session.channel().write(packetContainer);
+                ProxyReactorThread.recordIOBytes(writed);
                 if (first.hasRemaining()) {
                     return true;
                 } else {
                     if (packetSplitter.nextPacketInPacketSplitter()) {
                         splitPacket(session, packetContainer, packetSplitter, first);
                         writed = session.channel().write(packetContainer);
+                        ProxyReactorThread.recordIOBytes(writed);
                         if (first.hasRemaining()) {
                             return true;
                         } else {
@@ -38,6 +38,7 @@ import io.mycat.proxy.reactor.MycatReactorThread;
 import io.mycat.proxy.reactor.NIOJob;
 import io.mycat.proxy.reactor.SessionThread;
 import io.mycat.runtime.MycatDataContextSupport;
+import io.mycat.sqlrecorder.SqlRecord;
 import io.mycat.util.CharsetUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -83,6 +84,10 @@ public final class MycatSession extends AbstractSession<MycatSession> implements
     private final ArrayDeque<NIOJob> delayedNioJobs = new ArrayDeque<>();
 
     private boolean gracefulShutdowning = false;
+    /**
+     * 正在直接转发到后端的sql的执行记录,响应正常结束时提交
+     */
+    private SqlRecord proxyRecord;
 
     public MycatSession(int sessionId, BufferPool bufferPool, NIOHandler nioHandler,
                         SessionManager<MycatSession> sessionManager) {
@@ -110,6 +115,10 @@ public final class MycatSession extends AbstractSession<MycatSession> implements
     }
 
     public void onHandlerFinishedClear() {
+        if (!isInTransaction()) {
+            dataContext.closeStatementResources();
+        }
+        proxyRecord = null;
         resetPacket();
         setResponseFinished(ProcessState.READY);
         if (!isInTransaction() || !isBindMySQLSession()) {
@@ -468,6 +477,14 @@ public final class MycatSession extends AbstractSession<MycatSession> implements
         this.setCharset(CharsetUtil.getCharset(index));
     }
 
+    public SqlRecord getProxyRecord() {
+        return proxyRecord;
+    }
+
+    public void setProxyRecord(SqlRecord proxyRecord) {
+        this.proxyRecord = proxyRecord;
+    }
+
     public MycatSessionWriteHandler getWriteHandler() {
         return writeHandler;
     }
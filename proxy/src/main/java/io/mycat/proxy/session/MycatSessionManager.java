@@ -32,6 +32,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
 /**
@@ -44,6 +45,10 @@ public class MycatSessionManager implements FrontSessionManager<MycatSession> {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MycatSessionManager.class);
     final ConcurrentLinkedDeque<MycatSession> mycatSessions = new ConcurrentLinkedDeque<>();
+    /**
+     * ConcurrentLinkedDeque.size()需要遍历,reactor负载统计频繁读取会话数
+     */
+    private final AtomicInteger sessionCount = new AtomicInteger();
     private final Function<MycatSession, CommandDispatcher> commandDispatcher;
     private final Authenticator authenticator;
 
@@ -61,7 +66,7 @@ public class MycatSessionManager implements FrontSessionManager<MycatSession> {
 
     @Override
     public int currentSessionCount() {
-        return mycatSessions.size();
+        return sessionCount.get();
     }
 
     /**
@@ -71,7 +76,9 @@ public class MycatSessionManager implements FrontSessionManager<MycatSession> {
     public void removeSession(MycatSession mycat, boolean normal, String reason) {
         try {
             MycatMonitor.onCloseMycatSession(mycat, normal, reason);
-            mycatSessions.remove(mycat);
+            if (mycatSessions.remove(mycat)) {
+                sessionCount.decrementAndGet();
+            }
             mycat.channel().close();
         } catch (Exception e) {
             LOGGER.error("{}", e);
@@ -96,6 +103,7 @@ public class MycatSessionManager implements FrontSessionManager<MycatSession> {
             MycatMonitor.onNewMycatSession(mycat);
             mySQLClientAuthHandler.sendAuthPackge();
             this.mycatSessions.add(mycat);
+            sessionCount.incrementAndGet();
         } catch (Exception e) {
             MycatMonitor.onAuthHandlerWriteException(mycat, e);
             mycat.close(false, e);
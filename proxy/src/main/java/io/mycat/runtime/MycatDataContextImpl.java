@@ -23,6 +23,7 @@ import java.sql.Statement;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 @Getter
@@ -62,6 +63,7 @@ public class MycatDataContextImpl implements MycatDataContext {
     private TransactionSessionRunner runner;
     private final AtomicBoolean cancelFlag = new AtomicBoolean(false);
     private final Map<Long,PreparedStatement> preparedStatementMap = new HashMap<>();
+    private final ConcurrentLinkedQueue<AutoCloseable> statementResources = new ConcurrentLinkedQueue<>();
     public MycatDataContextImpl(TransactionSessionRunner runner) {
         this.runner = runner;
     }
@@ -319,11 +321,30 @@ public class MycatDataContextImpl implements MycatDataContext {
 
     @Override
     public void close() {
+        //先通知正在读取分片结果的线程停止,再归还连接
+        cancelFlag.set(true);
         if (transactionSession != null) {
             transactionSession.check();
             transactionSession.close();
         }
-        cancelFlag.set(true);
+        closeStatementResources();
+    }
+
+    @Override
+    public void addStatementResource(AutoCloseable resource) {
+        statementResources.add(resource);
+    }
+
+    @Override
+    public void closeStatementResources() {
+        AutoCloseable resource;
+        while ((resource = statementResources.poll()) != null) {
+            try {
+                resource.close();
+            } catch (Exception e) {
+                log.error("", e);
+            }
+        }
     }
 
     @Override
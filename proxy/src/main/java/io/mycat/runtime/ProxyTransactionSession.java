@@ -36,14 +36,17 @@ public class ProxyTransactionSession extends LocalTransactionSession {
 
     }
 
+    /**
+     * 全局表在事务中通过jdbc写入,这些连接随客户端的事务一起提交
+     */
     @Override
     protected void callBackCommit() {
-
+        super.callBackCommit();
     }
 
     @Override
     protected void callBackRollback() {
-
+        super.callBackRollback();
     }
     @Override
     public Dumper snapshot() {
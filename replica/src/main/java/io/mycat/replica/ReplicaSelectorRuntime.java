@@ -52,6 +52,11 @@ public enum ReplicaSelectorRuntime {
 
     final ConcurrentMap<String, HeartbeatFlow> heartbeatDetectorMap = new ConcurrentHashMap<>();
     volatile ScheduledFuture<?> schedule;
+    /**
+     * 正在独立调度的心跳,停止心跳时递增heartbeatGeneration使其退出
+     */
+    final ConcurrentMap<String, Object> runningHeartbeatMap = new ConcurrentHashMap<>();
+    volatile long heartbeatGeneration;
     volatile MycatConfig config;
     private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaSelectorRuntime.class);
 
@@ -60,11 +65,15 @@ public enum ReplicaSelectorRuntime {
         if (this.config == config) {
             return;
         }
-        innerThis(config);
+        innerThis(this.config, config);
         this.config = config;
     }
 
-    private void innerThis(MycatConfig config) {
+    /**
+     * 与上一次的配置比较,集群或者其数据源配置修改过的集群创建新的选择器后替换,
+     * 未修改的集群保留选择器,实例状态与心跳
+     */
+    private void innerThis(MycatConfig oldConfig, MycatConfig config) {
         PlugRuntime.INSTANCE.load(config);
 
         ClusterRootConfig replicasRootConfig = config.getCluster();
@@ -78,8 +87,17 @@ public enum ReplicaSelectorRuntime {
         Objects.requireNonNull(replicaConfigList, "replica config can not be empty");
         ////////////////////////////////////check/////////////////////////////////////////////////
 
+        Map<String, ClusterRootConfig.ClusterConfig> oldClusterMap = oldConfig == null ? Collections.emptyMap() :
+                oldConfig.getCluster().getClusters().stream().collect(Collectors.toMap(k -> k.getName(), v -> v));
+        Map<String, DatasourceRootConfig.DatasourceConfig> oldDatasourceConfigMap = oldConfig == null ? Collections.emptyMap() :
+                oldConfig.getDatasource().getDatasources().stream().collect(Collectors.toMap(k -> k.getName(), v -> v));
         for (ClusterRootConfig.ClusterConfig replicaConfig : replicaConfigList) {
-            addCluster(datasourceConfigMap, replicaConfig);
+            String name = replicaConfig.getName();
+            if (!replicaMap.containsKey(name)) {
+                addCluster(datasourceConfigMap, replicaConfig);
+            } else if (isChanged(oldClusterMap.get(name), replicaConfig, oldDatasourceConfigMap, datasourceConfigMap)) {
+                replaceCluster(datasourceConfigMap, oldDatasourceConfigMap, replicaConfig);
+            }
         }
 
 
@@ -87,14 +105,24 @@ public enum ReplicaSelectorRuntime {
 
         //新配置中的集群名字
         Set<String> clusterNames = replicasRootConfig.getClusters().stream().map(i -> i.getName()).collect(Collectors.toSet());
-        new HashSet<>(replicaMap.keySet()).stream().filter(name->!clusterNames.contains(name)).forEach(name->replicaMap.remove(name));
+        new HashSet<>(replicaMap.keySet()).stream().filter(name->!clusterNames.contains(name)).forEach(name->{
+            ReplicaDataSourceSelector remove = replicaMap.remove(name);
+            if (remove != null) {
+                remove.datasourceMap.keySet().forEach(datasourceName -> removeHeartFlow(name, datasourceName));
+            }
+        });
 
         //新配置中的数据源名字
         Set<String> datasourceNames = config.getDatasource().getDatasources().stream().map(i -> i.getName()).collect(Collectors.toSet());
         new HashSet<>(physicsInstanceMap.keySet()).stream().filter(name->!datasourceNames.contains(name)).forEach(name->physicsInstanceMap.remove(name));
 
 
-        updateTimer(config);
+        //定时器配置没有变化时不重启心跳,新的集群会被正在运行的定时任务遍历到
+        if (oldConfig == null || !isHeartbeat()
+                || !Objects.equals(oldConfig.getCluster().getTimer(), replicasRootConfig.getTimer())
+                || oldConfig.getCluster().isClose() != replicasRootConfig.isClose()) {
+            updateTimer(config);
+        }
 
         Map<String, PhysicsInstanceImpl> newphysicsInstanceMap = replicaMap.values().stream().flatMap(i -> i.datasourceMap.values().stream()).collect(Collectors.toMap(k -> k.getName(), v -> v));
         CollectionUtil.safeUpdateByUpdate(this.physicsInstanceMap, newphysicsInstanceMap);
@@ -125,17 +153,23 @@ public enum ReplicaSelectorRuntime {
                 c.notifyChangeSelectRead(true);
                 c.notifyChangeAlive(true);
             });
+            long period = TimeUnit.valueOf(timerConfig.getTimeUnit()).toMillis(timerConfig.getPeriod());
+            long generation = this.heartbeatGeneration;
+            //只负责为新的数据源启动心跳,每个数据源的心跳按各自的间隔独立调度,互不阻塞
             this.schedule = ScheduleUtil.getTimer().scheduleAtFixedRate(() -> {
                         for (Map.Entry<String, ReplicaDataSourceSelector> stringReplicaDataSourceSelectorEntry : replicaMap.entrySet()) {
                             for (String datasourceName : stringReplicaDataSourceSelectorEntry.getValue().datasourceMap.keySet()) {
                                 String replicaName = stringReplicaDataSourceSelectorEntry.getKey();
                                 String key = replicaName + "." + datasourceName;
                                 HeartbeatFlow heartbeatFlow = heartbeatDetectorMap.get(key);
-                                if (heartbeatFlow != null) {
-                                    if (LOGGER.isInfoEnabled()) {
-                                        LOGGER.info("heartbeat:{}",key);
+                                if (heartbeatFlow != null && !runningHeartbeatMap.containsKey(key)) {
+                                    Object token = new Object();
+                                    if (runningHeartbeatMap.putIfAbsent(key, token) == null) {
+                                        //首次心跳随机分散在一个周期内
+                                        long delay = ThreadLocalRandom.current().nextLong(Math.max(1, period));
+                                        ScheduleUtil.getTimer().schedule(() -> heartbeat(key, heartbeatFlow, token, generation, period),
+                                                delay, TimeUnit.MILLISECONDS);
                                     }
-                                    heartbeatFlow.heartbeat();
                                 }
                             }
                         }
@@ -144,11 +178,38 @@ public enum ReplicaSelectorRuntime {
         }
     }
 
+    /**
+     * 发送一次心跳后按实例状态计算下一次的间隔重新调度,
+     * 心跳停止,配置更新或者数据源被移除时结束
+     */
+    private void heartbeat(String key, HeartbeatFlow heartbeatFlow, Object token, long generation, long period) {
+        if (generation != this.heartbeatGeneration || heartbeatDetectorMap.get(key) != heartbeatFlow) {
+            runningHeartbeatMap.remove(key, token);
+            return;
+        }
+        try {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("heartbeat:{}", key);
+            }
+            heartbeatFlow.heartbeat();
+        } catch (Throwable e) {
+            LOGGER.error("heartbeat:{}", key, e);
+        }
+        try {
+            ScheduleUtil.getTimer().schedule(() -> heartbeat(key, heartbeatFlow, token, generation, period),
+                    heartbeatFlow.nextDelay(period), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            runningHeartbeatMap.remove(key, token);
+        }
+    }
+
     public void stopHeartBeat() {
         if (this.schedule != null) {
             schedule.cancel(false);
             schedule = null;
         }
+        this.heartbeatGeneration++;
+        runningHeartbeatMap.clear();
     }
 
     public synchronized boolean isHeartbeat(){
@@ -248,11 +309,58 @@ public enum ReplicaSelectorRuntime {
         if (datasourceConfig.getInstanceType() != null) {
             instanceType = InstanceType.valueOf(datasourceConfig.getInstanceType());
         }
-        return registerDatasource(selector.name, datasourceConfig.getName(), instanceType,
+        return registerDatasource(selector, datasourceConfig.getName(), instanceType,
                 datasourceConfig.getWeight(), sessionCounter);
     }
 
+    private static boolean isChanged(ClusterRootConfig.ClusterConfig oldReplicaConfig,
+                                     ClusterRootConfig.ClusterConfig replicaConfig,
+                                     Map<String, DatasourceRootConfig.DatasourceConfig> oldDatasourceConfigMap,
+                                     Map<String, DatasourceRootConfig.DatasourceConfig> datasourceConfigMap) {
+        if (oldReplicaConfig == null || !oldReplicaConfig.equals(replicaConfig)) {
+            return true;
+        }
+        for (String datasourceName : replicaConfig.getAllDatasources()) {
+            if (!Objects.equals(oldDatasourceConfigMap.get(datasourceName), datasourceConfigMap.get(datasourceName))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 新的选择器准备好之后再替换,替换期间路由仍然使用旧的选择器.
+     * 配置没有变化的数据源保留连接计数,旧的心跳移除后由心跳注册方按新配置重新创建
+     */
+    private void replaceCluster(Map<String, DatasourceRootConfig.DatasourceConfig> datasourceConfigMap,
+                                Map<String, DatasourceRootConfig.DatasourceConfig> oldDatasourceConfigMap,
+                                ClusterRootConfig.ClusterConfig replicaConfig) {
+        String name = replicaConfig.getName();
+        ReplicaDataSourceSelector selector = createCluster(replicaConfig);
+        registerDatasource(datasourceConfigMap, selector, replicaConfig.getMasters(), true);
+        registerDatasource(datasourceConfigMap, selector, replicaConfig.getReplicas(), false);
+        ReplicaDataSourceSelector old = replicaMap.put(name, selector);
+        if (old == null) {
+            return;
+        }
+        for (PhysicsInstanceImpl oldInstance : old.datasourceMap.values()) {
+            String datasourceName = oldInstance.getName();
+            PhysicsInstanceImpl instance = selector.datasourceMap.get(datasourceName);
+            if (instance != null && Objects.equals(oldDatasourceConfigMap.get(datasourceName), datasourceConfigMap.get(datasourceName))) {
+                instance.sessionCounters.addAll(oldInstance.sessionCounters);
+            }
+            removeHeartFlow(name, datasourceName);
+        }
+        LOGGER.info("replica {} is reloaded", name);
+    }
+
     private void addCluster(Map<String, DatasourceRootConfig.DatasourceConfig> datasourceConfigMap, ClusterRootConfig.ClusterConfig replicaConfig) {
+        ReplicaDataSourceSelector selector = replicaMap.computeIfAbsent(replicaConfig.getName(), s -> createCluster(replicaConfig));
+        registerDatasource(datasourceConfigMap, selector, replicaConfig.getMasters(), true);
+        registerDatasource(datasourceConfigMap, selector, replicaConfig.getReplicas(), false);
+    }
+
+    private ReplicaDataSourceSelector createCluster(ClusterRootConfig.ClusterConfig replicaConfig) {
         String name = replicaConfig.getName();
         ReplicaType replicaType = ReplicaType.valueOf(replicaConfig.getReplicaType());
         BalanceType balanceType = BalanceType.valueOf(replicaConfig.getReadBalanceType());
@@ -264,11 +372,8 @@ public enum ReplicaSelectorRuntime {
                 = PlugRuntime.INSTANCE
                 .getLoadBalanceByBalanceName(replicaConfig.getWriteBalanceName());
         int maxRequestCount = replicaConfig.getMaxCon() == null ? Integer.MAX_VALUE : replicaConfig.getMaxCon();
-        ReplicaDataSourceSelector selector = registerCluster(name, balanceType,
-                replicaType, maxRequestCount, switchType, readLB, writeLB);
-
-        registerDatasource(datasourceConfigMap, selector, replicaConfig.getMasters(), true);
-        registerDatasource(datasourceConfigMap, selector, replicaConfig.getReplicas(), false);
+        return new ReplicaDataSourceSelector(name, balanceType, replicaType, maxRequestCount, switchType, readLB,
+                writeLB);
     }
 
     private void registerDatasource(Map<String, DatasourceRootConfig.DatasourceConfig> datasourceConfigMap, ReplicaDataSourceSelector selector, List<String> datasourceNameList, boolean master) {
@@ -281,10 +386,9 @@ public enum ReplicaSelectorRuntime {
         }
     }
 
-    private PhysicsInstance registerDatasource(String replicaName, String dataSourceName,
+    private PhysicsInstance registerDatasource(ReplicaDataSourceSelector sourceSelector, String dataSourceName,
                                                InstanceType type,
                                                int weight, SessionCounter sessionCounter) {
-        ReplicaDataSourceSelector sourceSelector = replicaMap.get(replicaName);
         Objects.requireNonNull(sourceSelector);
         PhysicsInstanceImpl instance = sourceSelector.register(dataSourceName, type, weight);
         if (sessionCounter != null) {
@@ -294,16 +398,6 @@ public enum ReplicaSelectorRuntime {
     }
 
 
-    private ReplicaDataSourceSelector registerCluster(String replicaName, BalanceType balanceType,
-                                                      ReplicaType type,
-                                                      int maxRequestCount,
-                                                      ReplicaSwitchType switchType, LoadBalanceStrategy readLB,
-                                                      LoadBalanceStrategy writeLB) {
-        return replicaMap.computeIfAbsent(replicaName,
-                s -> new ReplicaDataSourceSelector(replicaName, balanceType, type, maxRequestCount, switchType, readLB,
-                        writeLB));
-    }
-
     //////////////////////////////////////////public read///////////////////////////////////////////////////////////////////
     public String getDatasourceNameByRandom() {
         ArrayList<ReplicaDataSourceSelector> values = new ArrayList<>(replicaMap.values());
@@ -330,6 +424,23 @@ public enum ReplicaSelectorRuntime {
         return writeDatasource.getName();
     }
 
+    /**
+     * 后台统计之类的只读任务尽量落在可读的从节点上,没有可用从节点时按集群的读负载均衡选择
+     */
+    public String getReadOnlyDatasourceNameByReplicaName(String replicaName) {
+        ReplicaDataSourceSelector selector = replicaMap.get(replicaName);
+        if (selector == null) {
+            return replicaName;
+        }
+        List<PhysicsInstanceImpl> slaves = selector.getReadDataSource().stream()
+                .filter(i -> !i.isMaster() && i.asSelectRead())
+                .collect(Collectors.toList());
+        if (!slaves.isEmpty()) {
+            return slaves.get(ThreadLocalRandom.current().nextInt(slaves.size())).getName();
+        }
+        return getDatasourceNameByReplicaName(replicaName, false, null);
+    }
+
     public PhysicsInstanceImpl getWriteDatasourceByReplicaName(String replicaName,
                                                                LoadBalanceStrategy balanceStrategy) {
         ReplicaDataSourceSelector selector = replicaMap.get(replicaName);
@@ -14,12 +14,14 @@
  */
 package io.mycat.replica.heartbeat;
 
+import io.mycat.ScheduleUtil;
 import io.mycat.replica.PhysicsInstance;
 import io.mycat.replica.ReplicaSelectorRuntime;
 import io.mycat.replica.ReplicaSwitchType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -51,10 +53,33 @@ public class DefaultHeartbeatFlow extends HeartbeatFlow {
 
   @Override
   public void heartbeat() {
+    //上一次心跳还没有响应并且未超时,不重复发送
+    if (!hbStatus.tryChecking() && !isHeartbeatTimeout()) {
+      return;
+    }
     updateLastSendQryTime();
     HeartBeatStrategy strategy = strategyProvider.apply(this);
     this.strategy = strategy;
-    executer.accept(strategy);
+    if (heartbeatTimeout > 0) {
+      ScheduleUtil.getTimer().schedule(() -> checkTimeout(strategy), heartbeatTimeout, TimeUnit.MILLISECONDS);
+    }
+    try {
+      executer.accept(strategy);
+    } catch (Exception e) {
+      LOGGER.error("{} heartbeat fail", datasouceName, e);
+      strategy.onException(e);
+    }
+  }
+
+  /**
+   * 超过heartbeatTimeout仍未响应的心跳记为超时,使挂起的实例也能被发现
+   */
+  private void checkTimeout(HeartBeatStrategy strategy) {
+    if (this.strategy == strategy && !strategy.isQuit() && hbStatus.isChecking()) {
+      LOGGER.warn("{} heartbeat timeout {}ms", datasouceName, heartbeatTimeout);
+      strategy.setQuit(true);
+      setStatus(DatasourceEnum.TIMEOUT_STATUS);
+    }
   }
 
   @Override
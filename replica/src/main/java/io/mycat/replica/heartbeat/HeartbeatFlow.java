@@ -19,6 +19,8 @@ import lombok.Getter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.ThreadLocalRandom;
+
 import static io.mycat.replica.heartbeat.DatasourceEnum.*;
 
 /**
@@ -35,6 +37,19 @@ public abstract class HeartbeatFlow {
   protected volatile DatasourceStatus dsStatus;
   protected volatile long lastSendQryTime;
   protected volatile long lastReceivedQryTime;//    private isCheck
+  protected volatile long rtt = -1;//最近一次心跳的往返时间,毫秒
+  protected volatile int stableCount;//连续成功的次数
+
+  /**
+   * 失败后以周期的1/FAST_DIVISOR探测
+   */
+  private static final int FAST_DIVISOR = 4;
+  /**
+   * 每连续成功STABLE_COUNT次,间隔增加一个周期,最多MAX_MULTIPLE个周期
+   */
+  private static final int STABLE_COUNT = 10;
+  private static final int MAX_MULTIPLE = 4;
+  private static final double JITTER = 0.1;
 
 
   public HeartbeatFlow(PhysicsInstance instance, int maxRetry,
@@ -81,6 +96,14 @@ public abstract class HeartbeatFlow {
       case INIT_STATUS:
         break;
     }
+    if (status == OK_STATUS || status == ERROR_STATUS) {
+      this.rtt = System.currentTimeMillis() - lastSendQryTime;
+    }
+    if (status == OK_STATUS && this.hbStatus.getErrorCount() == 0 && this.dsStatus.isAlive()) {
+      this.stableCount++;
+    } else {
+      this.stableCount = 0;
+    }
     updateLastReceivedQryTime();
     this.hbStatus.setChecking(false);
   }
@@ -127,6 +150,23 @@ public abstract class HeartbeatFlow {
     }
   }
 
+  /**
+   * 下一次心跳的间隔,失败或者未恢复时加快,稳定时逐步放慢,并加上随机抖动避免所有实例同时发送
+   */
+  public long nextDelay(long period) {
+    long delay;
+    if (this.hbStatus.getErrorCount() > 0 || !this.dsStatus.isAlive()) {
+      delay = Math.max(1, period / FAST_DIVISOR);
+    } else {
+      delay = period * Math.min(MAX_MULTIPLE, 1 + stableCount / STABLE_COUNT);
+    }
+    long jitter = (long) (delay * JITTER);
+    if (jitter > 0) {
+      delay += ThreadLocalRandom.current().nextLong(-jitter, jitter + 1);
+    }
+    return Math.max(1, delay);
+  }
+
   public abstract void heartbeat();
 
   public abstract void sendDataSourceStatus(DatasourceStatus status);
@@ -25,6 +25,13 @@ import java.util.Map;
 public class AutoPartitionByLong extends SingleValueRuleFunction {
 
   private List<NodeIndexRange> longRanges;
+  /**
+   * 按valueStart排序的区间展开成数组,区间不重叠时二分查找
+   */
+  private long[] starts;
+  private long[] ends;
+  private int[] nodeIndexes;
+  private boolean overlapping;
   private int defaultNode = -1;
   private int partitionCount;
 
@@ -38,19 +45,27 @@ public class AutoPartitionByLong extends SingleValueRuleFunction {
     this.defaultNode = Integer.parseInt(prot.get("defaultNode"));
     this.longRanges = NodeIndexRange.getLongRanges(ranges);
     this.partitionCount = NodeIndexRange.getPartitionCount(this.longRanges);
+    int size = this.longRanges.size();
+    this.starts = new long[size];
+    this.ends = new long[size];
+    this.nodeIndexes = new int[size];
+    this.overlapping = false;
+    for (int i = 0; i < size; i++) {
+      NodeIndexRange range = this.longRanges.get(i);
+      starts[i] = range.valueStart;
+      ends[i] = range.valueEnd;
+      nodeIndexes[i] = range.nodeIndex;
+      if (starts[i] > ends[i] || (i > 0 && starts[i] <= ends[i - 1])) {
+        overlapping = true;
+      }
+    }
   }
 
 
   @Override
   public int calculateIndex(String columnValue) {
     try {
-      long value = Long.parseLong(columnValue);
-      for (NodeIndexRange longRang : this.longRanges) {
-        if (value <= longRang.valueEnd && value >= longRang.valueStart) {
-          return longRang.nodeIndex;
-        }
-      }
-      return defaultNode;
+      return calculateIndex(Long.parseLong(columnValue));
     } catch (NumberFormatException e) {
       throw new IllegalArgumentException(
           "columnValue:" + columnValue + " Please eliminate any quote and non number within it.",
@@ -58,6 +73,40 @@ public class AutoPartitionByLong extends SingleValueRuleFunction {
     }
   }
 
+  @Override
+  public int calculateIndex(long value) {
+    if (overlapping) {
+      //区间重叠时保持原来按顺序取第一个匹配的语义
+      for (int i = 0; i < starts.length; i++) {
+        if (value <= ends[i] && value >= starts[i]) {
+          return nodeIndexes[i];
+        }
+      }
+      return defaultNode;
+    }
+    int low = 0;
+    int high = starts.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (starts[mid] > value) {
+        high = mid - 1;
+      } else if (ends[mid] < value) {
+        low = mid + 1;
+      } else {
+        return nodeIndexes[mid];
+      }
+    }
+    return defaultNode;
+  }
+
+  @Override
+  public int calculateIndex(byte[] bytes, int offset, int length) {
+    if (isLong(bytes, offset, length)) {
+      return calculateIndex(parseLong(bytes, offset, length));
+    }
+    return super.calculateIndex(bytes, offset, length);
+  }
+
   @Override
   public int[] calculateIndexRange(String beginValue, String endValue) {
     return calculateSequenceRange(this, beginValue, endValue);
@@ -38,7 +38,25 @@ public class ConsistentHashPreSlot extends SingleValueRuleFunction {
 
     @Override
     public int calculateIndex(String columnValue) {
-        long hash = hashFunction.hash(columnValue);
+        return indexOfHash(hashFunction.hash(columnValue));
+    }
+
+    @Override
+    public int calculateIndex(long columnValue) {
+        //数字的UTF-8编码就是ASCII
+        byte[] bytes = asciiBuffer();
+        return indexOfHash(hashFunction.hash(bytes, 0, toAsciiBytes(columnValue, bytes)));
+    }
+
+    @Override
+    public int calculateIndex(byte[] bytes, int offset, int length) {
+        return indexOfHash(hashFunction.hash(bytes, offset, length));
+    }
+
+    /**
+     * rangeMap2是槽到分片的直接映射表
+     */
+    private int indexOfHash(long hash) {
         int slot = (int) (hash % DEFAULT_SLOTS_NUM);
         return rangeMap2[slot];
     }
@@ -18,11 +18,14 @@ import io.mycat.router.ShardingTableHandler;
 import io.mycat.router.SingleValueRuleFunction;
 import io.mycat.router.util.StringUtil;
 
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoField;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.Map;
 
 public class PartitionByDate extends SingleValueRuleFunction {
@@ -76,6 +79,16 @@ public class PartitionByDate extends SingleValueRuleFunction {
     return innerCalculate(targetTime);
   }
 
+  @Override
+  public int calculateIndex(Date columnValue) {
+    if (columnValue == null) {
+      return super.calculateIndex(columnValue);
+    }
+    LocalDate date = columnValue instanceof java.sql.Date ? ((java.sql.Date) columnValue).toLocalDate()
+        : columnValue.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    return innerCalculate(date.getDayOfYear() * ONE_DAY);
+  }
+
   private int innerCalculate(long targetTime) {
     int targetPartition = (int) ((targetTime - beginDate) / partionTime);
     if (targetTime > endDate && nCount != 0) {
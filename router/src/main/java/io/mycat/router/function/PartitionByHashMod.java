@@ -17,7 +17,6 @@ package io.mycat.router.function;
 import io.mycat.router.ShardingTableHandler;
 import io.mycat.router.SingleValueRuleFunction;
 
-import java.math.BigInteger;
 import java.util.Map;
 
 public class PartitionByHashMod extends SingleValueRuleFunction {
@@ -32,11 +31,28 @@ public class PartitionByHashMod extends SingleValueRuleFunction {
 
   @Override
   public int calculateIndex(String columnValue) {
-    BigInteger bigNum = BigInteger.valueOf(hash(columnValue.hashCode())).abs();
+    return indexOfHashCode(columnValue.hashCode());
+  }
+
+  @Override
+  public int calculateIndex(long columnValue) {
+    return indexOfHashCode(stringHashCode(columnValue));
+  }
+
+  @Override
+  public int calculateIndex(byte[] bytes, int offset, int length) {
+    if (isAscii(bytes, offset, length)) {
+      return indexOfHashCode(asciiHashCode(bytes, offset, length));
+    }
+    return super.calculateIndex(bytes, offset, length);
+  }
+
+  private int indexOfHashCode(int hashCode) {
+    long bigNum = Math.abs((long) hash(hashCode));
     if (watch) {
-      return bigNum.intValue() & (count - 1);
+      return (int) bigNum & (count - 1);
     }
-    return (bigNum.mod(BigInteger.valueOf(count))).intValue();
+    return (int) (bigNum % count);
   }
 
   @Override
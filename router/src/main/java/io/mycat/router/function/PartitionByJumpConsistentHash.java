@@ -28,7 +28,6 @@ public class PartitionByJumpConsistentHash extends SingleValueRuleFunction {
   private int totalBuckets;
 
   private static int jumpConsistentHash(final long key, final int buckets) {
-    checkBuckets(buckets);
     long k = key;
     long b = -1;
     long j = 0;
@@ -66,6 +65,19 @@ public class PartitionByJumpConsistentHash extends SingleValueRuleFunction {
     return jumpConsistentHash(columnValue.hashCode(), totalBuckets);
   }
 
+  @Override
+  public int calculateIndex(long columnValue) {
+    return jumpConsistentHash(stringHashCode(columnValue), totalBuckets);
+  }
+
+  @Override
+  public int calculateIndex(byte[] bytes, int offset, int length) {
+    if (isAscii(bytes, offset, length)) {
+      return jumpConsistentHash(asciiHashCode(bytes, offset, length), totalBuckets);
+    }
+    return super.calculateIndex(bytes, offset, length);
+  }
+
   @Override
   public int[] calculateIndexRange(String beginValue, String endValue) {
     return null;
@@ -75,5 +87,6 @@ public class PartitionByJumpConsistentHash extends SingleValueRuleFunction {
   @Override
   public void init(ShardingTableHandler table,Map<String, String> prot, Map<String, String> ranges) {
     this.totalBuckets = Integer.parseInt(prot.get("totalBuckets"));
+    checkBuckets(totalBuckets);
   }
 }
\ No newline at end of file
@@ -42,9 +42,7 @@ public class PartitionByLong extends SingleValueRuleFunction {
   @Override
   public int calculateIndex(String columnValue) {
     try {
-      long key = Long.parseLong(columnValue);
-      key = (key >>> 32) ^ key;
-      return partitionUtil.partition(key);
+      return calculateIndex(Long.parseLong(columnValue));
     } catch (NumberFormatException e) {
       throw new IllegalArgumentException(
           "columnValue:" + columnValue + " Please eliminate any quote and non number within it.",
@@ -52,6 +50,20 @@ public class PartitionByLong extends SingleValueRuleFunction {
     }
   }
 
+  @Override
+  public int calculateIndex(long key) {
+    key = (key >>> 32) ^ key;
+    return partitionUtil.partition(key);
+  }
+
+  @Override
+  public int calculateIndex(byte[] bytes, int offset, int length) {
+    if (isLong(bytes, offset, length)) {
+      return calculateIndex(parseLong(bytes, offset, length));
+    }
+    return super.calculateIndex(bytes, offset, length);
+  }
+
   @Override
   public int[] calculateIndexRange(String beginValue, String endValue) {
     return null;
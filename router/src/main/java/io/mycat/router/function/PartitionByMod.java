@@ -24,6 +24,10 @@ import java.util.Objects;
 public class PartitionByMod extends SingleValueRuleFunction {
 
   private BigInteger count;
+  /**
+   * count不超过long时用long取模,否则为-1
+   */
+  private long longCount;
 
   @Override
   public String name() {
@@ -35,6 +39,23 @@ public class PartitionByMod extends SingleValueRuleFunction {
     String count = prot.get("count");
     Objects.requireNonNull(count);
     this.count = new BigInteger(count);
+    this.longCount = this.count.bitLength() < 64 ? this.count.longValue() : -1;
+  }
+
+  @Override
+  public int calculateIndex(long columnValue) {
+    if (longCount <= 0 || columnValue == Long.MIN_VALUE) {
+      return super.calculateIndex(columnValue);
+    }
+    return (int) (Math.abs(columnValue) % longCount);
+  }
+
+  @Override
+  public int calculateIndex(byte[] bytes, int offset, int length) {
+    if (isLong(bytes, offset, length)) {
+      return calculateIndex(parseLong(bytes, offset, length));
+    }
+    return super.calculateIndex(bytes, offset, length);
   }
 
   @Override
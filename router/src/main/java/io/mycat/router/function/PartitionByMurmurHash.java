@@ -19,17 +19,23 @@ import com.google.common.hash.Hashing;
 import io.mycat.router.ShardingTableHandler;
 import io.mycat.router.SingleValueRuleFunction;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.SortedMap;
 import java.util.TreeMap;
 
 public class PartitionByMurmurHash extends SingleValueRuleFunction {
 
   private static final int DEFAULT_WEIGHT = 1;
-  private final SortedMap<Integer, Integer> bucketMap = new TreeMap<>();
-  private HashFunction hash;
+  private static final int C1 = 0xcc9e2d51;
+  private static final int C2 = 0x1b873593;
+  /**
+   * 一致性哈希环展开为有序数组,ringHashes[i]对应的分片是ringNodes[i]
+   */
+  private int[] ringHashes = new int[0];
+  private int[] ringNodes = new int[0];
+  private int seed;
   private int count;
 
   private static int getWeight(Map<Integer, Integer> weightMap, int bucket) {
@@ -47,12 +53,83 @@ public class PartitionByMurmurHash extends SingleValueRuleFunction {
 
   @Override
   public int calculateIndex(String columnValue) {
-    SortedMap<Integer, Integer> tail = bucketMap
-        .tailMap(hash.hashUnencodedChars(columnValue).asInt());
-    if (tail.isEmpty()) {
-      return bucketMap.get(bucketMap.firstKey());
+    int h1 = seed;
+    int length = columnValue.length();
+    for (int i = 1; i < length; i += 2) {
+      int k1 = columnValue.charAt(i - 1) | (columnValue.charAt(i) << 16);
+      h1 = mixH1(h1, mixK1(k1));
     }
-    return tail.get(tail.firstKey());
+    if ((length & 1) == 1) {
+      h1 ^= mixK1(columnValue.charAt(length - 1));
+    }
+    return indexOfHash(fmix(h1, 2 * length));
+  }
+
+  @Override
+  public int calculateIndex(long columnValue) {
+    byte[] bytes = asciiBuffer();
+    return calculateAsciiIndex(bytes, 0, toAsciiBytes(columnValue, bytes));
+  }
+
+  @Override
+  public int calculateIndex(byte[] bytes, int offset, int length) {
+    if (isAscii(bytes, offset, length)) {
+      return calculateAsciiIndex(bytes, offset, length);
+    }
+    return super.calculateIndex(bytes, offset, length);
+  }
+
+  /**
+   * ASCII字节与UTF-16字符一一对应,结果与hashUnencodedChars相同
+   */
+  private int calculateAsciiIndex(byte[] bytes, int offset, int length) {
+    int h1 = seed;
+    for (int i = 1; i < length; i += 2) {
+      int k1 = bytes[offset + i - 1] | (bytes[offset + i] << 16);
+      h1 = mixH1(h1, mixK1(k1));
+    }
+    if ((length & 1) == 1) {
+      h1 ^= mixK1(bytes[offset + length - 1]);
+    }
+    return indexOfHash(fmix(h1, 2 * length));
+  }
+
+  /**
+   * 与TreeMap.tailMap(hash).firstKey()相同,超过最大值时回到环的起点
+   */
+  private int indexOfHash(int hash) {
+    int i = Arrays.binarySearch(ringHashes, hash);
+    if (i < 0) {
+      i = -(i + 1);
+      if (i == ringHashes.length) {
+        i = 0;
+      }
+    }
+    return ringNodes[i];
+  }
+
+  private static int mixK1(int k1) {
+    k1 *= C1;
+    k1 = Integer.rotateLeft(k1, 15);
+    k1 *= C2;
+    return k1;
+  }
+
+  private static int mixH1(int h1, int k1) {
+    h1 ^= k1;
+    h1 = Integer.rotateLeft(h1, 13);
+    h1 = h1 * 5 + 0xe6546b64;
+    return h1;
+  }
+
+  private static int fmix(int h1, int length) {
+    h1 ^= length;
+    h1 ^= h1 >>> 16;
+    h1 *= 0x85ebca6b;
+    h1 ^= h1 >>> 13;
+    h1 *= 0xc2b2ae35;
+    h1 ^= h1 >>> 16;
+    return h1;
   }
 
   @Override
@@ -64,7 +141,7 @@ public class PartitionByMurmurHash extends SingleValueRuleFunction {
 
   @Override
   public void init(ShardingTableHandler table, Map<String, String> prot, Map<String, String> ranges) {
-    int seed = Integer.parseInt(prot.get("seed"));
+    this.seed = Integer.parseInt(prot.get("seed"));
     this.count = Integer.parseInt(prot.get("count"));
     int virtualBucketTimes = Integer.parseInt(prot.get("virtualBucketTimes"));
     initBucketMap(ranges, seed, count, virtualBucketTimes);
@@ -80,12 +157,23 @@ public class PartitionByMurmurHash extends SingleValueRuleFunction {
       weightMap.put(Integer.parseInt(key), weight > 0 ? weight : 1);
     }
 
-    hash = Hashing.murmur3_32(seed);//计算一致性哈希的对象
+    TreeMap<Integer, Integer> bucketMap = new TreeMap<>();
+    HashFunction hash = Hashing.murmur3_32(seed);//计算一致性哈希的对象
     for (int i = 0; i < count; i++) {//构造一致性哈希环，用TreeMap表示
       StringBuilder hashName = new StringBuilder("SHARD-").append(i);
       for (int n = 0, shard = virtualBucketTimes * getWeight(weightMap, i); n < shard; n++) {
         bucketMap.put(hash.hashUnencodedChars(hashName.append("-NODE-").append(n)).asInt(), i);
       }
     }
+    int[] ringHashes = new int[bucketMap.size()];
+    int[] ringNodes = new int[bucketMap.size()];
+    int i = 0;
+    for (Entry<Integer, Integer> entry : bucketMap.entrySet()) {
+      ringHashes[i] = entry.getKey();
+      ringNodes[i] = entry.getValue();
+      i++;
+    }
+    this.ringNodes = ringNodes;
+    this.ringHashes = ringHashes;
   }
-}
\ No newline at end of file
+}
@@ -14,4 +14,13 @@ public interface HashFunction {
     }
 
     long hash(byte[] bytes);
+
+    default long hash(byte[] bytes, int offset, int length) {
+        if (offset == 0 && length == bytes.length) {
+            return hash(bytes);
+        }
+        byte[] copy = new byte[length];
+        System.arraycopy(bytes, offset, copy, 0, length);
+        return hash(copy);
+    }
 }
\ No newline at end of file
@@ -11,12 +11,20 @@ public class MessageDigestHashFunction implements HashFunction {
 
     @Override
     public long hash(byte[] bytes) {
+        return hash(bytes, 0, bytes.length);
+    }
+
+    /**
+     * MessageDigest不是线程安全的
+     */
+    @Override
+    public synchronized long hash(byte[] bytes, int offset, int length) {
         instance.reset();
-        instance.update(bytes);
+        instance.update(bytes, offset, length);
         byte[] digest = instance.digest();
         long h = 0;
-        int length = digest.length;
-        for (int i = 0; i < length; i++) {
+        int digestLength = digest.length;
+        for (int i = 0; i < digestLength; i++) {
             h <<= 8;
             h |= ((int) digest[i]) & 0xFF;
         }
@@ -1,16 +1,19 @@
 package io.mycat.router.hashfunction;
 
 public class PureJavaCrc32HashFunction implements HashFunction {
-    private final io.mycat.router.function.PureJavaCrc32 crc32;
 
-    public PureJavaCrc32HashFunction() {
-        this.crc32 = new io.mycat.router.function.PureJavaCrc32();
+    /**
+     * 路由在多个线程上同时计算,每次使用新的校验对象,它只有一个int状态
+     */
+    @Override
+    public long hash(byte[] bytes) {
+        return hash(bytes, 0, bytes.length);
     }
 
     @Override
-    public long hash(byte[] bytes) {
-        crc32.reset();
-        crc32.update(bytes, 0, bytes.length);
+    public long hash(byte[] bytes, int offset, int length) {
+        io.mycat.router.function.PureJavaCrc32 crc32 = new io.mycat.router.function.PureJavaCrc32();
+        crc32.update(bytes, offset, length);
         return crc32.getValue();
     }
 }
\ No newline at end of file
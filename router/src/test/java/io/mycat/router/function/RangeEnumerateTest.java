@@ -0,0 +1,92 @@
+package io.mycat.router.function;
+
+import io.mycat.DataNode;
+import io.mycat.RangeVariable;
+import io.mycat.RangeVariableType;
+import io.mycat.SimpleColumnInfo;
+import io.mycat.router.ShardingTableHandler;
+import io.mycat.router.SingleValueRuleFunction;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.JDBCType;
+import java.util.*;
+
+/**
+ * 哈希类算法对整数字段的小范围逐个值计算分片
+ */
+public class RangeEnumerateTest {
+
+    @Test
+    public void testPartitionByModSmallRange() {
+        SingleValueRuleFunction partition = mod(JDBCType.BIGINT, Collections.singletonMap("count", "8"));
+        assertRange(partition, "10", "12", 2, 3, 4);
+        assertRange(partition, "7", "7", 7);
+        //覆盖了全部分片
+        Assert.assertEquals(8, partition.calculate(range("0", "40")).size());
+        //超过阈值不枚举
+        Assert.assertEquals(8, partition.calculate(range("0", "64")).size());
+        Assert.assertEquals(0, partition.calculateRange("12", "10").size());
+    }
+
+    @Test
+    public void testThreshold() {
+        Map<String, String> prot = new HashMap<>();
+        prot.put("count", "8");
+        prot.put("rangeEnumerateThreshold", "2");
+        SingleValueRuleFunction partition = mod(JDBCType.INTEGER, prot);
+        assertRange(partition, "1", "2", 1, 2);
+        Assert.assertEquals(8, partition.calculate(range("1", "3")).size());
+    }
+
+    @Test
+    public void testNotIntegralColumn() {
+        //字符串的范围包含'100'等值,不能枚举
+        SingleValueRuleFunction partition = mod(JDBCType.VARCHAR, Collections.singletonMap("count", "8"));
+        Assert.assertEquals(8, partition.calculate(range("1", "2")).size());
+    }
+
+    @Test
+    public void testHashFunctions() {
+        ShardingTableHandler table = TableHandlerMocks.mockTableHandlerWithDataNodes(4, columns(JDBCType.BIGINT));
+        PartitionByHashMod hashMod = new PartitionByHashMod();
+        hashMod.callInit(table, "id", Collections.singletonMap("count", "4"), Collections.emptyMap());
+        assertExact(hashMod, 100, 110);
+
+        PartitionByJumpConsistentHash jump = new PartitionByJumpConsistentHash();
+        jump.callInit(table, "id", Collections.singletonMap("totalBuckets", "4"), Collections.emptyMap());
+        assertExact(jump, -5, 5);
+    }
+
+    private static void assertExact(SingleValueRuleFunction partition, long begin, long end) {
+        Set<DataNode> expected = new HashSet<>();
+        for (long i = begin; i <= end; i++) {
+            expected.add(partition.calculate(String.valueOf(i)));
+        }
+        List<DataNode> dataNodes = partition.calculate(range(String.valueOf(begin), String.valueOf(end)));
+        Assert.assertEquals(expected, new HashSet<>(dataNodes));
+    }
+
+    private static void assertRange(SingleValueRuleFunction partition, String begin, String end, int... indexes) {
+        List<DataNode> dataNodes = partition.calculate(range(begin, end));
+        Assert.assertEquals(indexes.length, dataNodes.size());
+        for (int index : indexes) {
+            Assert.assertTrue(dataNodes.contains(partition.getTable().getShardingBackends().get(index)));
+        }
+    }
+
+    private static SingleValueRuleFunction mod(JDBCType jdbcType, Map<String, String> prot) {
+        PartitionByMod partition = new PartitionByMod();
+        ShardingTableHandler table = TableHandlerMocks.mockTableHandlerWithDataNodes(8, columns(jdbcType));
+        partition.callInit(table, "id", prot, Collections.emptyMap());
+        return partition;
+    }
+
+    private static List<SimpleColumnInfo> columns(JDBCType jdbcType) {
+        return Collections.singletonList(new SimpleColumnInfo("id", 0, 0, jdbcType, false, false, true, true));
+    }
+
+    private static Set<RangeVariable> range(String begin, String end) {
+        return Collections.singleton(new RangeVariable("id", false, RangeVariableType.RANGE, begin, end));
+    }
+}
@@ -4,6 +4,7 @@ import io.mycat.*;
 import io.mycat.router.ShardingTableHandler;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.function.Function;
@@ -12,6 +13,10 @@ import java.util.function.Supplier;
 public class TableHandlerMocks {
 
     public static ShardingTableHandler mockTableHandlerWithDataNodes(int count) {
+        return mockTableHandlerWithDataNodes(count, Collections.emptyList());
+    }
+
+    public static ShardingTableHandler mockTableHandlerWithDataNodes(int count, List<SimpleColumnInfo> columns) {
         ArrayList<DataNode> dataNodes = new ArrayList<>();
         for (int i = 0; i < count; i++) {
             String name = String.valueOf(i);
@@ -67,7 +72,7 @@ public class TableHandlerMocks {
 
             @Override
             public List<SimpleColumnInfo> getColumns() {
-                return null;
+                return columns;
             }
 
             @Override
@@ -107,6 +112,11 @@ public class TableHandlerMocks {
 
             @Override
             public SimpleColumnInfo getColumnByName(String name) {
+                for (SimpleColumnInfo column : columns) {
+                    if (column.getColumnName().equalsIgnoreCase(name)) {
+                        return column;
+                    }
+                }
                 return null;
             }
 
@@ -0,0 +1,135 @@
+package io.mycat.router.function;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import io.mycat.MycatException;
+import io.mycat.router.ShardingTableHandler;
+import io.mycat.router.SingleValueRuleFunction;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * 类型化的路由重载必须与字符串版本的结果一致
+ */
+public class TypedRoutingTest {
+    private static final long[] VALUES = {0, 1, 2, 7, 9, 10, 99, 100, 255, 256, 1023, 1024, 65535, 1000316,
+            123456789, 2000000, 4999999, 5000000, 5000001, 9999999, -1, -2, -1024, -123456789,
+            Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1};
+
+    @Test
+    public void testPartitionByMod() {
+        PartitionByMod partition = new PartitionByMod();
+        partition.init(TableHandlerMocks.mockTableHandlerWithDataNodes(7), Collections.singletonMap("count", "7"), Collections.emptyMap());
+        assertSame(partition);
+    }
+
+    @Test
+    public void testPartitionByHashMod() {
+        for (String count : new String[]{"8", "7"}) {
+            PartitionByHashMod partition = new PartitionByHashMod();
+            partition.init(TableHandlerMocks.mockTableHandlerWithDataNodes(Integer.parseInt(count)), Collections.singletonMap("count", count), Collections.emptyMap());
+            assertSame(partition);
+        }
+    }
+
+    @Test
+    public void testPartitionByLong() {
+        PartitionByLong partition = new PartitionByLong();
+        Map<String, String> prot = new HashMap<>();
+        prot.put("partitionCount", "2,1");
+        prot.put("partitionLength", "256,512");
+        partition.init(TableHandlerMocks.mockTableHandlerWithDataNodes(3), prot, Collections.emptyMap());
+        assertSame(partition);
+    }
+
+    @Test
+    public void testAutoPartitionByLong() {
+        AutoPartitionByLong partition = new AutoPartitionByLong();
+        Map<String, String> ranges = new HashMap<>();
+        ranges.put("0-2000000", "0");
+        ranges.put("2000001-4000000", "1");
+        ranges.put("4000001-5000000", "2");
+        ShardingTableHandler table = TableHandlerMocks.mockTableHandlerWithDataNodes(4);
+        partition.init(table, Collections.singletonMap("defaultNode", "3"), ranges);
+        assertSame(partition);
+
+        //重叠的区间按顺序取第一个
+        ranges.put("1000000-3000000", "2");
+        partition.init(table, Collections.singletonMap("defaultNode", "-1"), ranges);
+        Assert.assertEquals(partition.calculateIndex("1500000"), partition.calculateIndex(1500000L));
+        assertSame(partition);
+    }
+
+    @Test
+    public void testPartitionByMurmurHash() {
+        Map<String, String> prot = new HashMap<>();
+        prot.put("seed", "0");
+        prot.put("count", "4");
+        prot.put("virtualBucketTimes", "160");
+        PartitionByMurmurHash partition = new PartitionByMurmurHash();
+        partition.init(TableHandlerMocks.mockTableHandlerWithDataNodes(4), prot, Collections.singletonMap("1", "2"));
+        assertSame(partition);
+
+        //与原来基于TreeMap的一致性哈希环结果相同
+        HashFunction hash = Hashing.murmur3_32(0);
+        SortedMap<Integer, Integer> bucketMap = new TreeMap<>();
+        for (int i = 0; i < 4; i++) {
+            StringBuilder hashName = new StringBuilder("SHARD-").append(i);
+            for (int n = 0, shard = 160 * (i == 1 ? 2 : 1); n < shard; n++) {
+                bucketMap.put(hash.hashUnencodedChars(hashName.append("-NODE-").append(n)).asInt(), i);
+            }
+        }
+        for (String value : new String[]{"", "a", "ab", "mycat", "中文", "1000316"}) {
+            SortedMap<Integer, Integer> tail = bucketMap.tailMap(hash.hashUnencodedChars(value).asInt());
+            int expected = tail.isEmpty() ? bucketMap.get(bucketMap.firstKey()) : tail.get(tail.firstKey());
+            Assert.assertEquals(value, expected, partition.calculateIndex(value));
+        }
+    }
+
+    @Test
+    public void testPartitionByCRC32PreSlot() {
+        PartitionByCRC32PreSlot partition = new PartitionByCRC32PreSlot();
+        partition.init(TableHandlerMocks.mockTableHandlerWithDataNodes(5), Collections.singletonMap("count", "5"), Collections.emptyMap());
+        assertSame(partition);
+    }
+
+    @Test
+    public void testPartitionByJumpConsistentHash() {
+        PartitionByJumpConsistentHash partition = new PartitionByJumpConsistentHash();
+        partition.init(TableHandlerMocks.mockTableHandlerWithDataNodes(6), Collections.singletonMap("totalBuckets", "6"), Collections.emptyMap());
+        assertSame(partition);
+    }
+
+    @Test
+    public void testCalculateDataNode() {
+        PartitionByMod partition = new PartitionByMod();
+        partition.callInit(TableHandlerMocks.mockTableHandlerWithDataNodes(7), "id", Collections.singletonMap("count", "7"), Collections.emptyMap());
+        for (long value : VALUES) {
+            Assert.assertSame(partition.calculate(Long.toString(value)), partition.calculate(value));
+        }
+    }
+
+    @Test(expected = MycatException.class)
+    public void testCalculateOutOfRange() {
+        PartitionByMod partition = new PartitionByMod();
+        partition.callInit(TableHandlerMocks.mockTableHandlerWithDataNodes(3), "id", Collections.singletonMap("count", "7"), Collections.emptyMap());
+        partition.calculate(5L);
+    }
+
+    private static void assertSame(SingleValueRuleFunction partition) {
+        for (long value : VALUES) {
+            String text = Long.toString(value);
+            int expected = partition.calculateIndex(text);
+            Assert.assertEquals(text, expected, partition.calculateIndex(value));
+            byte[] bytes = ("#" + text + "#").getBytes(StandardCharsets.UTF_8);
+            Assert.assertEquals(text, expected, partition.calculateIndex(bytes, 1, bytes.length - 2));
+        }
+    }
+}
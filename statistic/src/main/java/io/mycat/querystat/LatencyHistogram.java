@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) <2020>  <chen junwen>
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with this program.  If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mycat.querystat;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 对数线性分桶的延迟直方图,每个2的幂区间分为4个桶,相对误差不超过25%,
+ * 共96个桶,毫秒值约8小时以上的都计入最后一个桶
+ *
+ * @author Junwen Chen
+ **/
+public final class LatencyHistogram {
+    static final int SUB_BUCKET_BITS = 2;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    public static final int BUCKETS = 96;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    public void record(long value) {
+        buckets.incrementAndGet(bucketOf(value));
+    }
+
+    public long[] snapshot() {
+        long[] res = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            res[i] = buckets.get(i);
+        }
+        return res;
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) Math.max(value, 0);
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int index = ((msb - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) | (int) ((value >>> (msb - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return Math.min(index, BUCKETS - 1);
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int msb = (bucket >>> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+        return (long) (SUB_BUCKETS | (bucket & (SUB_BUCKETS - 1))) << (msb - SUB_BUCKET_BITS);
+    }
+
+    static long upperBound(int bucket) {
+        return bucket >= BUCKETS - 1 ? Long.MAX_VALUE : lowerBound(bucket + 1) - 1;
+    }
+
+    /**
+     * 返回分位数所在桶的上界,没有数据时返回0
+     */
+    public static long percentile(long[] buckets, double percentile) {
+        long total = 0;
+        for (long count : buckets) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * percentile));
+        long sum = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            sum += buckets[i];
+            if (sum >= target) {
+                return i == BUCKETS - 1 ? lowerBound(i) : upperBound(i);
+            }
+        }
+        return lowerBound(BUCKETS - 1);
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) <2020>  <chen junwen>
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with this program.  If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mycat.querystat;
+
+import lombok.Data;
+
+/**
+ * 一个sql指纹的统计快照,时间单位为毫秒,除max与分位数外都是累计值
+ *
+ * @author Junwen Chen
+ **/
+@Data
+public class QueryStat {
+    private long snapshotTime;
+    private String digest;
+    private String fingerprint;
+    private long count;
+    private long totalTime;
+    private long maxTime;
+    private long p50;
+    private long p95;
+    private long p99;
+    private long rows;
+    private long netInBytes;
+    private long netOutBytes;
+    private long parseTime;
+    private long compileTime;
+    private long rboTime;
+    private long cboTime;
+    private long connectionPoolTime;
+    private long connectionQueryTime;
+    private long executionTime;
+    private long lastTime;
+
+    public double getAvgTime() {
+        return count == 0 ? 0 : (double) totalTime / count;
+    }
+}
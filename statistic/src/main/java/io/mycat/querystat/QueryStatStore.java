@@ -0,0 +1,266 @@
+/**
+ * Copyright (C) <2020>  <chen junwen>
+ * <p>
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with this program.  If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package io.mycat.querystat;
+
+import io.mycat.ScheduleUtil;
+import io.mycat.config.ServerConfig;
+import io.mycat.sql.SQLFingerprint;
+import io.mycat.sqlrecorder.SqlRecord;
+import io.mycat.sqlrecorder.SqlRecordListener;
+import io.mycat.sqlrecorder.SqlRecorderRuntime;
+import io.mycat.util.JsonUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Collectors;
+
+/**
+ * 按sql指纹汇总执行统计.
+ * 指纹表是固定容量的开放寻址数组,插入与计数都只使用CAS,不加锁;
+ * 探测范围内没有空位的指纹归入同一项{@link #OTHERS},内存上限由容量决定.
+ * 统计周期性地以json行追加到文件,用于长期的慢查询分析
+ *
+ * @author Junwen Chen
+ **/
+public enum QueryStatStore implements SqlRecordListener {
+    INSTANCE;
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryStatStore.class);
+    public static final String OTHERS = "others";
+    static final String SNAPSHOT_FILE = "query_stat.log";
+    private static final int MAX_PROBE = 16;
+
+    private static final int COUNT = 0;
+    private static final int TOTAL_TIME = 1;
+    private static final int MAX_TIME = 2;
+    private static final int ROWS = 3;
+    private static final int NET_IN_BYTES = 4;
+    private static final int NET_OUT_BYTES = 5;
+    private static final int PARSE_TIME = 6;
+    private static final int COMPILE_TIME = 7;
+    private static final int RBO_TIME = 8;
+    private static final int CBO_TIME = 9;
+    private static final int CONNECTION_POOL_TIME = 10;
+    private static final int CONNECTION_QUERY_TIME = 11;
+    private static final int EXECUTION_TIME = 12;
+    private static final int LAST_TIME = 13;
+    private static final int FIELDS = 14;
+
+    private volatile Table table = new Table(1024);
+    private volatile int maxSqlLength = 1024;
+    private volatile long maxFileSize = 64 * 1024 * 1024;
+    private volatile Path file;
+    private ScheduledFuture<?> snapshotFuture;
+
+    static final class Entry {
+        final long hash;
+        final String fingerprint;
+        final AtomicLongArray values = new AtomicLongArray(FIELDS);
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        Entry(long hash, String fingerprint) {
+            this.hash = hash;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    static final class Table {
+        final AtomicReferenceArray<Entry> entries;
+        final int mask;
+        final Entry others = new Entry(0, OTHERS);
+
+        Table(int capacity) {
+            int size = sizeFor(capacity);
+            this.entries = new AtomicReferenceArray<>(size);
+            this.mask = size - 1;
+        }
+
+        static int sizeFor(int capacity) {
+            return Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        }
+
+        Entry getOrCreate(long hash, String fingerprint) {
+            int index = (int) (hash ^ (hash >>> 32)) & mask;
+            for (int i = 0; i < MAX_PROBE && i <= mask; i++) {
+                int slot = (index + i) & mask;
+                Entry entry = entries.get(slot);
+                if (entry == null) {
+                    Entry created = new Entry(hash, fingerprint);
+                    if (entries.compareAndSet(slot, null, created)) {
+                        return created;
+                    }
+                    entry = entries.get(slot);
+                }
+                if (entry.hash == hash && entry.fingerprint.equals(fingerprint)) {
+                    return entry;
+                }
+            }
+            return others;
+        }
+    }
+
+    public synchronized void init(ServerConfig.QueryStatConfig config, String directory) {
+        if (snapshotFuture != null) {
+            snapshotFuture.cancel(false);
+            snapshotFuture = null;
+        }
+        if (!config.isEnable()) {
+            SqlRecorderRuntime.INSTANCE.setListener(null);
+            return;
+        }
+        if (this.table.entries.length() != Table.sizeFor(config.getCapacity())) {
+            this.table = new Table(config.getCapacity());
+        }
+        this.maxSqlLength = Math.max(16, config.getMaxSqlLength());
+        this.maxFileSize = config.getMaxFileSize();
+        this.file = directory == null ? null : Paths.get(directory).resolve(SNAPSHOT_FILE);
+        if (file != null && config.getSnapshotPeriod() > 0) {
+            TimeUnit timeUnit = TimeUnit.valueOf(config.getSnapshotTimeUnit());
+            snapshotFuture = ScheduleUtil.getTimer().scheduleAtFixedRate(this::snapshot,
+                    config.getSnapshotPeriod(), config.getSnapshotPeriod(), timeUnit);
+        }
+        SqlRecorderRuntime.INSTANCE.setListener(this);
+    }
+
+    @Override
+    public void onRecord(String sql, SqlRecord record) {
+        try {
+            record(sql, (long) (record.getEndTime() - record.getStartTime()), record);
+        } catch (Throwable e) {
+            LOGGER.error("记录sql统计失败 {}", sql, e);
+        }
+    }
+
+    void record(String sql, long time, SqlRecord record) {
+        String fingerprint = SQLFingerprint.normalize(sql, maxSqlLength);
+        Entry entry = table.getOrCreate(SQLFingerprint.hash(fingerprint), fingerprint);
+        AtomicLongArray values = entry.values;
+        time = Math.max(time, 0);
+        values.incrementAndGet(COUNT);
+        values.addAndGet(TOTAL_TIME, time);
+        long max;
+        while ((max = values.get(MAX_TIME)) < time && !values.compareAndSet(MAX_TIME, max, time)) {
+        }
+        values.addAndGet(ROWS, (long) record.getSqlRows());
+        values.addAndGet(NET_IN_BYTES, (long) record.getNetInBytes());
+        values.addAndGet(NET_OUT_BYTES, (long) record.getNetOutBytes());
+        values.addAndGet(PARSE_TIME, (long) record.getParseTime());
+        values.addAndGet(COMPILE_TIME, (long) record.getCompileTime());
+        values.addAndGet(RBO_TIME, (long) record.getRboTime());
+        values.addAndGet(CBO_TIME, (long) record.getCboTime());
+        values.addAndGet(CONNECTION_POOL_TIME, (long) record.getConnectionPoolTime());
+        values.addAndGet(CONNECTION_QUERY_TIME, (long) record.getConnectionQueryTime());
+        values.addAndGet(EXECUTION_TIME, (long) record.getExecutionTime());
+        values.lazySet(LAST_TIME, (long) record.getEndTime());
+        entry.histogram.record(time);
+    }
+
+    /**
+     * 所有指纹的统计
+     */
+    public List<QueryStat> getStats() {
+        Table table = this.table;
+        long now = System.currentTimeMillis();
+        List<QueryStat> list = new ArrayList<>();
+        for (int i = 0; i < table.entries.length(); i++) {
+            Entry entry = table.entries.get(i);
+            if (entry != null) {
+                list.add(toQueryStat(entry, now));
+            }
+        }
+        if (table.others.values.get(COUNT) > 0) {
+            list.add(toQueryStat(table.others, now));
+        }
+        return list;
+    }
+
+    /**
+     * 按comparator排序后的前n项,例如按累计耗时找出最慢的sql
+     */
+    public List<QueryStat> top(int n, Comparator<QueryStat> comparator) {
+        return getStats().stream().sorted(comparator).limit(n).collect(Collectors.toList());
+    }
+
+    public void reset() {
+        this.table = new Table(this.table.entries.length());
+    }
+
+    private static QueryStat toQueryStat(Entry entry, long now) {
+        AtomicLongArray values = entry.values;
+        long[] histogram = entry.histogram.snapshot();
+        QueryStat stat = new QueryStat();
+        stat.setSnapshotTime(now);
+        stat.setDigest(Long.toHexString(entry.hash));
+        stat.setFingerprint(entry.fingerprint);
+        stat.setCount(values.get(COUNT));
+        stat.setTotalTime(values.get(TOTAL_TIME));
+        stat.setMaxTime(values.get(MAX_TIME));
+        stat.setP50(LatencyHistogram.percentile(histogram, 0.5));
+        stat.setP95(LatencyHistogram.percentile(histogram, 0.95));
+        stat.setP99(LatencyHistogram.percentile(histogram, 0.99));
+        stat.setRows(values.get(ROWS));
+        stat.setNetInBytes(values.get(NET_IN_BYTES));
+        stat.setNetOutBytes(values.get(NET_OUT_BYTES));
+        stat.setParseTime(values.get(PARSE_TIME));
+        stat.setCompileTime(values.get(COMPILE_TIME));
+        stat.setRboTime(values.get(RBO_TIME));
+        stat.setCboTime(values.get(CBO_TIME));
+        stat.setConnectionPoolTime(values.get(CONNECTION_POOL_TIME));
+        stat.setConnectionQueryTime(values.get(CONNECTION_QUERY_TIME));
+        stat.setExecutionTime(values.get(EXECUTION_TIME));
+        stat.setLastTime(values.get(LAST_TIME));
+        return stat;
+    }
+
+    /**
+     * 把当前统计以每个指纹一行json追加到文件,文件过大时改名为.1
+     */
+    public synchronized void snapshot() {
+        Path file = this.file;
+        if (file == null) {
+            return;
+        }
+        try {
+            List<QueryStat> stats = getStats();
+            if (stats.isEmpty()) {
+                return;
+            }
+            if (Files.exists(file) && Files.size(file) > maxFileSize) {
+                Files.move(file, file.resolveSibling(SNAPSHOT_FILE + ".1"), StandardCopyOption.REPLACE_EXISTING);
+            }
+            StringBuilder builder = new StringBuilder();
+            for (QueryStat stat : stats) {
+                builder.append(JsonUtil.toJson(stat)).append('\n');
+            }
+            Files.write(file, builder.toString().getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            LOGGER.error("保存sql统计失败 {}", file, e);
+        }
+    }
+}
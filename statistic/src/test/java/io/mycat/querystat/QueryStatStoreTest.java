@@ -0,0 +1,93 @@
+package io.mycat.querystat;
+
+import io.mycat.sql.SQLFingerprint;
+import io.mycat.sqlrecorder.SqlRecord;
+import io.mycat.sqlrecorder.SqlRecorderRuntime;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * sql指纹与直方图
+ */
+public class QueryStatStoreTest {
+
+    @Test
+    public void testFingerprint() {
+        Assert.assertEquals("select * from `t` where id = ? and name = ?",
+                SQLFingerprint.normalize("SELECT *  FROM `t`\n WHERE id = 1 and name = 'a''b' ;", 1024));
+        Assert.assertEquals("select * from t1 where id in (?)",
+                SQLFingerprint.normalize("select * from t1 where id in (1, 2,3)", 1024));
+        Assert.assertEquals("insert into t1 values (?)",
+                SQLFingerprint.normalize("insert into t1 values (1,'a'),(2,'b'), (3, 'c')", 1024));
+        Assert.assertEquals("select ? from t",
+                SQLFingerprint.normalize("/* comment */select 1.5e3 from t -- comment", 1024));
+        Assert.assertEquals("select...", SQLFingerprint.normalize("select 1", 6));
+    }
+
+    @Test
+    public void testHistogram() {
+        for (long value = 0; value < 100000; value++) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            Assert.assertTrue(LatencyHistogram.lowerBound(bucket) <= value);
+            Assert.assertTrue(LatencyHistogram.upperBound(bucket) >= value);
+        }
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        long[] snapshot = histogram.snapshot();
+        long p50 = LatencyHistogram.percentile(snapshot, 0.5);
+        Assert.assertTrue(p50 >= 50 && p50 < 64);
+        Assert.assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testRecord() {
+        QueryStatStore store = QueryStatStore.INSTANCE;
+        store.reset();
+        SqlRecord record = new SqlRecord();
+        record.setSqlRows(2);
+        store.record("select * from t where id = 1", 10, record);
+        store.record("select * from t where id = 2", 30, record);
+        store.record("select * from t2", 5, record);
+        List<QueryStat> stats = store.getStats();
+        Assert.assertEquals(2, stats.size());
+        QueryStat stat = stats.stream().filter(i -> i.getCount() == 2).findFirst().get();
+        Assert.assertEquals(40, stat.getTotalTime());
+        Assert.assertEquals(30, stat.getMaxTime());
+        Assert.assertEquals(4, stat.getRows());
+        store.reset();
+        Assert.assertTrue(store.getStats().isEmpty());
+    }
+
+    /**
+     * 直接转发到后端的sql不经过线程内的记录槽,记录完整的sql与网络字节数
+     */
+    @Test
+    public void testProxyRecord() {
+        QueryStatStore store = QueryStatStore.INSTANCE;
+        store.reset();
+        SqlRecorderRuntime.INSTANCE.setListener(store);
+        try {
+            SqlRecord record = new SqlRecord();
+            record.setStatement("select * from t where id = 1");
+            record.setStartTime(100);
+            record.setEndTime(112);
+            record.setNetInBytes(33);
+            record.setNetOutBytes(128);
+            SqlRecorderRuntime.INSTANCE.record(record);
+            List<QueryStat> stats = store.getStats();
+            Assert.assertEquals(1, stats.size());
+            QueryStat stat = stats.get(0);
+            Assert.assertEquals("select * from t where id = ?", stat.getFingerprint());
+            Assert.assertEquals(12, stat.getTotalTime());
+            Assert.assertEquals(33, stat.getNetInBytes());
+            Assert.assertEquals(128, stat.getNetOutBytes());
+        } finally {
+            SqlRecorderRuntime.INSTANCE.setListener(null);
+            store.reset();
+        }
+    }
+}